@@ -0,0 +1,41 @@
+package com.bungakukensaku.config;
+
+import com.bungakukensaku.service.SearchMetrics;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.ModelAndView;
+
+/**
+ * Times Thymeleaf rendering of the search page (search.stage{stage=render}).
+ *
+ * postHandle runs after the controller returns and before the view renders,
+ * afterCompletion after rendering, so the gap between them is the render time.
+ */
+@Component
+public class SearchRenderTimingInterceptor implements HandlerInterceptor {
+
+    private static final String RENDER_START = SearchRenderTimingInterceptor.class.getName() + ".renderStart";
+
+    @Autowired
+    private SearchMetrics searchMetrics;
+
+    @Override
+    public void postHandle(HttpServletRequest request, HttpServletResponse response, Object handler,
+                           ModelAndView modelAndView) {
+        if (modelAndView != null && !modelAndView.wasCleared()) {
+            request.setAttribute(RENDER_START, System.nanoTime());
+        }
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+                                Exception ex) {
+        Object start = request.getAttribute(RENDER_START);
+        if (start instanceof Long) {
+            searchMetrics.recordStage(SearchMetrics.RENDER, System.nanoTime() - (Long) start);
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.bungakukensaku.config;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+@Configuration
+public class WebConfig implements WebMvcConfigurer {
+    
+    @Autowired
+    private SearchRenderTimingInterceptor searchRenderTimingInterceptor;
+    
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        // Only the server-rendered search page
+        registry.addInterceptor(searchRenderTimingInterceptor).addPathPatterns("/search");
+    }
+}
@@ -1,7 +1,9 @@
 package com.bungakukensaku.controller;
 
+import com.bungakukensaku.dto.BookSummary;
 import com.bungakukensaku.dto.SeriesInfo;
 import com.bungakukensaku.model.Book;
+import com.bungakukensaku.service.BookCatalogService;
 import com.bungakukensaku.service.BookService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
@@ -27,6 +29,9 @@ public class AdminController {
     @Autowired
     private BookService bookService;
 
+    @Autowired
+    private BookCatalogService bookCatalogService;
+
     /**
      * Display the main admin interface
      */
@@ -53,7 +58,9 @@ public class AdminController {
         // Create series info with book counts for management section
         List<SeriesInfo> seriesInfoList = allSeries.stream()
                 .map(seriesName -> {
-                    List<Book> seriesBooks = bookService.findBySeries(seriesName);
+                    List<BookSummary> seriesBooks = bookService.findBySeries(seriesName).stream()
+                            .map(BookSummary::from)
+                            .collect(Collectors.toList());
                     return new SeriesInfo(seriesName, seriesBooks);
                 })
                 .collect(Collectors.toList());
@@ -82,6 +89,7 @@ public class AdminController {
             
             book.setSeries(seriesName.trim());
             bookService.save(book);
+            bookCatalogService.refresh();
             
             redirectAttributes.addFlashAttribute("successMessage", 
                     "Book \"" + book.getTitle() + "\" assigned to series \"" + seriesName + "\"");
@@ -105,6 +113,7 @@ public class AdminController {
             String oldSeries = book.getSeries();
             book.setSeries(null);
             bookService.save(book);
+            bookCatalogService.refresh();
             
             redirectAttributes.addFlashAttribute("successMessage", 
                     "Book \"" + book.getTitle() + "\" removed from series \"" + oldSeries + "\"");
@@ -138,6 +147,7 @@ public class AdminController {
             for (Book book : booksInSeries) {
                 bookService.save(book);
             }
+            bookCatalogService.refresh();
             
             redirectAttributes.addFlashAttribute("successMessage", 
                     "シリーズ \"" + seriesName + "\" を削除し、" + booksInSeries.size() + "冊の書籍を未割り当てに戻しました。");
@@ -167,6 +177,7 @@ public class AdminController {
                     updatedCount++;
                 }
             }
+            bookCatalogService.refresh();
             
             redirectAttributes.addFlashAttribute("successMessage", 
                     updatedCount + " books assigned to series \"" + seriesName + "\"");
@@ -192,6 +203,7 @@ public class AdminController {
             String oldTitle = book.getTitle();
             book.setTitle(newTitle.trim());
             bookService.save(book);
+            bookCatalogService.refresh();
             
             redirectAttributes.addFlashAttribute("successMessage", 
                     "Book title updated from \"" + oldTitle + "\" to \"" + newTitle.trim() + "\"");
@@ -4,6 +4,7 @@ package com.bungakukensaku.controller;
 import com.bungakukensaku.model.Book;
 import com.bungakukensaku.repository.BookRepository;
 import com.bungakukensaku.repository.ChunkRepository;
+import com.bungakukensaku.service.AIResultCache;
 import org.apache.tika.Tika;
 import org.apache.tika.metadata.Metadata;
 import org.apache.tika.parser.AutoDetectParser;
@@ -35,6 +36,17 @@ public class DiagnosticController {
     @Autowired
     private ChunkRepository chunkRepository;
     
+    @Autowired
+    private AIResultCache aiResultCache;
+    
+    /**
+     * Hit/miss/eviction counters for the AI excerpt and summary cache
+     */
+    @GetMapping("/ai-cache")
+    public Map<String, Object> aiCacheStats() {
+        return aiResultCache.getCacheStats();
+    }
+    
     @PostMapping("/check-epub")
     public Map<String, Object> checkEpubExtraction(@RequestParam("file") MultipartFile file) {
         Map<String, Object> result = new HashMap<>();
@@ -4,7 +4,11 @@ import com.bungakukensaku.model.Book;
 import com.bungakukensaku.model.Chunk;
 import com.bungakukensaku.repository.BookRepository;
 import com.bungakukensaku.repository.ChunkRepository;
+import com.bungakukensaku.service.BookCatalogService;
+import com.bungakukensaku.service.BulkImportService;
 import com.bungakukensaku.service.DocumentProcessingService;
+import com.bungakukensaku.service.InMemoryVectorStore;
+import com.bungakukensaku.service.LexicalIndexService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -47,6 +51,19 @@ public class DocumentTestController {
     @Autowired
     private ChunkRepository chunkRepository;
     
+    @Autowired
+    private BookCatalogService bookCatalogService;
+    
+    @Autowired
+    private LexicalIndexService lexicalIndexService;
+    
+    // Only present when vector.store.type=memory
+    @Autowired(required = false)
+    private InMemoryVectorStore inMemoryVectorStore;
+    
+    @Autowired
+    private BulkImportService bulkImportService;
+    
     /**
      * Test PDF text extraction without saving to database
      * 
@@ -148,6 +165,13 @@ public class DocumentTestController {
                 }
             }
             
+            // Make the new book selectable on the search page and findable by exact terms
+            bookCatalogService.refresh();
+            lexicalIndexService.addChunks(chunks);
+            if (inMemoryVectorStore != null) {
+                inMemoryVectorStore.addChunks(chunks);
+            }
+            
             // Calculate total character count
             long totalCharacters = chunks.stream()
                 .mapToLong(chunk -> chunk.getContent().length())
@@ -176,6 +200,47 @@ public class DocumentTestController {
         return ResponseEntity.ok(response);
     }
     
+    /**
+     * Import many books at once, in parallel, from a zip archive or a server directory
+     * laid out as author/title.html (e.g. Aozora Bunko files grouped by author)
+     * 
+     * @param file Zip archive to import (takes precedence over directory)
+     * @param directory Directory on the server to import, relative to ingestion.import.root
+     * @param author Author for files that are not inside an author directory
+     * @return Totals and a per-file report
+     */
+    @PostMapping("/bulk-import")
+    public ResponseEntity<Map<String, Object>> bulkImport(
+            @RequestParam(value = "file", required = false) MultipartFile file,
+            @RequestParam(value = "directory", required = false) String directory,
+            @RequestParam(value = "author", required = false) String author) {
+        
+        Map<String, Object> response = new HashMap<>();
+        
+        try {
+            BulkImportService.ImportReport report;
+            if (file != null && !file.isEmpty()) {
+                try (var archive = file.getInputStream()) {
+                    report = bulkImportService.importZip(archive, author);
+                }
+            } else if (directory != null && !directory.isBlank()) {
+                report = bulkImportService.importDirectory(directory, author);
+            } else {
+                throw new IllegalArgumentException("Provide a zip file or a directory to import");
+            }
+            
+            response.put("success", report.getFailed() == 0);
+            response.put("report", report);
+            
+        } catch (Exception e) {
+            logger.error("Bulk import failed: {}", e.getMessage(), e);
+            response.put("success", false);
+            response.put("error", e.getMessage());
+        }
+        
+        return ResponseEntity.ok(response);
+    }
+    
     /**
      * Test chunking algorithm without saving
      * 
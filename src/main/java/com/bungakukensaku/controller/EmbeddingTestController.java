@@ -1,5 +1,6 @@
 package com.bungakukensaku.controller;
 
+import com.bungakukensaku.service.CachingEmbeddingService;
 import com.bungakukensaku.service.EmbeddingService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
@@ -19,6 +20,9 @@ public class EmbeddingTestController {
     @Autowired
     private EmbeddingService embeddingService;
     
+    @Autowired
+    private CachingEmbeddingService cachingEmbeddingService;
+    
     @PostMapping("/embedding")
     public Map<String, Object> testEmbedding(@RequestBody Map<String, String> request) {
         String text = request.get("text");
@@ -46,4 +50,12 @@ public class EmbeddingTestController {
             return errorResponse;
         }
     }
-}
\ No newline at end of file
+    
+    /**
+     * Hit/miss/eviction counters for the query embedding cache
+     */
+    @GetMapping("/embedding-cache")
+    public Map<String, Object> embeddingCacheStats() {
+        return cachingEmbeddingService.getCacheStats();
+    }
+}
@@ -1,17 +1,13 @@
 package com.bungakukensaku.controller;
 
 import com.bungakukensaku.dto.SeriesInfo;
-import com.bungakukensaku.model.Book;
-import com.bungakukensaku.repository.BookRepository;
+import com.bungakukensaku.service.BookCatalogService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
 
-import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
-import java.util.stream.Collectors;
 
 /**
  * HomeController handles the main homepage and navigation
@@ -25,7 +21,7 @@ import java.util.stream.Collectors;
 public class HomeController {
     
     @Autowired
-    private BookRepository bookRepository;
+    private BookCatalogService bookCatalogService;
     
     /**
      * Serves the homepage with search interface and dynamic series data
@@ -35,7 +31,7 @@ public class HomeController {
      */
     @GetMapping("/")
     public String home(Model model) {
-        List<SeriesInfo> seriesInfoList = getSeriesInfoList();
+        List<SeriesInfo> seriesInfoList = bookCatalogService.getSeriesInfoList();
         model.addAttribute("seriesInfoList", seriesInfoList);
         return "home";
     }
@@ -48,44 +44,11 @@ public class HomeController {
      */
     @GetMapping("/home")
     public String homePage(Model model) {
-        List<SeriesInfo> seriesInfoList = getSeriesInfoList();
+        List<SeriesInfo> seriesInfoList = bookCatalogService.getSeriesInfoList();
         model.addAttribute("seriesInfoList", seriesInfoList);
         return "home";
     }
     
-    /**
-     * Helper method to organize books by series for the homepage
-     * 
-     * @return List of SeriesInfo objects containing series and book data
-     */
-    private List<SeriesInfo> getSeriesInfoList() {
-        List<Book> allBooks = bookRepository.findAllByOrderByCreatedAtAsc();
-        List<SeriesInfo> seriesInfoList = new ArrayList<>();
-        
-        // Group books by series (including null series)
-        Map<String, List<Book>> booksBySeries = allBooks.stream()
-                .collect(Collectors.groupingBy(book -> 
-                    book.getSeries() != null ? book.getSeries() : "INDIVIDUAL_BOOKS"));
-        
-        // Convert to SeriesInfo objects
-        for (Map.Entry<String, List<Book>> entry : booksBySeries.entrySet()) {
-            String seriesName = entry.getKey();
-            List<Book> books = entry.getValue();
-            
-            if ("INDIVIDUAL_BOOKS".equals(seriesName)) {
-                // Create individual SeriesInfo for each standalone book
-                for (Book book : books) {
-                    seriesInfoList.add(new SeriesInfo(book.getTitle(), List.of(book)));
-                }
-            } else {
-                // Create SeriesInfo for actual series
-                seriesInfoList.add(new SeriesInfo(seriesName, books));
-            }
-        }
-        
-        return seriesInfoList;
-    }
-    
     /**
      * PDF processing test page
      * For development and testing purposes
@@ -1,18 +1,20 @@
 package com.bungakukensaku.controller;
 
 import com.bungakukensaku.model.Book;
-import com.bungakukensaku.model.Chunk;
+import com.bungakukensaku.model.IngestionJob;
 import com.bungakukensaku.repository.BookRepository;
 import com.bungakukensaku.repository.ChunkRepository;
 import com.bungakukensaku.service.DocumentProcessingService;
-import com.bungakukensaku.service.EmbeddingService;
+import com.bungakukensaku.service.SourceDocument;
+import com.bungakukensaku.service.InMemoryVectorStore;
+import com.bungakukensaku.service.IngestionJobService;
+import com.bungakukensaku.service.LexicalIndexService;
 import com.bungakukensaku.service.PineconeService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.io.File;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
@@ -20,6 +22,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 /**
  * One-time migration controller to re-process books with fixed EPUB extraction
@@ -40,19 +43,26 @@ public class MigrationController {
     private DocumentProcessingService documentProcessingService;
     
     @Autowired
-    private EmbeddingService embeddingService;
+    private IngestionJobService ingestionJobService;
     
     @Autowired
     private PineconeService pineconeService;
     
+    @Autowired
+    private LexicalIndexService lexicalIndexService;
+    
+    // Only present when vector.store.type=memory
+    @Autowired(required = false)
+    private InMemoryVectorStore inMemoryVectorStore;
+    
     @org.springframework.beans.factory.annotation.Value("${pinecone.index-name}")
     private String pineconeIndexName;
     
     /**
-     * Re-process a single book by uploading its EPUB file again
+     * Re-process a single book by uploading its EPUB file again.
+     * Runs as a background job; poll /api/migration/jobs/{jobId} for progress.
      */
     @PostMapping("/reprocess-book/{bookId}")
-    @Transactional
     public Map<String, Object> reprocessBook(
             @PathVariable Long bookId,
             @RequestParam("file") MultipartFile file) {
@@ -60,50 +70,14 @@ public class MigrationController {
         Map<String, Object> result = new HashMap<>();
         
         try {
-            // Find the book
-            Book book = bookRepository.findById(bookId)
-                .orElseThrow(() -> new RuntimeException("Book not found: " + bookId));
-            
-            result.put("bookTitle", book.getTitle());
-            result.put("oldChunkCount", chunkRepository.countByBookId(bookId));
-            
-            // Delete old chunks
-            List<Chunk> oldChunks = chunkRepository.findByBookId(bookId);
-            chunkRepository.deleteAll(oldChunks);
-            result.put("deletedChunks", oldChunks.size());
-            
-            // Save uploaded file temporarily
-            String originalFilename = file.getOriginalFilename();
-            String extension = originalFilename.substring(originalFilename.lastIndexOf("."));
-            Path tempFile = Files.createTempFile("reprocess-", extension);
-            Files.copy(file.getInputStream(), tempFile, StandardCopyOption.REPLACE_EXISTING);
-            
-            // Process with fixed extraction
-            List<Chunk> newChunks = documentProcessingService.processDocument(
-                tempFile.toString(), book
-            );
-            
-            // Save new chunks
-            newChunks = chunkRepository.saveAll(newChunks);
-            result.put("newChunkCount", newChunks.size());
-            
-            // Calculate total characters
-            long totalChars = newChunks.stream()
-                .mapToLong(chunk -> chunk.getContent().length())
-                .sum();
-            result.put("totalCharacters", totalChars);
-            result.put("estimatedPages", totalChars / 1000);
-            
-            // Clean up
-            Files.deleteIfExists(tempFile);
-            
+            IngestionJob job = ingestionJobService.submitReprocess(bookId, file);
             result.put("success", true);
-            result.put("message", "Successfully reprocessed book with full content extraction");
-            
+            result.put("jobId", job.getId());
+            result.put("job", job);
         } catch (Exception e) {
             result.put("success", false);
             result.put("error", e.getMessage());
-            e.printStackTrace();
+            logger.error("Error starting reprocess job for book {}", bookId, e);
         }
         
         return result;
@@ -147,291 +121,107 @@ public class MigrationController {
     }
     
     /**
-     * Generate embeddings for all chunks that don't have them yet
+     * Generate embeddings for all chunks that don't have them yet (background job)
      */
     @PostMapping("/generate-embeddings")
-    @Transactional
     public Map<String, Object> generateEmbeddings() {
+        return submitJob(IngestionJob.GENERATE_EMBEDDINGS);
+    }
+    
+    /**
+     * Upload new embeddings to Pinecone vector database (incremental, background job)
+     */
+    @PostMapping("/upload-new-to-pinecone")
+    public Map<String, Object> uploadNewToPinecone() {
+        return submitJob(IngestionJob.UPLOAD_NEW);
+    }
+    
+    /**
+     * Upload ALL embeddings to Pinecone vector database (full refresh, background job)
+     */
+    @PostMapping("/upload-all-to-pinecone")
+    public Map<String, Object> uploadAllToPinecone() {
+        return submitJob(IngestionJob.UPLOAD_ALL);
+    }
+    
+    /**
+     * List the most recent ingestion jobs
+     */
+    @GetMapping("/jobs")
+    public Map<String, Object> listJobs() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("jobs", ingestionJobService.getRecentJobs());
+        return result;
+    }
+    
+    /**
+     * Get a job's status, progress and per-book steps
+     */
+    @GetMapping("/jobs/{jobId}")
+    public Map<String, Object> getJob(@PathVariable Long jobId) {
+        Map<String, Object> result = new HashMap<>();
+        
+        Optional<IngestionJob> job = ingestionJobService.findJob(jobId);
+        if (job.isEmpty()) {
+            result.put("success", false);
+            result.put("error", "Job not found: " + jobId);
+            return result;
+        }
+        
+        result.put("success", true);
+        result.put("job", job.get());
+        result.put("steps", ingestionJobService.getSteps(jobId));
+        return result;
+    }
+    
+    /**
+     * Cancel a job; a running job stops after its current batch
+     */
+    @PostMapping("/jobs/{jobId}/cancel")
+    public Map<String, Object> cancelJob(@PathVariable Long jobId) {
         Map<String, Object> result = new HashMap<>();
         
         try {
-            // Get all chunks that need embeddings
-            List<Chunk> chunks = chunkRepository.findAll();
-            List<Chunk> chunksNeedingEmbeddings = new ArrayList<>();
-            
-            for (Chunk chunk : chunks) {
-                if (chunk.getEmbedding() == null || chunk.getEmbedding().length == 0) {
-                    chunksNeedingEmbeddings.add(chunk);
-                }
-            }
-            
-            result.put("totalChunks", chunks.size());
-            result.put("chunksNeedingEmbeddings", chunksNeedingEmbeddings.size());
-            
-            if (chunksNeedingEmbeddings.isEmpty()) {
-                result.put("message", "All chunks already have embeddings");
-                result.put("success", true);
-                return result;
-            }
-            
-            // Process in batches of 50 to avoid API limits
-            int batchSize = 50;
-            int processed = 0;
-            
-            for (int i = 0; i < chunksNeedingEmbeddings.size(); i += batchSize) {
-                int end = Math.min(i + batchSize, chunksNeedingEmbeddings.size());
-                List<Chunk> batch = chunksNeedingEmbeddings.subList(i, end);
-                
-                // Extract texts
-                List<String> texts = new ArrayList<>();
-                for (Chunk chunk : batch) {
-                    texts.add(chunk.getContent());
-                }
-                
-                // Generate embeddings
-                List<float[]> embeddings = embeddingService.generateEmbeddings(texts);
-                
-                // Update chunks with embeddings
-                for (int j = 0; j < batch.size(); j++) {
-                    batch.get(j).setEmbedding(embeddings.get(j));
-                }
-                
-                // Save batch
-                chunkRepository.saveAll(batch);
-                processed += batch.size();
-                
-                result.put("processedSoFar", processed);
-            }
-            
+            result.put("job", ingestionJobService.cancel(jobId));
             result.put("success", true);
-            result.put("message", "Successfully generated embeddings for " + processed + " chunks");
-            result.put("totalProcessed", processed);
-            
-            // Estimate cost (OpenAI text-embedding-3-small is $0.02 per 1M tokens)
-            // Rough estimate: 500 tokens per chunk
-            double estimatedCost = (processed * 500 / 1_000_000.0) * 0.02;
-            result.put("estimatedCost", "$" + String.format("%.4f", estimatedCost));
-            
         } catch (Exception e) {
             result.put("success", false);
             result.put("error", e.getMessage());
-            e.printStackTrace();
         }
         
         return result;
     }
     
     /**
-     * Upload new embeddings to Pinecone vector database (incremental)
+     * Resume a failed or cancelled job from its last checkpoint
      */
-    @PostMapping("/upload-new-to-pinecone")
-    @Transactional
-    public Map<String, Object> uploadNewToPinecone() {
+    @PostMapping("/jobs/{jobId}/resume")
+    public Map<String, Object> resumeJob(@PathVariable Long jobId) {
         Map<String, Object> result = new HashMap<>();
         
         try {
-            // Get chunks with embeddings that haven't been uploaded yet
-            List<Chunk> chunks = chunkRepository.findAll();
-            List<Chunk> chunksToUpload = new ArrayList<>();
-            
-            for (Chunk chunk : chunks) {
-                if (chunk.getEmbedding() != null && chunk.getEmbedding().length > 0 && !chunk.isUploadedToPinecone()) {
-                    chunksToUpload.add(chunk);
-                }
-            }
-            
-            result.put("totalChunks", chunks.size());
-            result.put("chunksToUpload", chunksToUpload.size());
-            
-            if (chunksToUpload.isEmpty()) {
-                result.put("message", "No new chunks to upload. All chunks with embeddings are already in Pinecone.");
-                result.put("success", true);
-                return result;
-            }
-            
-            // Skip getting index stats before upload to avoid serialization issues
-            // The stats contain protobuf objects that can't be serialized to JSON
-            result.put("indexStatsBefore", null);
-            
-            // Process in batches of 100 for Pinecone
-            int batchSize = 100;
-            int uploaded = 0;
-            
-            List<PineconeService.VectorData> vectors = new ArrayList<>();
-            
-            for (Chunk chunk : chunksToUpload) {
-                // Convert float[] to List<Float>
-                List<Float> values = new ArrayList<>();
-                for (float val : chunk.getEmbedding()) {
-                    values.add(val);
-                }
-                
-                // Create metadata (handle null values)
-                Map<String, Object> metadata = new HashMap<>();
-                metadata.put("chunkId", chunk.getId());
-                metadata.put("bookId", chunk.getBook().getId());
-                metadata.put("bookTitle", chunk.getBook().getTitle());
-                if (chunk.getChapter() != null) {
-                    metadata.put("chapter", chunk.getChapter());
-                }
-                if (chunk.getPageNum() != null) {
-                    metadata.put("pageNum", chunk.getPageNum());
-                }
-                metadata.put("content", chunk.getContent());
-                
-                // Create vector data
-                PineconeService.VectorData vector = new PineconeService.VectorData(
-                    "chunk-" + chunk.getId(),
-                    values,
-                    metadata
-                );
-                vectors.add(vector);
-                
-                // Upload batch when we reach the batch size
-                if (vectors.size() >= batchSize) {
-                    pineconeService.upsertVectors(vectors);
-                    
-                    // Mark chunks as uploaded
-                    for (int i = uploaded; i < uploaded + vectors.size(); i++) {
-                        chunksToUpload.get(i).setUploadedToPinecone(true);
-                    }
-                    chunkRepository.saveAll(chunksToUpload.subList(uploaded, uploaded + vectors.size()));
-                    
-                    uploaded += vectors.size();
-                    vectors.clear();
-                    result.put("uploadedSoFar", uploaded);
-                }
-            }
-            
-            // Upload remaining vectors
-            if (!vectors.isEmpty()) {
-                pineconeService.upsertVectors(vectors);
-                
-                // Mark remaining chunks as uploaded
-                for (int i = uploaded; i < chunksToUpload.size(); i++) {
-                    chunksToUpload.get(i).setUploadedToPinecone(true);
-                }
-                chunkRepository.saveAll(chunksToUpload.subList(uploaded, chunksToUpload.size()));
-                
-                uploaded += vectors.size();
-            }
-            
-            // Skip getting index stats after upload to avoid serialization issues
-            // The stats contain protobuf objects that can't be serialized to JSON
-            result.put("indexStatsAfter", null);
-            
+            result.put("job", ingestionJobService.resume(jobId));
             result.put("success", true);
-            result.put("message", "Successfully uploaded " + uploaded + " new vectors to Pinecone");
-            result.put("totalUploaded", uploaded);
-            
         } catch (Exception e) {
             result.put("success", false);
             result.put("error", e.getMessage());
-            e.printStackTrace();
         }
         
         return result;
     }
     
-    /**
-     * Upload ALL embeddings to Pinecone vector database (full refresh)
-     */
-    @PostMapping("/upload-all-to-pinecone")
-    @Transactional
-    public Map<String, Object> uploadAllToPinecone() {
+    private Map<String, Object> submitJob(String type) {
         Map<String, Object> result = new HashMap<>();
         
         try {
-            // Get all chunks with embeddings
-            List<Chunk> chunks = chunkRepository.findAll();
-            List<Chunk> chunksWithEmbeddings = new ArrayList<>();
-            
-            for (Chunk chunk : chunks) {
-                if (chunk.getEmbedding() != null && chunk.getEmbedding().length > 0) {
-                    chunksWithEmbeddings.add(chunk);
-                }
-            }
-            
-            result.put("totalChunks", chunks.size());
-            result.put("chunksWithEmbeddings", chunksWithEmbeddings.size());
-            
-            if (chunksWithEmbeddings.isEmpty()) {
-                result.put("message", "No chunks with embeddings found. Generate embeddings first.");
-                result.put("success", false);
-                return result;
-            }
-            
-            // Skip getting index stats before upload to avoid serialization issues
-            // The stats contain protobuf objects that can't be serialized to JSON
-            result.put("indexStatsBefore", null);
-            
-            // Process in batches of 100 for Pinecone
-            int batchSize = 100;
-            int uploaded = 0;
-            
-            List<PineconeService.VectorData> vectors = new ArrayList<>();
-            
-            for (Chunk chunk : chunksWithEmbeddings) {
-                // Convert float[] to List<Float>
-                List<Float> values = new ArrayList<>();
-                for (float val : chunk.getEmbedding()) {
-                    values.add(val);
-                }
-                
-                // Create metadata (handle null values)
-                Map<String, Object> metadata = new HashMap<>();
-                metadata.put("chunkId", chunk.getId());
-                metadata.put("bookId", chunk.getBook().getId());
-                metadata.put("bookTitle", chunk.getBook().getTitle());
-                if (chunk.getChapter() != null) {
-                    metadata.put("chapter", chunk.getChapter());
-                }
-                if (chunk.getPageNum() != null) {
-                    metadata.put("pageNum", chunk.getPageNum());
-                }
-                metadata.put("content", chunk.getContent());
-                
-                // Create vector data
-                PineconeService.VectorData vector = new PineconeService.VectorData(
-                    "chunk-" + chunk.getId(),
-                    values,
-                    metadata
-                );
-                vectors.add(vector);
-                
-                // Upload batch when we reach the batch size
-                if (vectors.size() >= batchSize) {
-                    pineconeService.upsertVectors(vectors);
-                    uploaded += vectors.size();
-                    vectors.clear();
-                    result.put("uploadedSoFar", uploaded);
-                }
-            }
-            
-            // Upload remaining vectors
-            if (!vectors.isEmpty()) {
-                pineconeService.upsertVectors(vectors);
-                uploaded += vectors.size();
-            }
-            
-            // Mark ALL chunks as uploaded (since this is a full refresh)
-            for (Chunk chunk : chunksWithEmbeddings) {
-                chunk.setUploadedToPinecone(true);
-            }
-            chunkRepository.saveAll(chunksWithEmbeddings);
-            
-            // Skip getting index stats after upload to avoid serialization issues
-            // The stats contain protobuf objects that can't be serialized to JSON
-            result.put("indexStatsAfter", null);
-            
+            IngestionJob job = ingestionJobService.submit(type);
             result.put("success", true);
-            result.put("message", "Successfully uploaded " + uploaded + " vectors to Pinecone (full refresh)");
-            result.put("totalUploaded", uploaded);
-            
+            result.put("jobId", job.getId());
+            result.put("job", job);
         } catch (Exception e) {
             result.put("success", false);
             result.put("error", e.getMessage());
-            e.printStackTrace();
+            logger.error("Error starting {} job", type, e);
         }
         
         return result;
@@ -457,13 +247,9 @@ public class MigrationController {
             logger.info("Deleting all vectors from Pinecone index");
             pineconeService.deleteAllVectors();
             
-            // Mark all chunks as not uploaded to Pinecone
-            List<Chunk> allChunks = chunkRepository.findAll();
-            for (Chunk chunk : allChunks) {
-                chunk.setUploadedToPinecone(false);
-            }
-            chunkRepository.saveAll(allChunks);
-            logger.info("Reset uploadedToPinecone flag for {} chunks", allChunks.size());
+            // Mark all chunks as not uploaded to Pinecone (one bulk update, no entities loaded)
+            int chunksReset = chunkRepository.resetUploadedToPinecone();
+            logger.info("Reset uploadedToPinecone flag for {} chunks", chunksReset);
             
             // Get stats after deletion (with a small delay for Pinecone to update)
             Thread.sleep(1000); // Wait 1 second for Pinecone to process deletions
@@ -475,9 +261,9 @@ public class MigrationController {
                 "Deletion complete. Vectors before: %s, Vectors after: %s, Reset %d chunks in database",
                 statsBefore.get("totalVectorCount"),
                 statsAfter.get("totalVectorCount"),
-                allChunks.size()
+                chunksReset
             ));
-            result.put("chunksReset", allChunks.size());
+            result.put("chunksReset", chunksReset);
             
         } catch (Exception e) {
             result.put("success", false);
@@ -517,6 +303,65 @@ public class MigrationController {
         return response;
     }
     
+    /**
+     * Reload the in-memory vector index from the embeddings stored in Postgres.
+     * Call after generating embeddings when vector.store.type=memory.
+     */
+    @PostMapping("/reload-vector-index")
+    public Map<String, Object> reloadVectorIndex() {
+        Map<String, Object> result = new HashMap<>();
+        
+        if (inMemoryVectorStore == null) {
+            result.put("success", false);
+            result.put("error", "In-memory vector store is not enabled (set vector.store.type=memory)");
+            return result;
+        }
+        
+        try {
+            long start = System.currentTimeMillis();
+            int loaded = inMemoryVectorStore.refresh();
+            result.put("success", true);
+            result.put("vectorsLoaded", loaded);
+            result.put("elapsedMs", System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            result.put("success", false);
+            result.put("error", e.getMessage());
+            logger.error("Error reloading in-memory vector index", e);
+        }
+        
+        return result;
+    }
+    
+    /**
+     * Rebuild the lexical (bigram) index from the chunks stored in Postgres.
+     * Also drops tombstones left by reprocessed books.
+     */
+    @PostMapping("/reload-lexical-index")
+    public Map<String, Object> reloadLexicalIndex() {
+        Map<String, Object> result = new HashMap<>();
+        
+        if (!lexicalIndexService.isEnabled()) {
+            result.put("success", false);
+            result.put("error", "Lexical index is not enabled (set search.lexical.enabled=true)");
+            return result;
+        }
+        
+        try {
+            long start = System.currentTimeMillis();
+            int indexed = lexicalIndexService.rebuild();
+            result.put("success", true);
+            result.put("chunksIndexed", indexed);
+            result.put("elapsedMs", System.currentTimeMillis() - start);
+            result.put("stats", lexicalIndexService.getStats());
+        } catch (Exception e) {
+            result.put("success", false);
+            result.put("error", e.getMessage());
+            logger.error("Error rebuilding lexical index", e);
+        }
+        
+        return result;
+    }
+    
     /**
      * Test HTML extraction directly without chunking
      * This helps debug where content is being lost in the extraction process
@@ -540,11 +385,10 @@ public class MigrationController {
             
             logger.info("Testing HTML extraction for file: {}", originalFilename);
             
-            // Use reflection to access the private method for testing
-            java.lang.reflect.Method readHTMLMethod = DocumentProcessingService.class.getDeclaredMethod("readHTMLWithEncoding", String.class);
-            readHTMLMethod.setAccessible(true);
-            String htmlContent = (String) readHTMLMethod.invoke(documentProcessingService, tempFile.toString());
+            SourceDocument source = SourceDocument.open(tempFile);
+            String htmlContent = source.getText();
             
+            // Use reflection to access the private method for testing
             java.lang.reflect.Method extractHTMLMethod = DocumentProcessingService.class.getDeclaredMethod("extractTextFromHTMLSimple", String.class);
             extractHTMLMethod.setAccessible(true);
             String extractedText = (String) extractHTMLMethod.invoke(documentProcessingService, htmlContent);
@@ -552,6 +396,7 @@ public class MigrationController {
             // Return detailed extraction results
             result.put("success", true);
             result.put("originalFilename", originalFilename);
+            result.put("detectedCharset", source.getCharset().name());
             result.put("rawHTMLLength", htmlContent.length());
             result.put("extractedTextLength", extractedText.length());
             result.put("rawHTMLSample", htmlContent.length() > 1000 ? htmlContent.substring(0, 1000) : htmlContent);
@@ -1,26 +1,33 @@
 package com.bungakukensaku.controller;
 
 import com.bungakukensaku.service.SearchService;
-import com.bungakukensaku.service.PineconeService;
+import com.bungakukensaku.service.VectorStore;
+import com.bungakukensaku.service.HybridSearchService;
 import com.bungakukensaku.service.EmbeddingService;
 import com.bungakukensaku.service.AISummaryService;
+import com.bungakukensaku.service.BookCatalogService;
 import com.bungakukensaku.service.RateLimitingService;
-import com.bungakukensaku.service.EPUBRubyPreservingExtractor;
-import com.bungakukensaku.model.Book;
-import com.bungakukensaku.model.Chunk;
-import com.bungakukensaku.repository.BookRepository;
-import com.bungakukensaku.repository.ChunkRepository;
+import com.bungakukensaku.service.SearchEnrichmentService;
+import com.bungakukensaku.service.SearchHydrationService;
+import com.bungakukensaku.service.SearchMetrics;
 import com.bungakukensaku.dto.SearchResultItem;
 import com.bungakukensaku.dto.SeriesInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpSession;
 
+import java.io.IOException;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * SearchController handles all search-related requests
@@ -33,27 +40,38 @@ import java.util.stream.Collectors;
 @Controller
 public class SearchController {
     
+    private static final Logger logger = LoggerFactory.getLogger(SearchController.class);
+    
+    /** Extra time the stream stays open beyond the enrichment deadline */
+    private static final long STREAM_TIMEOUT_MARGIN_MS = 5000;
+    
     @Autowired
     private SearchService searchService;
     
     @Autowired
-    private PineconeService pineconeService;
+    private HybridSearchService hybridSearchService;
     
     @Autowired
     private EmbeddingService embeddingService;
     
-    @Autowired
-    private ChunkRepository chunkRepository;
-    
     @Autowired
     private AISummaryService aiSummaryService;
     
     @Autowired
-    private BookRepository bookRepository;
+    private BookCatalogService bookCatalogService;
     
     @Autowired
     private RateLimitingService rateLimitingService;
     
+    @Autowired
+    private SearchEnrichmentService searchEnrichmentService;
+    
+    @Autowired
+    private SearchHydrationService searchHydrationService;
+    
+    @Autowired
+    private SearchMetrics searchMetrics;
+    
     /**
      * Handles search form submissions from the homepage
      * 
@@ -68,6 +86,7 @@ public class SearchController {
                         @RequestParam(value = "searchScope", defaultValue = "all") String searchScope,
                         HttpServletRequest request,
                         Model model) {
+        long requestStart = System.nanoTime();
         try {
             // Add the query to the model so we can display it back to user
             model.addAttribute("query", query);
@@ -93,7 +112,7 @@ public class SearchController {
                 // Clear searched books info when showing help text
                 model.addAttribute("searchedBooks", null);
                 // Include series info for chips
-                List<SeriesInfo> seriesInfoList = getSeriesInfoList();
+                List<SeriesInfo> seriesInfoList = bookCatalogService.getSeriesInfoList();
                 model.addAttribute("seriesInfoList", seriesInfoList);
                 return "home";
             }
@@ -111,7 +130,7 @@ public class SearchController {
                 model.addAttribute("resultCount", null);
                 model.addAttribute("searchedBooks", null);
                 // Include series info for chips
-                List<SeriesInfo> seriesInfoList = getSeriesInfoList();
+                List<SeriesInfo> seriesInfoList = bookCatalogService.getSeriesInfoList();
                 model.addAttribute("seriesInfoList", seriesInfoList);
                 return "home";
             }
@@ -119,121 +138,51 @@ public class SearchController {
             // Increment search count early to prevent concurrent requests
             rateLimitingService.incrementSearchCount(session);
             
-            // Generate embedding for the search query
-            List<String> queryTexts = Collections.singletonList(query.trim());
-            List<float[]> queryEmbeddings = embeddingService.generateEmbeddings(queryTexts);
+            // Build search filter based on user selections and get selected book info
+            SearchFilter selection = buildSearchFilterWithBookInfo(searchScope, request);
+            Map<String, Object> searchFilter = selection.getFilter();
+            List<String> searchedBookNames = selection.getBookNames();
+            
+            // Pass the searched book names to the view
+            if (searchedBookNames != null && !searchedBookNames.isEmpty()) {
+                model.addAttribute("searchedBooks", searchedBookNames);
+            }
             
-            if (queryEmbeddings.isEmpty()) {
+            // Embed the query, run hybrid retrieval and hydrate the matches
+            List<SearchHydrationService.Hit> hits = findHits(query, searchFilter);
+            if (hits == null) {
                 model.addAttribute("message", "検索処理中にエラーが発生しました。");
                 // Clear any previous search results
                 model.addAttribute("searchedBooks", null);
                 // Include series info for chips
-                List<SeriesInfo> seriesInfoList = getSeriesInfoList();
+                List<SeriesInfo> seriesInfoList = bookCatalogService.getSeriesInfoList();
                 model.addAttribute("seriesInfoList", seriesInfoList);
                 return "home";
             }
-            
-            // Convert to List<Float> for Pinecone
-            List<Float> queryVector = new ArrayList<>();
-            for (float val : queryEmbeddings.get(0)) {
-                queryVector.add(val);
-            }
-            
-            // Build search filter based on user selections and get selected book info
-            Map<String, Object> filterResult = buildSearchFilterWithBookInfo(searchScope, request);
-            Map<String, Object> searchFilter = (Map<String, Object>) filterResult.get("filter");
-            List<String> searchedBookNames = (List<String>) filterResult.get("bookNames");
-            
-            // Pass the searched book names to the view
-            if (searchedBookNames != null && !searchedBookNames.isEmpty()) {
-                model.addAttribute("searchedBooks", searchedBookNames);
-            }
-            
-            // Search Pinecone for similar vectors with filtering
-            List<PineconeService.SearchResult> searchResults = pineconeService.query(queryVector, 10, searchFilter);
-            
-            // Convert results to search result objects
             List<SearchResultItem> results = new ArrayList<>();
-            int resultIndex = 0;
-            for (PineconeService.SearchResult result : searchResults) {
-                Map<String, Object> metadata = result.getMetadata();
-                
-                SearchResultItem item = new SearchResultItem();
-                item.setScore(result.getScore());
-                
-                // Get raw content from metadata
-                String rawContent = (String) metadata.get("content");
-                
-                // Extract the most relevant excerpt for top 5 results only (to manage API costs)
-                String contentToDisplay;
-                if (resultIndex < 5) {
-                    // Use AI to extract relevant excerpt for top results
-                    String relevantExcerpt = aiSummaryService.extractRelevantExcerpt(rawContent, query);
-                    contentToDisplay = relevantExcerpt;
-                } else {
-                    // Use full content for results beyond top 5
-                    contentToDisplay = rawContent;
-                }
-                
-                // Clean up the content to start with first full sentence
-                String cleanedContent = cleanChunkForDisplay(contentToDisplay);
-                
-                // Convert ruby markup to HTML for display
-                String contentWithRuby = EPUBRubyPreservingExtractor.convertToHtmlRuby(cleanedContent);
-                item.setContent(contentWithRuby);
-                
-                resultIndex++;
-                
-                item.setBookTitle((String) metadata.get("bookTitle"));
-                String chapter = (String) metadata.get("chapter");
-                // Convert ruby format for chapter titles if needed
-                if (chapter != null) {
-                    chapter = EPUBRubyPreservingExtractor.convertToHtmlRuby(chapter);
-                }
-                item.setChapter(chapter);
-                
-                // Get chunk ID and fetch full chunk if needed
-                Object chunkIdObj = metadata.get("chunkId");
-                if (chunkIdObj instanceof Number) {
-                    Long chunkId = ((Number) chunkIdObj).longValue();
-                    Optional<Chunk> chunk = chunkRepository.findById(chunkId);
-                    if (chunk.isPresent()) {
-                        item.setChunkId(chunkId);
-                        item.setBookId(chunk.get().getBook().getId());
-                        item.setAuthor(chunk.get().getBook().getAuthor());
-                        
-                        // Set static text path for full text viewing
-                        item.setStaticTextPath(chunk.get().getBook().getStaticTextPath());
-                        
-                        // Generate detailed source reference
-                        try {
-                            String sourceRef = generateSourceReference(chunk.get());
-                            item.setSourceReference(sourceRef);
-                            System.out.println("Generated source reference for chunk " + chunkId + ": " + sourceRef);
-                            System.out.println("DEBUG: Final sourceReference in item: " + item.getSourceReference());
-                        } catch (Exception e) {
-                            System.err.println("Error generating source reference for chunk " + chunkId + ": " + e.getMessage());
-                            e.printStackTrace();
-                        }
-                    }
-                }
-                
-                results.add(item);
+            List<String> rawContents = new ArrayList<>();
+            for (SearchHydrationService.Hit hit : hits) {
+                results.add(hit.getItem());
+                rawContents.add(hit.getRawContent());
             }
             
-            // Generate AI summaries for the top results (limit to 5 for cost efficiency)
-            int summaryLimit = Math.min(results.size(), 5);
-            for (int i = 0; i < summaryLimit; i++) {
+            // Extract excerpts and generate AI summaries for the top results concurrently
+            // (limit to 5 for cost efficiency); unfinished calls are shown as pending
+            int enrichLimit = Math.min(results.size(), 5);
+            List<SearchEnrichmentService.Enrichment> enrichments = searchEnrichmentService.enrich(
+                results.subList(0, enrichLimit), rawContents.subList(0, enrichLimit), query);
+            for (int i = 0; i < enrichLimit; i++) {
                 SearchResultItem item = results.get(i);
-                try {
-                    AISummaryService.SearchResultSummary summary = 
-                        aiSummaryService.generateSummary(item, query);
-                    item.setContextSummary(summary.getContextSummary());
-                    item.setRelevanceExplanation(summary.getRelevanceExplanation());
-                } catch (Exception e) {
-                    // Log error but continue with other results
-                    System.err.println("Error generating summary for result " + i + ": " + e.getMessage());
+                SearchEnrichmentService.Enrichment enrichment = enrichments.get(i);
+                
+                if (enrichment.getExcerpt() != null) {
+                    item.setContent(searchHydrationService.toDisplayContent(enrichment.getExcerpt()));
                 }
+                if (enrichment.getSummary() != null) {
+                    item.setContextSummary(enrichment.getSummary().getContextSummary());
+                    item.setRelevanceExplanation(enrichment.getSummary().getRelevanceExplanation());
+                }
+                item.setAiPending(enrichment.isPending());
             }
             
             model.addAttribute("results", results);
@@ -241,11 +190,15 @@ public class SearchController {
             
         } catch (Exception e) {
             model.addAttribute("message", "検索処理中にエラーが発生しました: " + e.getMessage());
+            searchMetrics.error("search");
             e.printStackTrace();
+        } finally {
+            // Template rendering is timed separately by SearchRenderTimingInterceptor
+            searchMetrics.recordRequest("search", System.nanoTime() - requestStart);
         }
         
         // Always include the series info list for the book selection chips
-        List<SeriesInfo> seriesInfoList = getSeriesInfoList();
+        List<SeriesInfo> seriesInfoList = bookCatalogService.getSeriesInfoList();
         model.addAttribute("seriesInfoList", seriesInfoList);
         
         return "home";
@@ -271,174 +224,206 @@ public class SearchController {
     }
     
     /**
-     * Clean chunk content for display by starting with the first complete sentence.
-     * This improves readability by avoiding mid-sentence starts.
+     * Streams search results as server-sent events so the page can render the
+     * ranked list immediately and fill in AI output as it arrives.
+     * 
+     * Events, in order:
+     * - "results": {results, searchedBooks} once retrieval and hydration finish
+     * - "excerpt": {index, content} as each excerpt call completes
+     * - "summary": {index, contextSummary, relevanceExplanation} as each summary completes
+     * - "done": {pending} with the indexes whose AI output did not arrive in time
+     * - "search-error": {message, rateLimited} instead of results when the search cannot run
      * 
-     * @param content Raw chunk content
-     * @return Cleaned content starting with first complete sentence
+     * @param query the search query from the user
+     * @param searchScope the scope of search ("all" or "specific")
+     * @param request HttpServletRequest to access the book selection parameters
+     * @return the event stream
      */
-    private String cleanChunkForDisplay(String content) {
-        if (content == null || content.trim().isEmpty()) {
-            return content;
-        }
+    @GetMapping(value = "/api/search/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @ResponseBody
+    public SseEmitter searchStream(@RequestParam("query") String query,
+                                   @RequestParam(value = "searchScope", defaultValue = "all") String searchScope,
+                                   HttpServletRequest request) {
+        long requestStart = System.nanoTime();
+        long deadlineMs = searchEnrichmentService.getDeadlineMs();
+        SseEmitter emitter = new SseEmitter(deadlineMs + STREAM_TIMEOUT_MARGIN_MS);
         
-        // Find the first occurrence of Japanese sentence endings
-        int firstSentenceEnd = -1;
-        for (char c : new char[]{'。', '！', '？'}) {
-            int pos = content.indexOf(c);
-            if (pos != -1 && (firstSentenceEnd == -1 || pos < firstSentenceEnd)) {
-                firstSentenceEnd = pos;
+        try {
+            if (query == null || query.trim().isEmpty()) {
+                sendError(emitter, "検索クエリを入力してください。", false);
+                return emitter;
             }
-        }
-        
-        // If we find a sentence ending, start from the next sentence
-        if (firstSentenceEnd != -1 && firstSentenceEnd < content.length() - 1) {
-            String remaining = content.substring(firstSentenceEnd + 1).trim();
             
-            // Make sure we have substantial content remaining
-            if (remaining.length() > 50) {
-                return remaining;
+            // Check rate limiting
+            HttpSession session = request.getSession();
+            if (!rateLimitingService.isSearchAllowed(session)) {
+                int remaining = rateLimitingService.getRemainingSearches(session);
+                int total = rateLimitingService.getMaxSearchesPerSession();
+                sendError(emitter,
+                    String.format("セッションあたりの検索制限に達しました（%d/%d回）。新しいセッションを開始してください。",
+                                  total - remaining, total), true);
+                return emitter;
             }
-        }
-        
-        // If no good sentence break found, return original content
-        return content;
-    }
-    
-    /**
-     * Generate a detailed source reference showing Book → Chapter → Position.
-     * This helps users locate the passage in their physical copy.
-     * 
-     * @param chunk The chunk containing the search result
-     * @return Formatted source reference
-     */
-    private String generateSourceReference(Chunk chunk) {
-        try {
-            // Get basic information
-            String bookTitle = chunk.getBook().getTitle();
-            String chapter = chunk.getChapter();
-            Integer chapterPercentage = chunk.getChapterPercentage();
             
-            System.out.println("DEBUG: Book title = " + bookTitle + ", Chapter = " + chapter + 
-                             ", Percentage = " + chapterPercentage);
+            // Increment search count early to prevent concurrent requests
+            rateLimitingService.incrementSearchCount(session);
+            
+            SearchFilter selection = buildSearchFilterWithBookInfo(searchScope, request);
+            Map<String, Object> searchFilter = selection.getFilter();
+            List<String> searchedBookNames = selection.getBookNames();
+            
+            List<SearchHydrationService.Hit> hits = findHits(query, searchFilter);
+            if (hits == null) {
+                sendError(emitter, "検索処理中にエラーが発生しました。", false);
+                return emitter;
+            }
+            
+            List<SearchResultItem> results = new ArrayList<>();
+            List<String> rawContents = new ArrayList<>();
+            for (SearchHydrationService.Hit hit : hits) {
+                results.add(hit.getItem());
+                rawContents.add(hit.getRawContent());
+            }
             
-            if (chapter == null || chapter.isEmpty()) {
-                System.out.println("DEBUG: No chapter info, returning book title only");
-                return bookTitle; // Just return book title if no chapter info
+            // Same cost limit as the form search: only the top 5 results get AI output
+            int enrichLimit = Math.min(results.size(), 5);
+            for (int i = 0; i < enrichLimit; i++) {
+                results.get(i).setAiPending(true);
             }
             
-            // Clean up excessive spaces in chapter names (including ideographic spaces)
-            chapter = chapter.replaceAll("[\\s　]+", " ").trim();
+            Map<String, Object> resultsEvent = new HashMap<>();
+            resultsEvent.put("results", results);
+            resultsEvent.put("searchedBooks", searchedBookNames != null ? searchedBookNames : Collections.emptyList());
+            sendEvent(emitter, "results", resultsEvent);
             
-            // Process chapter title - special handling for 人間革命
-            String formattedChapter;
-            if (bookTitle.contains("人間革命")) {
-                // For 人間革命, use parentheses for furigana instead of ruby tags
-                formattedChapter = formatHumanRevolutionChapter(chapter);
-            } else {
-                // For other books, convert to ruby HTML
-                formattedChapter = EPUBRubyPreservingExtractor.convertToHtmlRuby(chapter);
+            if (enrichLimit == 0) {
+                searchMetrics.recordRequest("stream", System.nanoTime() - requestStart);
+                sendEvent(emitter, "done", Collections.singletonMap("pending", Collections.emptyList()));
+                emitter.complete();
+                return emitter;
             }
             
-            // Use percentage if available
-            String locationRef;
-            if (chapterPercentage != null) {
-                // Format percentage as ranges for more natural reading
-                int rangeStart = (chapterPercentage / 10) * 10; // Round down to nearest 10
-                int rangeEnd = rangeStart + 10;
-                if (rangeStart == 0) {
-                    locationRef = "冒頭付近"; // Near the beginning
-                } else if (rangeEnd >= 100) {
-                    locationRef = "終盤付近"; // Near the end
-                } else {
-                    locationRef = String.format("約%d-%d%%付近", rangeStart, rangeEnd);
+            long enrichStart = System.nanoTime();
+            List<SearchEnrichmentService.PendingEnrichment> pending = searchEnrichmentService.submit(
+                results.subList(0, enrichLimit), rawContents.subList(0, enrichLimit), query);
+            
+            // A client that goes away before "done" no longer needs the calls; free their workers.
+            // After "done", calls still running are left to finish into the AI result cache.
+            AtomicBoolean finished = new AtomicBoolean();
+            Runnable cancelIfUnfinished = () -> {
+                if (!finished.get()) {
+                    pending.forEach(SearchEnrichmentService.PendingEnrichment::cancel);
                 }
-            } else {
-                // Fallback if no percentage
-                locationRef = "位置不明";
+            };
+            emitter.onTimeout(cancelIfUnfinished);
+            emitter.onError(error -> cancelIfUnfinished.run());
+            emitter.onCompletion(cancelIfUnfinished);
+            
+            // Forward each call's result the moment it completes; failed, rejected and
+            // empty results send nothing and are settled by the "done" event
+            List<CompletableFuture<?>> delivered = new ArrayList<>();
+            for (int i = 0; i < enrichLimit; i++) {
+                final int index = i;
+                SearchEnrichmentService.PendingEnrichment p = pending.get(i);
+                
+                delivered.add(p.getExcerpt().thenAccept(excerpt -> {
+                    if (excerpt == null) {
+                        return;
+                    }
+                    Map<String, Object> event = new HashMap<>();
+                    event.put("index", index);
+                    event.put("content", searchHydrationService.toDisplayContent(excerpt));
+                    sendEvent(emitter, "excerpt", event);
+                }));
+                delivered.add(p.getSummary().thenAccept(summary -> {
+                    if (summary == null) {
+                        return;
+                    }
+                    Map<String, Object> event = new HashMap<>();
+                    event.put("index", index);
+                    event.put("contextSummary", summary.getContextSummary());
+                    event.put("relevanceExplanation", summary.getRelevanceExplanation());
+                    sendEvent(emitter, "summary", event);
+                }));
             }
             
-            // Format: Book → Chapter → Location
-            return String.format("%s → %s → %s", bookTitle, formattedChapter, locationRef);
+            // Close the stream once everything has been forwarded or the deadline passes
+            CompletableFuture.allOf(delivered.toArray(new CompletableFuture<?>[0]))
+                .completeOnTimeout(null, deadlineMs, TimeUnit.MILLISECONDS)
+                .whenComplete((ignored, error) -> {
+                    // Pending: still running at the deadline, or rejected by a saturated pool
+                    // (already counted as a "saturated" fallback). Failed calls are not pending.
+                    List<Integer> unfinished = new ArrayList<>();
+                    for (int i = 0; i < pending.size(); i++) {
+                        SearchEnrichmentService.PendingEnrichment p = pending.get(i);
+                        if (p.snapshot().isPending()) {
+                            unfinished.add(i);
+                        }
+                        if (p.isRunning()) {
+                            searchMetrics.fallback("enrichment", "deadline");
+                        }
+                    }
+                    searchMetrics.recordStage(SearchMetrics.ENRICHMENT_WAIT, System.nanoTime() - enrichStart);
+                    searchMetrics.recordRequest("stream", System.nanoTime() - requestStart);
+                    finished.set(true);
+                    sendEvent(emitter, "done", Collections.singletonMap("pending", unfinished));
+                    emitter.complete();
+                });
             
         } catch (Exception e) {
-            // Fallback to basic reference if anything goes wrong
-            return chunk.getBook().getTitle() + (chunk.getChapter() != null ? " → " + chunk.getChapter() : "");
+            logger.error("Streaming search failed", e);
+            searchMetrics.error("stream");
+            sendError(emitter, "検索処理中にエラーが発生しました: " + e.getMessage(), false);
         }
+        
+        return emitter;
+    }
+    
+    private void sendError(SseEmitter emitter, String message, boolean rateLimited) {
+        Map<String, Object> event = new HashMap<>();
+        event.put("message", message);
+        event.put("rateLimited", rateLimited);
+        sendEvent(emitter, "search-error", event);
+        emitter.complete();
     }
     
     /**
-     * Format chapter titles for 人間革命 series.
-     * Handles both volumes with different furigana formats:
-     * - Volume 2: {kanji|furigana} → kanji（furigana） (has ruby tags)
-     * - Volume 1: 開かい　拓たく　者しゃ → 開拓者（かいたくしゃ） (no ruby tags)
-     * 
-     * @param chapter Original chapter title
-     * @return Formatted chapter title with parentheses
+     * Send one event. Enrichment callbacks run on pool threads, so sends are
+     * serialized on the emitter. A client that has gone away is not an error.
      */
-    private String formatHumanRevolutionChapter(String chapter) {
-        if (chapter == null || chapter.isEmpty()) {
-            return chapter;
-        }
-        
-        // Check if chapter has ruby format {kanji|furigana}
-        if (chapter.contains("{") && chapter.contains("|") && chapter.contains("}")) {
-            // Volume 2 style: Has ruby tags - convert to parentheses
-            return chapter.replaceAll("\\{([^|]+)\\|([^}]+)\\}", "$1（$2）");
-        } else {
-            // Volume 1 style: No ruby tags - convert old spaced format
-            return convertOldSpacedFuriganaFormat(chapter);
+    private void sendEvent(SseEmitter emitter, String name, Object data) {
+        synchronized (emitter) {
+            try {
+                emitter.send(SseEmitter.event().name(name).data(data, MediaType.APPLICATION_JSON));
+            } catch (IOException | IllegalStateException e) {
+                logger.debug("Could not send '{}' event, client likely disconnected: {}", name, e.getMessage());
+            }
         }
     }
     
     /**
-     * Convert old spaced furigana format to parentheses format.
-     * Example: 開かい　拓たく　者しゃ → 開拓者（かいたくしゃ）
+     * Embed the query, run hybrid vector + lexical retrieval and hydrate the matches in rank order.
      * 
-     * @param text Text in old spaced format
-     * @return Text with parentheses format
+     * @param query the search query from the user
+     * @param searchFilter metadata filter from the book selection, or null for all books
+     * @return hydrated hits, or null if the query could not be embedded
      */
-    private String convertOldSpacedFuriganaFormat(String text) {
-        if (text == null || text.trim().isEmpty()) {
-            return text;
+    private List<SearchHydrationService.Hit> findHits(String query, Map<String, Object> searchFilter) {
+        // Generate embedding for the search query
+        List<String> queryTexts = Collections.singletonList(query.trim());
+        List<float[]> queryEmbeddings = searchMetrics.time(SearchMetrics.EMBEDDING,
+            () -> embeddingService.generateEmbeddings(queryTexts));
+        if (queryEmbeddings.isEmpty()) {
+            return null;
         }
         
-        StringBuilder kanji = new StringBuilder();
-        StringBuilder furigana = new StringBuilder();
+        float[] queryVector = queryEmbeddings.get(0);
         
-        // Split by spaces (both regular space and ideographic space)
-        String[] segments = text.split("[\\s　]+");
+        // Search the vector store (Pinecone or in-memory) and the lexical index, fused by rank
+        List<VectorStore.SearchResult> searchResults = hybridSearchService.search(query.trim(), queryVector, 10, searchFilter);
         
-        for (String segment : segments) {
-            if (segment.trim().isEmpty()) continue;
-            
-            // Process segments that have kanji followed by hiragana
-            // Pattern: one or more kanji characters followed by hiragana
-            if (segment.matches("^[一-龯]+[あ-ん]+$")) {
-                // Find where kanji ends and hiragana begins
-                int kanjiEnd = 0;
-                for (int i = 0; i < segment.length(); i++) {
-                    char c = segment.charAt(i);
-                    if (c >= 'あ' && c <= 'ん') {
-                        kanjiEnd = i;
-                        break;
-                    }
-                }
-                
-                if (kanjiEnd > 0) {
-                    kanji.append(segment.substring(0, kanjiEnd));
-                    furigana.append(segment.substring(kanjiEnd));
-                }
-            }
-        }
-        
-        // If we successfully extracted both kanji and furigana, format with parentheses
-        if (kanji.length() > 0 && furigana.length() > 0) {
-            return kanji.toString() + "（" + furigana.toString() + "）";
-        }
-        
-        // If we couldn't parse it properly, return original text
-        return text;
+        // Load chunks and books for all matches in one query and build display items
+        return searchMetrics.time(SearchMetrics.HYDRATION, () -> searchHydrationService.hydrate(searchResults));
     }
     
     /**
@@ -447,62 +432,48 @@ public class SearchController {
      * 
      * @param searchScope "all" for global search, "specific" for filtered search
      * @param request HttpServletRequest containing form parameters
-     * @return Map containing "filter" (Pinecone filter) and "bookNames" (list of selected book names)
+     * @return The filter and the selected book names (both null when searching all books)
      */
-    private Map<String, Object> buildSearchFilterWithBookInfo(String searchScope, HttpServletRequest request) {
-        Map<String, Object> result = new HashMap<>();
-        
-        // If searching all books, no filter needed
-        if ("all".equals(searchScope)) {
-            result.put("filter", null);
-            result.put("bookNames", null);
-            return result;
+    private SearchFilter buildSearchFilterWithBookInfo(String searchScope, HttpServletRequest request) {
+        // Collect the selected book IDs; none means no filter (search all books)
+        List<Long> bookIds = selectedBookIds(searchScope, request);
+        if (bookIds == null) {
+            return new SearchFilter(null, null);
         }
         
-        // Build the filter and collect book IDs
-        Map<String, Object> filter = buildSearchFilter(searchScope, request);
-        
-        // If no filter, no books were selected
-        if (filter == null) {
-            result.put("filter", null);
-            result.put("bookNames", null);
-            return result;
-        }
+        // Build Pinecone filter: bookId IN [selectedBookIds]
+        // Pass the list directly - PineconeService will handle the $in operator structure
+        Map<String, Object> filter = new HashMap<>();
+        filter.put("bookId", bookIds);
+        System.out.println("Built search filter for books: " + bookIds);
         
-        // Get the book IDs from the filter
-        List<Long> bookIds = (List<Long>) filter.get("bookId");
-        if (bookIds != null && !bookIds.isEmpty()) {
-            // Look up book names
-            List<String> bookNames = new ArrayList<>();
-            for (Long bookId : bookIds) {
-                Book book = bookRepository.findById(bookId).orElse(null);
-                if (book != null) {
-                    bookNames.add(book.getTitle());
-                }
+        // Look up book names from the catalog snapshot, keeping the selection order
+        BookCatalogService.CatalogSnapshot catalog = bookCatalogService.getSnapshot();
+        List<String> bookNames = new ArrayList<>();
+        for (Long bookId : bookIds) {
+            String title = catalog.getTitle(bookId);
+            if (title != null) {
+                bookNames.add(title);
             }
-            result.put("bookNames", bookNames);
         }
-        
-        result.put("filter", filter);
-        return result;
+        return new SearchFilter(filter, bookNames);
     }
     
     /**
-     * Build Pinecone metadata filter based on user's book/series selections.
-     * This filters the vector search to only include chunks from selected books.
+     * Collect the books selected individually or through a whole series.
      * 
      * @param searchScope "all" for global search, "specific" for filtered search
      * @param request HttpServletRequest containing form parameters
-     * @return Map representing Pinecone metadata filter, null for no filtering
+     * @return Selected book IDs in selection order, null for no filtering
      */
-    private Map<String, Object> buildSearchFilter(String searchScope, HttpServletRequest request) {
+    private List<Long> selectedBookIds(String searchScope, HttpServletRequest request) {
         // If searching all books, no filter needed
         if ("all".equals(searchScope)) {
             return null;
         }
         
         // Collect selected book IDs from form parameters
-        List<Long> selectedBookIds = new ArrayList<>();
+        Set<Long> selectedBookIds = new LinkedHashSet<>();
         
         // Get all parameter names to find book selections
         request.getParameterNames().asIterator().forEachRemaining(paramName -> {
@@ -529,11 +500,9 @@ public class SearchController {
                 String[] values = request.getParameterValues(paramName);
                 if (values != null && values.length > 0 && "all".equals(values[0])) {
                     // User selected "all volumes" for this series
-                    // Extract series name and find all books in that series
+                    // Extract series name and add all books in that series from the catalog
                     String seriesName = paramName.substring(7); // Remove "series_" prefix
-                    
-                    // TODO: Add logic to get all book IDs for this series
-                    // For now, we'll rely on individual book selections
+                    selectedBookIds.addAll(bookCatalogService.getSnapshot().getBookIds(seriesName));
                     System.out.println("User selected all volumes for series: " + seriesName);
                 }
             }
@@ -543,48 +512,26 @@ public class SearchController {
         if (selectedBookIds.isEmpty()) {
             return null;
         }
-        
-        // Build Pinecone filter: bookId IN [selectedBookIds]
-        // Pass the list directly - PineconeService will handle the $in operator structure
-        Map<String, Object> filter = new HashMap<>();
-        filter.put("bookId", selectedBookIds);
-        
-        System.out.println("Built search filter for books: " + selectedBookIds);
-        return filter;
+        return new ArrayList<>(selectedBookIds);
     }
     
     /**
-     * Helper method to organize books by series for the homepage
-     * (Duplicated from HomeController to ensure consistency)
-     * 
-     * @return List of SeriesInfo objects containing series and book data
+     * Metadata filter for the selected books, with their titles for display
      */
-    private List<SeriesInfo> getSeriesInfoList() {
-        List<Book> allBooks = bookRepository.findAllByOrderByCreatedAtAsc();
-        List<SeriesInfo> seriesInfoList = new ArrayList<>();
+    private static class SearchFilter {
+        private final Map<String, Object> filter;
+        private final List<String> bookNames;
         
-        // Group books by series (including null series)
-        Map<String, List<Book>> booksBySeries = allBooks.stream()
-                .collect(Collectors.groupingBy(book -> 
-                    book.getSeries() != null ? book.getSeries() : "INDIVIDUAL_BOOKS"));
-        
-        // Convert to SeriesInfo objects
-        for (Map.Entry<String, List<Book>> entry : booksBySeries.entrySet()) {
-            String seriesName = entry.getKey();
-            List<Book> books = entry.getValue();
-            
-            if ("INDIVIDUAL_BOOKS".equals(seriesName)) {
-                // Create individual SeriesInfo for each standalone book
-                for (Book book : books) {
-                    seriesInfoList.add(new SeriesInfo(book.getTitle(), List.of(book)));
-                }
-            } else {
-                // Create SeriesInfo for actual series
-                seriesInfoList.add(new SeriesInfo(seriesName, books));
-            }
+        SearchFilter(Map<String, Object> filter, List<String> bookNames) {
+            this.filter = filter;
+            this.bookNames = bookNames;
         }
         
-        return seriesInfoList;
+        /** Filter for the vector store and lexical index, or null to search all books */
+        Map<String, Object> getFilter() { return filter; }
+        
+        /** Titles of the selected books, or null when searching all books */
+        List<String> getBookNames() { return bookNames; }
     }
     
 }
\ No newline at end of file
@@ -0,0 +1,31 @@
+package com.bungakukensaku.dto;
+
+import com.bungakukensaku.model.Book;
+
+/**
+ * Immutable summary of a book for catalog views (series chips, book selectors).
+ * Safe to share across request threads, unlike the Book entity.
+ */
+public final class BookSummary {
+    private final Long id;
+    private final String title;
+    private final String author;
+    private final Integer year;
+    
+    public BookSummary(Long id, String title, String author, Integer year) {
+        this.id = id;
+        this.title = title;
+        this.author = author;
+        this.year = year;
+    }
+    
+    public static BookSummary from(Book book) {
+        return new BookSummary(book.getId(), book.getTitle(), book.getAuthor(), book.getYear());
+    }
+    
+    // Getters
+    public Long getId() { return id; }
+    public String getTitle() { return title; }
+    public String getAuthor() { return author; }
+    public Integer getYear() { return year; }
+}
@@ -15,6 +15,7 @@ public class SearchResultItem {
     private String relevanceExplanation;
     private String sourceReference;
     private String staticTextPath;
+    private boolean aiPending; // AI excerpt/summary did not finish before the search deadline
     
     // Constructors
     public SearchResultItem() {}
@@ -61,4 +62,7 @@ public class SearchResultItem {
     
     public String getStaticTextPath() { return staticTextPath; }
     public void setStaticTextPath(String staticTextPath) { this.staticTextPath = staticTextPath; }
+    
+    public boolean isAiPending() { return aiPending; }
+    public void setAiPending(boolean aiPending) { this.aiPending = aiPending; }
 }
\ No newline at end of file
@@ -1,6 +1,5 @@
 package com.bungakukensaku.dto;
 
-import com.bungakukensaku.model.Book;
 import java.util.List;
 
 /**
@@ -8,10 +7,10 @@ import java.util.List;
  */
 public class SeriesInfo {
     private String seriesName;
-    private List<Book> books;
+    private List<BookSummary> books;
     private boolean isSingleBook; // true if this "series" is actually just one book
     
-    public SeriesInfo(String seriesName, List<Book> books) {
+    public SeriesInfo(String seriesName, List<BookSummary> books) {
         this.seriesName = seriesName;
         this.books = books;
         this.isSingleBook = books.size() == 1;
@@ -26,11 +25,11 @@ public class SeriesInfo {
         this.seriesName = seriesName;
     }
     
-    public List<Book> getBooks() {
+    public List<BookSummary> getBooks() {
         return books;
     }
     
-    public void setBooks(List<Book> books) {
+    public void setBooks(List<BookSummary> books) {
         this.books = books;
         this.isSingleBook = books.size() == 1;
     }
@@ -0,0 +1,138 @@
+package com.bungakukensaku.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * JPA Entity for a persisted AI result (relevant excerpt or context summary).
+ * 
+ * The output of the AI calls depends only on the chunk content, the normalized
+ * query, the model and the prompt wording, so results are stored under a hash
+ * of exactly those inputs. The individual components are kept alongside for
+ * diagnostics and targeted invalidation.
+ */
+@Entity
+@Table(name = "ai_result_cache",
+       indexes = {
+           @Index(name = "idx_ai_result_cache_chunk", columnList = "chunk_id"),
+           @Index(name = "idx_ai_result_cache_created_at", columnList = "created_at")
+       })
+public class AIResultCacheEntry {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(name = "cache_key", nullable = false, unique = true, length = 64)
+    private String cacheKey;
+    
+    @Column(nullable = false, length = 20)
+    private String kind; // EXCERPT or SUMMARY
+    
+    @Column(name = "chunk_id")
+    private Long chunkId;
+    
+    @Column(name = "content_hash", nullable = false, length = 64)
+    private String contentHash;
+    
+    @Column(columnDefinition = "TEXT", nullable = false)
+    private String query;
+    
+    @Column(nullable = false, length = 100)
+    private String model;
+    
+    @Column(name = "prompt_version", nullable = false)
+    private Integer promptVersion;
+    
+    @Column(columnDefinition = "TEXT", nullable = false)
+    private String payload;
+    
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+    
+    // Constructor
+    public AIResultCacheEntry() {
+        this.createdAt = LocalDateTime.now();
+    }
+    
+    // Getters and Setters
+    public Long getId() {
+        return id;
+    }
+    
+    public void setId(Long id) {
+        this.id = id;
+    }
+    
+    public String getCacheKey() {
+        return cacheKey;
+    }
+    
+    public void setCacheKey(String cacheKey) {
+        this.cacheKey = cacheKey;
+    }
+    
+    public String getKind() {
+        return kind;
+    }
+    
+    public void setKind(String kind) {
+        this.kind = kind;
+    }
+    
+    public Long getChunkId() {
+        return chunkId;
+    }
+    
+    public void setChunkId(Long chunkId) {
+        this.chunkId = chunkId;
+    }
+    
+    public String getContentHash() {
+        return contentHash;
+    }
+    
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+    }
+    
+    public String getQuery() {
+        return query;
+    }
+    
+    public void setQuery(String query) {
+        this.query = query;
+    }
+    
+    public String getModel() {
+        return model;
+    }
+    
+    public void setModel(String model) {
+        this.model = model;
+    }
+    
+    public Integer getPromptVersion() {
+        return promptVersion;
+    }
+    
+    public void setPromptVersion(Integer promptVersion) {
+        this.promptVersion = promptVersion;
+    }
+    
+    public String getPayload() {
+        return payload;
+    }
+    
+    public void setPayload(String payload) {
+        this.payload = payload;
+    }
+    
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+    
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+}
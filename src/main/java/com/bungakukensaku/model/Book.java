@@ -48,6 +48,7 @@ public class Book {
     
     // One book has many chunks
     @OneToMany(mappedBy = "book", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
+    @OrderBy("chunkIndex ASC, id ASC")
     private List<Chunk> chunks = new ArrayList<>();
     
     // Constructor
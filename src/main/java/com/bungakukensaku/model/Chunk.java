@@ -1,5 +1,6 @@
 package com.bungakukensaku.model;
 
+import com.bungakukensaku.util.TextFingerprint;
 import jakarta.persistence.*;
 import java.time.LocalDateTime;
 
@@ -10,6 +11,7 @@ import java.time.LocalDateTime;
  * - Contains the actual text content
  * - References its source book
  * - Stores vector database ID for similarity search
+ * - Keeps a hash of its content so unchanged text can reuse its embedding
  * - Includes metadata like chapter and page number
  */
 @Entity
@@ -27,6 +29,9 @@ public class Chunk {
     @Column(columnDefinition = "TEXT", nullable = false)
     private String content;
     
+    @Column(name = "content_hash", length = 64)
+    private String contentHash; // SHA-256 of content; keys embedding reuse
+    
     @Column(name = "pinecone_vector_id")
     private String pineconeVectorId;
     
@@ -45,6 +50,9 @@ public class Chunk {
     @Column(name = "page_num")
     private Integer pageNum;
     
+    @Column(name = "chunk_index")
+    private Integer chunkIndex; // Position within the book; IDs stop being in text order once reprocessing keeps unchanged chunks
+    
     @Column(columnDefinition = "TEXT")
     private String metadata;
     
@@ -85,6 +93,15 @@ public class Chunk {
     
     public void setContent(String content) {
         this.content = content;
+        this.contentHash = content != null ? TextFingerprint.sha256(content) : null;
+    }
+    
+    public String getContentHash() {
+        return contentHash;
+    }
+    
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
     }
     
     public String getPineconeVectorId() {
@@ -135,6 +152,14 @@ public class Chunk {
         this.pageNum = pageNum;
     }
     
+    public Integer getChunkIndex() {
+        return chunkIndex;
+    }
+    
+    public void setChunkIndex(Integer chunkIndex) {
+        this.chunkIndex = chunkIndex;
+    }
+    
     public String getMetadata() {
         return metadata;
     }
@@ -0,0 +1,105 @@
+package com.bungakukensaku.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * JPA Entity for a persisted text embedding.
+ * 
+ * Entries are keyed by a SHA-256 text hash, the embedding model name and the
+ * kind of text, so identical text is only ever embedded once per model. Query
+ * entries hash the normalized query; chunk entries hash the exact chunk text
+ * (see Chunk.contentHash). Keeping the kinds apart stops a query from being
+ * served a chunk's embedding, or the reverse, when their hashes coincide.
+ * This lets cached embeddings survive application restarts.
+ */
+@Entity
+@Table(name = "embedding_cache",
+       uniqueConstraints = @UniqueConstraint(name = "uk_embedding_cache_hash_model_kind",
+                                             columnNames = {"content_hash", "model", "kind"}))
+public class EmbeddingCacheEntry {
+    
+    public static final String QUERY = "query";
+    public static final String CHUNK = "chunk";
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(name = "content_hash", nullable = false, length = 64)
+    private String contentHash;
+    
+    @Column(nullable = false, length = 100)
+    private String model;
+    
+    @Column(nullable = false, length = 10)
+    private String kind; // QUERY or CHUNK
+    
+    @Column(name = "embedding", columnDefinition = "float[]", nullable = false)
+    private float[] embedding;
+    
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+    
+    // Constructors
+    public EmbeddingCacheEntry() {
+        this.createdAt = LocalDateTime.now();
+    }
+    
+    public EmbeddingCacheEntry(String contentHash, String model, String kind, float[] embedding) {
+        this();
+        this.contentHash = contentHash;
+        this.model = model;
+        this.kind = kind;
+        this.embedding = embedding;
+    }
+    
+    // Getters and Setters
+    public Long getId() {
+        return id;
+    }
+    
+    public void setId(Long id) {
+        this.id = id;
+    }
+    
+    public String getContentHash() {
+        return contentHash;
+    }
+    
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+    }
+    
+    public String getModel() {
+        return model;
+    }
+    
+    public void setModel(String model) {
+        this.model = model;
+    }
+    
+    public String getKind() {
+        return kind;
+    }
+    
+    public void setKind(String kind) {
+        this.kind = kind;
+    }
+    
+    public float[] getEmbedding() {
+        return embedding;
+    }
+    
+    public void setEmbedding(float[] embedding) {
+        this.embedding = embedding;
+    }
+    
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+    
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+}
@@ -0,0 +1,225 @@
+package com.bungakukensaku.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * JPA Entity for a background ingestion job (reprocessing a book, generating
+ * embeddings, uploading vectors).
+ * 
+ * Jobs are split into steps (usually one per book) that record their own
+ * checkpoint, so a failed, cancelled or interrupted job resumes where it
+ * stopped instead of starting over.
+ */
+@Entity
+@Table(name = "ingestion_jobs",
+       indexes = @Index(name = "idx_ingestion_jobs_status", columnList = "status"))
+public class IngestionJob {
+    
+    // Job types
+    public static final String REPROCESS_BOOK = "REPROCESS_BOOK";
+    public static final String GENERATE_EMBEDDINGS = "GENERATE_EMBEDDINGS";
+    public static final String UPLOAD_NEW = "UPLOAD_NEW";
+    public static final String UPLOAD_ALL = "UPLOAD_ALL";
+    
+    // Job and step statuses
+    public static final String QUEUED = "QUEUED";
+    public static final String RUNNING = "RUNNING";
+    public static final String COMPLETED = "COMPLETED";
+    public static final String FAILED = "FAILED";
+    public static final String CANCELLED = "CANCELLED";
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(nullable = false, length = 30)
+    private String type;
+    
+    @Column(nullable = false, length = 20)
+    private String status;
+    
+    @Column(name = "book_id")
+    private Long bookId; // Only for REPROCESS_BOOK
+    
+    @Column(name = "source_path", columnDefinition = "TEXT")
+    private String sourcePath; // Stored upload for REPROCESS_BOOK
+    
+    @Column(name = "source_filename")
+    private String sourceFilename;
+    
+    @Column(name = "cancel_requested", nullable = false)
+    private boolean cancelRequested = false;
+    
+    @Column(name = "processed_items", nullable = false)
+    private long processedItems = 0;
+    
+    @Column(name = "total_items", nullable = false)
+    private long totalItems = 0;
+    
+    @Column(columnDefinition = "TEXT")
+    private String message;
+    
+    @Column(columnDefinition = "TEXT")
+    private String error;
+    
+    @Column(nullable = false)
+    private int attempts = 0;
+    
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+    
+    @Column(name = "started_at")
+    private LocalDateTime startedAt;
+    
+    @Column(name = "finished_at")
+    private LocalDateTime finishedAt;
+    
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+    
+    // Constructor
+    public IngestionJob() {
+        this.createdAt = LocalDateTime.now();
+        this.updatedAt = this.createdAt;
+        this.status = QUEUED;
+    }
+    
+    @PreUpdate
+    void touch() {
+        this.updatedAt = LocalDateTime.now();
+    }
+    
+    public boolean isActive() {
+        return QUEUED.equals(status) || RUNNING.equals(status);
+    }
+    
+    // Getters and Setters
+    public Long getId() {
+        return id;
+    }
+    
+    public void setId(Long id) {
+        this.id = id;
+    }
+    
+    public String getType() {
+        return type;
+    }
+    
+    public void setType(String type) {
+        this.type = type;
+    }
+    
+    public String getStatus() {
+        return status;
+    }
+    
+    public void setStatus(String status) {
+        this.status = status;
+    }
+    
+    public Long getBookId() {
+        return bookId;
+    }
+    
+    public void setBookId(Long bookId) {
+        this.bookId = bookId;
+    }
+    
+    public String getSourcePath() {
+        return sourcePath;
+    }
+    
+    public void setSourcePath(String sourcePath) {
+        this.sourcePath = sourcePath;
+    }
+    
+    public String getSourceFilename() {
+        return sourceFilename;
+    }
+    
+    public void setSourceFilename(String sourceFilename) {
+        this.sourceFilename = sourceFilename;
+    }
+    
+    public boolean isCancelRequested() {
+        return cancelRequested;
+    }
+    
+    public void setCancelRequested(boolean cancelRequested) {
+        this.cancelRequested = cancelRequested;
+    }
+    
+    public long getProcessedItems() {
+        return processedItems;
+    }
+    
+    public void setProcessedItems(long processedItems) {
+        this.processedItems = processedItems;
+    }
+    
+    public long getTotalItems() {
+        return totalItems;
+    }
+    
+    public void setTotalItems(long totalItems) {
+        this.totalItems = totalItems;
+    }
+    
+    public String getMessage() {
+        return message;
+    }
+    
+    public void setMessage(String message) {
+        this.message = message;
+    }
+    
+    public String getError() {
+        return error;
+    }
+    
+    public void setError(String error) {
+        this.error = error;
+    }
+    
+    public int getAttempts() {
+        return attempts;
+    }
+    
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+    
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+    
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+    
+    public LocalDateTime getStartedAt() {
+        return startedAt;
+    }
+    
+    public void setStartedAt(LocalDateTime startedAt) {
+        this.startedAt = startedAt;
+    }
+    
+    public LocalDateTime getFinishedAt() {
+        return finishedAt;
+    }
+    
+    public void setFinishedAt(LocalDateTime finishedAt) {
+        this.finishedAt = finishedAt;
+    }
+    
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+    
+    public void setUpdatedAt(LocalDateTime updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+}
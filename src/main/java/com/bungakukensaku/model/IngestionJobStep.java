@@ -0,0 +1,163 @@
+package com.bungakukensaku.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * JPA Entity for one step of an {@link IngestionJob}, usually the work for
+ * a single book.
+ * 
+ * Work inside a step is done in ascending chunk ID order and the last
+ * committed chunk ID is stored as the checkpoint, so a resumed step skips
+ * everything already written.
+ */
+@Entity
+@Table(name = "ingestion_job_steps",
+       indexes = @Index(name = "idx_ingestion_job_steps_job", columnList = "job_id"))
+public class IngestionJobStep {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(name = "job_id", nullable = false)
+    private Long jobId;
+    
+    @Column(nullable = false)
+    private int seq;
+    
+    @Column(nullable = false)
+    private String name;
+    
+    @Column(length = 30)
+    private String type; // IngestionJob type constant for this step's work; null means the job's type
+    
+    @Column(name = "book_id")
+    private Long bookId;
+    
+    @Column(nullable = false, length = 20)
+    private String status;
+    
+    @Column(name = "checkpoint_chunk_id")
+    private Long checkpointChunkId;
+    
+    @Column(name = "processed_items", nullable = false)
+    private long processedItems = 0;
+    
+    @Column(name = "total_items", nullable = false)
+    private long totalItems = 0;
+    
+    @Column(columnDefinition = "TEXT")
+    private String error;
+    
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+    
+    // Constructor
+    public IngestionJobStep() {
+        this.updatedAt = LocalDateTime.now();
+        this.status = IngestionJob.QUEUED;
+    }
+    
+    @PreUpdate
+    void touch() {
+        this.updatedAt = LocalDateTime.now();
+    }
+    
+    // Getters and Setters
+    public Long getId() {
+        return id;
+    }
+    
+    public void setId(Long id) {
+        this.id = id;
+    }
+    
+    public Long getJobId() {
+        return jobId;
+    }
+    
+    public void setJobId(Long jobId) {
+        this.jobId = jobId;
+    }
+    
+    public int getSeq() {
+        return seq;
+    }
+    
+    public void setSeq(int seq) {
+        this.seq = seq;
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    public void setName(String name) {
+        this.name = name;
+    }
+    
+    public String getType() {
+        return type;
+    }
+    
+    public void setType(String type) {
+        this.type = type;
+    }
+    
+    public Long getBookId() {
+        return bookId;
+    }
+    
+    public void setBookId(Long bookId) {
+        this.bookId = bookId;
+    }
+    
+    public String getStatus() {
+        return status;
+    }
+    
+    public void setStatus(String status) {
+        this.status = status;
+    }
+    
+    public Long getCheckpointChunkId() {
+        return checkpointChunkId;
+    }
+    
+    public void setCheckpointChunkId(Long checkpointChunkId) {
+        this.checkpointChunkId = checkpointChunkId;
+    }
+    
+    public long getProcessedItems() {
+        return processedItems;
+    }
+    
+    public void setProcessedItems(long processedItems) {
+        this.processedItems = processedItems;
+    }
+    
+    public long getTotalItems() {
+        return totalItems;
+    }
+    
+    public void setTotalItems(long totalItems) {
+        this.totalItems = totalItems;
+    }
+    
+    public String getError() {
+        return error;
+    }
+    
+    public void setError(String error) {
+        this.error = error;
+    }
+    
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+    
+    public void setUpdatedAt(LocalDateTime updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+}
@@ -0,0 +1,72 @@
+package com.bungakukensaku.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * JPA Entity for a Pinecone vector waiting to be deleted.
+ * 
+ * Written in the same transaction that deletes the vector's chunk, so the
+ * delete happens only if that transaction commits, and removed once Pinecone
+ * has deleted the vector. Rows left behind by a failed delete are retried.
+ */
+@Entity
+@Table(name = "pending_vector_deletes")
+public class PendingVectorDelete {
+    
+    @Id
+    @Column(name = "vector_id", length = 100)
+    private String vectorId;
+    
+    @Column(nullable = false)
+    private int attempts = 0;
+    
+    @Column(name = "last_error", columnDefinition = "TEXT")
+    private String lastError;
+    
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+    
+    // Constructors
+    public PendingVectorDelete() {
+        this.createdAt = LocalDateTime.now();
+    }
+    
+    public PendingVectorDelete(String vectorId) {
+        this();
+        this.vectorId = vectorId;
+    }
+    
+    // Getters and Setters
+    public String getVectorId() {
+        return vectorId;
+    }
+    
+    public void setVectorId(String vectorId) {
+        this.vectorId = vectorId;
+    }
+    
+    public int getAttempts() {
+        return attempts;
+    }
+    
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+    
+    public String getLastError() {
+        return lastError;
+    }
+    
+    public void setLastError(String lastError) {
+        this.lastError = lastError;
+    }
+    
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+    
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+}
@@ -0,0 +1,27 @@
+package com.bungakukensaku.repository;
+
+import com.bungakukensaku.model.AIResultCacheEntry;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+/**
+ * Repository for persisted AI excerpts and summaries.
+ */
+@Repository
+public interface AIResultCacheRepository extends JpaRepository<AIResultCacheEntry, Long> {
+    
+    // Find a cached result by its composite key hash
+    Optional<AIResultCacheEntry> findByCacheKey(String cacheKey);
+    
+    // Bulk-delete results stored before the cutoff
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM AIResultCacheEntry e WHERE e.createdAt < :cutoff")
+    int deleteByCreatedAtBefore(@Param("cutoff") LocalDateTime cutoff);
+}
@@ -2,12 +2,19 @@ package com.bungakukensaku.repository;
 
 import com.bungakukensaku.model.Chunk;
 import com.bungakukensaku.model.Book;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import jakarta.persistence.QueryHint;
+import java.util.Collection;
 import java.util.List;
 
+import static org.hibernate.jpa.HibernateHints.HINT_READ_ONLY;
+
 /**
  * Repository for Chunk entity database operations.
  * 
@@ -17,8 +24,15 @@ import java.util.List;
 @Repository
 public interface ChunkRepository extends JpaRepository<Chunk, Long> {
     
-    // Find all chunks for a specific book
-    List<Chunk> findByBookId(Long bookId);
+    // Find all chunks for a specific book, in text order
+    @Query("SELECT c FROM Chunk c WHERE c.book.id = :bookId ORDER BY c.chunkIndex, c.id")
+    List<Chunk> findByBookId(@Param("bookId") Long bookId);
+    
+    // Layout of a book's chunks for diffing a reprocess, in text order:
+    // (id, contentHash, content, chapter, chapterNumber, chapterPosition, chapterPercentage, pageNum, metadata, chunkIndex, uploadedToPinecone)
+    @Query("SELECT c.id, c.contentHash, c.content, c.chapter, c.chapterNumber, c.chapterPosition, c.chapterPercentage, " +
+           "c.pageNum, c.metadata, c.chunkIndex, c.uploadedToPinecone FROM Chunk c WHERE c.book.id = :bookId ORDER BY c.chunkIndex, c.id")
+    List<Object[]> findLayoutByBookId(@Param("bookId") Long bookId);
     
     // Find chunks by Pinecone vector IDs (for search results)
     List<Chunk> findByPineconeVectorIdIn(List<String> vectorIds);
@@ -33,6 +47,88 @@ public interface ChunkRepository extends JpaRepository<Chunk, Long> {
     @Query("SELECT c FROM Chunk c JOIN FETCH c.book WHERE c.pineconeVectorId IN :vectorIds")
     List<Chunk> findByVectorIdsWithBook(@Param("vectorIds") List<String> vectorIds);
     
+    // Load chunks with their books in one query (search result hydration)
+    @Query("SELECT c FROM Chunk c JOIN FETCH c.book WHERE c.id IN :ids")
+    List<Chunk> findAllWithBookByIdIn(@Param("ids") Collection<Long> ids);
+    
     // Count chunks for a book
     Long countByBookId(Long bookId);
+    
+    // Count chunks that have an embedding (sizes the in-memory vector index)
+    long countByEmbeddingIsNotNull();
+    
+    // Keyset page of (chunkId, bookId, embedding) rows for loading the in-memory vector index
+    @Query("SELECT c.id, c.book.id, c.embedding FROM Chunk c WHERE c.embedding IS NOT NULL AND c.id > :afterId ORDER BY c.id")
+    List<Object[]> findEmbeddingPage(@Param("afterId") Long afterId, Pageable pageable);
+    
+    // Per-book counts of chunks without an embedding, as (bookId, count) rows (plans embedding jobs)
+    @Query("SELECT c.book.id, COUNT(c) FROM Chunk c WHERE c.embedding IS NULL GROUP BY c.book.id ORDER BY c.book.id")
+    List<Object[]> countPendingEmbeddingsByBook();
+    
+    // Per-book counts of embedded chunks not yet in Pinecone, as (bookId, count) rows
+    @Query("SELECT c.book.id, COUNT(c) FROM Chunk c WHERE c.embedding IS NOT NULL AND c.uploadedToPinecone = false " +
+           "GROUP BY c.book.id ORDER BY c.book.id")
+    List<Object[]> countPendingUploadsByBook();
+    
+    // Per-book counts of embedded chunks, as (bookId, count) rows (plans full re-uploads)
+    @Query("SELECT c.book.id, COUNT(c) FROM Chunk c WHERE c.embedding IS NOT NULL GROUP BY c.book.id ORDER BY c.book.id")
+    List<Object[]> countEmbeddedByBook();
+    
+    // Next page of (chunkId, content) rows for a book's chunks without an embedding after the given checkpoint
+    @Query("SELECT c.id, c.content FROM Chunk c WHERE c.book.id = :bookId AND c.id > :afterId AND c.embedding IS NULL ORDER BY c.id")
+    List<Object[]> findPendingEmbeddingPage(@Param("bookId") Long bookId, @Param("afterId") Long afterId, Pageable pageable);
+    
+    // Next page of a book's embedded chunks not yet in Pinecone after the given checkpoint.
+    // Read-only: Hibernate keeps no snapshot copy of the embeddings; flags are set with markUploadedToPinecone.
+    @QueryHints(@QueryHint(name = HINT_READ_ONLY, value = "true"))
+    @Query("SELECT c FROM Chunk c JOIN FETCH c.book WHERE c.book.id = :bookId AND c.id > :afterId " +
+           "AND c.embedding IS NOT NULL AND c.uploadedToPinecone = false ORDER BY c.id")
+    List<Chunk> findPendingUploadPage(@Param("bookId") Long bookId, @Param("afterId") Long afterId, Pageable pageable);
+    
+    // Next page of a book's embedded chunks after the given checkpoint (full re-upload, read-only)
+    @QueryHints(@QueryHint(name = HINT_READ_ONLY, value = "true"))
+    @Query("SELECT c FROM Chunk c JOIN FETCH c.book WHERE c.book.id = :bookId AND c.id > :afterId " +
+           "AND c.embedding IS NOT NULL ORDER BY c.id")
+    List<Chunk> findEmbeddedPage(@Param("bookId") Long bookId, @Param("afterId") Long afterId, Pageable pageable);
+    
+    // Bulk-mark chunks as uploaded after a successful upsert
+    @Modifying
+    @Query("UPDATE Chunk c SET c.uploadedToPinecone = true WHERE c.id IN :ids")
+    int markUploadedToPinecone(@Param("ids") Collection<Long> ids);
+    
+    // Bulk-reset the upload flag after the Pinecone index is cleared
+    @Modifying
+    @Query("UPDATE Chunk c SET c.uploadedToPinecone = false WHERE c.uploadedToPinecone = true")
+    int resetUploadedToPinecone();
+    
+    // Bulk-delete chunks without loading them (and their embeddings)
+    @Modifying
+    @Query("DELETE FROM Chunk c WHERE c.id IN :ids")
+    int deleteByIdIn(@Param("ids") Collection<Long> ids);
+    
+    // Move a kept chunk to its position in a reprocessed book
+    @Modifying
+    @Query("UPDATE Chunk c SET c.contentHash = :contentHash, c.chapter = :chapter, c.chapterNumber = :chapterNumber, " +
+           "c.chapterPosition = :chapterPosition, c.chapterPercentage = :chapterPercentage, c.pageNum = :pageNum, " +
+           "c.metadata = :metadata, c.chunkIndex = :chunkIndex WHERE c.id = :id")
+    int updateLayout(@Param("id") Long id, @Param("contentHash") String contentHash, @Param("chapter") String chapter,
+                     @Param("chapterNumber") Integer chapterNumber, @Param("chapterPosition") Integer chapterPosition,
+                     @Param("chapterPercentage") Integer chapterPercentage, @Param("pageNum") Integer pageNum,
+                     @Param("metadata") String metadata, @Param("chunkIndex") Integer chunkIndex);
+    
+    // Bulk-clear the upload flag so changed vector metadata is upserted again
+    @Modifying
+    @Query("UPDATE Chunk c SET c.uploadedToPinecone = false WHERE c.id IN :ids")
+    int markNotUploadedToPinecone(@Param("ids") Collection<Long> ids);
+    
+    // Chunks of a book still waiting for an embedding (sizes a reprocess job's embedding step)
+    long countByBookIdAndEmbeddingIsNull(Long bookId);
+    
+    // Embedded chunks of a book not yet in Pinecone (sizes a reprocess job's upload step)
+    @Query("SELECT COUNT(c) FROM Chunk c WHERE c.book.id = :bookId AND c.embedding IS NOT NULL AND c.uploadedToPinecone = false")
+    long countPendingUploadsByBookId(@Param("bookId") Long bookId);
+    
+    // Keyset page of (chunkId, bookId, content) rows for building the lexical index
+    @Query("SELECT c.id, c.book.id, c.content FROM Chunk c WHERE c.id > :afterId ORDER BY c.id")
+    List<Object[]> findContentPage(@Param("afterId") Long afterId, Pageable pageable);
 }
\ No newline at end of file
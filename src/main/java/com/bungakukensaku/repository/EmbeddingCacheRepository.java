@@ -0,0 +1,21 @@
+package com.bungakukensaku.repository;
+
+import com.bungakukensaku.model.EmbeddingCacheEntry;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Repository for persisted embeddings keyed by (content hash, model, kind).
+ */
+@Repository
+public interface EmbeddingCacheRepository extends JpaRepository<EmbeddingCacheEntry, Long> {
+    
+    // Find the cached embedding for a text hash, model and kind
+    Optional<EmbeddingCacheEntry> findByContentHashAndModelAndKind(String contentHash, String model, String kind);
+    
+    // Find cached embeddings for many text hashes at once (chunk embedding reuse)
+    List<EmbeddingCacheEntry> findByModelAndKindAndContentHashIn(String model, String kind, Collection<String> contentHashes);
+}
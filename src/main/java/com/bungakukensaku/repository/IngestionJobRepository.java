@@ -0,0 +1,20 @@
+package com.bungakukensaku.repository;
+
+import com.bungakukensaku.model.IngestionJob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Repository for background ingestion jobs.
+ */
+@Repository
+public interface IngestionJobRepository extends JpaRepository<IngestionJob, Long> {
+    
+    // Jobs in any of the given states (e.g. to resume after a restart)
+    List<IngestionJob> findByStatusInOrderByIdAsc(Collection<String> statuses);
+    
+    // Most recent jobs first, for the status page
+    List<IngestionJob> findTop50ByOrderByIdDesc();
+}
@@ -0,0 +1,23 @@
+package com.bungakukensaku.repository;
+
+import com.bungakukensaku.model.IngestionJobStep;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import java.util.List;
+
+/**
+ * Repository for the per-book steps of ingestion jobs.
+ */
+@Repository
+public interface IngestionJobStepRepository extends JpaRepository<IngestionJobStep, Long> {
+    
+    // Steps of a job in execution order
+    List<IngestionJobStep> findByJobIdOrderBySeqAsc(Long jobId);
+    
+    // Steps of other running jobs currently working on a book (the per-book lock)
+    @Query("SELECT COUNT(s) FROM IngestionJobStep s, IngestionJob j WHERE j.id = s.jobId AND j.status = 'RUNNING' " +
+           "AND s.status = 'RUNNING' AND s.bookId = :bookId AND s.jobId <> :jobId")
+    long countRunningStepsOnBook(@Param("bookId") Long bookId, @Param("jobId") Long jobId);
+}
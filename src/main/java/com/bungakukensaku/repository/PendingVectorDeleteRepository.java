@@ -0,0 +1,19 @@
+package com.bungakukensaku.repository;
+
+import com.bungakukensaku.model.PendingVectorDelete;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import java.util.List;
+
+/**
+ * Repository for Pinecone vectors waiting to be deleted.
+ */
+@Repository
+public interface PendingVectorDeleteRepository extends JpaRepository<PendingVectorDelete, String> {
+    
+    // Oldest pending deletes first
+    @Query("SELECT p FROM PendingVectorDelete p ORDER BY p.createdAt, p.vectorId")
+    List<PendingVectorDelete> findPage(Pageable pageable);
+}
@@ -0,0 +1,249 @@
+package com.bungakukensaku.service;
+
+import com.bungakukensaku.model.AIResultCacheEntry;
+import com.bungakukensaku.repository.AIResultCacheRepository;
+import com.bungakukensaku.util.TextFingerprint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Two-tier cache for AI excerpts and summaries.
+ * 
+ * Tier 1 is an in-memory LRU; tier 2 is the ai_result_cache table so results
+ * survive restarts. Both tiers expire entries after ai.cache.ttl-minutes; expired
+ * rows are ignored on read, refreshed on the next load and pruned periodically.
+ * Loads are single-flight: concurrent requests for the same
+ * key wait on one shared LLM call instead of each making their own.
+ * 
+ * Payloads are plain strings; callers encode structured results themselves.
+ * Loaders signal "do not cache" by throwing.
+ */
+@Service
+public class AIResultCache implements MeterBinder {
+    
+    private static final Logger logger = LoggerFactory.getLogger(AIResultCache.class);
+    
+    @Autowired
+    private AIResultCacheRepository aiResultCacheRepository;
+    
+    @Value("${ai.cache.max-entries:5000}")
+    private int maxEntries;
+    
+    @Value("${ai.cache.ttl-minutes:10080}")
+    private long ttlMinutes;
+    
+    @Value("${ai.cache.persist:true}")
+    private boolean persist;
+    
+    private LruCache<String, String> memoryCache;
+    
+    private final ConcurrentHashMap<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+    
+    private final AtomicLong persistentHits = new AtomicLong();
+    private final AtomicLong sharedLoads = new AtomicLong();
+    
+    @PostConstruct
+    public void init() {
+        this.memoryCache = new LruCache<>(maxEntries, ttlMinutes * 60_000L);
+        logger.info("Initialized AI result cache (maxEntries={}, ttl={}min, persist={})",
+            maxEntries, ttlMinutes, persist);
+    }
+    
+    /**
+     * Return the cached payload for the key, or run the loader exactly once
+     * across concurrent callers and cache its result.
+     * 
+     * @param key The composite cache key
+     * @param loader Produces the payload; throwing prevents caching
+     * @return The cached or freshly loaded payload
+     */
+    public String getOrLoad(Key key, Supplier<String> loader) {
+        String cacheKey = key.hash();
+        
+        String cached = memoryCache.get(cacheKey);
+        if (cached != null) {
+            return cached;
+        }
+        
+        CompletableFuture<String> mine = new CompletableFuture<>();
+        CompletableFuture<String> existing = inFlight.putIfAbsent(cacheKey, mine);
+        if (existing != null) {
+            // Someone else is already loading this key; share their result
+            sharedLoads.incrementAndGet();
+            return await(existing);
+        }
+        
+        try {
+            String payload = persist ? loadPersisted(cacheKey) : null;
+            if (payload == null) {
+                payload = loader.get();
+                if (persist) {
+                    savePersisted(cacheKey, key, payload);
+                }
+            }
+            memoryCache.put(cacheKey, payload);
+            mine.complete(payload);
+            return payload;
+        } catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(cacheKey, mine);
+        }
+    }
+    
+    /**
+     * Get hit/miss/eviction counters plus persistent hits and shared loads
+     */
+    public Map<String, Object> getCacheStats() {
+        Map<String, Object> stats = memoryCache.getStats();
+        stats.put("persistentHits", persistentHits.get());
+        stats.put("sharedLoads", sharedLoads.get());
+        stats.put("inFlight", inFlight.size());
+        stats.put("persistenceEnabled", persist);
+        return stats;
+    }
+    
+    /**
+     * Publish hit/miss counters as search.cache{cache=ai_result}
+     */
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("search.cache", this, c -> c.memoryCache.getHitCount())
+            .tag("cache", "ai_result").tag("result", "memory_hit").register(registry);
+        FunctionCounter.builder("search.cache", this, c -> c.memoryCache.getMissCount())
+            .tag("cache", "ai_result").tag("result", "memory_miss").register(registry);
+        FunctionCounter.builder("search.cache", persistentHits, AtomicLong::get)
+            .tag("cache", "ai_result").tag("result", "persistent_hit").register(registry);
+        FunctionCounter.builder("search.cache", sharedLoads, AtomicLong::get)
+            .tag("cache", "ai_result").tag("result", "shared_load").register(registry);
+    }
+    
+    /**
+     * Delete persisted results older than the TTL
+     */
+    @Scheduled(initialDelayString = "${ai.cache.prune-interval-ms:3600000}",
+               fixedDelayString = "${ai.cache.prune-interval-ms:3600000}")
+    public void pruneExpired() {
+        if (!persist) {
+            return;
+        }
+        try {
+            int deleted = aiResultCacheRepository.deleteByCreatedAtBefore(expiryCutoff());
+            if (deleted > 0) {
+                logger.info("Pruned {} expired AI results", deleted);
+            }
+        } catch (Exception e) {
+            logger.warn("Error pruning expired AI results: {}", e.getMessage());
+        }
+    }
+    
+    private LocalDateTime expiryCutoff() {
+        return LocalDateTime.now().minusMinutes(ttlMinutes);
+    }
+    
+    private String await(CompletableFuture<String> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+    
+    private String loadPersisted(String cacheKey) {
+        try {
+            Optional<AIResultCacheEntry> entry = aiResultCacheRepository.findByCacheKey(cacheKey)
+                .filter(e -> e.getCreatedAt().isAfter(expiryCutoff()));
+            if (entry.isPresent()) {
+                persistentHits.incrementAndGet();
+                return entry.get().getPayload();
+            }
+        } catch (Exception e) {
+            // The cache is an optimization; never fail a search because of it
+            logger.warn("Error reading persisted AI result: {}", e.getMessage());
+        }
+        return null;
+    }
+    
+    private void savePersisted(String cacheKey, Key key, String payload) {
+        try {
+            // An expired row keeps its key until pruned; refresh it in place
+            AIResultCacheEntry entry = aiResultCacheRepository.findByCacheKey(cacheKey)
+                .orElseGet(AIResultCacheEntry::new);
+            entry.setCacheKey(cacheKey);
+            entry.setKind(key.getKind());
+            entry.setChunkId(key.getChunkId());
+            entry.setContentHash(key.getContentHash());
+            entry.setQuery(key.getQuery());
+            entry.setModel(key.getModel());
+            entry.setPromptVersion(key.getPromptVersion());
+            entry.setPayload(payload);
+            entry.setCreatedAt(LocalDateTime.now());
+            aiResultCacheRepository.save(entry);
+        } catch (Exception e) {
+            // Most likely a concurrent insert from another instance; safe to ignore
+            logger.debug("Could not persist AI result {}: {}", cacheKey, e.getMessage());
+        }
+    }
+    
+    /**
+     * Composite cache key: (kind, chunkId, content hash, normalized query, model, prompt version)
+     */
+    public static class Key {
+        private final String kind;
+        private final Long chunkId;
+        private final String contentHash;
+        private final String query;
+        private final String model;
+        private final int promptVersion;
+        
+        public Key(String kind, Long chunkId, String content, String query, String model, int promptVersion) {
+            this.kind = kind;
+            this.chunkId = chunkId;
+            this.contentHash = TextFingerprint.sha256(content != null ? content : "");
+            this.query = TextFingerprint.normalize(query);
+            this.model = model;
+            this.promptVersion = promptVersion;
+        }
+        
+        public String getKind() { return kind; }
+        public Long getChunkId() { return chunkId; }
+        public String getContentHash() { return contentHash; }
+        public String getQuery() { return query; }
+        public String getModel() { return model; }
+        public int getPromptVersion() { return promptVersion; }
+        
+        /**
+         * Hash of all key components, used as the storage key in both tiers
+         */
+        public String hash() {
+            return TextFingerprint.sha256(String.join("\u0000",
+                kind,
+                String.valueOf(chunkId),
+                contentHash,
+                query,
+                model,
+                String.valueOf(promptVersion)));
+        }
+    }
+}
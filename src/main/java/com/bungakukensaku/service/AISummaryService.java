@@ -5,12 +5,14 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.bungakukensaku.dto.SearchResultItem;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -26,10 +28,19 @@ public class AISummaryService {
     private static final Logger logger = LoggerFactory.getLogger(AISummaryService.class);
     private static final String OPENAI_API_URL = "https://api.openai.com/v1/chat/completions";
     private static final String MODEL = "gpt-3.5-turbo"; // Start with GPT-3.5 for cost efficiency
+    private static final String PYTHON_SERVICE_MODEL = "python-service";
+    // Bump whenever a prompt changes so cached results from the old prompt are not reused
+    private static final int PROMPT_VERSION = 1;
     
     private final WebClient webClient;
     private final ObjectMapper objectMapper;
     
+    @Autowired
+    private AIResultCache resultCache;
+    
+    @Autowired
+    private SearchMetrics searchMetrics;
+    
     @Value("${openai.api.key:}")
     private String apiKey;
     
@@ -39,6 +50,9 @@ public class AISummaryService {
     @Value("${ai.service.python.url:http://localhost:8001}")
     private String pythonServiceUrl;
     
+    @Value("${search.enrichment.call-timeout-ms:6000}")
+    private long callTimeoutMs;
+    
     public AISummaryService() {
         this.webClient = WebClient.builder()
             .baseUrl(OPENAI_API_URL)
@@ -60,14 +74,29 @@ public class AISummaryService {
         logger.info("Generating summary for chunk {} from book: {} using {} service", 
             result.getChunkId(), result.getBookTitle(), aiServiceType);
         
+        boolean usePython = "python".equals(aiServiceType);
+        if (!usePython && !isApiKeyConfigured()) {
+            logger.error("OpenAI API key is not configured");
+            searchMetrics.fallback("summary", "no_api_key");
+            return new SearchResultSummary("", "");
+        }
+        
         try {
-            if ("python".equals(aiServiceType)) {
-                return generateSummaryViaPython(result, query);
-            } else {
-                return generateSummaryViaJava(result, query);
-            }
+            // The prompt also includes the book title and chapter, so they are part of the cached content
+            String promptContent = result.getBookTitle() + "\n" + result.getChapter() + "\n" + result.getContent();
+            AIResultCache.Key key = new AIResultCache.Key("SUMMARY", result.getChunkId(), promptContent, query,
+                usePython ? PYTHON_SERVICE_MODEL : MODEL, PROMPT_VERSION);
+            
+            String payload = resultCache.getOrLoad(key, () -> {
+                SearchResultSummary summary = usePython
+                    ? generateSummaryViaPython(result, query)
+                    : generateSummaryViaJava(result, query);
+                return encodeSummary(summary);
+            });
+            return decodeSummary(payload);
         } catch (Exception e) {
             logger.error("Error generating summary: {}", e.getMessage());
+            searchMetrics.fallback("summary", "error");
             return new SearchResultSummary("", "");
         }
     }
@@ -97,6 +126,7 @@ public class AISummaryService {
                 .bodyValue(requestBody)
                 .retrieve()
                 .bodyToMono(String.class)
+                .timeout(Duration.ofMillis(callTimeoutMs))
                 .block();
             
             // Parse response
@@ -119,11 +149,6 @@ public class AISummaryService {
     }
     
     private SearchResultSummary generateSummaryViaJava(SearchResultItem result, String query) {
-        if (apiKey == null || apiKey.isEmpty() || apiKey.equals("not-set-please-configure")) {
-            logger.error("OpenAI API key is not configured");
-            return new SearchResultSummary("", "");
-        }
-        
         try {
             String systemPrompt = createSystemPrompt();
             String userPrompt = createUserPrompt(result, query);
@@ -146,6 +171,7 @@ public class AISummaryService {
                 .bodyValue(requestBody)
                 .retrieve()
                 .bodyToMono(String.class)
+                .timeout(Duration.ofMillis(callTimeoutMs))
                 .block();
             
             // Parse response
@@ -247,11 +273,36 @@ public class AISummaryService {
      * @return The most relevant excerpt from the chunk
      */
     public String extractRelevantExcerpt(String fullContent, String query) {
-        if (apiKey == null || apiKey.isEmpty() || apiKey.equals("not-set-please-configure")) {
+        return extractRelevantExcerpt(null, fullContent, query);
+    }
+    
+    /**
+     * Extract the most relevant contiguous portion of a chunk based on the search query.
+     * Results are cached per chunk, content and normalized query.
+     * 
+     * @param chunkId The chunk the content belongs to (may be null)
+     * @param fullContent The complete chunk content
+     * @param query The user's search query
+     * @return The most relevant excerpt from the chunk
+     */
+    public String extractRelevantExcerpt(Long chunkId, String fullContent, String query) {
+        if (!isApiKeyConfigured()) {
             logger.error("OpenAI API key is not configured");
+            searchMetrics.fallback("excerpt", "no_api_key");
             return fullContent; // Return full content as fallback
         }
         
+        try {
+            AIResultCache.Key key = new AIResultCache.Key("EXCERPT", chunkId, fullContent, query, MODEL, PROMPT_VERSION);
+            return resultCache.getOrLoad(key, () -> requestRelevantExcerpt(fullContent, query));
+        } catch (Exception e) {
+            logger.error("Error extracting relevant excerpt: {}", e.getMessage());
+            searchMetrics.fallback("excerpt", "error");
+            return fullContent; // Return full content as fallback
+        }
+    }
+    
+    private String requestRelevantExcerpt(String fullContent, String query) {
         try {
             String systemPrompt = """
                 You are an expert at identifying the most relevant portions of text based on search queries.
@@ -294,6 +345,7 @@ public class AISummaryService {
                 .bodyValue(requestBody)
                 .retrieve()
                 .bodyToMono(String.class)
+                .timeout(Duration.ofMillis(callTimeoutMs))
                 .block();
             
             // Parse response
@@ -306,18 +358,53 @@ public class AISummaryService {
             // (AI might occasionally paraphrase, which we want to avoid)
             if (fullContent.contains(excerpt.trim())) {
                 return excerpt.trim();
-            } else {
-                // If AI returned something not in the original, fall back to full content
-                logger.warn("AI returned excerpt not found in original text, using full content");
-                return fullContent;
             }
-            
         } catch (Exception e) {
-            logger.error("Error extracting relevant excerpt: {}", e.getMessage());
-            return fullContent; // Return full content as fallback
+            throw new RuntimeException("Failed to extract relevant excerpt", e);
+        }
+        
+        // If AI returned something not in the original, the caller falls back to full content
+        // (thrown rather than returned so the paraphrase is not cached)
+        logger.warn("AI returned excerpt not found in original text, using full content");
+        throw new IllegalStateException("AI returned excerpt not found in original text");
+    }
+    
+    private boolean isApiKeyConfigured() {
+        return apiKey != null && !apiKey.isEmpty() && !apiKey.equals("not-set-please-configure");
+    }
+    
+    private String encodeSummary(SearchResultSummary summary) {
+        try {
+            StoredSummary stored = new StoredSummary();
+            stored.setContextSummary(summary.getContextSummary());
+            stored.setRelevanceExplanation(summary.getRelevanceExplanation());
+            return objectMapper.writeValueAsString(stored);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Failed to encode summary", e);
         }
     }
     
+    private SearchResultSummary decodeSummary(String payload) throws JsonProcessingException {
+        StoredSummary stored = objectMapper.readValue(payload, StoredSummary.class);
+        return new SearchResultSummary(
+            stored.getContextSummary() != null ? stored.getContextSummary() : "",
+            stored.getRelevanceExplanation() != null ? stored.getRelevanceExplanation() : ""
+        );
+    }
+    
+    /**
+     * A summary as stored in the AI result cache
+     */
+    private static class StoredSummary {
+        private String contextSummary;
+        private String relevanceExplanation;
+        
+        public String getContextSummary() { return contextSummary; }
+        public void setContextSummary(String contextSummary) { this.contextSummary = contextSummary; }
+        public String getRelevanceExplanation() { return relevanceExplanation; }
+        public void setRelevanceExplanation(String relevanceExplanation) { this.relevanceExplanation = relevanceExplanation; }
+    }
+    
     /**
      * Inner class to hold summary and relevance information
      */
@@ -0,0 +1,376 @@
+package com.bungakukensaku.service;
+
+/**
+ * Single-pass text extraction for Aozora Bunko HTML.
+ *
+ * Produces exactly the text of the former regex pipeline (line-break tags to
+ * newlines, ruby to "base(reading)", other tags and named entities dropped,
+ * whitespace collapsed, trimmed), but as one linear scan: markup is tokenized
+ * and each character flows through small state machines for entities,
+ * space runs and blank lines straight into a per-thread buffer that is reused
+ * between calls. The only allocation per document is the returned string.
+ *
+ * Instances hold the scan state and are confined to one thread.
+ */
+public final class AozoraTextExtractor {
+
+    private static final ThreadLocal<AozoraTextExtractor> LOCAL = ThreadLocal.withInitial(AozoraTextExtractor::new);
+
+    // Buffers grow to the largest document seen; beyond this they are dropped after use
+    private static final int MAX_RETAINED_CAPACITY = 4 * 1024 * 1024;
+
+    private static final String MAIN_TEXT_QUOTED = "<div class=\"main_text\">";
+    private static final String MAIN_TEXT_BARE = "<div class=main_text>";
+
+    private StringBuilder out = new StringBuilder();
+    private final StringBuilder whitespaceRun = new StringBuilder();
+    private final StringBuilder entity = new StringBuilder();
+    private final StringBuilder rubyBase = new StringBuilder();
+    private final StringBuilder rubyReading = new StringBuilder();
+
+    private CharSequence html;
+    private int end;
+    private int noCloseFrom;
+    private boolean previousIdeographicSpace;
+    private boolean previousBlank;
+
+    private AozoraTextExtractor() {
+    }
+
+    /**
+     * Extract the reading text of an Aozora Bunko HTML document: everything from
+     * the main_text div to &lt;/body&gt;, or failing that the whole body with all
+     * markup replaced by single spaces.
+     *
+     * @param html Decoded HTML document
+     * @return Extracted text, or "" if the document has no body
+     */
+    public static String extract(CharSequence html) {
+        AozoraTextExtractor extractor = LOCAL.get();
+        try {
+            return extractor.run(html);
+        } finally {
+            extractor.reset();
+        }
+    }
+
+    private String run(CharSequence source) {
+        String text = source.toString();
+        this.html = text;
+
+        int start = text.indexOf(MAIN_TEXT_QUOTED);
+        if (start == -1) {
+            start = text.indexOf(MAIN_TEXT_BARE);
+        }
+        int bodyEnd = text.indexOf("</body>");
+
+        noCloseFrom = Integer.MAX_VALUE;
+        if (start != -1) {
+            end = bodyEnd >= start ? bodyEnd : text.length();
+            scanMainText(start);
+        } else {
+            int bodyStart = text.indexOf("<body>");
+            if (bodyStart == -1 || bodyEnd < bodyStart) {
+                return "";
+            }
+            end = bodyEnd;
+            scanBody(bodyStart);
+        }
+        return trimmed();
+    }
+
+    private void reset() {
+        html = null;
+        previousIdeographicSpace = false;
+        previousBlank = false;
+        whitespaceRun.setLength(0);
+        entity.setLength(0);
+        rubyBase.setLength(0);
+        rubyReading.setLength(0);
+        if (out.capacity() > MAX_RETAINED_CAPACITY) {
+            out = new StringBuilder();
+        } else {
+            out.setLength(0);
+        }
+    }
+
+    // ---- Main text: tags, ruby and line breaks ----
+
+    private void scanMainText(int pos) {
+        while (pos < end) {
+            char c = html.charAt(pos);
+            int close = c == '<' ? tagEnd(pos) : -1;
+            if (close == -1) {
+                entityStage(c);
+                pos++;
+                continue;
+            }
+
+            if (tagEquals(pos, close, "<ruby>")) {
+                int next = matchRuby(close + 1);
+                if (next != -1) {
+                    emitText(rubyBase);
+                    entityStage('(');
+                    emitText(rubyReading);
+                    entityStage(')');
+                    pos = next;
+                    continue;
+                }
+            } else if (isLineBreakTag(pos, close)) {
+                entityStage('\n');
+            }
+            pos = close + 1;
+        }
+        flushEntity();
+        flushWhitespaceRun();
+    }
+
+    /**
+     * Match {@code <rb>base</rb><rp>..</rp><rt>reading</rt><rp>..</rp></ruby>}
+     * right after a ruby tag, collecting base and reading
+     *
+     * @return Position after the closing ruby tag, or -1 if it is not that shape
+     */
+    private int matchRuby(int pos) {
+        rubyBase.setLength(0);
+        rubyReading.setLength(0);
+        pos = expect(pos, "<rb>");
+        pos = readRubyText(pos, rubyBase, true);
+        pos = expect(pos, "</rb>");
+        pos = expect(pos, "<rp>");
+        pos = readRubyText(pos, null, false);
+        pos = expect(pos, "</rp>");
+        pos = expect(pos, "<rt>");
+        pos = readRubyText(pos, rubyReading, true);
+        pos = expect(pos, "</rt>");
+        pos = expect(pos, "<rp>");
+        pos = readRubyText(pos, null, false);
+        pos = expect(pos, "</rp>");
+        return expect(pos, "</ruby>");
+    }
+
+    /**
+     * Read ruby text up to the next tag that is not a line break (line breaks count as text)
+     */
+    private int readRubyText(int pos, StringBuilder target, boolean required) {
+        if (pos == -1) {
+            return -1;
+        }
+        int length = 0;
+        while (pos < end) {
+            char c = html.charAt(pos);
+            if (c != '<') {
+                if (target != null) {
+                    target.append(c);
+                }
+                length++;
+                pos++;
+                continue;
+            }
+            int close = tagEnd(pos);
+            if (close == -1 || !isLineBreakTag(pos, close)) {
+                break;
+            }
+            if (target != null) {
+                target.append('\n');
+            }
+            length++;
+            pos = close + 1;
+        }
+        return required && length == 0 ? -1 : pos;
+    }
+
+    private int expect(int pos, String tag) {
+        if (pos == -1 || pos + tag.length() > end) {
+            return -1;
+        }
+        for (int i = 0; i < tag.length(); i++) {
+            if (html.charAt(pos + i) != tag.charAt(i)) {
+                return -1;
+            }
+        }
+        return pos + tag.length();
+    }
+
+    /**
+     * br, p and div tags become newlines; every other tag is dropped
+     */
+    private boolean isLineBreakTag(int start, int close) {
+        if (startsWith(start, close, "<br")) {
+            int i = start + 3;
+            while (i < close && isRegexWhitespace(html.charAt(i))) {
+                i++;
+            }
+            if (i < close && html.charAt(i) == '/') {
+                i++;
+            }
+            if (i == close) {
+                return true;
+            }
+        }
+        return startsWith(start, close, "<p")
+            || tagEquals(start, close, "</p>")
+            || startsWith(start, close, "<div")
+            || tagEquals(start, close, "</div>");
+    }
+
+    private void emitText(CharSequence text) {
+        for (int i = 0; i < text.length(); i++) {
+            entityStage(text.charAt(i));
+        }
+    }
+
+    // ---- Entities: &nbsp; is a space, other named entities are dropped ----
+
+    private void entityStage(char c) {
+        if (entity.length() > 0) {
+            if (isAsciiLetter(c)) {
+                entity.append(c);
+                return;
+            }
+            if (c == ';' && entity.length() > 1) {
+                boolean nbsp = entity.length() == 5 && entity.indexOf("nbsp", 1) == 1;
+                entity.setLength(0);
+                if (nbsp) {
+                    spaceStage(' ');
+                }
+                return;
+            }
+            flushEntity();
+        }
+        if (c == '&') {
+            entity.append(c);
+        } else {
+            spaceStage(c);
+        }
+    }
+
+    private void flushEntity() {
+        for (int i = 0; i < entity.length(); i++) {
+            spaceStage(entity.charAt(i));
+        }
+        entity.setLength(0);
+    }
+
+    // ---- Spaces: runs of ideographic spaces and of spaces/tabs each collapse to one ----
+
+    private void spaceStage(char c) {
+        if (c == '　') {
+            previousBlank = false;
+            if (!previousIdeographicSpace) {
+                previousIdeographicSpace = true;
+                lineStage(c);
+            }
+        } else if (c == ' ' || c == '\t') {
+            previousIdeographicSpace = false;
+            if (!previousBlank) {
+                previousBlank = true;
+                lineStage(' ');
+            }
+        } else {
+            previousIdeographicSpace = false;
+            previousBlank = false;
+            lineStage(c);
+        }
+    }
+
+    // ---- Blank lines: first to last newline of a whitespace run becomes one blank line ----
+
+    private void lineStage(char c) {
+        if (isRegexWhitespace(c)) {
+            whitespaceRun.append(c);
+        } else {
+            flushWhitespaceRun();
+            out.append(c);
+        }
+    }
+
+    private void flushWhitespaceRun() {
+        int first = whitespaceRun.indexOf("\n");
+        int last = whitespaceRun.lastIndexOf("\n");
+        if (first != last) {
+            out.append(whitespaceRun, 0, first).append("\n\n").append(whitespaceRun, last + 1, whitespaceRun.length());
+        } else {
+            out.append(whitespaceRun);
+        }
+        whitespaceRun.setLength(0);
+    }
+
+    // ---- Body fallback: every tag and whitespace run becomes one space ----
+
+    private void scanBody(int pos) {
+        while (pos < end) {
+            char c = html.charAt(pos);
+            int close = c == '<' ? tagEnd(pos) : -1;
+            if (close != -1) {
+                appendCollapsedSpace();
+                pos = close + 1;
+            } else {
+                if (isRegexWhitespace(c)) {
+                    appendCollapsedSpace();
+                } else {
+                    out.append(c);
+                }
+                pos++;
+            }
+        }
+    }
+
+    private void appendCollapsedSpace() {
+        int length = out.length();
+        if (length == 0 || out.charAt(length - 1) != ' ') {
+            out.append(' ');
+        }
+    }
+
+    // ---- Helpers ----
+
+    /**
+     * Position of the '>' closing a tag that opens at pos (at least one character
+     * between the brackets), or -1 if the '<' is plain text
+     */
+    private int tagEnd(int pos) {
+        if (pos >= noCloseFrom) {
+            return -1;
+        }
+        for (int i = pos + 1; i < end; i++) {
+            if (html.charAt(i) == '>') {
+                return i > pos + 1 ? i : -1;
+            }
+        }
+        // Nothing closes after here, so stray '<' further on need no scan either
+        noCloseFrom = pos;
+        return -1;
+    }
+
+    private boolean startsWith(int start, int close, String prefix) {
+        return close + 1 - start >= prefix.length() && expect(start, prefix) != -1;
+    }
+
+    private boolean tagEquals(int start, int close, String tag) {
+        return close + 1 - start == tag.length() && expect(start, tag) != -1;
+    }
+
+    private String trimmed() {
+        int from = 0;
+        int to = out.length();
+        while (from < to && out.charAt(from) <= ' ') {
+            from++;
+        }
+        while (to > from && out.charAt(to - 1) <= ' ') {
+            to--;
+        }
+        return out.substring(from, to);
+    }
+
+    private static boolean isAsciiLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    /**
+     * Whitespace as java.util.regex \s matches it (ASCII only; not the ideographic space)
+     */
+    private static boolean isRegexWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+}
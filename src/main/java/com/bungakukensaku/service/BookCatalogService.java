@@ -0,0 +1,143 @@
+package com.bungakukensaku.service;
+
+import com.bungakukensaku.dto.BookSummary;
+import com.bungakukensaku.dto.SeriesInfo;
+import com.bungakukensaku.model.Book;
+import com.bungakukensaku.repository.BookRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Precomputed, immutable snapshot of the book catalog for the search page.
+ * 
+ * Holds the series chips shown on the homepage, book titles by ID and the
+ * book IDs in each series. The snapshot is built once at startup and rebuilt
+ * only when books change (copy-on-write: readers always see a complete
+ * snapshot, refresh swaps in a new one atomically), so page views and
+ * searches no longer query and regroup the books table.
+ * 
+ * The snapshot holds immutable BookSummary values, never Book entities, so
+ * request threads share no JPA state (or lazy collections) through it.
+ */
+@Service
+public class BookCatalogService {
+    
+    private static final Logger logger = LoggerFactory.getLogger(BookCatalogService.class);
+    private static final String INDIVIDUAL_BOOKS = "INDIVIDUAL_BOOKS";
+    
+    @Autowired
+    private BookRepository bookRepository;
+    
+    private volatile CatalogSnapshot snapshot = CatalogSnapshot.EMPTY;
+    
+    @PostConstruct
+    public void init() {
+        try {
+            refresh();
+        } catch (Exception e) {
+            // Keep the application up; the next refresh (or admin change) rebuilds it
+            logger.error("Failed to build initial book catalog snapshot: {}", e.getMessage());
+        }
+    }
+    
+    /**
+     * Rebuild the snapshot from the database and swap it in.
+     * Call after any change to books, titles or series assignments.
+     */
+    public synchronized void refresh() {
+        List<Book> allBooks = bookRepository.findAllByOrderByCreatedAtAsc();
+        
+        // Group books by series (including null series), keeping creation order
+        Map<String, List<Book>> booksBySeries = allBooks.stream()
+                .collect(Collectors.groupingBy(book -> 
+                    book.getSeries() != null ? book.getSeries() : INDIVIDUAL_BOOKS,
+                    LinkedHashMap::new, Collectors.toList()));
+        
+        // Convert to SeriesInfo objects
+        List<SeriesInfo> seriesInfoList = new ArrayList<>();
+        Map<String, Set<Long>> bookIdsBySeries = new LinkedHashMap<>();
+        for (Map.Entry<String, List<Book>> entry : booksBySeries.entrySet()) {
+            String seriesName = entry.getKey();
+            List<Book> books = entry.getValue();
+            
+            if (INDIVIDUAL_BOOKS.equals(seriesName)) {
+                // Create individual SeriesInfo for each standalone book
+                for (Book book : books) {
+                    seriesInfoList.add(new SeriesInfo(book.getTitle(), List.of(BookSummary.from(book))));
+                }
+            } else {
+                // Create SeriesInfo for actual series
+                seriesInfoList.add(new SeriesInfo(seriesName,
+                    books.stream().map(BookSummary::from).collect(Collectors.toUnmodifiableList())));
+                Set<Long> ids = new LinkedHashSet<>();
+                books.forEach(book -> ids.add(book.getId()));
+                bookIdsBySeries.put(seriesName, Collections.unmodifiableSet(ids));
+            }
+        }
+        
+        Map<Long, String> titleById = new LinkedHashMap<>();
+        allBooks.forEach(book -> titleById.put(book.getId(), book.getTitle()));
+        
+        this.snapshot = new CatalogSnapshot(
+            Collections.unmodifiableList(seriesInfoList),
+            Collections.unmodifiableMap(titleById),
+            Collections.unmodifiableMap(bookIdsBySeries));
+        logger.info("Rebuilt book catalog snapshot: {} books, {} series", allBooks.size(), bookIdsBySeries.size());
+    }
+    
+    /**
+     * Get the current catalog snapshot
+     */
+    public CatalogSnapshot getSnapshot() {
+        return snapshot;
+    }
+    
+    /**
+     * Series chips for the homepage book selector
+     */
+    public List<SeriesInfo> getSeriesInfoList() {
+        return snapshot.getSeriesInfoList();
+    }
+    
+    /**
+     * Immutable view of the book catalog
+     */
+    public static class CatalogSnapshot {
+        static final CatalogSnapshot EMPTY = new CatalogSnapshot(List.of(), Map.of(), Map.of());
+        
+        private final List<SeriesInfo> seriesInfoList;
+        private final Map<Long, String> titleById;
+        private final Map<String, Set<Long>> bookIdsBySeries;
+        
+        CatalogSnapshot(List<SeriesInfo> seriesInfoList, Map<Long, String> titleById,
+                        Map<String, Set<Long>> bookIdsBySeries) {
+            this.seriesInfoList = seriesInfoList;
+            this.titleById = titleById;
+            this.bookIdsBySeries = bookIdsBySeries;
+        }
+        
+        public List<SeriesInfo> getSeriesInfoList() { return seriesInfoList; }
+        public Map<Long, String> getTitleById() { return titleById; }
+        public Map<String, Set<Long>> getBookIdsBySeries() { return bookIdsBySeries; }
+        
+        public String getTitle(Long bookId) {
+            return titleById.get(bookId);
+        }
+        
+        public Set<Long> getBookIds(String seriesName) {
+            return bookIdsBySeries.getOrDefault(seriesName, Set.of());
+        }
+    }
+}
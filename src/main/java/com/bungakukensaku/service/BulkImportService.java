@@ -0,0 +1,474 @@
+package com.bungakukensaku.service;
+
+import com.bungakukensaku.model.Book;
+import com.bungakukensaku.model.Chunk;
+import com.bungakukensaku.repository.BookRepository;
+import com.bungakukensaku.repository.ChunkRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Imports many books at once from a directory tree or a zip archive.
+ *
+ * The expected layout is Aozora Bunko style, {@code <author>/<title>.html}
+ * (EPUB and PDF files are accepted too): the author is taken from the parent
+ * directory and the title from the file name. Files are processed in parallel
+ * on a bounded pool through {@link DocumentProcessingService#processDocument},
+ * chunks are written in batches of their own transactions, and every file gets
+ * a line in the report whether it was imported, skipped or failed. A file that
+ * fails leaves no book behind, and books that already exist (same title and
+ * author) are skipped, so an import can simply be run again.
+ *
+ * Embeddings are not generated here; imported chunks are picked up by the
+ * Generate Embeddings job (or reuse stored embeddings for identical text).
+ */
+@Service
+public class BulkImportService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BulkImportService.class);
+
+    // Per-file outcomes
+    public static final String IMPORTED = "IMPORTED";
+    public static final String SKIPPED = "SKIPPED";
+    public static final String FAILED = "FAILED";
+
+    private static final Set<String> SUPPORTED_EXTENSIONS = Set.of(".html", ".htm", ".epub", ".pdf");
+    private static final String UNKNOWN_AUTHOR = "不明";
+
+    @Autowired
+    private DocumentProcessingService documentProcessingService;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private ChunkRepository chunkRepository;
+
+    @Autowired
+    private BookCatalogService bookCatalogService;
+
+    @Autowired
+    private LexicalIndexService lexicalIndexService;
+
+    // Only present when vector.store.type=memory
+    @Autowired(required = false)
+    private InMemoryVectorStore inMemoryVectorStore;
+
+    @Value("${ingestion.import.parallelism:0}")
+    private int parallelism;
+
+    @Value("${ingestion.import.chunk-batch-size:500}")
+    private int chunkBatchSize;
+
+    // Server directories can only be imported from inside this one
+    @Value("${ingestion.import.root:src/main/resources/static/books}")
+    private String importRoot;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private ExecutorService executor;
+
+    // "author/title" keys being imported right now, so parallel duplicates are caught too
+    private final Set<String> inProgress = ConcurrentHashMap.newKeySet();
+
+    public BulkImportService(PlatformTransactionManager transactionManager) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @PostConstruct
+    public void init() {
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadCounter = new AtomicInteger();
+        // Small queue plus caller-runs: a zip reader can never get far ahead of the workers
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(threads), runnable -> {
+                Thread thread = new Thread(runnable, "import-" + threadCounter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }, new ThreadPoolExecutor.CallerRunsPolicy());
+        logger.info("Initialized bulk importer ({} threads, chunk batch size {})", threads, chunkBatchSize);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Import every supported file under a directory of the import root
+     *
+     * @param directory Directory to walk, relative to ingestion.import.root; files
+     *                  directly inside it use defaultAuthor
+     * @param defaultAuthor Author for files with no author directory, or null
+     * @return Per-file report
+     * @throws IllegalArgumentException if the directory is outside the import root
+     */
+    public ImportReport importDirectory(String directory, String defaultAuthor) throws IOException {
+        Path root = resolveImportDirectory(directory);
+        if (!Files.isDirectory(root)) {
+            throw new IllegalArgumentException("Not a directory: " + directory);
+        }
+
+        long start = System.currentTimeMillis();
+        List<Path> files;
+        // Links are not followed, so nothing outside the root is read
+        try (Stream<Path> walk = Files.walk(root)) {
+            files = walk.filter(path -> Files.isRegularFile(path, LinkOption.NOFOLLOW_LINKS))
+                .filter(path -> isSupported(path.getFileName().toString()))
+                .sorted()
+                .toList();
+        }
+        logger.info("Bulk import of {} files from {}", files.size(), root);
+
+        List<Future<FileResult>> results = new ArrayList<>(files.size());
+        for (Path file : files) {
+            String name = root.relativize(file).toString().replace('\\', '/');
+            results.add(executor.submit(() -> importFile(name, file, defaultAuthor)));
+        }
+        return finish(results, start);
+    }
+
+    /**
+     * Resolve a requested directory against the import root, rejecting any path
+     * (through "..", an absolute path or a symbolic link) that leaves it
+     */
+    Path resolveImportDirectory(String directory) throws IOException {
+        Path root = Path.of(importRoot).toRealPath();
+        Path resolved = root.resolve(directory).normalize();
+        if (!resolved.startsWith(root)) {
+            throw new IllegalArgumentException("Directory is outside the import root: " + directory);
+        }
+        if (!Files.exists(resolved)) {
+            throw new IllegalArgumentException("Not a directory: " + directory);
+        }
+        Path real = resolved.toRealPath();
+        if (!real.startsWith(root)) {
+            throw new IllegalArgumentException("Directory is outside the import root: " + directory);
+        }
+        return real;
+    }
+
+    /**
+     * Import every supported entry of a zip archive. Entries are read one after
+     * another from the stream; the archive is never extracted as a whole.
+     *
+     * @param archive Zip archive stream
+     * @param defaultAuthor Author for entries with no author directory, or null
+     * @return Per-file report
+     */
+    public ImportReport importZip(InputStream archive, String defaultAuthor) throws IOException {
+        long start = System.currentTimeMillis();
+        List<Future<FileResult>> results = new ArrayList<>();
+
+        // Entry names in older Japanese archives are often Shift_JIS without the UTF-8 flag
+        try (ZipInputStream zip = new ZipInputStream(archive, zipNameCharset())) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                String name = entry.getName();
+                if (entry.isDirectory() || !isSupported(name) || isHiddenEntry(name)) {
+                    continue;
+                }
+                byte[] content = zip.readAllBytes();
+                results.add(executor.submit(() -> importEntry(name, content, defaultAuthor)));
+            }
+        }
+        logger.info("Bulk import of {} entries from zip archive", results.size());
+        return finish(results, start);
+    }
+
+    private ImportReport finish(List<Future<FileResult>> results, long start) {
+        ImportReport report = new ImportReport();
+        for (Future<FileResult> result : results) {
+            try {
+                report.add(result.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Bulk import interrupted", e);
+            } catch (ExecutionException e) {
+                // importFile reports its own failures; this only happens on errors outside it
+                throw new RuntimeException("Bulk import failed", e.getCause());
+            }
+        }
+        report.elapsedMs = System.currentTimeMillis() - start;
+
+        if (report.imported > 0) {
+            bookCatalogService.refresh();
+        }
+        logger.info("Bulk import finished: {} imported, {} skipped, {} failed, {} chunks in {}ms",
+            report.imported, report.skipped, report.failed, report.totalChunks, report.elapsedMs);
+        return report;
+    }
+
+    /**
+     * Import a zip entry: HTML straight from memory, EPUB and PDF (whose readers
+     * need a file) staged to a temp file that is removed afterwards
+     */
+    private FileResult importEntry(String name, byte[] content, String defaultAuthor) {
+        SourceDocument source = SourceDocument.of(name, content);
+        if (!(source.getExtension().equals(".epub") || source.getExtension().equals(".pdf"))) {
+            return importFile(name, source, defaultAuthor);
+        }
+
+        Path staged = null;
+        try {
+            staged = Files.createTempFile("bulk-import-", source.getExtension());
+            Files.write(staged, content);
+            return importFile(name, staged, defaultAuthor);
+        } catch (IOException e) {
+            FileResult result = new FileResult(name);
+            result.status = FAILED;
+            result.error = e.getMessage();
+            return result;
+        } finally {
+            if (staged != null) {
+                try {
+                    Files.deleteIfExists(staged);
+                } catch (IOException e) {
+                    logger.warn("Could not delete staged file {}: {}", staged, e.getMessage());
+                }
+            }
+        }
+    }
+
+    private FileResult importFile(String name, Path file, String defaultAuthor) {
+        return importFile(name, book -> documentProcessingService.processDocument(file.toString(), book), defaultAuthor);
+    }
+
+    private FileResult importFile(String name, SourceDocument source, String defaultAuthor) {
+        return importFile(name, book -> documentProcessingService.processDocument(source, book), defaultAuthor);
+    }
+
+    private FileResult importFile(String name, Function<Book, List<Chunk>> processor, String defaultAuthor) {
+        long start = System.currentTimeMillis();
+        FileResult result = new FileResult(name);
+        result.author = authorOf(name, defaultAuthor);
+        result.title = titleOf(name);
+
+        String key = result.author + "/" + result.title;
+        if (!inProgress.add(key)) {
+            result.status = SKIPPED;
+            result.error = "Same book is already being imported";
+            result.elapsedMs = System.currentTimeMillis() - start;
+            return result;
+        }
+
+        Book book = null;
+        try {
+            if (bookExists(result.title, result.author)) {
+                result.status = SKIPPED;
+                result.error = "Book already exists";
+                return result;
+            }
+
+            book = new Book();
+            book.setTitle(result.title);
+            book.setAuthor(result.author);
+            book.setYear(LocalDateTime.now().getYear()); // Default to current year, as for single uploads
+            book.setS3FilePath("local://" + name);
+            book = bookRepository.save(book);
+
+            List<Chunk> chunks = processor.apply(book);
+            saveInBatches(chunks);
+
+            if (book.getStaticTextPath() != null) {
+                book = bookRepository.save(book);
+                documentProcessingService.regenerateFullTextHTML(book, chunks);
+            }
+            lexicalIndexService.addChunks(chunks);
+            if (inMemoryVectorStore != null) {
+                inMemoryVectorStore.addChunks(chunks);
+            }
+
+            result.status = IMPORTED;
+            result.bookId = book.getId();
+            result.chunks = chunks.size();
+            for (Chunk chunk : chunks) {
+                result.characters += chunk.getContent().length();
+            }
+        } catch (Exception e) {
+            logger.error("Bulk import of {} failed: {}", name, e.getMessage(), e);
+            result.status = FAILED;
+            result.error = e.getMessage();
+            if (book != null && book.getId() != null) {
+                removeBook(book.getId());
+            }
+        } finally {
+            inProgress.remove(key);
+            result.elapsedMs = System.currentTimeMillis() - start;
+        }
+        return result;
+    }
+
+    private void saveInBatches(List<Chunk> chunks) {
+        for (int from = 0; from < chunks.size(); from += chunkBatchSize) {
+            List<Chunk> batch = chunks.subList(from, Math.min(from + chunkBatchSize, chunks.size()));
+            transactionTemplate.executeWithoutResult(status -> chunkRepository.saveAll(batch));
+        }
+    }
+
+    private boolean bookExists(String title, String author) {
+        for (Book existing : bookRepository.findByAuthor(author)) {
+            if (title.equals(existing.getTitle())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Undo a partly imported book (its chunks go with it)
+     */
+    private void removeBook(Long bookId) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                List<Long> chunkIds = new ArrayList<>();
+                for (Chunk chunk : chunkRepository.findByBookId(bookId)) {
+                    chunkIds.add(chunk.getId());
+                }
+                if (!chunkIds.isEmpty()) {
+                    chunkRepository.deleteByIdIn(chunkIds);
+                    lexicalIndexService.removeChunks(chunkIds);
+                    if (inMemoryVectorStore != null) {
+                        inMemoryVectorStore.removeChunks(chunkIds);
+                    }
+                }
+                bookRepository.deleteById(bookId);
+            });
+        } catch (Exception e) {
+            logger.error("Could not remove partly imported book {}: {}", bookId, e.getMessage());
+        }
+    }
+
+    /**
+     * The parent directory's name, or the default when the file has none
+     */
+    static String authorOf(String name, String defaultAuthor) {
+        String[] parts = name.split("/");
+        if (parts.length >= 2 && !parts[parts.length - 2].isBlank()) {
+            return parts[parts.length - 2].trim();
+        }
+        return defaultAuthor != null && !defaultAuthor.isBlank() ? defaultAuthor.trim() : UNKNOWN_AUTHOR;
+    }
+
+    /**
+     * The file name without extension or the "-<book id>" suffix of generated static files
+     */
+    static String titleOf(String name) {
+        String fileName = name.substring(name.lastIndexOf('/') + 1);
+        int dot = fileName.lastIndexOf('.');
+        String title = dot > 0 ? fileName.substring(0, dot) : fileName;
+        title = title.replaceFirst("-\\d+$", "");
+        return title.isBlank() ? fileName : title.trim();
+    }
+
+    private static boolean isSupported(String name) {
+        return SUPPORTED_EXTENSIONS.contains(extensionOf(name));
+    }
+
+    private static boolean isHiddenEntry(String name) {
+        return name.startsWith("__MACOSX/") || name.contains("/.") || name.startsWith(".");
+    }
+
+    private static String extensionOf(String name) {
+        int dot = name.lastIndexOf('.');
+        return dot >= 0 ? name.substring(dot).toLowerCase(Locale.ROOT) : "";
+    }
+
+    private static Charset zipNameCharset() {
+        // ZipInputStream uses UTF-8 for flagged entries regardless; this is the fallback for the rest
+        return Charset.isSupported("MS932") ? Charset.forName("MS932") : StandardCharsets.UTF_8;
+    }
+
+    /**
+     * Outcome of importing one file
+     */
+    public static class FileResult {
+        private final String path;
+        private String status;
+        private String title;
+        private String author;
+        private Long bookId;
+        private int chunks;
+        private long characters;
+        private long elapsedMs;
+        private String error;
+
+        FileResult(String path) {
+            this.path = path;
+        }
+
+        public String getPath() { return path; }
+        public String getStatus() { return status; }
+        public String getTitle() { return title; }
+        public String getAuthor() { return author; }
+        public Long getBookId() { return bookId; }
+        public int getChunks() { return chunks; }
+        public long getCharacters() { return characters; }
+        public long getElapsedMs() { return elapsedMs; }
+        public String getError() { return error; }
+    }
+
+    /**
+     * Totals and per-file results of one bulk import, in file order
+     */
+    public static class ImportReport {
+        private final List<FileResult> files = new ArrayList<>();
+        private int imported;
+        private int skipped;
+        private int failed;
+        private long totalChunks;
+        private long elapsedMs;
+
+        private void add(FileResult result) {
+            files.add(result);
+            switch (result.status) {
+                case IMPORTED -> {
+                    imported++;
+                    totalChunks += result.chunks;
+                }
+                case SKIPPED -> skipped++;
+                default -> failed++;
+            }
+        }
+
+        public List<FileResult> getFiles() { return files; }
+        public int getTotalFiles() { return files.size(); }
+        public int getImported() { return imported; }
+        public int getSkipped() { return skipped; }
+        public int getFailed() { return failed; }
+        public long getTotalChunks() { return totalChunks; }
+        public long getElapsedMs() { return elapsedMs; }
+    }
+}
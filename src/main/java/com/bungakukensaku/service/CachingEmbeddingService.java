@@ -0,0 +1,276 @@
+package com.bungakukensaku.service;
+
+import com.bungakukensaku.model.EmbeddingCacheEntry;
+import com.bungakukensaku.repository.EmbeddingCacheRepository;
+import com.bungakukensaku.util.TextFingerprint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caching decorator around OpenAIEmbeddingService.
+ * 
+ * Short texts (search queries) are looked up in a bounded, TTL-based in-memory
+ * LRU keyed by (model, normalized text hash). On a miss the persistent
+ * embedding_cache table is checked when persistence is enabled, so popular
+ * queries skip the OpenAI round trip even after a restart. Misses are embedded
+ * from the caller's original text; normalization only decides which texts
+ * share an entry. Long texts are passed straight through to OpenAI.
+ * 
+ * This is the query path only. Bulk chunk embedding (EmbeddingBatchExecutor)
+ * calls OpenAIEmbeddingService directly so chunks never fill the query cache.
+ * 
+ * Chunk embeddings are also stored in embedding_cache, keyed by the hash of
+ * the exact chunk text (see Chunk.contentHash), so reprocessing a book only
+ * re-embeds chunks whose text actually changed. They are stored under their
+ * own kind, apart from query entries. This part is always on, independent of
+ * embedding.cache.persist.
+ * 
+ * Cached arrays are shared between callers and must not be modified.
+ */
+@Service
+@Primary
+public class CachingEmbeddingService implements EmbeddingService, MeterBinder {
+    
+    private static final Logger logger = LoggerFactory.getLogger(CachingEmbeddingService.class);
+    
+    // One batch per call; rows another writer stored first are left as they are
+    private static final String INSERT_CHUNK_EMBEDDING =
+        "INSERT INTO embedding_cache (content_hash, model, kind, embedding, created_at) VALUES (?, ?, ?, ?, ?) " +
+        "ON CONFLICT (content_hash, model, kind) DO NOTHING";
+    
+    @Autowired
+    private OpenAIEmbeddingService delegate;
+    
+    @Autowired
+    private EmbeddingCacheRepository embeddingCacheRepository;
+    
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    
+    @Value("${embedding.cache.max-entries:10000}")
+    private int maxEntries;
+    
+    @Value("${embedding.cache.ttl-minutes:1440}")
+    private long ttlMinutes;
+    
+    @Value("${embedding.cache.max-text-length:512}")
+    private int maxTextLength;
+    
+    @Value("${embedding.cache.persist:false}")
+    private boolean persist;
+    
+    private LruCache<String, float[]> cache;
+    
+    private final AtomicLong persistentHits = new AtomicLong();
+    
+    @PostConstruct
+    public void init() {
+        this.cache = new LruCache<>(maxEntries, ttlMinutes * 60_000L);
+        logger.info("Initialized query embedding cache (maxEntries={}, ttl={}min, persist={})",
+            maxEntries, ttlMinutes, persist);
+    }
+    
+    @Override
+    public float[] generateEmbedding(String text) {
+        return generateEmbeddings(List.of(text)).get(0);
+    }
+    
+    @Override
+    public List<float[]> generateEmbeddings(List<String> texts) {
+        String model = delegate.getModelName();
+        List<float[]> results = new ArrayList<>(texts.size());
+        
+        // Texts that still need a remote call, with their result positions
+        List<Integer> missIndexes = new ArrayList<>();
+        List<String> missTexts = new ArrayList<>();
+        List<String> missKeys = new ArrayList<>();
+        
+        for (int i = 0; i < texts.size(); i++) {
+            String text = texts.get(i);
+            results.add(null);
+            
+            if (!isCacheable(text)) {
+                missIndexes.add(i);
+                missTexts.add(text);
+                missKeys.add(null);
+                continue;
+            }
+            
+            String normalized = TextFingerprint.normalize(text);
+            String hash = TextFingerprint.sha256(normalized);
+            String key = model + ":" + hash;
+            
+            float[] cached = cache.get(key);
+            if (cached == null && persist) {
+                cached = loadPersisted(hash, model);
+                if (cached != null) {
+                    cache.put(key, cached);
+                }
+            }
+            
+            if (cached != null) {
+                results.set(i, cached);
+            } else {
+                missIndexes.add(i);
+                missTexts.add(text);
+                missKeys.add(key);
+            }
+        }
+        
+        if (missTexts.isEmpty()) {
+            logger.debug("All {} embeddings served from cache", texts.size());
+            return results;
+        }
+        
+        List<float[]> fresh = delegate.generateEmbeddings(missTexts);
+        for (int j = 0; j < fresh.size(); j++) {
+            float[] embedding = fresh.get(j);
+            results.set(missIndexes.get(j), embedding);
+            
+            String key = missKeys.get(j);
+            if (key != null) {
+                cache.put(key, embedding);
+                if (persist) {
+                    savePersisted(key.substring(model.length() + 1), model, embedding);
+                }
+            }
+        }
+        
+        return results;
+    }
+    
+    @Override
+    public int getEmbeddingDimension() {
+        return delegate.getEmbeddingDimension();
+    }
+    
+    @Override
+    public String getModelName() {
+        return delegate.getModelName();
+    }
+    
+    /**
+     * Look up stored embeddings for the given content hashes (current model)
+     * 
+     * @param contentHashes SHA-256 hashes of the exact texts
+     * @return Embeddings by hash; hashes without a stored embedding are absent
+     */
+    public Map<String, float[]> findStoredEmbeddings(Collection<String> contentHashes) {
+        Map<String, float[]> found = new HashMap<>();
+        if (contentHashes.isEmpty()) {
+            return found;
+        }
+        try {
+            for (EmbeddingCacheEntry entry : embeddingCacheRepository.findByModelAndKindAndContentHashIn(
+                    delegate.getModelName(), EmbeddingCacheEntry.CHUNK, contentHashes)) {
+                found.put(entry.getContentHash(), entry.getEmbedding());
+            }
+        } catch (Exception e) {
+            // Reuse is an optimization; without it the chunks are simply embedded again
+            logger.warn("Error reading stored embeddings: {}", e.getMessage());
+        }
+        return found;
+    }
+    
+    /**
+     * Store chunk embeddings by content hash (current model) in one batched insert,
+     * skipping hashes already stored
+     * 
+     * @param embeddingsByHash Embeddings keyed by the SHA-256 hash of the exact text
+     */
+    public void storeEmbeddings(Map<String, float[]> embeddingsByHash) {
+        if (embeddingsByHash.isEmpty()) {
+            return;
+        }
+        String model = delegate.getModelName();
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        try {
+            jdbcTemplate.batchUpdate(INSERT_CHUNK_EMBEDDING, new ArrayList<>(embeddingsByHash.entrySet()),
+                embeddingsByHash.size(), (ps, entry) -> {
+                    float[] embedding = entry.getValue();
+                    Float[] boxed = new Float[embedding.length];
+                    for (int i = 0; i < embedding.length; i++) {
+                        boxed[i] = embedding[i];
+                    }
+                    ps.setString(1, entry.getKey());
+                    ps.setString(2, model);
+                    ps.setString(3, EmbeddingCacheEntry.CHUNK);
+                    ps.setArray(4, ps.getConnection().createArrayOf("float4", boxed));
+                    ps.setTimestamp(5, now);
+                });
+        } catch (Exception e) {
+            // Reuse is an optimization; without it the chunks are simply embedded again
+            logger.warn("Error storing embeddings for reuse: {}", e.getMessage());
+        }
+    }
+    
+    /**
+     * Get hit/miss/eviction counters for the in-memory cache plus persistent hits
+     */
+    public Map<String, Object> getCacheStats() {
+        Map<String, Object> stats = cache.getStats();
+        stats.put("persistentHits", persistentHits.get());
+        stats.put("persistenceEnabled", persist);
+        return stats;
+    }
+    
+    /**
+     * Publish hit/miss counters as search.cache{cache=embedding}
+     */
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("search.cache", this, c -> c.cache.getHitCount())
+            .tag("cache", "embedding").tag("result", "memory_hit").register(registry);
+        FunctionCounter.builder("search.cache", this, c -> c.cache.getMissCount())
+            .tag("cache", "embedding").tag("result", "memory_miss").register(registry);
+        FunctionCounter.builder("search.cache", persistentHits, AtomicLong::get)
+            .tag("cache", "embedding").tag("result", "persistent_hit").register(registry);
+    }
+    
+    private boolean isCacheable(String text) {
+        return text != null && !text.isBlank() && text.length() <= maxTextLength;
+    }
+    
+    private float[] loadPersisted(String hash, String model) {
+        try {
+            Optional<EmbeddingCacheEntry> entry =
+                embeddingCacheRepository.findByContentHashAndModelAndKind(hash, model, EmbeddingCacheEntry.QUERY);
+            if (entry.isPresent()) {
+                persistentHits.incrementAndGet();
+                return entry.get().getEmbedding();
+            }
+        } catch (Exception e) {
+            // The cache is an optimization; never fail a search because of it
+            logger.warn("Error reading persisted embedding: {}", e.getMessage());
+        }
+        return null;
+    }
+    
+    private void savePersisted(String hash, String model, float[] embedding) {
+        try {
+            embeddingCacheRepository.save(new EmbeddingCacheEntry(hash, model, EmbeddingCacheEntry.QUERY, embedding));
+        } catch (Exception e) {
+            // Most likely a concurrent insert of the same text; safe to ignore
+            logger.debug("Could not persist embedding for {}: {}", hash, e.getMessage());
+        }
+    }
+}
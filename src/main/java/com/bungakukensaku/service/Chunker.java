@@ -0,0 +1,257 @@
+package com.bungakukensaku.service;
+
+import com.bungakukensaku.model.Book;
+import com.bungakukensaku.model.Chunk;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.util.function.Consumer;
+
+/**
+ * Streaming splitter of text into overlapping chunks.
+ *
+ * Text is appended in pieces of any size and only the current window is kept,
+ * in a ring buffer one character larger than the longest chunk, so memory is bounded by
+ * the chunk size whatever the length of the book. Each chunk is handed to the
+ * sink as soon as the text after it has started to arrive.
+ *
+ * A window is the longest run of text that encodes to at most maxTokens tokens
+ * (and at most maxChars characters). If more text follows it and the window
+ * has a 。 in its last fifth, it ends just after the last one. The next window
+ * starts at the longest tail of the chunk that fits in overlapTokens tokens. The last chunk
+ * of a section is the one that reaches its end.
+ *
+ * Text is split into sections: plain text, or chapters whose chunks carry the
+ * chapter title, number, position and percentage. Positions are counted from
+ * the start of the section.
+ *
+ * Not thread-safe; a chunker belongs to the thread that processes the document.
+ */
+public final class Chunker {
+
+    // A 。 after this fraction of the window ends the chunk early
+    private static final double SENTENCE_SNAP = 0.8;
+
+    // Rough page size used to number pages within a section
+    private static final int CHARS_PER_PAGE = 2000;
+
+    private final Book book;
+    private final Tokenizer tokenizer;
+    private final int maxTokens;
+    private final int overlapTokens;
+    private final Consumer<Chunk> sink;
+    private final char[] ring;
+    private final char[] window;
+
+    // Current section; chapterNumber is null for plain text
+    private String chapterTitle;
+    private Integer chapterNumber;
+    private String anchorId;
+    private int sectionLength;
+
+    private int windowStart;   // Section position of the next chunk's first character
+    private int filled;        // Characters of the section appended so far
+    private int chunkNumber;   // Chunks emitted in the section
+    private int totalChunks;
+    private boolean inSection;
+
+    /**
+     * @param book Book the chunks belong to
+     * @param tokenizer Measures chunks in the embedding model's tokens
+     * @param maxTokens Maximum tokens per chunk
+     * @param overlapTokens Maximum tokens repeated at the start of the next chunk
+     * @param maxChars Maximum chunk length in characters (the buffer size)
+     * @param sink Receives every chunk in text order
+     */
+    public Chunker(Book book, Tokenizer tokenizer, int maxTokens, int overlapTokens, int maxChars, Consumer<Chunk> sink) {
+        if (maxTokens < 1 || overlapTokens < 0 || overlapTokens >= maxTokens || maxChars < 2) {
+            throw new IllegalArgumentException("Invalid chunk size " + maxTokens + " / overlap " + overlapTokens
+                + " tokens, " + maxChars + " chars");
+        }
+        this.book = book;
+        this.tokenizer = tokenizer;
+        this.maxTokens = maxTokens;
+        this.overlapTokens = overlapTokens;
+        this.sink = sink;
+        this.ring = new char[maxChars + 1];
+        this.window = new char[maxChars];
+    }
+
+    /**
+     * Start a section of plain text (finishing the current section)
+     */
+    public Chunker startText() {
+        startSection(null, null, null, -1);
+        return this;
+    }
+
+    /**
+     * Start a chapter (finishing the current section)
+     *
+     * @param title Chapter title
+     * @param number Chapter number
+     * @param anchorId Anchor of the chapter heading in the source, or null
+     * @param length Length of the chapter text if known, for percentages; -1 if not
+     */
+    public Chunker startChapter(String title, int number, String anchorId, int length) {
+        startSection(title, number, anchorId, length);
+        return this;
+    }
+
+    /**
+     * Append text to the current section
+     */
+    public Chunker append(CharSequence text) {
+        return append(text, 0, text.length());
+    }
+
+    /**
+     * Append text[from, to) to the current section
+     */
+    public Chunker append(CharSequence text, int from, int to) {
+        if (!inSection) {
+            startText();
+        }
+        for (int i = from; i < to; i++) {
+            if (filled - windowStart == ring.length) {
+                // A full window with text after it: its chunk is final
+                emitWindow();
+            }
+            ring[filled % ring.length] = text.charAt(i);
+            filled++;
+        }
+        return this;
+    }
+
+    /**
+     * Append everything a reader supplies to the current section
+     */
+    public Chunker append(Reader reader) throws IOException {
+        char[] buffer = new char[8192];
+        int read;
+        while ((read = reader.read(buffer)) != -1) {
+            append(CharBuffer.wrap(buffer, 0, read), 0, read);
+        }
+        return this;
+    }
+
+    /**
+     * Emit the rest of the current section
+     *
+     * @return Number of chunks emitted so far, over all sections
+     */
+    public int finish() {
+        if (inSection) {
+            while (windowStart < filled) {
+                emitWindow();
+            }
+            inSection = false;
+        }
+        return totalChunks;
+    }
+
+    private void startSection(String title, Integer number, String anchor, int length) {
+        finish();
+        this.chapterTitle = title;
+        this.chapterNumber = number;
+        this.anchorId = anchor;
+        this.sectionLength = length;
+        this.windowStart = 0;
+        this.filled = 0;
+        this.chunkNumber = 0;
+        this.inSection = true;
+    }
+
+    private void emitWindow() {
+        int start = windowStart;
+        int length = Math.min(window.length, filled - start);
+        for (int i = 0; i < length; i++) {
+            window[i] = charAt(start + i);
+        }
+        if (length < filled - start && length > 1 && Character.isHighSurrogate(window[length - 1])) {
+            // Keep a surrogate pair cut by the character limit together in the next chunk
+            length--;
+        }
+        CharSequence text = CharBuffer.wrap(window, 0, length);
+
+        int size = tokenizer.fitPrefix(text, 0, length, maxTokens);
+        boolean more = start + size < filled;
+
+        // Try to break at a sentence boundary
+        if (more) {
+            for (int i = size - 1; i > size * SENTENCE_SNAP; i--) {
+                if (window[i] == '。') {
+                    size = i + 1;
+                    break;
+                }
+            }
+        }
+
+        String content = new String(window, 0, size);
+        emit(start, start + size, content);
+
+        if (!more) {
+            windowStart = filled;
+        } else {
+            windowStart = start + overlapStart(text, size);
+        }
+    }
+
+    /**
+     * Start of the longest tail of window[0, size) within overlapTokens tokens,
+     * i.e. where the next chunk starts; always after the window's first character
+     */
+    private int overlapStart(CharSequence text, int size) {
+        int low = 1;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (tokenizer.countTokens(text, mid, size) <= overlapTokens) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        if (low < size && Character.isLowSurrogate(window[low]) && Character.isHighSurrogate(window[low - 1])) {
+            low++;
+        }
+        return low;
+    }
+
+    private void emit(int start, int end, String content) {
+        Chunk chunk = new Chunk();
+        chunk.setBook(book);
+        chunk.setContent(content);
+        chunk.setPageNum(start / CHARS_PER_PAGE + 1);
+
+        if (chapterNumber == null) {
+            chunk.setMetadata(String.format(
+                "{\"chunk_number\": %d, \"start_position\": %d, \"end_position\": %d}",
+                chunkNumber, start, end));
+        } else {
+            Integer percentage = sectionLength > 0 ? Math.min(100, (int) ((long) start * 100 / sectionLength)) : null;
+            chunk.setChapter(chapterTitle);
+            chunk.setChapterNumber(chapterNumber);
+            chunk.setChapterPosition(start);
+            chunk.setChapterPercentage(percentage);
+            chunk.setMetadata(String.format(
+                "{\"chunk_number\": %d, \"chapter\": %d, \"chapter_title\": \"%s\", \"anchor_id\": \"%s\", \"position_in_chapter\": %d, \"percentage\": %s}",
+                chunkNumber, chapterNumber, jsonEscape(chapterTitle), anchorId != null ? jsonEscape(anchorId) : "",
+                start, percentage != null ? percentage : "null"));
+        }
+
+        chunkNumber++;
+        totalChunks++;
+        sink.accept(chunk);
+    }
+
+    private char charAt(int pos) {
+        return ring[pos % ring.length];
+    }
+
+    private static String jsonEscape(String text) {
+        return text == null ? "" : text.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+}
@@ -7,11 +7,18 @@ import com.bungakukensaku.service.EPUBChapterExtractor.ChapterContent;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.text.PDFTextStripper;
 import org.apache.pdfbox.Loader;
+import org.apache.tika.detect.EncodingDetector;
 import org.apache.tika.metadata.Metadata;
 import org.apache.tika.parser.AutoDetectParser;
 import org.apache.tika.parser.ParseContext;
-import org.apache.tika.parser.Parser;
 import org.apache.tika.sax.BodyContentHandler;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.nodes.TextNode;
+import org.jsoup.select.NodeFilter;
+import org.jsoup.select.NodeTraversor;
 import org.springframework.stereotype.Service;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.slf4j.Logger;
@@ -21,12 +28,17 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 
 /**
  * DocumentProcessingService handles document text extraction and chunking
@@ -51,10 +63,22 @@ public class DocumentProcessingService {
     @Autowired
     private EPUBRubyPreservingExtractor rubyPreservingExtractor;
     
+    @Autowired
+    private CachingEmbeddingService cachingEmbeddingService;
+    
+    @Autowired
+    private PdfTextExtractor pdfTextExtractor;
+    
+    @Autowired
+    private Tokenizer tokenizer;
+    
+    // Tika parsers are stateless and thread-safe; building one loads every parser via the service loader
+    private final AutoDetectParser tikaParser = new AutoDetectParser();
+    
     // Configuration constants
-    private static final int CHUNK_SIZE = 500; // tokens (approximate)
+    private static final int CHUNK_SIZE = 500; // tokens
     private static final int OVERLAP_SIZE = 50; // tokens overlap between chunks
-    private static final int CHARS_PER_TOKEN = 3; // Rough estimate for Japanese text
+    private static final int MAX_CHARS_PER_TOKEN = 6; // Caps chunk length for text that encodes very densely
     
     /**
      * Process a document (PDF or EPUB) and extract text chunks
@@ -64,48 +88,96 @@ public class DocumentProcessingService {
      * @return List of text chunks ready for embedding
      */
     public List<Chunk> processDocument(String filePath, Book book) {
+        if (isHTML(filePath)) {
+            try {
+                return processDocument(filePath, SourceDocument.open(Paths.get(filePath)), book);
+            } catch (IOException e) {
+                logger.error("Error reading document: {}", e.getMessage(), e);
+                throw new RuntimeException("Failed to process document", e);
+            }
+        }
+        return processDocument(filePath, null, book);
+    }
+    
+    /**
+     * Process a document that has already been read. HTML is processed from memory;
+     * PDF and EPUB are read by their libraries and so need the document's file.
+     * 
+     * @param source The document
+     * @param book The book entity this document belongs to
+     * @return List of text chunks ready for embedding
+     */
+    public List<Chunk> processDocument(SourceDocument source, Book book) {
+        if (isHTML(source.getName())) {
+            return processDocument(source.getName(), source, book);
+        }
+        if (source.getPath() == null) {
+            throw new IllegalArgumentException("PDF and EPUB documents must be processed from a file: " + source.getName());
+        }
+        return processDocument(source.getPath().toString(), null, book);
+    }
+    
+    private static boolean isHTML(String name) {
+        String lowerName = name.toLowerCase();
+        return lowerName.endsWith(".html") || lowerName.endsWith(".htm");
+    }
+    
+    private List<Chunk> processDocument(String filePath, SourceDocument htmlSource, Book book) {
+        // Estimated counts move chunk boundaries, and with them content hashes, embedding reuse and reprocess diffs
+        if (!tokenizer.isExact()) {
+            throw new IllegalStateException("Tokenizer vocabulary is not loaded (see tokenizer.vocabulary); "
+                + "refusing to chunk " + filePath + " with estimated token counts");
+        }
         logger.info("Starting to process document: {}", filePath);
         List<Chunk> chunks = new ArrayList<>();
         String fullText = null;
         
         try {
             // Determine file type and extract text accordingly
-            if (filePath.toLowerCase().endsWith(".pdf")) {
-                logger.info("Processing as PDF file");
-                fullText = extractTextFromPDF(filePath);
-                logger.info("Extracted {} characters from PDF", fullText.length());
-                chunks = createChunks(fullText, book);
-            } else if (filePath.toLowerCase().endsWith(".epub")) {
-                logger.info("Processing as EPUB file with chapter awareness");
-                // Use chapter-aware processing for EPUBs
-                chunks = processEPUBWithChapters(filePath, book);
-                logger.info("Created {} chunks from EPUB with chapter data", chunks.size());
-                // For EPUB, reconstruct full text from chunks for HTML generation
-                fullText = reconstructFullTextFromChunks(chunks);
-            } else if (filePath.toLowerCase().endsWith(".html") || filePath.toLowerCase().endsWith(".htm")) {
-                logger.info("Processing as HTML file: {}", filePath);
+            if (htmlSource != null) {
+                logger.info("Processing as HTML file: {} ({}, {} bytes)", filePath, htmlSource.getCharset(), htmlSource.getByteLength());
                 // Check if HTML has chapter structure for intelligent processing
-                boolean hasChapters = hasChapterStructure(filePath);
+                boolean hasChapters = hasChapterStructure(htmlSource);
                 logger.info("HTML chapter structure check result: {}", hasChapters);
                 
                 if (hasChapters) {
                     logger.info("HTML file has chapter structure - using chapter-aware processing");
-                    chunks = processHTMLWithChapters(filePath, book);
+                    chunks = processHTMLWithChapters(htmlSource, book);
                     logger.info("Created {} chunks from HTML with chapter data", chunks.size());
                     // For structured HTML, reconstruct full text from chunks
                     fullText = reconstructFullTextFromChunks(chunks);
                 } else {
                     logger.info("HTML file is simple document - using text extraction");
-                    fullText = extractTextFromHTML(filePath);
+                    fullText = extractTextFromHTML(htmlSource);
                     logger.info("Extracted {} characters from HTML", fullText.length());
                     chunks = createChunks(fullText, book);
                 }
+            } else if (filePath.toLowerCase().endsWith(".pdf")) {
+                logger.info("Processing as PDF file");
+                chunks = chunkPDF(filePath, book);
+                // Chunks carry the whole text; it is never held as one string
+                fullText = "";
+            } else if (filePath.toLowerCase().endsWith(".epub")) {
+                logger.info("Processing as EPUB file with chapter awareness");
+                // Use chapter-aware processing for EPUBs
+                chunks = processEPUBWithChapters(filePath, book);
+                logger.info("Created {} chunks from EPUB with chapter data", chunks.size());
+                // For EPUB, reconstruct full text from chunks for HTML generation
+                fullText = reconstructFullTextFromChunks(chunks);
             } else {
                 throw new IllegalArgumentException("Unsupported file format. Only PDF, EPUB, and HTML are supported.");
             }
             
             logger.info("Created {} chunks from document", chunks.size());
             
+            // Record text order explicitly; reprocessing keeps unchanged chunks, so IDs alone won't reflect it
+            for (int i = 0; i < chunks.size(); i++) {
+                chunks.get(i).setChunkIndex(i);
+            }
+            
+            // Chunks whose exact text was embedded before keep that embedding
+            reuseStoredEmbeddings(chunks);
+            
             // Save full text as static HTML file - but chunks don't have IDs yet
             // We'll need to regenerate after saving
             if (fullText != null && book.getId() != null) {
@@ -123,30 +195,60 @@ public class DocumentProcessingService {
     }
     
     /**
-     * Extract text from a PDF file
+     * Attach stored embeddings to chunks whose content hash has one, so only
+     * new or changed text is sent to the embedding API
+     * 
+     * @param chunks Freshly created chunks (not yet saved)
+     */
+    private void reuseStoredEmbeddings(List<Chunk> chunks) {
+        Set<String> hashes = new HashSet<>();
+        for (Chunk chunk : chunks) {
+            if (chunk.getContentHash() != null) {
+                hashes.add(chunk.getContentHash());
+            }
+        }
+        
+        Map<String, float[]> stored = cachingEmbeddingService.findStoredEmbeddings(hashes);
+        int reused = 0;
+        for (Chunk chunk : chunks) {
+            float[] embedding = stored.get(chunk.getContentHash());
+            if (embedding != null) {
+                chunk.setEmbedding(embedding);
+                reused++;
+            }
+        }
+        logger.info("Reused stored embeddings for {} of {} chunks", reused, chunks.size());
+    }
+    
+    /**
+     * Extract and chunk the text of a PDF file
+     * 
+     * Page ranges are extracted and cleaned in parallel by {@link PdfTextExtractor};
+     * each arrives here in page order as soon as it and every earlier range are done
+     * and goes straight into the chunker.
      * 
      * @param pdfPath Path to the PDF file
-     * @return Extracted text as a single string
+     * @param book Book entity for metadata
+     * @return Chunks of the PDF's text
      * @throws IOException if PDF cannot be read
      */
-    private String extractTextFromPDF(String pdfPath) throws IOException {
-        File pdfFile = new File(pdfPath);
+    private List<Chunk> chunkPDF(String pdfPath, Book book) throws IOException {
+        List<Chunk> chunks = new ArrayList<>();
+        Chunker chunker = newChunker(book, plainTextSink(chunks)).startText();
         
-        try (PDDocument document = Loader.loadPDF(pdfFile)) {
-            PDFTextStripper stripper = new PDFTextStripper();
-            
-            // Configure for better Japanese text extraction
-            stripper.setSortByPosition(true);
-            stripper.setAddMoreFormatting(true);
-            
-            // Extract all pages
-            String text = stripper.getText(document);
-            
-            // Clean up the text
-            text = cleanText(text);
-            
-            return text;
-        }
+        // Pieces are newline-terminated lines; the text's final newline is dropped as cleanText does
+        boolean[] pendingNewline = {false};
+        int pages = pdfTextExtractor.extractText(Paths.get(pdfPath), piece -> {
+            if (pendingNewline[0]) {
+                chunker.append("\n");
+            }
+            chunker.append(piece, 0, piece.length() - 1);
+            pendingNewline[0] = true;
+        });
+        chunker.finish();
+        
+        logger.info("Chunked {} pages of PDF into {} chunks", pages, chunks.size());
+        return chunks;
     }
     
     /**
@@ -175,18 +277,13 @@ public class DocumentProcessingService {
      * Extract text from an HTML file using Apache Tika
      * Handles various encodings including Shift_JIS for Aozora Bunko format
      * 
-     * @param htmlPath Path to the HTML file
+     * @param source The HTML document
      * @return Extracted text as a single string
      * @throws IOException if HTML cannot be read
      */
-    private String extractTextFromHTML(String htmlPath) throws IOException {
+    private String extractTextFromHTML(SourceDocument source) throws IOException {
         try {
-            // First, read HTML with proper encoding
-            String htmlContent = readHTMLWithEncoding(htmlPath);
-            
-            // Log a sample of what we read to debug encoding issues
-            logger.debug("Raw HTML content sample (first 200 chars): {}", 
-                htmlContent.length() > 200 ? htmlContent.substring(0, 200) : htmlContent);
+            String htmlContent = source.getText();
             
             // For Aozora Bunko files, let's try a simpler approach without Tika
             // since Tika might be re-encoding incorrectly
@@ -198,15 +295,13 @@ public class DocumentProcessingService {
                 return text;
             }
             
-            // Use Apache Tika to parse the properly encoded HTML
-            AutoDetectParser parser = new AutoDetectParser();
+            // Use Apache Tika on the original bytes, decoded with the charset we detected
             BodyContentHandler handler = new BodyContentHandler(-1); // Remove size limit
             Metadata metadata = new Metadata();
-            ParseContext context = new ParseContext();
+            ParseContext context = withCharset(source.getCharset());
             
-            // Convert string to input stream with UTF-8 (since we've already handled encoding)
-            try (InputStream stream = new java.io.ByteArrayInputStream(htmlContent.getBytes("UTF-8"))) {
-                parser.parse(stream, handler, metadata, context);
+            try (InputStream stream = source.openStream()) {
+                tikaParser.parse(stream, handler, metadata, context);
             }
             
             // Get extracted text
@@ -225,141 +320,51 @@ public class DocumentProcessingService {
         }
     }
     
+    /**
+     * Parse context that makes Tika decode text with the given charset instead of detecting one
+     */
+    private static ParseContext withCharset(Charset charset) {
+        ParseContext context = new ParseContext();
+        context.set(EncodingDetector.class, (stream, metadata) -> charset);
+        return context;
+    }
+    
     /**
      * Simple HTML text extraction without Tika
      * For cases where Tika causes encoding issues
      * 
      * @param htmlContent Raw HTML content
      * @return Extracted text
+     * @see AozoraTextExtractor
      */
     private String extractTextFromHTMLSimple(String htmlContent) {
-        logger.info("=== HTML EXTRACTION DEBUG START ===");
-        logger.info("Raw HTML content length: {}", htmlContent.length());
-        logger.info("HTML content sample (first 500 chars): {}", 
-            htmlContent.length() > 500 ? htmlContent.substring(0, 500) : htmlContent);
-        
-        // Find the main text content - for Aozora Bunko, look for specific patterns
-        int startIndex = htmlContent.indexOf("<div class=\"main_text\">");
-        if (startIndex == -1) {
-            startIndex = htmlContent.indexOf("<div class=main_text>");
-        }
-        
-        logger.info("Found main_text div at index: {}", startIndex);
-        
-        if (startIndex != -1) {
-            // Just extract everything from main_text to the end
-            // Don't try to be clever about finding end markers - it causes more problems than it solves
-            int endIndex = htmlContent.indexOf("</body>");
-            if (endIndex == -1) {
-                endIndex = htmlContent.length();
-            }
-            
-            logger.info("End index (</body> or end of file): {}", endIndex);
-            logger.info("Section to extract: {} to {} (length: {})", startIndex, endIndex, endIndex - startIndex);
-            
-            String mainContent = htmlContent.substring(startIndex, endIndex);
-            logger.info("STEP 1: Extracted main content section, raw length: {}", mainContent.length());
-            logger.info("Main content starts with: {}", 
-                mainContent.length() > 200 ? mainContent.substring(0, 200) : mainContent);
-            logger.info("Main content ends with: {}", 
-                mainContent.length() > 200 ? mainContent.substring(mainContent.length() - 200) : mainContent);
-            
-            // Remove HTML tags but preserve ruby annotations structure
-            String beforeTagReplacement = mainContent;
-            mainContent = mainContent.replaceAll("<br\\s*/?>", "\n");
-            mainContent = mainContent.replaceAll("<p[^>]*>", "\n");
-            mainContent = mainContent.replaceAll("</p>", "\n");
-            mainContent = mainContent.replaceAll("<div[^>]*>", "\n");
-            mainContent = mainContent.replaceAll("</div>", "\n");
-            
-            logger.info("STEP 2: After basic tag replacement, length: {} (was: {})", 
-                mainContent.length(), beforeTagReplacement.length());
-            
-            // Handle ruby annotations - keep the base text and pronunciation
-            String beforeRubyProcessing = mainContent;
-            mainContent = mainContent.replaceAll("<ruby><rb>([^<]+)</rb><rp>[^<]*</rp><rt>([^<]+)</rt><rp>[^<]*</rp></ruby>", "$1($2)");
-            
-            logger.info("STEP 3: After ruby processing, length: {} (was: {})", 
-                mainContent.length(), beforeRubyProcessing.length());
-            
-            // Remove remaining HTML tags and entities
-            String beforeHTMLRemoval = mainContent;
-            mainContent = mainContent.replaceAll("<[^>]+>", "");
-            mainContent = mainContent.replaceAll("&nbsp;", " ");
-            mainContent = mainContent.replaceAll("&[a-zA-Z]+;", "");
-            
-            logger.info("STEP 4: After all HTML removal, length: {} (was: {})", 
-                mainContent.length(), beforeHTMLRemoval.length());
-            
-            // Clean up whitespace and line breaks more carefully
-            String beforeWhitespaceCleanup = mainContent;
-            mainContent = mainContent.replaceAll("　+", "　"); // Clean up multiple Japanese spaces
-            mainContent = mainContent.replaceAll("[ \\t]+", " "); // Clean up spaces/tabs but preserve newlines
-            mainContent = mainContent.replaceAll("\\n\\s*\\n+", "\n\n"); // Normalize multiple newlines
-            mainContent = mainContent.replaceAll("^\\s+", ""); // Remove leading whitespace
-            
-            logger.info("STEP 5: After whitespace cleaning, length: {} (was: {})", 
-                mainContent.length(), beforeWhitespaceCleanup.length());
-            
-            String result = mainContent.trim();
-            logger.info("STEP 6: Final extracted text length after trim: {}", result.length());
-            logger.info("Final text starts with: {}", 
-                result.length() > 200 ? result.substring(0, 200) : result);
-            logger.info("Final text ends with: {}", 
-                result.length() > 200 ? result.substring(result.length() - 200) : result);
-            logger.info("=== HTML EXTRACTION DEBUG END ===");
-            
-            return result;
-        }
-        
-        logger.warn("Could not find main_text div, trying to extract from body");
-        
-        // Fallback: extract everything between body tags
-        int bodyStart = htmlContent.indexOf("<body>");
-        int bodyEnd = htmlContent.indexOf("</body>");
-        if (bodyStart != -1 && bodyEnd != -1) {
-            String bodyContent = htmlContent.substring(bodyStart, bodyEnd);
-            
-            // Remove all HTML tags
-            bodyContent = bodyContent.replaceAll("<[^>]+>", " ");
-            bodyContent = bodyContent.replaceAll("\\s+", " ");
-            
-            return bodyContent.trim();
-        }
-        
-        return "";
+        long start = System.currentTimeMillis();
+        String text = AozoraTextExtractor.extract(htmlContent);
+        logger.debug("Extracted {} characters from {} characters of HTML in {}ms",
+            text.length(), htmlContent.length(), System.currentTimeMillis() - start);
+        return text;
     }
     
     /**
      * Check if HTML file has structured chapter organization
      * Looks for Aozora Bunko heading patterns
      * 
-     * @param htmlPath Path to the HTML file
+     * @param source The HTML document
      * @return true if the HTML has chapter structure, false otherwise
      */
-    private boolean hasChapterStructure(String htmlPath) {
-        try (InputStream stream = new FileInputStream(new File(htmlPath))) {
-            // Read the HTML content to look for chapter markers
-            String content = new String(stream.readAllBytes(), "Shift_JIS");
-            
-            // Look for Aozora Bunko chapter patterns
-            boolean hasMainChapters = content.contains("o-midashi") || content.contains("<h3");
-            boolean hasSubChapters = content.contains("naka-midashi") || content.contains("<h4");
-            boolean hasChapterAnchors = content.contains("midashi_anchor");
-            
-            logger.info("Chapter structure analysis for {}: mainChapters={}, subChapters={}, anchors={}", 
-                htmlPath, hasMainChapters, hasSubChapters, hasChapterAnchors);
-            
-            // Consider it structured if it has main chapters or multiple subsections
-            boolean result = hasMainChapters || (hasSubChapters && hasChapterAnchors);
-            logger.info("File {} has chapter structure: {}", htmlPath, result);
-            return result;
-            
-        } catch (Exception e) {
-            logger.warn("Could not analyze HTML structure for {}: {}", htmlPath, e.getMessage());
-            // Default to simple processing if we can't analyze
-            return false;
-        }
+    private boolean hasChapterStructure(SourceDocument source) {
+        String content = source.getText();
+        
+        // Look for Aozora Bunko chapter patterns
+        boolean hasMainChapters = content.contains("o-midashi") || content.contains("<h3");
+        boolean hasSubChapters = content.contains("naka-midashi") || content.contains("<h4");
+        boolean hasChapterAnchors = content.contains("midashi_anchor");
+        
+        logger.info("Chapter structure analysis for {}: mainChapters={}, subChapters={}, anchors={}", 
+            source.getName(), hasMainChapters, hasSubChapters, hasChapterAnchors);
+        
+        // Consider it structured if it has main chapters or multiple subsections
+        return hasMainChapters || (hasSubChapters && hasChapterAnchors);
     }
     
     /**
@@ -371,26 +376,8 @@ public class DocumentProcessingService {
     private String cleanText(String text) {
         logger.info("cleanText - input length: {}", text.length());
         
-        // Remove multiple consecutive newlines
-        text = text.replaceAll("\\n{3,}", "\n\n");
-        
-        // Remove page numbers that appear alone on lines (common in books)
-        text = text.replaceAll("(?m)^\\s*\\d+\\s*$", "");
-        
-        // Normalize spaces (remove multiple spaces but preserve newlines)
-        text = text.replaceAll("[ \\t]{2,}", " ");
-        
-        // Trim each line
-        String[] lines = text.split("\n");
-        StringBuilder cleaned = new StringBuilder();
-        for (String line : lines) {
-            String trimmed = line.trim();
-            if (!trimmed.isEmpty()) {
-                cleaned.append(trimmed).append("\n");
-            }
-        }
-        
-        String result = cleaned.toString().trim();
+        // Drop page-number lines, collapse space runs, trim lines and remove empty ones
+        String result = TextCleaner.clean(text);
         logger.info("cleanText - output length: {}", result.length());
         return result;
     }
@@ -403,77 +390,29 @@ public class DocumentProcessingService {
      * @return List of chunk entities
      */
     private List<Chunk> createChunks(String text, Book book) {
-        logger.info("=== CHUNKING DEBUG START ===");
-        logger.info("Input text length for chunking: {}", text.length());
-        logger.info("Text starts with: {}", 
-            text.length() > 200 ? text.substring(0, 200) : text);
-        logger.info("Text ends with: {}", 
-            text.length() > 200 ? text.substring(text.length() - 200) : text);
-        
         List<Chunk> chunks = new ArrayList<>();
-        
-        // Calculate chunk size in characters
-        int chunkSizeChars = CHUNK_SIZE * CHARS_PER_TOKEN;
-        int overlapChars = OVERLAP_SIZE * CHARS_PER_TOKEN;
-        
-        logger.info("Chunk size: {} chars, Overlap: {} chars", chunkSizeChars, overlapChars);
-        
-        int textLength = text.length();
-        int chunkNumber = 0;
-        int totalCharactersProcessed = 0;
-        
-        int currentStart = 0;
-        while (currentStart < textLength) {
-            int end = Math.min(currentStart + chunkSizeChars, textLength);
-            
-            String chunkText = text.substring(currentStart, end);
-            
-            // Try to break at a sentence boundary
-            if (end < textLength) {
-                int lastPeriod = chunkText.lastIndexOf("。");
-                if (lastPeriod > chunkSizeChars * 0.8) {
-                    end = currentStart + lastPeriod + 1;
-                    chunkText = text.substring(currentStart, end);
-                }
-            }
-            
-            // Create chunk entity
-            Chunk chunk = new Chunk();
-            chunk.setBook(book);
-            chunk.setContent(chunkText);
-            chunk.setChapter(estimateChapter(chunkText, chunkNumber));
-            chunk.setPageNum(estimatePage(currentStart, textLength));
-            chunk.setMetadata(createMetadata(chunkNumber, currentStart, end));
-            
-            totalCharactersProcessed += chunkText.length();
-            
-            logger.info("Chunk {}: start={}, end={}, length={}, chars processed so far: {}", 
-                chunkNumber, currentStart, end, chunkText.length(), totalCharactersProcessed);
-            logger.info("Chunk {} content sample: {}", chunkNumber, 
-                chunkText.length() > 100 ? chunkText.substring(0, 100) : chunkText);
-            
-            chunks.add(chunk);
-            chunkNumber++;
-            
-            // Calculate next start position
-            if (end < textLength && text.charAt(end - 1) == '。') {
-                // If we broke at sentence boundary, start next chunk with overlap from that point
-                currentStart = end - overlapChars;
-            } else {
-                // Normal progression with overlap
-                currentStart = currentStart + (chunkSizeChars - overlapChars);
-            }
-        }
-        
-        logger.info("=== CHUNKING SUMMARY ===");
-        logger.info("Total chunks created: {}", chunks.size());
-        logger.info("Total characters in input: {}", textLength);
-        logger.info("Total characters processed across all chunks: {}", totalCharactersProcessed);
-        logger.info("=== CHUNKING DEBUG END ===");
-        
+        newChunker(book, plainTextSink(chunks)).startText().append(text).finish();
+        logger.info("Created {} chunks from {} characters", chunks.size(), text.length());
         return chunks;
     }
     
+    /**
+     * Chunker with this service's chunk size and overlap, measured in embedding model tokens
+     */
+    private Chunker newChunker(Book book, Consumer<Chunk> sink) {
+        return new Chunker(book, tokenizer, CHUNK_SIZE, OVERLAP_SIZE, CHUNK_SIZE * MAX_CHARS_PER_TOKEN, sink);
+    }
+    
+    /**
+     * Sink for chunks of text without chapter structure: collects them, with an estimated chapter
+     */
+    private Consumer<Chunk> plainTextSink(List<Chunk> chunks) {
+        return chunk -> {
+            chunk.setChapter(estimateChapter(chunk.getContent(), chunks.size()));
+            chunks.add(chunk);
+        };
+    }
+    
     /**
      * Estimate chapter based on content
      * This is a simple implementation - can be improved
@@ -488,24 +427,6 @@ public class DocumentProcessingService {
         return null;
     }
     
-    /**
-     * Estimate page number based on position in text
-     */
-    private Integer estimatePage(int position, int totalLength) {
-        // Rough estimate: assume ~2000 chars per page
-        return (position / 2000) + 1;
-    }
-    
-    /**
-     * Create metadata JSON for chunk
-     */
-    private String createMetadata(int chunkNumber, int startPos, int endPos) {
-        return String.format(
-            "{\"chunk_number\": %d, \"start_position\": %d, \"end_position\": %d}",
-            chunkNumber, startPos, endPos
-        );
-    }
-    
     /**
      * Extract text from an EPUB file using Apache Tika
      * 
@@ -519,11 +440,10 @@ public class DocumentProcessingService {
             BodyContentHandler handler = new BodyContentHandler(-1);
             Metadata metadata = new Metadata();
             ParseContext context = new ParseContext();
-            Parser parser = new AutoDetectParser();
             
             // Parse the EPUB file
             try (InputStream stream = new FileInputStream(epubPath)) {
-                parser.parse(stream, handler, metadata, context);
+                tikaParser.parse(stream, handler, metadata, context);
             }
             
             String text = handler.toString();
@@ -579,11 +499,14 @@ public class DocumentProcessingService {
             logger.info("Extracted {} chapters from EPUB with ruby preservation", chapters.size());
             
             // Process each chapter
+            Chunker chunker = newChunker(book, allChunks::add);
             for (ChapterContent chapter : chapters) {
-                List<Chunk> chapterChunks = createChunksFromChapter(chapter, book);
-                allChunks.addAll(chapterChunks);
+                int before = allChunks.size();
+                chunker.startChapter(chapter.title, chapter.chapterNumber, null, chapter.length)
+                    .append(chapter.fullText)
+                    .finish();
                 logger.info("Created {} chunks from chapter {}", 
-                    chapterChunks.size(), chapter.chapterNumber);
+                    allChunks.size() - before, chapter.chapterNumber);
             }
             
         } catch (Exception e) {
@@ -601,86 +524,20 @@ public class DocumentProcessingService {
         return allChunks;
     }
     
-    /**
-     * Create chunks from a single chapter with position tracking
-     * 
-     * @param chapter Chapter content with metadata
-     * @param book Book entity
-     * @return List of chunks from this chapter
-     */
-    private List<Chunk> createChunksFromChapter(ChapterContent chapter, Book book) {
-        List<Chunk> chunks = new ArrayList<>();
-        
-        String text = chapter.fullText;
-        int chunkSizeChars = CHUNK_SIZE * CHARS_PER_TOKEN;
-        int overlapChars = OVERLAP_SIZE * CHARS_PER_TOKEN;
-        
-        int chapterLength = text.length();
-        int chunkNumberInChapter = 0;
-        
-        for (int start = 0; start < chapterLength; start += (chunkSizeChars - overlapChars)) {
-            int end = Math.min(start + chunkSizeChars, chapterLength);
-            
-            // Always preserve content - don't discard remaining text
-            // Small chunks at the end are better than lost content
-            
-            String chunkText = text.substring(start, end);
-            
-            // Try to break at sentence boundary
-            if (end < chapterLength) {
-                int lastPeriod = chunkText.lastIndexOf("。");
-                if (lastPeriod > chunkSizeChars * 0.8) {
-                    end = start + lastPeriod + 1;
-                    chunkText = text.substring(start, end);
-                }
-            }
-            
-            // Create chunk with chapter information
-            Chunk chunk = new Chunk();
-            chunk.setBook(book);
-            chunk.setContent(chunkText);
-            chunk.setChapter(chapter.title); // e.g., "第1章"
-            chunk.setChapterNumber(chapter.chapterNumber);
-            chunk.setChapterPosition(start); // Position within chapter
-            chunk.setChapterPercentage(chapter.getPercentagePosition(start));
-            
-            // Estimate page within chapter (roughly 2000 chars per page)
-            int pageInChapter = (start / 2000) + 1;
-            chunk.setPageNum(pageInChapter);
-            
-            // Enhanced metadata
-            chunk.setMetadata(String.format(
-                "{\"chunk_number\": %d, \"chapter\": %d, \"position_in_chapter\": %d, \"percentage\": %d}",
-                chunkNumberInChapter, chapter.chapterNumber, start, chunk.getChapterPercentage()
-            ));
-            
-            chunks.add(chunk);
-            chunkNumberInChapter++;
-            
-            // Adjust start if we broke at sentence
-            if (end < chapterLength && text.charAt(end - 1) == '。') {
-                start = end - overlapChars;
-            }
-        }
-        
-        return chunks;
-    }
-    
     /**
      * Process HTML file with chapter structure awareness
      * Extracts chapters based on Aozora Bunko heading patterns
      * 
-     * @param htmlPath Path to the HTML file
+     * @param source The HTML document
      * @param book Book entity
      * @return List of chunks organized by chapters
      */
-    private List<Chunk> processHTMLWithChapters(String htmlPath, Book book) {
-        logger.info("=== HTML CHAPTER PROCESSING START for {} ===", htmlPath);
+    private List<Chunk> processHTMLWithChapters(SourceDocument source, Book book) {
+        logger.info("=== HTML CHAPTER PROCESSING START for {} ===", source.getName());
         List<Chunk> allChunks = new ArrayList<>();
         
         try {
-            // Read the HTML content with proper encoding
-            String content = readHTMLWithEncoding(htmlPath);
+            String content = source.getText();
             logger.info("Read HTML content for chapter processing, length: {}", content.length());
             
             // Extract chapter structure
@@ -688,14 +545,17 @@ public class DocumentProcessingService {
             logger.info("Extracted {} chapters from HTML", chapters.size());
             
             // Process each chapter
+            Chunker chunker = newChunker(book, allChunks::add);
             for (int i = 0; i < chapters.size(); i++) {
                 HTMLChapter chapter = chapters.get(i);
                 logger.info("Processing chapter {}: '{}' with {} chars of content", 
-                    i + 1, chapter.title, chapter.cleanedContent != null ? chapter.cleanedContent.length() : 0);
-                List<Chunk> chapterChunks = createChunksFromHTMLChapter(chapter, book, i + 1);
-                allChunks.addAll(chapterChunks);
+                    i + 1, chapter.title, chapter.cleanedContent.length());
+                int before = allChunks.size();
+                chunker.startChapter(chapter.title, i + 1, chapter.anchorId, chapter.cleanedContent.length())
+                    .append(chapter.cleanedContent)
+                    .finish();
                 logger.info("Created {} chunks from chapter: {}", 
-                    chapterChunks.size(), chapter.title);
+                    allChunks.size() - before, chapter.title);
             }
             
             // Log total characters processed
@@ -710,7 +570,7 @@ public class DocumentProcessingService {
             // Fall back to non-chapter processing
             logger.info("Falling back to standard HTML processing");
             try {
-                String fullText = extractTextFromHTML(htmlPath);
+                String fullText = extractTextFromHTML(source);
                 return createChunks(fullText, book);
             } catch (IOException ioe) {
                 throw new RuntimeException("Failed to process HTML", ioe);
@@ -720,193 +580,101 @@ public class DocumentProcessingService {
         return allChunks;
     }
     
-    /**
-     * Read HTML content with proper encoding detection
-     * 
-     * @param htmlPath Path to HTML file
-     * @return Raw HTML content as string
-     * @throws IOException if file cannot be read
-     */
-    private String readHTMLWithEncoding(String htmlPath) throws IOException {
-        File htmlFile = new File(htmlPath);
-        
-        try (InputStream stream = new FileInputStream(htmlFile)) {
-            byte[] bytes = stream.readAllBytes();
-            
-            // First, try to read as UTF-8 to check for charset declaration
-            String utf8Content = new String(bytes, "UTF-8");
-            
-            // Look for charset declaration in HTML meta tag
-            if (utf8Content.contains("charset=Shift_JIS") || utf8Content.contains("charset=\"Shift_JIS\"")) {
-                logger.debug("Detected Shift_JIS encoding from HTML meta tag");
-                String shiftJisContent = new String(bytes, "Shift_JIS");
-                logger.debug("Successfully read file with Shift_JIS encoding, content length: {}", shiftJisContent.length());
-                return shiftJisContent;
-            } else if (utf8Content.contains("charset=UTF-8") || utf8Content.contains("charset=\"UTF-8\"")) {
-                logger.debug("Detected UTF-8 encoding from HTML meta tag");
-                return utf8Content;
-            } else {
-                // For Aozora Bunko files, try Shift_JIS by default
-                try {
-                    String shiftJisContent = new String(bytes, "Shift_JIS");
-                    // Check if we get readable Japanese characters
-                    if (shiftJisContent.contains("」") || shiftJisContent.contains("「") || 
-                        shiftJisContent.contains("死") || shiftJisContent.contains("問題")) {
-                        logger.debug("Using Shift_JIS encoding (detected readable Japanese characters)");
-                        return shiftJisContent;
-                    }
-                } catch (Exception e) {
-                    logger.debug("Shift_JIS decoding failed: {}", e.getMessage());
-                }
-                
-                // Fall back to UTF-8
-                logger.debug("Using UTF-8 encoding (fallback)");
-                return utf8Content;
-            }
-        }
-    }
-    
     /**
      * Extract chapter structure from HTML content
      * 
+     * The document is parsed into a DOM once and walked once. A chapter starts at
+     * each o-midashi heading that carries an anchor (naka-midashi headings when the
+     * work has no o-midashi) and runs to the next one or the end of the document;
+     * text before the first heading belongs to no chapter. Without headings the
+     * whole body is one chapter.
+     * 
      * @param htmlContent Raw HTML content
      * @return List of chapters with titles and content
      */
     private List<HTMLChapter> extractChaptersFromHTML(String htmlContent) {
-        List<HTMLChapter> chapters = new ArrayList<>();
-        
-        // Simple regex-based extraction for Aozora Bunko format
-        // Look for main chapters (o-midashi)
-        String chapterPattern = "<h3[^>]*class=\"o-midashi\"[^>]*>.*?<a[^>]*id=\"([^\"]+)\"[^>]*>([^<]+)</a>.*?</h3>";
-        java.util.regex.Pattern pattern = java.util.regex.Pattern.compile(chapterPattern, java.util.regex.Pattern.DOTALL);
-        java.util.regex.Matcher matcher = pattern.matcher(htmlContent);
-        
-        int lastEnd = 0;
-        int chapterNum = 1;
-        
-        while (matcher.find()) {
-            String anchorId = matcher.group(1);
-            String title = matcher.group(2).trim();
-            int chapterStart = matcher.start();
-            
-            // If this isn't the first chapter, finalize the previous one
-            if (!chapters.isEmpty()) {
-                HTMLChapter prevChapter = chapters.get(chapters.size() - 1);
-                prevChapter.content = htmlContent.substring(prevChapter.startPos, chapterStart);
-                prevChapter.cleanedContent = extractTextFromHTMLSnippet(prevChapter.content);
-            }
-            
-            // Create new chapter
-            HTMLChapter chapter = new HTMLChapter();
-            chapter.title = title;
-            chapter.anchorId = anchorId;
-            chapter.startPos = chapterStart;
-            chapter.chapterNumber = chapterNum++;
-            
-            chapters.add(chapter);
-        }
+        Document document = Jsoup.parse(htmlContent);
         
-        // Handle the last chapter
-        if (!chapters.isEmpty()) {
-            HTMLChapter lastChapter = chapters.get(chapters.size() - 1);
-            lastChapter.content = htmlContent.substring(lastChapter.startPos);
-            lastChapter.cleanedContent = extractTextFromHTMLSnippet(lastChapter.content);
+        ChapterCollector collector;
+        if (document.selectFirst("h3.o-midashi a[id]") != null) {
+            collector = new ChapterCollector("h3", "o-midashi");
+        } else if (document.selectFirst("h4.naka-midashi a[id]") != null) {
+            collector = new ChapterCollector("h4", "naka-midashi");
+        } else {
+            collector = new ChapterCollector(null, null);
         }
+        NodeTraversor.filter(collector, document.body());
         
-        // If no main chapters found, create a single chapter from the main content
-        if (chapters.isEmpty()) {
-            HTMLChapter singleChapter = new HTMLChapter();
-            singleChapter.title = "全文";
-            singleChapter.chapterNumber = 1;
-            singleChapter.content = htmlContent;
-            singleChapter.cleanedContent = extractTextFromHTMLSnippet(htmlContent);
-            chapters.add(singleChapter);
+        for (HTMLChapter chapter : collector.chapters) {
+            chapter.cleanedContent = cleanText(chapter.text.toString());
+            chapter.text = null;
         }
-        
-        return chapters;
+        return collector.chapters;
     }
     
     /**
-     * Extract clean text from HTML snippet using Tika
-     * 
-     * @param htmlSnippet Raw HTML content
-     * @return Clean text content
+     * Splits a document body into chapters at headings of one kind, collecting
+     * each chapter's text with line breaks at block elements
      */
-    private String extractTextFromHTMLSnippet(String htmlSnippet) {
-        try {
-            BodyContentHandler handler = new BodyContentHandler(-1);
-            AutoDetectParser parser = new AutoDetectParser();
-            Metadata metadata = new Metadata();
-            ParseContext context = new ParseContext();
-            
-            try (InputStream stream = new java.io.ByteArrayInputStream(htmlSnippet.getBytes("Shift_JIS"))) {
-                parser.parse(stream, handler, metadata, context);
-                return cleanText(handler.toString());
+    private static class ChapterCollector implements NodeFilter {
+        private final String headingTag;
+        private final String headingClass;
+        private final List<HTMLChapter> chapters = new ArrayList<>();
+        private StringBuilder text; // Current chapter's text; null before the first heading
+        
+        ChapterCollector(String headingTag, String headingClass) {
+            this.headingTag = headingTag;
+            this.headingClass = headingClass;
+            if (headingTag == null) {
+                startChapter("全文", null);
             }
-        } catch (Exception e) {
-            logger.warn("Failed to extract text from HTML snippet: {}", e.getMessage());
-            // Fall back to simple tag removal
-            return htmlSnippet.replaceAll("<[^>]+>", " ").replaceAll("\\s+", " ").trim();
         }
-    }
-    
-    /**
-     * Create chunks from HTML chapter
-     * 
-     * @param chapter HTML chapter with content
-     * @param book Book entity
-     * @param chapterNumber Chapter number
-     * @return List of chunks from this chapter
-     */
-    private List<Chunk> createChunksFromHTMLChapter(HTMLChapter chapter, Book book, int chapterNumber) {
-        List<Chunk> chunks = new ArrayList<>();
-        
-        String text = chapter.cleanedContent;
-        int chunkSizeChars = CHUNK_SIZE * CHARS_PER_TOKEN;
-        int overlapChars = OVERLAP_SIZE * CHARS_PER_TOKEN;
-        
-        int chapterLength = text.length();
-        int chunkNumberInChapter = 0;
         
-        for (int start = 0; start < chapterLength; start += (chunkSizeChars - overlapChars)) {
-            int end = Math.min(start + chunkSizeChars, chapterLength);
-            
-            // Try to break at sentence boundaries for Japanese text
-            if (end < chapterLength) {
-                int lastSentence = text.lastIndexOf('。', end);
-                if (lastSentence > start + (chunkSizeChars / 2)) {
-                    end = lastSentence + 1;
+        @Override
+        public FilterResult head(Node node, int depth) {
+            if (node instanceof TextNode textNode) {
+                if (text != null) {
+                    text.append(textNode.getWholeText());
                 }
+                return FilterResult.CONTINUE;
+            }
+            if (!(node instanceof Element element)) {
+                return FilterResult.CONTINUE;
             }
             
-            Chunk chunk = new Chunk();
-            chunk.setContent(text.substring(start, end));
-            chunk.setBook(book);
-            chunk.setUploadedToPinecone(false);
-            
-            // Set chapter information
-            chunk.setChapter(chapter.title);
-            chunk.setChapterNumber(chapterNumber);
-            
-            // Calculate position information
-            int percentage = (int) ((double) start / chapterLength * 100);
-            chunk.setChapterPercentage(percentage);
-            chunk.setChapterPosition(start);
-            
-            // Enhanced metadata for HTML chapters
-            chunk.setMetadata(String.format(
-                "{\"chunk_number\": %d, \"chapter\": %d, \"chapter_title\": \"%s\", \"anchor_id\": \"%s\", \"position_in_chapter\": %d, \"percentage\": %d}",
-                chunkNumberInChapter, chapterNumber, 
-                chapter.title.replace("\"", "\\\""), 
-                chapter.anchorId != null ? chapter.anchorId : "",
-                start, percentage
-            ));
-            
-            chunks.add(chunk);
-            chunkNumberInChapter++;
+            String tag = element.normalName();
+            if (tag.equals("script") || tag.equals("style")) {
+                return FilterResult.SKIP_ENTIRELY;
+            }
+            if (headingTag != null && tag.equals(headingTag) && element.hasClass(headingClass)) {
+                Element anchor = element.selectFirst("a[id]");
+                if (anchor != null && !anchor.text().isBlank()) {
+                    startChapter(anchor.text().trim(), anchor.id());
+                }
+            }
+            if (text != null && (element.isBlock() || tag.equals("br"))) {
+                text.append('\n');
+            }
+            return FilterResult.CONTINUE;
         }
         
-        return chunks;
+        @Override
+        public FilterResult tail(Node node, int depth) {
+            if (text != null && node instanceof Element element && element.isBlock()) {
+                text.append('\n');
+            }
+            return FilterResult.CONTINUE;
+        }
+        
+        private void startChapter(String title, String anchorId) {
+            HTMLChapter chapter = new HTMLChapter();
+            chapter.title = title;
+            chapter.anchorId = anchorId;
+            chapter.chapterNumber = chapters.size() + 1;
+            chapter.text = new StringBuilder();
+            chapters.add(chapter);
+            text = chapter.text;
+        }
     }
     
     /**
@@ -915,9 +683,8 @@ public class DocumentProcessingService {
     private static class HTMLChapter {
         String title;
         String anchorId;
-        String content;
+        StringBuilder text; // Raw chapter text while the document is walked
         String cleanedContent;
-        int startPos;
         int chapterNumber;
     }
     
@@ -1114,16 +881,27 @@ public class DocumentProcessingService {
      * @throws IOException if file cannot be saved
      */
     public void regenerateFullTextHTML(Book book) throws IOException {
-        if (book.getStaticTextPath() == null || book.getChunks() == null || book.getChunks().isEmpty()) {
+        regenerateFullTextHTML(book, book.getChunks());
+    }
+    
+    /**
+     * Regenerate HTML file from the given chunks, in order, with their IDs as anchors
+     * 
+     * @param book Book entity
+     * @param chunks The book's chunks in text order, IDs assigned
+     * @throws IOException if file cannot be saved
+     */
+    public void regenerateFullTextHTML(Book book, List<Chunk> chunks) throws IOException {
+        if (book.getStaticTextPath() == null || chunks == null || chunks.isEmpty()) {
             logger.warn("Cannot regenerate HTML - no static path or chunks for book {}", book.getId());
             return;
         }
         
         // Reconstruct full text from chunks
-        String fullText = reconstructFullTextFromChunks(book.getChunks());
+        String fullText = reconstructFullTextFromChunks(chunks);
         
         // Regenerate HTML with proper chunk IDs
-        saveFullTextAsHTML(fullText, book.getChunks(), book);
+        saveFullTextAsHTML(fullText, chunks, book);
         logger.info("Regenerated HTML with chunk IDs for book {}", book.getId());
     }
     
@@ -2,19 +2,11 @@ package com.bungakukensaku.service;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import java.io.File;
-import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
 
 /**
  * Simplified EPUB chapter extractor that focuses on chapter structure
@@ -25,6 +17,9 @@ public class EPUBChapterExtractor {
     
     private static final Logger logger = LoggerFactory.getLogger(EPUBChapterExtractor.class);
     
+    @Autowired
+    private EpubReader epubReader;
+    
     public static class ChapterContent {
         public int chapterNumber;
         public String title;
@@ -55,24 +50,25 @@ public class EPUBChapterExtractor {
     public List<ChapterContent> extractChapters(String epubPath) {
         List<ChapterContent> chapters = new ArrayList<>();
         
-        try (ZipFile zipFile = new ZipFile(new File(epubPath))) {
-            // Find the OPF file
-            String opfPath = findOPFPath(zipFile);
-            logger.info("Found OPF file at: {}", opfPath);
+        try {
+            // Read every spine file once; both detection strategies work from these texts
+            EpubReader.BodyTextCollector collector = new EpubReader.BodyTextCollector();
+            EpubReader.Publication publication = epubReader.read(epubPath, collector);
+            logger.info("Found OPF file at: {}", publication.getOpfPath());
+            logger.info("Found {} files in reading order", publication.getSpineFiles().size());
             
-            // Parse the spine to get reading order
-            List<String> spineFiles = parseSpine(zipFile, opfPath);
-            logger.info("Found {} files in reading order", spineFiles.size());
+            List<String> spineFiles = publication.getSpineFiles();
+            List<String> spineTexts = collector.getTexts();
             
             // First, try to find numbered chapters (第一章, 第二章, etc.) in the content
-            chapters = extractNumberedChapters(zipFile, spineFiles);
+            chapters = extractNumberedChapters(spineTexts);
             
             if (!chapters.isEmpty()) {
                 logger.info("Found {} numbered chapters (第一章 style)", chapters.size());
             } else {
                 // Fall back to file-based extraction with content filtering
                 logger.info("No numbered chapters found, using content-based filtering");
-                chapters = extractContentBasedChapters(zipFile, spineFiles);
+                chapters = extractContentBasedChapters(spineFiles, spineTexts);
             }
             
         } catch (Exception e) {
@@ -82,113 +78,15 @@ public class EPUBChapterExtractor {
         return chapters;
     }
     
-    /**
-     * Find the OPF file path from container.xml
-     */
-    private String findOPFPath(ZipFile zipFile) throws Exception {
-        ZipEntry containerEntry = zipFile.getEntry("META-INF/container.xml");
-        if (containerEntry == null) {
-            throw new Exception("No META-INF/container.xml found in EPUB");
-        }
-        
-        try (InputStream is = zipFile.getInputStream(containerEntry)) {
-            DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
-            Document doc = builder.parse(is);
-            
-            NodeList rootfiles = doc.getElementsByTagName("rootfile");
-            if (rootfiles.getLength() > 0) {
-                Element rootfile = (Element) rootfiles.item(0);
-                return rootfile.getAttribute("full-path");
-            }
-        }
-        
-        throw new Exception("Could not find OPF file path");
-    }
-    
-    /**
-     * Parse the spine from OPF to get reading order
-     */
-    private List<String> parseSpine(ZipFile zipFile, String opfPath) throws Exception {
-        List<String> spineFiles = new ArrayList<>();
-        String basePath = opfPath.substring(0, opfPath.lastIndexOf('/') + 1);
-        
-        ZipEntry opfEntry = zipFile.getEntry(opfPath);
-        try (InputStream is = zipFile.getInputStream(opfEntry)) {
-            DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
-            Document doc = builder.parse(is);
-            
-            // Get manifest to map IDs to files
-            NodeList manifestItems = doc.getElementsByTagName("item");
-            java.util.Map<String, String> idToHref = new java.util.HashMap<>();
-            
-            for (int i = 0; i < manifestItems.getLength(); i++) {
-                Element item = (Element) manifestItems.item(i);
-                String id = item.getAttribute("id");
-                String href = item.getAttribute("href");
-                idToHref.put(id, href);
-            }
-            
-            // Get spine items in order
-            NodeList spineItems = doc.getElementsByTagName("itemref");
-            for (int i = 0; i < spineItems.getLength(); i++) {
-                Element itemref = (Element) spineItems.item(i);
-                String idref = itemref.getAttribute("idref");
-                String href = idToHref.get(idref);
-                if (href != null) {
-                    spineFiles.add(basePath + href);
-                }
-            }
-        }
-        
-        return spineFiles;
-    }
-    
-    /**
-     * Extract all text content from a chapter file
-     */
-    private String extractChapterText(ZipFile zipFile, String fileName) {
-        try {
-            ZipEntry entry = zipFile.getEntry(fileName);
-            if (entry == null) {
-                logger.warn("Could not find chapter file: {}", fileName);
-                return "";
-            }
-            
-            try (InputStream is = zipFile.getInputStream(entry)) {
-                DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
-                Document doc = builder.parse(is);
-                
-                // Get the body element
-                NodeList bodies = doc.getElementsByTagName("body");
-                if (bodies.getLength() > 0) {
-                    Element body = (Element) bodies.item(0);
-                    // Get all text content, preserving structure
-                    return body.getTextContent().trim();
-                }
-                
-                return "";
-                
-            } catch (Exception e) {
-                logger.error("Error parsing chapter {}: {}", fileName, e.getMessage());
-                return "";
-            }
-            
-        } catch (Exception e) {
-            logger.error("Error reading chapter file {}: {}", fileName, e.getMessage());
-            return "";
-        }
-    }
-    
     /**
      * Extract chapters by looking for numbered chapter markers (第一章, 第二章, etc.) in content
      */
-    private List<ChapterContent> extractNumberedChapters(ZipFile zipFile, List<String> spineFiles) {
+    private List<ChapterContent> extractNumberedChapters(List<String> spineTexts) {
         List<ChapterContent> chapters = new ArrayList<>();
         
         // Get all text content first
         StringBuilder allText = new StringBuilder();
-        for (String fileName : spineFiles) {
-            String text = extractChapterText(zipFile, fileName);
+        for (String text : spineTexts) {
             if (text.length() > 100) { // Skip very small files
                 allText.append(text).append("\n");
             }
@@ -271,13 +169,14 @@ public class EPUBChapterExtractor {
     /**
      * Extract chapters by filtering content files and detecting actual chapter names
      */
-    private List<ChapterContent> extractContentBasedChapters(ZipFile zipFile, List<String> spineFiles) {
+    private List<ChapterContent> extractContentBasedChapters(List<String> spineFiles, List<String> spineTexts) {
         List<ChapterContent> chapters = new ArrayList<>();
         int chapterNumber = 1;
         int totalPosition = 0;
         
-        for (String fileName : spineFiles) {
-            String chapterText = extractChapterText(zipFile, fileName);
+        for (int i = 0; i < spineFiles.size(); i++) {
+            String fileName = spineFiles.get(i);
+            String chapterText = spineTexts.get(i);
             
             // Skip if too small (likely metadata)
             if (chapterText.length() < 5000) {
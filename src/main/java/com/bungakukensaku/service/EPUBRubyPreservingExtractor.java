@@ -4,16 +4,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
-import org.w3c.dom.*;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import java.io.File;
-import java.io.InputStream;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
 
 /**
  * Enhanced EPUB chapter extractor that preserves ruby tags for furigana display
@@ -28,22 +23,24 @@ public class EPUBRubyPreservingExtractor {
     
     private static final Logger logger = LoggerFactory.getLogger(EPUBRubyPreservingExtractor.class);
     
+    @Autowired
+    private EpubReader epubReader;
+    
     /**
      * Extract chapters with preserved ruby tags
      */
     public List<EPUBChapterExtractor.ChapterContent> extractChaptersWithRuby(String epubPath) {
         List<EPUBChapterExtractor.ChapterContent> chapters = new ArrayList<>();
         
-        try (ZipFile zipFile = new ZipFile(new File(epubPath))) {
-            // Use same logic as base extractor but with ruby preservation
-            String opfPath = findOPFPath(zipFile);
-            List<String> spineFiles = parseSpine(zipFile, opfPath);
+        try {
+            // Same spine handling as the base extractor, with ruby preserved while streaming
+            RubyTextCollector collector = new RubyTextCollector();
+            EpubReader.Publication publication = epubReader.read(epubPath, collector);
             
-            // Extract with ruby preservation
-            chapters = extractNumberedChaptersWithRuby(zipFile, spineFiles);
+            chapters = extractNumberedChaptersWithRuby(collector.getTexts());
             
             if (chapters.isEmpty()) {
-                chapters = extractContentBasedChaptersWithRuby(zipFile, spineFiles);
+                chapters = extractContentBasedChaptersWithRuby(publication.getSpineFiles(), collector.getTexts());
             }
             
         } catch (Exception e) {
@@ -53,182 +50,124 @@ public class EPUBRubyPreservingExtractor {
         return chapters;
     }
     
-    // Copy necessary private methods from parent class
-    private String findOPFPath(ZipFile zipFile) throws Exception {
-        ZipEntry containerEntry = zipFile.getEntry("META-INF/container.xml");
-        if (containerEntry == null) {
-            throw new Exception("No META-INF/container.xml found in EPUB");
-        }
+    /**
+     * Collects the text of each spine item with ruby tags converted to
+     * {kanji|furigana} storage format:
+     * - ruby: direct text and rb are the base, rt is the reading, rp is dropped;
+     *   other elements inside ruby are processed normally into the base
+     * - br becomes a newline, p and div are followed by a blank line
+     * - other elements contribute their text
+     */
+    private static class RubyTextCollector implements EpubReader.SpineVisitor {
+        
+        // How character data inside an element is handled
+        private static final int TEXT = 0;      // Normal text flow
+        private static final int RUBY = 1;     // Direct children of a ruby element
+        private static final int CAPTURE = 2;  // All text of an rb/rt subtree
+        private static final int DROP = 3;     // rp subtree
         
-        try (InputStream is = zipFile.getInputStream(containerEntry)) {
-            DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
-            Document doc = builder.parse(is);
+        private final List<String> texts = new ArrayList<>();
+        private final Deque<Frame> frames = new ArrayDeque<>();
+        private final StringBuilder current = new StringBuilder();
+        
+        private static class Frame {
+            final int mode;
+            final String tagName;
+            final StringBuilder target;   // Where text goes (base text for ruby)
+            final StringBuilder reading;  // Furigana, ruby frames only
             
-            NodeList rootfiles = doc.getElementsByTagName("rootfile");
-            if (rootfiles.getLength() > 0) {
-                Element rootfile = (Element) rootfiles.item(0);
-                return rootfile.getAttribute("full-path");
+            Frame(int mode, String tagName, StringBuilder target, StringBuilder reading) {
+                this.mode = mode;
+                this.tagName = tagName;
+                this.target = target;
+                this.reading = reading;
             }
         }
         
-        throw new Exception("Could not find OPF file path");
-    }
-    
-    private List<String> parseSpine(ZipFile zipFile, String opfPath) throws Exception {
-        List<String> spineFiles = new ArrayList<>();
-        String basePath = opfPath.substring(0, opfPath.lastIndexOf('/') + 1);
+        @Override
+        public void startItem(String fileName) {
+            current.setLength(0);
+            frames.clear();
+            frames.push(new Frame(TEXT, "body", current, null));
+        }
         
-        ZipEntry opfEntry = zipFile.getEntry(opfPath);
-        try (InputStream is = zipFile.getInputStream(opfEntry)) {
-            DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
-            Document doc = builder.parse(is);
-            
-            // Get manifest to map IDs to files
-            NodeList manifestItems = doc.getElementsByTagName("item");
-            java.util.Map<String, String> idToHref = new java.util.HashMap<>();
-            
-            for (int i = 0; i < manifestItems.getLength(); i++) {
-                Element item = (Element) manifestItems.item(i);
-                String id = item.getAttribute("id");
-                String href = item.getAttribute("href");
-                idToHref.put(id, href);
-            }
+        @Override
+        public void startElement(String localName) {
+            Frame parent = frames.peek();
+            String tagName = localName.toLowerCase();
             
-            // Get spine items in order
-            NodeList spineItems = doc.getElementsByTagName("itemref");
-            for (int i = 0; i < spineItems.getLength(); i++) {
-                Element itemref = (Element) spineItems.item(i);
-                String idref = itemref.getAttribute("idref");
-                String href = idToHref.get(idref);
-                if (href != null) {
-                    spineFiles.add(basePath + href);
-                }
+            switch (parent.mode) {
+                case RUBY:
+                    if ("rt".equals(tagName)) {
+                        frames.push(new Frame(CAPTURE, tagName, parent.reading, null));
+                    } else if ("rb".equals(tagName)) {
+                        frames.push(new Frame(CAPTURE, tagName, parent.target, null));
+                    } else if ("rp".equals(tagName)) {
+                        frames.push(new Frame(DROP, tagName, null, null));
+                    } else {
+                        // Other elements inside ruby, treat as base text
+                        pushTextElement(tagName, parent.target);
+                    }
+                    break;
+                case CAPTURE:
+                case DROP:
+                    frames.push(new Frame(parent.mode, tagName, parent.target, null));
+                    break;
+                default:
+                    pushTextElement(tagName, parent.target);
+                    break;
             }
         }
         
-        return spineFiles;
-    }
-    
-    /**
-     * Extract text content from a chapter file while preserving ruby tags
-     */
-    private String extractChapterText(ZipFile zipFile, String fileName) {
-        try {
-            ZipEntry entry = zipFile.getEntry(fileName);
-            if (entry == null) {
-                logger.warn("Could not find chapter file: {}", fileName);
-                return "";
+        private void pushTextElement(String tagName, StringBuilder target) {
+            if ("ruby".equals(tagName)) {
+                frames.push(new Frame(RUBY, tagName, new StringBuilder(), new StringBuilder()));
+                return;
             }
-            
-            try (InputStream is = zipFile.getInputStream(entry)) {
-                DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
-                Document doc = builder.parse(is);
-                
-                // Get the body element
-                NodeList bodies = doc.getElementsByTagName("body");
-                if (bodies.getLength() > 0) {
-                    Element body = (Element) bodies.item(0);
-                    // Extract text while preserving ruby tags
-                    return extractTextWithRuby(body);
-                }
-                
-                return "";
-                
-            } catch (Exception e) {
-                logger.error("Error parsing chapter {}: {}", fileName, e.getMessage());
-                return "";
+            if ("br".equals(tagName)) {
+                // Preserve line breaks
+                target.append("\n");
             }
-            
-        } catch (Exception e) {
-            logger.error("Error reading chapter file {}: {}", fileName, e.getMessage());
-            return "";
+            frames.push(new Frame(TEXT, tagName, target, null));
         }
-    }
-    
-    /**
-     * Extract text content while preserving ruby tags in a special format
-     * Ruby tags are converted to: {kanji|furigana} format for storage
-     * 
-     * @param node DOM node to process
-     * @return Text content with preserved ruby markup
-     */
-    private String extractTextWithRuby(Node node) {
-        StringBuilder result = new StringBuilder();
         
-        if (node.getNodeType() == Node.TEXT_NODE) {
-            // Plain text node
-            result.append(node.getTextContent());
-        } else if (node.getNodeType() == Node.ELEMENT_NODE) {
-            Element element = (Element) node;
-            String tagName = element.getTagName().toLowerCase();
-            
-            if ("ruby".equals(tagName)) {
-                // Handle ruby tag specially
-                result.append(extractRubyContent(element));
-            } else if ("br".equals(tagName)) {
-                // Preserve line breaks
-                result.append("\n");
-            } else if ("p".equals(tagName) || "div".equals(tagName)) {
+        @Override
+        public void endElement(String localName) {
+            Frame frame = frames.pop();
+            if (frame.mode == RUBY) {
+                frames.peek().target.append(formatRuby(frame.target, frame.reading));
+            } else if (frame.mode == TEXT && ("p".equals(frame.tagName) || "div".equals(frame.tagName))) {
                 // Add newlines for block elements
-                NodeList children = node.getChildNodes();
-                for (int i = 0; i < children.getLength(); i++) {
-                    result.append(extractTextWithRuby(children.item(i)));
-                }
-                result.append("\n\n");
-            } else {
-                // For other elements, just extract child content
-                NodeList children = node.getChildNodes();
-                for (int i = 0; i < children.getLength(); i++) {
-                    result.append(extractTextWithRuby(children.item(i)));
-                }
+                frame.target.append("\n\n");
             }
         }
         
-        return result.toString();
-    }
-    
-    /**
-     * Extract content from a ruby element
-     * Format: {kanji|furigana}
-     * 
-     * @param rubyElement The ruby element
-     * @return Formatted ruby content
-     */
-    private String extractRubyContent(Element rubyElement) {
-        StringBuilder kanji = new StringBuilder();
-        StringBuilder furigana = new StringBuilder();
-        
-        NodeList children = rubyElement.getChildNodes();
-        for (int i = 0; i < children.getLength(); i++) {
-            Node child = children.item(i);
-            
-            if (child.getNodeType() == Node.TEXT_NODE) {
-                // Base text (kanji)
-                kanji.append(child.getTextContent());
-            } else if (child.getNodeType() == Node.ELEMENT_NODE) {
-                Element childElement = (Element) child;
-                String tagName = childElement.getTagName().toLowerCase();
-                
-                if ("rt".equals(tagName)) {
-                    // Ruby text (furigana)
-                    furigana.append(childElement.getTextContent());
-                } else if ("rb".equals(tagName)) {
-                    // Ruby base (some EPUBs use rb tag)
-                    kanji.append(childElement.getTextContent());
-                } else if ("rp".equals(tagName)) {
-                    // Ruby parentheses - ignore
-                } else {
-                    // Other elements inside ruby, treat as base text
-                    kanji.append(extractTextWithRuby(child));
-                }
+        @Override
+        public void characters(String text) {
+            Frame frame = frames.peek();
+            if (frame.mode != DROP) {
+                frame.target.append(text);
             }
         }
         
-        // Return in our storage format
-        if (!furigana.toString().isEmpty()) {
-            return "{" + kanji.toString().trim() + "|" + furigana.toString().trim() + "}";
-        } else {
-            // No furigana found, just return the kanji
+        @Override
+        public void endItem(String fileName, boolean complete) {
+            texts.add(complete ? current.toString() : "");
+            current.setLength(0);
+            frames.clear();
+        }
+        
+        List<String> getTexts() {
+            return texts;
+        }
+        
+        /**
+         * Format: {kanji|furigana}, or just the kanji when there is no furigana
+         */
+        private static String formatRuby(CharSequence kanji, CharSequence furigana) {
+            if (furigana.length() > 0) {
+                return "{" + kanji.toString().trim() + "|" + furigana.toString().trim() + "}";
+            }
             return kanji.toString();
         }
     }
@@ -237,7 +176,7 @@ public class EPUBRubyPreservingExtractor {
      * Extract chapters by looking for numbered chapter markers with ruby preservation
      * EXPERIMENTAL: Chapter pattern detection disabled - use spine structure instead
      */
-    private List<EPUBChapterExtractor.ChapterContent> extractNumberedChaptersWithRuby(ZipFile zipFile, List<String> spineFiles) {
+    private List<EPUBChapterExtractor.ChapterContent> extractNumberedChaptersWithRuby(List<String> spineTexts) {
         // Chapter pattern detection disabled - fall back to spine-based processing
         // This avoids false matches where "第二章" appears in narrative text
         logger.debug("Chapter pattern detection disabled - falling back to spine-based extraction");
@@ -247,13 +186,14 @@ public class EPUBRubyPreservingExtractor {
     /**
      * Extract chapters by content with ruby preservation
      */
-    private List<EPUBChapterExtractor.ChapterContent> extractContentBasedChaptersWithRuby(ZipFile zipFile, List<String> spineFiles) {
+    private List<EPUBChapterExtractor.ChapterContent> extractContentBasedChaptersWithRuby(List<String> spineFiles, List<String> spineTexts) {
         List<EPUBChapterExtractor.ChapterContent> chapters = new ArrayList<>();
         int chapterNumber = 1;
         int totalPosition = 0;
         
-        for (String fileName : spineFiles) {
-            String chapterText = extractChapterText(zipFile, fileName);
+        for (int i = 0; i < spineFiles.size(); i++) {
+            String fileName = spineFiles.get(i);
+            String chapterText = spineTexts.get(i);
             
             // Skip if too small
             // EXPERIMENTAL: Size filtering disabled - process all content regardless of size
@@ -0,0 +1,178 @@
+package com.bungakukensaku.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToIntFunction;
+
+/**
+ * Runs bulk embedding work as token-budgeted requests with several in flight.
+ *
+ * Texts are packed in order into requests that stay under a token budget
+ * (counted with the embedding model's tokenizer, or conservatively estimated
+ * when its vocabulary is missing) and an input count limit, so short chunks fill a request and long ones never push
+ * it past the API's input limits. Requests run on a small shared pool whose size
+ * is the concurrency limit for all ingestion jobs together, and each request's
+ * embeddings are handed to the caller as soon as it completes.
+ */
+@Service
+public class EmbeddingBatchExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger(EmbeddingBatchExecutor.class);
+
+    // The OpenAI service itself: chunk texts must be embedded exactly as stored
+    // and must not pass through the query cache
+    @Autowired
+    private OpenAIEmbeddingService embeddingService;
+
+    @Autowired
+    private Tokenizer tokenizer;
+
+    @Value("${embedding.batch.max-tokens:60000}")
+    private int maxTokensPerRequest;
+
+    @Value("${embedding.batch.max-inputs:256}")
+    private int maxInputsPerRequest;
+
+    @Value("${embedding.batch.concurrency:4}")
+    private int concurrency;
+
+    private ExecutorService executor;
+
+    /**
+     * Receives the embeddings of one completed request
+     */
+    @FunctionalInterface
+    public interface BatchCallback {
+        /**
+         * @param offset Index of the request's first text in the submitted list
+         * @param embeddings Embeddings for texts offset .. offset + embeddings.size() - 1
+         */
+        void completed(int offset, List<float[]> embeddings);
+    }
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadCounter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(concurrency, concurrency, 0L, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, "embedding-" + threadCounter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        logger.info("Initialized embedding executor (concurrency={}, maxTokens={}, maxInputs={})",
+            concurrency, maxTokensPerRequest, maxInputsPerRequest);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Embed all texts, calling back as each request completes. Blocks until
+     * every request has finished; if any failed, the others still complete and
+     * deliver their results before the first failure is rethrown.
+     *
+     * @param texts Texts to embed
+     * @param callback Called (on an executor thread) with each request's results
+     * @return Number of texts embedded
+     */
+    public int embedAll(List<String> texts, BatchCallback callback) {
+        if (texts.isEmpty()) {
+            return 0;
+        }
+
+        long start = System.currentTimeMillis();
+        List<int[]> ranges = pack(texts, tokenizer.isExact() ? tokenizer::countTokens : EmbeddingBatchExecutor::estimateTokens,
+            maxTokensPerRequest, maxInputsPerRequest);
+
+        List<CompletableFuture<Void>> requests = new ArrayList<>(ranges.size());
+        for (int[] range : ranges) {
+            List<String> batch = texts.subList(range[0], range[1]);
+            requests.add(CompletableFuture.runAsync(
+                () -> callback.completed(range[0], embeddingService.generateEmbeddings(batch)), executor));
+        }
+
+        RuntimeException failure = null;
+        for (CompletableFuture<Void> request : requests) {
+            try {
+                request.join();
+            } catch (CompletionException e) {
+                if (failure == null) {
+                    failure = e.getCause() instanceof RuntimeException
+                        ? (RuntimeException) e.getCause()
+                        : new RuntimeException("Embedding request failed", e.getCause());
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+
+        logger.info("Embedded {} texts in {} requests ({} concurrent) in {}ms",
+            texts.size(), ranges.size(), concurrency, System.currentTimeMillis() - start);
+        return texts.size();
+    }
+
+    /**
+     * Split texts, in order, into [from, to) ranges that each fit one request
+     *
+     * @param texts Texts to pack
+     * @param tokenCounter Tokens of one text
+     * @param maxTokens Token budget per request
+     * @param maxInputs Maximum texts per request
+     * @return Contiguous ranges covering every text
+     */
+    static List<int[]> pack(List<String> texts, ToIntFunction<String> tokenCounter, int maxTokens, int maxInputs) {
+        List<int[]> ranges = new ArrayList<>();
+        int from = 0;
+        int tokens = 0;
+        for (int i = 0; i < texts.size(); i++) {
+            int count = tokenCounter.applyAsInt(texts.get(i));
+            // An oversized text still gets a request of its own
+            if (i > from && (tokens + count > maxTokens || i - from >= maxInputs)) {
+                ranges.add(new int[] { from, i });
+                from = i;
+                tokens = 0;
+            }
+            tokens += count;
+        }
+        ranges.add(new int[] { from, texts.size() });
+        return ranges;
+    }
+
+    /**
+     * Conservative token estimate used when the tokenizer has no vocabulary:
+     * about four ASCII characters per token and one token per character
+     * otherwise (roughly what cl100k spends on kana and common kanji; rarer
+     * kanji cost more but are offset by the ASCII side).
+     */
+    static int estimateTokens(String text) {
+        int ascii = 0;
+        int other = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                ascii++;
+            } else if (!Character.isLowSurrogate(c)) {
+                other++;
+            }
+        }
+        return (ascii + 3) / 4 + other + 1;
+    }
+}
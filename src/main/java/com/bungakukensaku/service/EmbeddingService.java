@@ -35,4 +35,12 @@ public interface EmbeddingService {
      * @return The dimension size of embedding vectors
      */
     int getEmbeddingDimension();
+    
+    /**
+     * Get the name of the model that produces the embeddings.
+     * Embeddings from different models are not comparable, so caches key on this.
+     * 
+     * @return The embedding model name
+     */
+    String getModelName();
 }
\ No newline at end of file
@@ -0,0 +1,320 @@
+package com.bungakukensaku.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Streaming reader for EPUB archives shared by the EPUB extractors
+ *
+ * The archive is opened once per book, container.xml and the OPF package
+ * document are parsed once to get the spine (reading order), and each spine
+ * XHTML entry is then streamed with StAX straight to a SpineVisitor. No DOM is
+ * built; extractors keep only the state they need.
+ */
+@Service
+public class EpubReader {
+
+    private static final Logger logger = LoggerFactory.getLogger(EpubReader.class);
+
+    private static final String CONTAINER_PATH = "META-INF/container.xml";
+
+    // Configured once; creating readers from a configured factory is thread-safe
+    private static final XMLInputFactory XML_INPUT_FACTORY = createInputFactory();
+
+    // XHTML entities seen in EPUBs; the DTD that declares them is never loaded
+    private static final Map<String, String> XHTML_ENTITIES = Map.ofEntries(
+        Map.entry("nbsp", "\u00A0"),
+        Map.entry("ensp", "\u2002"),
+        Map.entry("emsp", "\u2003"),
+        Map.entry("thinsp", "\u2009"),
+        Map.entry("ndash", "\u2013"),
+        Map.entry("mdash", "\u2014"),
+        Map.entry("lsquo", "\u2018"),
+        Map.entry("rsquo", "\u2019"),
+        Map.entry("ldquo", "\u201C"),
+        Map.entry("rdquo", "\u201D"),
+        Map.entry("hellip", "\u2026"),
+        Map.entry("middot", "\u00B7"),
+        Map.entry("copy", "\u00A9")
+    );
+
+    /**
+     * Receives the content of each spine item in reading order
+     *
+     * Element and text events cover the content of the item's first body
+     * element (the body element itself is not reported).
+     */
+    public interface SpineVisitor {
+
+        /**
+         * Start of a spine item
+         *
+         * @param fileName Entry name in the archive
+         */
+        default void startItem(String fileName) {
+        }
+
+        /**
+         * @param localName Element name without namespace prefix, as written in the file
+         */
+        default void startElement(String localName) {
+        }
+
+        default void endElement(String localName) {
+        }
+
+        /**
+         * Character data (text, CDATA and resolved entity references)
+         */
+        void characters(String text);
+
+        /**
+         * End of a spine item
+         *
+         * @param fileName Entry name in the archive
+         * @param complete False if the entry is missing or could not be parsed;
+         *                 anything received for it should be discarded
+         */
+        void endItem(String fileName, boolean complete);
+    }
+
+    /**
+     * Package information read from container.xml and the OPF file
+     */
+    public static class Publication {
+        private final String opfPath;
+        private final List<String> spineFiles;
+
+        Publication(String opfPath, List<String> spineFiles) {
+            this.opfPath = opfPath;
+            this.spineFiles = Collections.unmodifiableList(spineFiles);
+        }
+
+        public String getOpfPath() { return opfPath; }
+        public List<String> getSpineFiles() { return spineFiles; }
+    }
+
+    /**
+     * Collects the trimmed body text of every spine item, the same text as the
+     * body element's DOM text content; items that are missing or unparseable give ""
+     */
+    public static class BodyTextCollector implements SpineVisitor {
+        private final List<String> texts = new ArrayList<>();
+        private final StringBuilder current = new StringBuilder();
+
+        @Override
+        public void startItem(String fileName) {
+            current.setLength(0);
+        }
+
+        @Override
+        public void characters(String text) {
+            current.append(text);
+        }
+
+        @Override
+        public void endItem(String fileName, boolean complete) {
+            texts.add(complete ? current.toString().trim() : "");
+            current.setLength(0);
+        }
+
+        /**
+         * @return Body text per spine item, in spine order
+         */
+        public List<String> getTexts() {
+            return texts;
+        }
+    }
+
+    /**
+     * Read an EPUB and stream every spine item to the visitor
+     *
+     * @param epubPath Path to the EPUB file
+     * @param visitor Receives the items in reading order
+     * @return The package's OPF path and spine
+     * @throws IOException if the archive, container.xml or the OPF cannot be read
+     */
+    public Publication read(String epubPath, SpineVisitor visitor) throws IOException {
+        try (ZipFile zipFile = new ZipFile(new File(epubPath))) {
+            String opfPath = findOPFPath(zipFile);
+            List<String> spineFiles = parseSpine(zipFile, opfPath);
+            logger.debug("EPUB {}: OPF at {}, {} spine items", epubPath, opfPath, spineFiles.size());
+
+            for (String fileName : spineFiles) {
+                visitor.startItem(fileName);
+                visitor.endItem(fileName, streamBody(zipFile, fileName, visitor));
+            }
+
+            return new Publication(opfPath, spineFiles);
+        }
+    }
+
+    /**
+     * Find the OPF file path from container.xml
+     */
+    private String findOPFPath(ZipFile zipFile) throws IOException {
+        ZipEntry containerEntry = zipFile.getEntry(CONTAINER_PATH);
+        if (containerEntry == null) {
+            throw new IOException("No META-INF/container.xml found in EPUB");
+        }
+
+        try (InputStream is = zipFile.getInputStream(containerEntry)) {
+            XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(is);
+            try {
+                while (reader.hasNext()) {
+                    if (reader.next() == XMLStreamConstants.START_ELEMENT && "rootfile".equals(reader.getLocalName())) {
+                        return attribute(reader, "full-path");
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Could not parse " + CONTAINER_PATH + ": " + e.getMessage(), e);
+        }
+
+        throw new IOException("Could not find OPF file path");
+    }
+
+    /**
+     * Parse the manifest and spine of the OPF to get the reading order
+     */
+    private List<String> parseSpine(ZipFile zipFile, String opfPath) throws IOException {
+        ZipEntry opfEntry = zipFile.getEntry(opfPath);
+        if (opfEntry == null) {
+            throw new IOException("OPF file not found in EPUB: " + opfPath);
+        }
+
+        String basePath = opfPath.substring(0, opfPath.lastIndexOf('/') + 1);
+        Map<String, String> idToHref = new HashMap<>();
+        List<String> idrefs = new ArrayList<>();
+
+        try (InputStream is = zipFile.getInputStream(opfEntry)) {
+            XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(is);
+            try {
+                while (reader.hasNext()) {
+                    if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                        continue;
+                    }
+                    String name = reader.getLocalName();
+                    if ("item".equals(name)) {
+                        idToHref.put(attribute(reader, "id"), attribute(reader, "href"));
+                    } else if ("itemref".equals(name)) {
+                        idrefs.add(attribute(reader, "idref"));
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Could not parse OPF " + opfPath + ": " + e.getMessage(), e);
+        }
+
+        // The spine may come before the manifest, so resolve once both are read
+        List<String> spineFiles = new ArrayList<>(idrefs.size());
+        for (String idref : idrefs) {
+            String href = idToHref.get(idref);
+            if (href != null) {
+                spineFiles.add(basePath + href);
+            }
+        }
+        return spineFiles;
+    }
+
+    /**
+     * Stream the content of the first body element of a spine entry to the visitor
+     *
+     * @return True if the body was read to its end (or the entry has no body)
+     */
+    private boolean streamBody(ZipFile zipFile, String fileName, SpineVisitor visitor) {
+        ZipEntry entry = zipFile.getEntry(fileName);
+        if (entry == null) {
+            logger.warn("Could not find chapter file: {}", fileName);
+            return false;
+        }
+
+        try (InputStream is = zipFile.getInputStream(entry)) {
+            XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(is);
+            try {
+                int bodyDepth = -1;
+                int depth = 0;
+                while (reader.hasNext()) {
+                    int event = reader.next();
+                    switch (event) {
+                        case XMLStreamConstants.START_ELEMENT:
+                            depth++;
+                            if (bodyDepth != -1) {
+                                visitor.startElement(reader.getLocalName());
+                            } else if ("body".equals(reader.getLocalName())) {
+                                bodyDepth = depth;
+                            }
+                            break;
+                        case XMLStreamConstants.END_ELEMENT:
+                            if (depth == bodyDepth) {
+                                // Nothing after the body is needed
+                                return true;
+                            }
+                            if (bodyDepth != -1) {
+                                visitor.endElement(reader.getLocalName());
+                            }
+                            depth--;
+                            break;
+                        case XMLStreamConstants.CHARACTERS:
+                        case XMLStreamConstants.CDATA:
+                        case XMLStreamConstants.SPACE:
+                            if (bodyDepth != -1) {
+                                visitor.characters(reader.getText());
+                            }
+                            break;
+                        case XMLStreamConstants.ENTITY_REFERENCE:
+                            if (bodyDepth != -1) {
+                                String replacement = XHTML_ENTITIES.get(reader.getLocalName());
+                                if (replacement != null) {
+                                    visitor.characters(replacement);
+                                }
+                            }
+                            break;
+                        default:
+                            break;
+                    }
+                }
+                return true;
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException | IOException e) {
+            logger.error("Error parsing chapter {}: {}", fileName, e.getMessage());
+            return false;
+        }
+    }
+
+    private static String attribute(XMLStreamReader reader, String name) {
+        String value = reader.getAttributeValue(null, name);
+        return value != null ? value : "";
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        // Never fetch the XHTML DTD; undeclared entities are reported as references instead
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_REPLACING_ENTITY_REFERENCES, false);
+        return factory;
+    }
+}
@@ -0,0 +1,103 @@
+package com.bungakukensaku.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Combines vector and lexical retrieval with reciprocal rank fusion (RRF).
+ *
+ * Both retrievers return a deeper candidate list than the page size; each
+ * candidate scores 1 / (k + rank) per list it appears in, and the fused list
+ * is cut back to topK. Vector matches keep their cosine similarity as the
+ * displayed score. Lexical-only matches are scored relative to the best BM25
+ * match, since they have no similarity to show.
+ */
+@Service
+public class HybridSearchService {
+
+    private static final Logger logger = LoggerFactory.getLogger(HybridSearchService.class);
+    private static final String VECTOR_ID_PREFIX = "chunk-";
+
+    @Autowired
+    private VectorStore vectorStore;
+
+    @Autowired
+    private LexicalIndexService lexicalIndexService;
+
+    @Autowired
+    private SearchMetrics searchMetrics;
+
+    @Value("${search.hybrid.rrf-k:60}")
+    private int rrfK;
+
+    @Value("${search.hybrid.candidates:20}")
+    private int candidates;
+
+    /**
+     * Retrieve the best chunks for a query from both the vector store and the
+     * lexical index.
+     *
+     * @param query The user's search query (for the lexical index)
+     * @param queryVector The query embedding (for the vector store)
+     * @param topK Number of results to return
+     * @param filter Metadata filter from the book selection, or null
+     * @return Fused results, best first, in the vector store's result format
+     */
+    public List<VectorStore.SearchResult> search(String query, float[] queryVector, int topK,
+                                                 Map<String, Object> filter) {
+        int depth = Math.max(topK, candidates);
+        List<VectorStore.SearchResult> vectorResults = searchMetrics.time(SearchMetrics.VECTOR_QUERY,
+            () -> vectorStore.query(queryVector, depth, filter));
+        List<LexicalIndexService.Match> lexicalResults = searchMetrics.time(SearchMetrics.LEXICAL_QUERY,
+            () -> lexicalIndexService.search(query, depth, filter));
+
+        if (lexicalResults.isEmpty()) {
+            return vectorResults.subList(0, Math.min(topK, vectorResults.size()));
+        }
+
+        // Accumulate RRF scores keyed by vector ID; insertion order breaks ties in favour of vector rank
+        Map<String, Double> fusedScores = new LinkedHashMap<>();
+        Map<String, VectorStore.SearchResult> resultsById = new HashMap<>();
+        for (int rank = 0; rank < vectorResults.size(); rank++) {
+            VectorStore.SearchResult result = vectorResults.get(rank);
+            fusedScores.merge(result.getId(), 1.0 / (rrfK + rank + 1), Double::sum);
+            resultsById.putIfAbsent(result.getId(), result);
+        }
+
+        float bestLexicalScore = lexicalResults.get(0).getScore();
+        int lexicalOnly = 0;
+        for (int rank = 0; rank < lexicalResults.size(); rank++) {
+            LexicalIndexService.Match match = lexicalResults.get(rank);
+            String id = VECTOR_ID_PREFIX + match.getChunkId();
+            fusedScores.merge(id, 1.0 / (rrfK + rank + 1), Double::sum);
+            if (!resultsById.containsKey(id)) {
+                Map<String, Object> metadata = new HashMap<>();
+                metadata.put("chunkId", match.getChunkId());
+                metadata.put("bookId", match.getBookId());
+                resultsById.put(id, new VectorStore.SearchResult(id, match.getScore() / bestLexicalScore, metadata));
+                lexicalOnly++;
+            }
+        }
+
+        List<Map.Entry<String, Double>> ranked = new ArrayList<>(fusedScores.entrySet());
+        ranked.sort(Map.Entry.<String, Double>comparingByValue().reversed());
+
+        List<VectorStore.SearchResult> fused = new ArrayList<>();
+        for (int i = 0; i < Math.min(topK, ranked.size()); i++) {
+            fused.add(resultsById.get(ranked.get(i).getKey()));
+        }
+
+        logger.info("Fused {} vector and {} lexical matches ({} lexical-only) into {} results",
+            vectorResults.size(), lexicalResults.size(), lexicalOnly, fused.size());
+        return fused;
+    }
+}
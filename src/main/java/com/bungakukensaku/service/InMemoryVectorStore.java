@@ -0,0 +1,597 @@
+package com.bungakukensaku.service;
+
+import com.bungakukensaku.model.Chunk;
+import com.bungakukensaku.repository.ChunkRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Exact in-process vector index built from the embeddings stored in Postgres.
+ *
+ * All embeddings are loaded at startup into one contiguous float[] matrix
+ * (row-major, L2-normalized), so cosine similarity is a plain dot product.
+ * Queries are answered by a brute-force scan split across a fixed worker pool,
+ * each worker keeping its own top-K heap that is merged at the end.
+ *
+ * Enabled with vector.store.type=memory, in which case it replaces Pinecone
+ * on the query path. Ingestion keeps it current after each commit: new
+ * embeddings are appended (addVectors/addChunks) and chunks deleted by a
+ * reprocess are removed (removeChunks). refresh() rebuilds it from the database.
+ *
+ * Appends write rows past the end of the published snapshot, which queries
+ * never read, and then publish a longer snapshot over the same arrays; removals
+ * publish a compacted copy. Appending a chunk that is already indexed replaces
+ * its row: the old row is dropped through the same compacted copy, so each chunk
+ * appears at most once. All writers are synchronized.
+ */
+@Service
+@Primary
+@ConditionalOnProperty(name = "vector.store.type", havingValue = "memory")
+public class InMemoryVectorStore implements VectorStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(InMemoryVectorStore.class);
+    private static final int LOAD_PAGE_SIZE = 2000;
+    // Below this many rows a single thread is faster than fanning out
+    private static final int PARALLEL_THRESHOLD = 20_000;
+
+    @Autowired
+    private ChunkRepository chunkRepository;
+
+    @Value("${pinecone.dimension:1536}")
+    private int dimension;
+
+    @Value("${vector.store.memory.threads:0}")
+    private int configuredThreads;
+
+    private ExecutorService executor;
+    private int threads;
+
+    // Swapped atomically on refresh; queries always see a complete snapshot
+    private volatile Snapshot snapshot;
+
+    @PostConstruct
+    public void init() {
+        this.threads = configuredThreads > 0 ? configuredThreads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadCounter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "vector-scan-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        refresh();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Reload all embeddings from the database and swap in the new matrix
+     *
+     * @return Number of vectors loaded
+     */
+    public synchronized int refresh() {
+        long start = System.currentTimeMillis();
+
+        int capacity = (int) Math.max(chunkRepository.countByEmbeddingIsNotNull(), 16);
+        float[] matrix = new float[capacity * dimension];
+        long[] chunkIds = new long[capacity];
+        int[] bookOrdinals = new int[capacity];
+        Map<Long, Integer> bookOrdinalById = new HashMap<>();
+        List<Long> bookIdByOrdinal = new ArrayList<>();
+
+        int rows = 0;
+        int skipped = 0;
+        long afterId = 0L;
+        while (true) {
+            List<Object[]> page = chunkRepository.findEmbeddingPage(afterId, PageRequest.of(0, LOAD_PAGE_SIZE));
+            if (page.isEmpty()) {
+                break;
+            }
+            for (Object[] row : page) {
+                long chunkId = ((Number) row[0]).longValue();
+                long bookId = ((Number) row[1]).longValue();
+                float[] embedding = (float[]) row[2];
+                afterId = chunkId;
+
+                if (embedding == null || embedding.length != dimension) {
+                    skipped++;
+                    continue;
+                }
+
+                // Chunks may have been added since the count; grow if needed
+                if (rows == chunkIds.length) {
+                    int newCapacity = chunkIds.length + (chunkIds.length >> 1);
+                    matrix = Arrays.copyOf(matrix, newCapacity * dimension);
+                    chunkIds = Arrays.copyOf(chunkIds, newCapacity);
+                    bookOrdinals = Arrays.copyOf(bookOrdinals, newCapacity);
+                }
+
+                int offset = rows * dimension;
+                System.arraycopy(embedding, 0, matrix, offset, dimension);
+                normalizeInPlace(matrix, offset, dimension);
+                chunkIds[rows] = chunkId;
+                bookOrdinals[rows] = bookOrdinalById.computeIfAbsent(bookId, id -> {
+                    bookIdByOrdinal.add(id);
+                    return bookIdByOrdinal.size() - 1;
+                });
+                rows++;
+            }
+        }
+
+        this.snapshot = new Snapshot(matrix, chunkIds, bookOrdinals, rows, bookOrdinalById, bookIdByOrdinal);
+        logger.info("Loaded {} vectors into in-memory index ({} skipped, {} MB) in {}ms",
+            rows, skipped, (long) rows * dimension * 4 / (1024 * 1024), System.currentTimeMillis() - start);
+        return rows;
+    }
+
+    /**
+     * Add the vectors of newly embedded chunks of one book
+     *
+     * @param chunkIds Chunk IDs, parallel to embeddings
+     * @param bookId Book the chunks belong to
+     * @param embeddings Committed embeddings
+     */
+    public synchronized void addVectors(List<Long> chunkIds, Long bookId, List<float[]> embeddings) {
+        Set<Long> added = new HashSet<>();
+        for (int i = 0; i < chunkIds.size(); i++) {
+            if (isIndexable(embeddings.get(i))) {
+                added.add(chunkIds.get(i));
+            }
+        }
+        Snapshot current = snapshot;
+        Builder builder = new Builder(without(current, added));
+        for (int i = 0; i < chunkIds.size(); i++) {
+            builder.append(chunkIds.get(i), bookId, embeddings.get(i));
+        }
+        publish(builder, current);
+    }
+
+    /**
+     * Add the saved chunks that already have an embedding (e.g. reused by content hash)
+     */
+    public synchronized void addChunks(Collection<Chunk> chunks) {
+        List<Chunk> indexable = new ArrayList<>();
+        Set<Long> added = new HashSet<>();
+        for (Chunk chunk : chunks) {
+            if (chunk.getId() != null && isIndexable(chunk.getEmbedding()) && chunk.getBook() != null) {
+                indexable.add(chunk);
+                added.add(chunk.getId());
+            }
+        }
+        Snapshot current = snapshot;
+        Builder builder = new Builder(without(current, added));
+        for (Chunk chunk : indexable) {
+            builder.append(chunk.getId(), chunk.getBook().getId(), chunk.getEmbedding());
+        }
+        publish(builder, current);
+    }
+
+    /**
+     * Remove deleted chunks from the index
+     */
+    public synchronized void removeChunks(Collection<Long> chunkIds) {
+        if (chunkIds.isEmpty()) {
+            return;
+        }
+        Snapshot current = snapshot;
+        Snapshot compacted = without(current, new HashSet<>(chunkIds));
+        if (compacted != current) {
+            this.snapshot = compacted;
+            logger.debug("Removed {} vectors from in-memory index", current.rows - compacted.rows);
+        }
+    }
+
+    /**
+     * A compacted copy of the snapshot without the given chunks' rows,
+     * or the snapshot itself when none of them is indexed
+     */
+    private Snapshot without(Snapshot current, Set<Long> removed) {
+        int first = 0;
+        while (first < current.rows && !removed.contains(current.chunkIds[first])) {
+            first++;
+        }
+        if (first == current.rows) {
+            return current;
+        }
+
+        // Rows before the first removed one are copied in bulk
+        float[] matrix = new float[current.chunkIds.length * dimension];
+        long[] ids = new long[current.chunkIds.length];
+        int[] bookOrdinals = new int[current.chunkIds.length];
+        System.arraycopy(current.matrix, 0, matrix, 0, first * dimension);
+        System.arraycopy(current.chunkIds, 0, ids, 0, first);
+        System.arraycopy(current.bookOrdinals, 0, bookOrdinals, 0, first);
+        int rows = first;
+        for (int row = first + 1; row < current.rows; row++) {
+            if (removed.contains(current.chunkIds[row])) {
+                continue;
+            }
+            System.arraycopy(current.matrix, row * dimension, matrix, rows * dimension, dimension);
+            ids[rows] = current.chunkIds[row];
+            bookOrdinals[rows] = current.bookOrdinals[row];
+            rows++;
+        }
+        return new Snapshot(matrix, ids, bookOrdinals, rows, current.bookOrdinalById, current.bookIdByOrdinal);
+    }
+
+    private void publish(Builder builder, Snapshot previous) {
+        if (builder.base != previous || builder.rows > previous.rows) {
+            this.snapshot = builder.build();
+            logger.debug("Added {} vectors to in-memory index ({} replaced, {} total)",
+                builder.rows - builder.base.rows, previous.rows - builder.base.rows, builder.rows);
+        }
+    }
+
+    private boolean isIndexable(float[] embedding) {
+        return embedding != null && embedding.length == dimension;
+    }
+
+    /**
+     * Number of vectors currently indexed
+     */
+    public int size() {
+        Snapshot current = snapshot;
+        return current != null ? current.rows : 0;
+    }
+
+    @Override
+    public List<SearchResult> query(float[] queryVector, int topK, Map<String, Object> filter) {
+        Snapshot current = snapshot;
+        if (queryVector.length != dimension) {
+            throw new IllegalArgumentException("Query vector has dimension " + queryVector.length + ", expected " + dimension);
+        }
+
+        // Normalized copy; the caller's vector is left untouched
+        float[] query = queryVector.clone();
+        normalizeInPlace(query, 0, dimension);
+
+        boolean[] allowedBooks = buildBookFilter(current, filter);
+        if (allowedBooks != null && !containsTrue(allowedBooks)) {
+            return new ArrayList<>();
+        }
+
+        TopK merged;
+        if (current.rows < PARALLEL_THRESHOLD || threads == 1) {
+            merged = scan(current, query, allowedBooks, 0, current.rows, topK);
+        } else {
+            merged = new TopK(topK);
+            int partSize = (current.rows + threads - 1) / threads;
+            List<Future<TopK>> parts = new ArrayList<>();
+            for (int start = 0; start < current.rows; start += partSize) {
+                int from = start;
+                int to = Math.min(start + partSize, current.rows);
+                parts.add(executor.submit(() -> scan(current, query, allowedBooks, from, to, topK)));
+            }
+            try {
+                for (Future<TopK> part : parts) {
+                    merged.addAll(part.get());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Vector scan interrupted", e);
+            } catch (ExecutionException e) {
+                throw new RuntimeException("Failed to query vectors", e.getCause());
+            }
+        }
+
+        List<SearchResult> results = new ArrayList<>();
+        for (int slot : merged.slotsByDescendingScore()) {
+            int row = merged.rowAt(slot);
+            long chunkId = current.chunkIds[row];
+            Map<String, Object> metadata = new HashMap<>();
+            metadata.put("chunkId", chunkId);
+            metadata.put("bookId", current.bookIdByOrdinal.get(current.bookOrdinals[row]));
+            results.add(new SearchResult("chunk-" + chunkId, merged.scoreAt(slot), metadata));
+        }
+
+        logger.debug("In-memory query over {} vectors returned {} results", current.rows, results.size());
+        return results;
+    }
+
+    private TopK scan(Snapshot s, float[] query, boolean[] allowedBooks, int from, int to, int topK) {
+        TopK top = new TopK(topK);
+        float[] matrix = s.matrix;
+        int dim = dimension;
+        for (int row = from; row < to; row++) {
+            if (allowedBooks != null && !allowedBooks[s.bookOrdinals[row]]) {
+                continue;
+            }
+            top.offer(row, dot(matrix, row * dim, query, dim));
+        }
+        return top;
+    }
+
+    /**
+     * Dot product with four independent accumulators so the JIT can pipeline the loop
+     */
+    private static float dot(float[] matrix, int offset, float[] query, int dim) {
+        float s0 = 0f, s1 = 0f, s2 = 0f, s3 = 0f;
+        int i = 0;
+        int bound = dim - (dim & 3);
+        for (; i < bound; i += 4) {
+            s0 += matrix[offset + i] * query[i];
+            s1 += matrix[offset + i + 1] * query[i + 1];
+            s2 += matrix[offset + i + 2] * query[i + 2];
+            s3 += matrix[offset + i + 3] * query[i + 3];
+        }
+        for (; i < dim; i++) {
+            s0 += matrix[offset + i] * query[i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    private static void normalizeInPlace(float[] values, int offset, int length) {
+        double sumSquares = 0;
+        for (int i = offset; i < offset + length; i++) {
+            sumSquares += values[i] * values[i];
+        }
+        if (sumSquares == 0) {
+            return;
+        }
+        float scale = (float) (1.0 / Math.sqrt(sumSquares));
+        for (int i = offset; i < offset + length; i++) {
+            values[i] *= scale;
+        }
+    }
+
+    /**
+     * Translate the metadata filter built by SearchController into a per-book mask.
+     * Supports {"bookId": [ids]}, {"bookId": {"$in": [ids]}} and {"bookId": id}.
+     *
+     * @return Mask indexed by book ordinal, or null when there is no filter
+     */
+    private boolean[] buildBookFilter(Snapshot s, Map<String, Object> filter) {
+        if (filter == null || filter.isEmpty()) {
+            return null;
+        }
+
+        boolean[] allowed = new boolean[s.bookIdByOrdinal.size()];
+        for (Map.Entry<String, Object> entry : filter.entrySet()) {
+            if (!"bookId".equals(entry.getKey())) {
+                throw new IllegalArgumentException("Unsupported filter field for in-memory vector store: " + entry.getKey());
+            }
+
+            Object value = entry.getValue();
+            if (value instanceof Map) {
+                value = ((Map<?, ?>) value).get("$in");
+            }
+
+            List<?> ids = value instanceof List ? (List<?>) value : List.of(value);
+            for (Object id : ids) {
+                if (id instanceof Number) {
+                    Integer ordinal = s.bookOrdinalById.get(((Number) id).longValue());
+                    if (ordinal != null) {
+                        allowed[ordinal] = true;
+                    }
+                }
+            }
+        }
+        return allowed;
+    }
+
+    private static boolean containsTrue(boolean[] values) {
+        for (boolean value : values) {
+            if (value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Immutable view of the loaded index
+     */
+    private static class Snapshot {
+        private final float[] matrix;
+        private final long[] chunkIds;
+        private final int[] bookOrdinals;
+        private final int rows;
+        private final Map<Long, Integer> bookOrdinalById;
+        private final List<Long> bookIdByOrdinal;
+
+        Snapshot(float[] matrix, long[] chunkIds, int[] bookOrdinals, int rows,
+                 Map<Long, Integer> bookOrdinalById, List<Long> bookIdByOrdinal) {
+            this.matrix = matrix;
+            this.chunkIds = chunkIds;
+            this.bookOrdinals = bookOrdinals;
+            this.rows = rows;
+            this.bookOrdinalById = bookOrdinalById;
+            this.bookIdByOrdinal = bookIdByOrdinal;
+        }
+    }
+
+    /**
+     * Appends rows after a snapshot's last row, growing the arrays (by copying)
+     * only when they are full; book maps are copied on the first new book.
+     * A chunk appended twice keeps only its last row.
+     */
+    private class Builder {
+        private final Snapshot base;
+        // Rows appended by this builder, which no published snapshot covers yet
+        private final Map<Long, Integer> appendedRows = new HashMap<>();
+        private float[] matrix;
+        private long[] chunkIds;
+        private int[] bookOrdinals;
+        private int rows;
+        private Map<Long, Integer> bookOrdinalById;
+        private List<Long> bookIdByOrdinal;
+        private boolean booksCopied;
+
+        Builder(Snapshot base) {
+            this.base = base;
+            this.matrix = base.matrix;
+            this.chunkIds = base.chunkIds;
+            this.bookOrdinals = base.bookOrdinals;
+            this.rows = base.rows;
+            this.bookOrdinalById = base.bookOrdinalById;
+            this.bookIdByOrdinal = base.bookIdByOrdinal;
+        }
+
+        void append(long chunkId, long bookId, float[] embedding) {
+            if (!isIndexable(embedding)) {
+                return;
+            }
+            Integer existing = appendedRows.get(chunkId);
+            if (existing != null) {
+                // Not yet visible to queries, so overwritten in place
+                System.arraycopy(embedding, 0, matrix, existing * dimension, dimension);
+                normalizeInPlace(matrix, existing * dimension, dimension);
+                bookOrdinals[existing] = ordinal(bookId);
+                return;
+            }
+            if (rows == chunkIds.length) {
+                int newCapacity = Math.max(16, chunkIds.length + (chunkIds.length >> 1));
+                matrix = Arrays.copyOf(matrix, newCapacity * dimension);
+                chunkIds = Arrays.copyOf(chunkIds, newCapacity);
+                bookOrdinals = Arrays.copyOf(bookOrdinals, newCapacity);
+            }
+
+            int offset = rows * dimension;
+            System.arraycopy(embedding, 0, matrix, offset, dimension);
+            normalizeInPlace(matrix, offset, dimension);
+            chunkIds[rows] = chunkId;
+            bookOrdinals[rows] = ordinal(bookId);
+            appendedRows.put(chunkId, rows);
+            rows++;
+        }
+
+        private int ordinal(long bookId) {
+            Integer ordinal = bookOrdinalById.get(bookId);
+            if (ordinal == null) {
+                if (!booksCopied) {
+                    bookOrdinalById = new HashMap<>(bookOrdinalById);
+                    bookIdByOrdinal = new ArrayList<>(bookIdByOrdinal);
+                    booksCopied = true;
+                }
+                bookIdByOrdinal.add(bookId);
+                ordinal = bookIdByOrdinal.size() - 1;
+                bookOrdinalById.put(bookId, ordinal);
+            }
+            return ordinal;
+        }
+
+        Snapshot build() {
+            return new Snapshot(matrix, chunkIds, bookOrdinals, rows, bookOrdinalById, bookIdByOrdinal);
+        }
+    }
+
+    /**
+     * Fixed-size min-heap of (row, score) pairs on primitive arrays
+     */
+    private static class TopK {
+        private final int capacity;
+        private final int[] rows;
+        private final float[] scores;
+        private int size;
+
+        TopK(int capacity) {
+            this.capacity = capacity;
+            this.rows = new int[capacity];
+            this.scores = new float[capacity];
+        }
+
+        void offer(int row, float score) {
+            if (capacity == 0) {
+                return;
+            }
+            if (size < capacity) {
+                rows[size] = row;
+                scores[size] = score;
+                siftUp(size++);
+            } else if (score > scores[0]) {
+                rows[0] = row;
+                scores[0] = score;
+                siftDown(0);
+            }
+        }
+
+        void addAll(TopK other) {
+            for (int i = 0; i < other.size; i++) {
+                offer(other.rows[i], other.scores[i]);
+            }
+        }
+
+        /**
+         * Heap slots ordered from best to worst score
+         */
+        Integer[] slotsByDescendingScore() {
+            Integer[] slots = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                slots[i] = i;
+            }
+            Arrays.sort(slots, (a, b) -> Float.compare(scores[b], scores[a]));
+            return slots;
+        }
+
+        int rowAt(int slot) {
+            return rows[slot];
+        }
+
+        float scoreAt(int slot) {
+            return scores[slot];
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (scores[i] >= scores[parent]) {
+                    break;
+                }
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i) {
+            while (true) {
+                int left = 2 * i + 1;
+                int right = left + 1;
+                int smallest = i;
+                if (left < size && scores[left] < scores[smallest]) {
+                    smallest = left;
+                }
+                if (right < size && scores[right] < scores[smallest]) {
+                    smallest = right;
+                }
+                if (smallest == i) {
+                    break;
+                }
+                swap(i, smallest);
+                i = smallest;
+            }
+        }
+
+        private void swap(int a, int b) {
+            int row = rows[a];
+            rows[a] = rows[b];
+            rows[b] = row;
+            float score = scores[a];
+            scores[a] = scores[b];
+            scores[b] = score;
+        }
+    }
+}
@@ -0,0 +1,398 @@
+package com.bungakukensaku.service;
+
+import com.bungakukensaku.model.Book;
+import com.bungakukensaku.model.Chunk;
+import com.bungakukensaku.model.PendingVectorDelete;
+import com.bungakukensaku.repository.BookRepository;
+import com.bungakukensaku.repository.ChunkRepository;
+import com.bungakukensaku.repository.PendingVectorDeleteRepository;
+import com.bungakukensaku.util.TextFingerprint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Units of ingestion work, each committed in its own transaction.
+ *
+ * The job engine calls these one batch at a time and records the returned
+ * last chunk ID as the step checkpoint, so a crash loses at most one batch.
+ *
+ * Pending chunks are selected with keyset pages (id > checkpoint) served by
+ * partial indexes on the pending predicates, never with findAll(). Each page
+ * runs in its own transaction, so its persistence context is discarded when
+ * the batch commits and heap use stays flat however large the corpus is.
+ */
+@Service
+public class IngestionBatchService {
+
+    private static final Logger logger = LoggerFactory.getLogger(IngestionBatchService.class);
+    private static final int DELETE_BATCH_SIZE = 1000; // Pinecone's limit for delete by IDs
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private ChunkRepository chunkRepository;
+
+    @Autowired
+    private PendingVectorDeleteRepository pendingVectorDeleteRepository;
+
+    @Autowired
+    private DocumentProcessingService documentProcessingService;
+
+    @Autowired
+    private EmbeddingBatchExecutor embeddingBatchExecutor;
+
+    @Autowired
+    private CachingEmbeddingService cachingEmbeddingService;
+
+    // Only present when vector.store.type=memory
+    @Autowired(required = false)
+    private InMemoryVectorStore inMemoryVectorStore;
+    
+    private final TransactionTemplate transactionTemplate;
+    
+    public IngestionBatchService(PlatformTransactionManager transactionManager) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Autowired
+    private PineconeService pineconeService;
+
+    @Value("${pinecone.upsert.batch-size:100}")
+    private int upsertBatchSize;
+
+    /**
+     * Generate embeddings for the next page of a book's chunks that have none.
+     * The page is split into token-budgeted requests that run concurrently,
+     * and each request's embeddings are committed as soon as it completes.
+     *
+     * @param bookId The book being processed
+     * @param afterId Checkpoint; only chunks with a larger ID are considered
+     * @param pageSize Maximum chunks to load and embed in one call
+     * @return Number of chunks embedded and the last chunk ID
+     */
+    public BatchResult embedBatch(Long bookId, Long afterId, int pageSize) {
+        List<Object[]> rows = chunkRepository.findPendingEmbeddingPage(bookId, afterId, PageRequest.of(0, pageSize));
+        if (rows.isEmpty()) {
+            return BatchResult.EMPTY;
+        }
+
+        List<Long> ids = new ArrayList<>(rows.size());
+        List<String> texts = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            ids.add((Long) row[0]);
+            texts.add((String) row[1]);
+        }
+
+        // A failed request leaves its chunks pending; the next run picks them up again
+        int embedded = embeddingBatchExecutor.embedAll(texts, (offset, embeddings) -> {
+            List<Long> requestIds = ids.subList(offset, offset + embeddings.size());
+            writeEmbeddings(requestIds, embeddings);
+            if (inMemoryVectorStore != null) {
+                // Committed, so the new chunks can be searched right away
+                inMemoryVectorStore.addVectors(requestIds, bookId, embeddings);
+            }
+            storeForReuse(texts.subList(offset, offset + embeddings.size()), embeddings);
+        });
+
+        return new BatchResult(embedded, ids.get(ids.size() - 1));
+    }
+
+    private void writeEmbeddings(List<Long> ids, List<float[]> embeddings) {
+        transactionTemplate.executeWithoutResult(status -> {
+            Map<Long, float[]> embeddingsById = new HashMap<>();
+            for (int i = 0; i < ids.size(); i++) {
+                embeddingsById.put(ids.get(i), embeddings.get(i));
+            }
+            for (Chunk chunk : chunkRepository.findAllById(ids)) {
+                chunk.setEmbedding(embeddingsById.get(chunk.getId()));
+            }
+        });
+    }
+
+    /**
+     * Keep embeddings by content hash so reprocessed chunks with the same text reuse them
+     */
+    private void storeForReuse(List<String> texts, List<float[]> embeddings) {
+        Map<String, float[]> embeddingsByHash = new HashMap<>();
+        for (int i = 0; i < texts.size(); i++) {
+            embeddingsByHash.put(TextFingerprint.sha256(texts.get(i)), embeddings.get(i));
+        }
+        cachingEmbeddingService.storeEmbeddings(embeddingsByHash);
+    }
+
+    /**
+     * Upsert the next page of a book's embedded chunks to Pinecone and mark them uploaded.
+     * The page is split into upsert requests that are pipelined (several in flight),
+     * and each request's chunks are marked uploaded in their own transaction as soon
+     * as that request succeeds.
+     *
+     * @param bookId The book being processed
+     * @param afterId Checkpoint; only chunks with a larger ID are considered
+     * @param pageSize Maximum chunks to load and upload in one call
+     * @param onlyNew True to skip chunks already uploaded, false for a full re-upload
+     * @return Number of vectors upserted and the last chunk ID
+     */
+    public BatchResult uploadBatch(Long bookId, Long afterId, int pageSize, boolean onlyNew) {
+        PageRequest page = PageRequest.of(0, pageSize);
+        List<Chunk> chunks = onlyNew
+            ? chunkRepository.findPendingUploadPage(bookId, afterId, page)
+            : chunkRepository.findEmbeddedPage(bookId, afterId, page);
+        if (chunks.isEmpty()) {
+            return BatchResult.EMPTY;
+        }
+
+        List<List<Chunk>> batches = new ArrayList<>();
+        for (int from = 0; from < chunks.size(); from += upsertBatchSize) {
+            batches.add(chunks.subList(from, Math.min(from + upsertBatchSize, chunks.size())));
+        }
+
+        // A failed request leaves its chunks unflagged; upserts are idempotent, so the retry is harmless
+        int upserted = pineconeService.upsertPipelined(batches, batch -> {
+            List<PineconeService.VectorData> vectors = new ArrayList<>(batch.size());
+            for (Chunk chunk : batch) {
+                vectors.add(PineconeService.fromChunk(chunk));
+            }
+            return vectors;
+        }, this::markUploaded);
+
+        return new BatchResult(upserted, chunks.get(chunks.size() - 1).getId());
+    }
+
+    private void markUploaded(List<Chunk> batch) {
+        List<Long> ids = new ArrayList<>(batch.size());
+        for (Chunk chunk : batch) {
+            ids.add(chunk.getId());
+        }
+        transactionTemplate.executeWithoutResult(status -> chunkRepository.markUploadedToPinecone(ids));
+    }
+
+    /**
+     * Re-extract a book from the given file and sync its chunks incrementally.
+     *
+     * New chunks are matched to old ones by content hash, in text order. Matched
+     * chunks keep their row, embedding and Pinecone vector and are only moved to
+     * their new position; unmatched old chunks are deleted along with their
+     * vectors; unmatched new chunks are inserted and left for the embedding and
+     * upload steps. Runs as one transaction so a failure leaves the old chunks
+     * in place. The removed chunks' vectors are only queued for deletion in
+     * that transaction; call deletePendingVectors() once it has committed.
+     *
+     * @param bookId The book to reprocess
+     * @param sourcePath Path of the uploaded source file
+     * @return What was kept, inserted and removed
+     */
+    @Transactional
+    public ReprocessResult reprocessBook(Long bookId, String sourcePath) {
+        Book book = bookRepository.findById(bookId)
+            .orElseThrow(() -> new RuntimeException("Book not found: " + bookId));
+
+        List<Chunk> newChunks = documentProcessingService.processDocument(sourcePath, book);
+
+        // Old chunks by content hash, each queue in text order (duplicated passages match in order)
+        List<Object[]> oldRows = chunkRepository.findLayoutByBookId(bookId);
+        Map<String, Deque<Object[]>> oldByHash = new HashMap<>();
+        for (Object[] row : oldRows) {
+            String hash = row[1] != null ? (String) row[1] : TextFingerprint.sha256((String) row[2]);
+            oldByHash.computeIfAbsent(hash, key -> new ArrayDeque<>()).add(row);
+        }
+
+        List<Chunk> inserted = new ArrayList<>();
+        List<Long> metadataChanged = new ArrayList<>();
+        int moved = 0;
+        for (Chunk chunk : newChunks) {
+            Deque<Object[]> candidates = oldByHash.get(chunk.getContentHash());
+            Object[] old = candidates != null ? candidates.poll() : null;
+            if (old == null) {
+                inserted.add(chunk);
+                continue;
+            }
+
+            // Kept: the transient chunk stands in for the old row (HTML anchors, result list) and is never saved
+            Long id = (Long) old[0];
+            chunk.setId(id);
+            if (!layoutMatches(old, chunk)) {
+                chunkRepository.updateLayout(id, chunk.getContentHash(), chunk.getChapter(), chunk.getChapterNumber(),
+                    chunk.getChapterPosition(), chunk.getChapterPercentage(), chunk.getPageNum(),
+                    chunk.getMetadata(), chunk.getChunkIndex());
+                moved++;
+            }
+            // Chapter and page are part of the vector metadata, so those vectors are upserted again
+            if (Boolean.TRUE.equals(old[10])
+                    && (!Objects.equals(old[3], chunk.getChapter()) || !Objects.equals(old[7], chunk.getPageNum()))) {
+                metadataChanged.add(id);
+            }
+        }
+
+        List<Long> removed = new ArrayList<>();
+        List<String> staleVectorIds = new ArrayList<>();
+        for (Deque<Object[]> leftovers : oldByHash.values()) {
+            for (Object[] row : leftovers) {
+                removed.add((Long) row[0]);
+                if (Boolean.TRUE.equals(row[10])) {
+                    staleVectorIds.add(PineconeService.vectorId((Long) row[0]));
+                }
+            }
+        }
+
+        for (List<Long> ids : partition(removed, DELETE_BATCH_SIZE)) {
+            chunkRepository.deleteByIdIn(ids);
+        }
+        for (List<Long> ids : partition(metadataChanged, DELETE_BATCH_SIZE)) {
+            chunkRepository.markNotUploadedToPinecone(ids);
+        }
+        inserted = chunkRepository.saveAll(inserted);
+
+        try {
+            documentProcessingService.regenerateFullTextHTML(book, newChunks);
+        } catch (IOException e) {
+            logger.error("Failed to regenerate HTML with chunk IDs: {}", e.getMessage());
+        }
+
+        // Deleted from Pinecone after commit, so a rollback never loses the vectors of restored chunks
+        List<PendingVectorDelete> pendingDeletes = new ArrayList<>(staleVectorIds.size());
+        for (String vectorId : staleVectorIds) {
+            pendingDeletes.add(new PendingVectorDelete(vectorId));
+        }
+        pendingVectorDeleteRepository.saveAll(pendingDeletes);
+
+        long totalChars = newChunks.stream()
+            .mapToLong(chunk -> chunk.getContent().length())
+            .sum();
+        int reusedEmbeddings = (int) inserted.stream()
+            .filter(chunk -> chunk.getEmbedding() != null)
+            .count();
+
+        logger.info("Reprocessed book {} ({}): {} -> {} chunks ({} kept, {} moved, {} inserted, {} removed, "
+                + "{} embeddings reused, {} stale vectors queued for deletion)",
+            bookId, book.getTitle(), oldRows.size(), newChunks.size(), newChunks.size() - inserted.size(), moved,
+            inserted.size(), removed.size(), reusedEmbeddings, staleVectorIds.size());
+        return new ReprocessResult(book.getTitle(), oldRows.size(), newChunks.size(), inserted, removed,
+            staleVectorIds.size(), totalChars, reusedEmbeddings);
+    }
+
+    /**
+     * Delete queued stale vectors from Pinecone, one request of up to 1000 at a time.
+     * Each successful request removes its rows; on a failure the rows stay queued
+     * with the error recorded and the rest is left for the next call.
+     *
+     * @return Number of vectors deleted
+     */
+    public int deletePendingVectors() {
+        int deleted = 0;
+        while (true) {
+            List<PendingVectorDelete> page = pendingVectorDeleteRepository.findPage(PageRequest.of(0, DELETE_BATCH_SIZE));
+            if (page.isEmpty()) {
+                return deleted;
+            }
+            List<String> ids = new ArrayList<>(page.size());
+            for (PendingVectorDelete pending : page) {
+                ids.add(pending.getVectorId());
+            }
+            try {
+                pineconeService.deleteVectors(ids);
+            } catch (RuntimeException e) {
+                String error = e.getCause() != null ? e.getCause().getMessage() : e.getMessage();
+                logger.warn("Could not delete {} stale vectors; will retry: {}", ids.size(), error);
+                for (PendingVectorDelete pending : page) {
+                    pending.setAttempts(pending.getAttempts() + 1);
+                    pending.setLastError(error);
+                }
+                pendingVectorDeleteRepository.saveAll(page);
+                return deleted;
+            }
+            pendingVectorDeleteRepository.deleteAllInBatch(page);
+            deleted += ids.size();
+        }
+    }
+
+    private static boolean layoutMatches(Object[] old, Chunk chunk) {
+        return Objects.equals(old[1], chunk.getContentHash())
+            && Objects.equals(old[3], chunk.getChapter())
+            && Objects.equals(old[4], chunk.getChapterNumber())
+            && Objects.equals(old[5], chunk.getChapterPosition())
+            && Objects.equals(old[6], chunk.getChapterPercentage())
+            && Objects.equals(old[7], chunk.getPageNum())
+            && Objects.equals(old[8], chunk.getMetadata())
+            && Objects.equals(old[9], chunk.getChunkIndex());
+    }
+
+    private static <T> List<List<T>> partition(List<T> items, int size) {
+        List<List<T>> parts = new ArrayList<>();
+        for (int i = 0; i < items.size(); i += size) {
+            parts.add(items.subList(i, Math.min(i + size, items.size())));
+        }
+        return parts;
+    }
+
+    /**
+     * Outcome of one batch
+     */
+    public static class BatchResult {
+        static final BatchResult EMPTY = new BatchResult(0, null);
+
+        private final int processed;
+        private final Long lastChunkId;
+
+        public BatchResult(int processed, Long lastChunkId) {
+            this.processed = processed;
+            this.lastChunkId = lastChunkId;
+        }
+
+        public int getProcessed() { return processed; }
+        public Long getLastChunkId() { return lastChunkId; }
+    }
+
+    /**
+     * Outcome of reprocessing a book
+     */
+    public static class ReprocessResult {
+        private final String bookTitle;
+        private final int oldChunkCount;
+        private final int newChunkCount;
+        private final List<Chunk> insertedChunks;
+        private final List<Long> removedChunkIds;
+        private final int staleVectors;
+        private final long totalCharacters;
+        private final int reusedEmbeddings;
+
+        public ReprocessResult(String bookTitle, int oldChunkCount, int newChunkCount, List<Chunk> insertedChunks,
+                               List<Long> removedChunkIds, int staleVectors, long totalCharacters,
+                               int reusedEmbeddings) {
+            this.bookTitle = bookTitle;
+            this.oldChunkCount = oldChunkCount;
+            this.newChunkCount = newChunkCount;
+            this.insertedChunks = insertedChunks;
+            this.removedChunkIds = removedChunkIds;
+            this.staleVectors = staleVectors;
+            this.totalCharacters = totalCharacters;
+            this.reusedEmbeddings = reusedEmbeddings;
+        }
+
+        public String getBookTitle() { return bookTitle; }
+        public int getOldChunkCount() { return oldChunkCount; }
+        public int getNewChunkCount() { return newChunkCount; }
+        public int getKeptChunkCount() { return newChunkCount - insertedChunks.size(); }
+        public List<Chunk> getInsertedChunks() { return insertedChunks; }
+        public List<Long> getRemovedChunkIds() { return removedChunkIds; }
+        public int getStaleVectors() { return staleVectors; }
+        public long getTotalCharacters() { return totalCharacters; }
+        public int getReusedEmbeddings() { return reusedEmbeddings; }
+    }
+}
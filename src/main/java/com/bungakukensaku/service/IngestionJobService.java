@@ -0,0 +1,654 @@
+package com.bungakukensaku.service;
+
+import com.bungakukensaku.model.Book;
+import com.bungakukensaku.model.IngestionJob;
+import com.bungakukensaku.model.IngestionJobStep;
+import com.bungakukensaku.repository.BookRepository;
+import com.bungakukensaku.repository.ChunkRepository;
+import com.bungakukensaku.repository.IngestionJobRepository;
+import com.bungakukensaku.repository.IngestionJobStepRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongFunction;
+import java.util.stream.Collectors;
+
+/**
+ * Background engine for long-running ingestion work (reprocessing a book,
+ * generating embeddings, uploading vectors to Pinecone).
+ *
+ * Jobs and their per-book steps are persisted, and each step records the last
+ * chunk ID it committed. Jobs run on a small bounded worker pool, never on a
+ * servlet thread; callers poll the job for progress. A job can be cancelled
+ * between batches and resumed from its checkpoints, and jobs that were queued
+ * or running when the application stopped are resumed at startup.
+ *
+ * Only one job works on a book at a time: a step starts only when no other
+ * running job has a running step on the same book (checked against the
+ * persisted steps), so e.g. an embedding job waits for a reprocess of the
+ * book it is about to embed instead of racing it. A job that has to wait goes
+ * back to QUEUED and joins a per-book FIFO instead of holding a worker; it is
+ * enqueued again when a step on that book ends (or after book-wait-ms, for a
+ * book held by another instance) and resumes from its checkpoints.
+ */
+@Service
+public class IngestionJobService {
+
+    private static final Logger logger = LoggerFactory.getLogger(IngestionJobService.class);
+    private static final String PINECONE = "pinecone";
+    private static final String WAITING_FOR_BOOK = "Waiting for another job to finish with book ";
+
+    @Autowired
+    private IngestionJobRepository jobRepository;
+
+    @Autowired
+    private IngestionJobStepRepository stepRepository;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private ChunkRepository chunkRepository;
+
+    @Autowired
+    private IngestionBatchService batchService;
+
+    @Autowired
+    private LexicalIndexService lexicalIndexService;
+
+    // Only present when vector.store.type=memory
+    @Autowired(required = false)
+    private InMemoryVectorStore inMemoryVectorStore;
+
+    @Value("${ingestion.jobs.workers:2}")
+    private int workers;
+
+    @Value("${ingestion.jobs.queue-capacity:20}")
+    private int queueCapacity;
+
+    @Value("${ingestion.jobs.embedding-page-size:500}")
+    private int embeddingPageSize;
+
+    @Value("${ingestion.jobs.upload-page-size:1000}")
+    private int uploadPageSize;
+
+    @Value("${ingestion.jobs.upload-dir:${java.io.tmpdir}/bungakukensaku-ingestion}")
+    private String uploadDir;
+
+    @Value("${ingestion.jobs.resume-on-startup:true}")
+    private boolean resumeOnStartup;
+
+    @Value("${ingestion.jobs.book-wait-ms:2000}")
+    private long bookWaitMillis;
+
+    @Value("${vector.store.type:pinecone}")
+    private String vectorStoreType;
+
+    private ThreadPoolExecutor executor;
+
+    // Cancellation requests seen by running jobs between batches
+    private final Set<Long> cancelRequests = ConcurrentHashMap.newKeySet();
+
+    // Serializes claiming a book, and joining or waking its waiting jobs, between this instance's workers
+    private final Object bookClaimLock = new Object();
+
+    // Jobs waiting for a book, in arrival order; guarded by bookClaimLock
+    private final Map<Long, Deque<Long>> waitingJobs = new HashMap<>();
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadCounter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                Thread thread = new Thread(runnable, "ingestion-" + threadCounter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        logger.info("Initialized ingestion job pool with {} workers (queue capacity {})", workers, queueCapacity);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // Running jobs stay RUNNING in the database and are resumed on the next startup
+        executor.shutdownNow();
+    }
+
+    /**
+     * Re-enqueue jobs that were queued or running when the application stopped,
+     * and retry stale vector deletes left over from earlier reprocesses
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeUnfinishedJobs() {
+        // Retry stale vector deletes that failed before the restart
+        executor.execute(this::deletePendingVectors);
+        if (!resumeOnStartup) {
+            return;
+        }
+        List<IngestionJob> unfinished = jobRepository.findByStatusInOrderByIdAsc(
+            List.of(IngestionJob.QUEUED, IngestionJob.RUNNING));
+        for (IngestionJob job : unfinished) {
+            logger.info("Resuming ingestion job {} ({}) after restart", job.getId(), job.getType());
+            job.setStatus(IngestionJob.QUEUED);
+            enqueue(jobRepository.save(job));
+        }
+    }
+
+    /**
+     * Start a corpus-wide job (GENERATE_EMBEDDINGS, UPLOAD_NEW or UPLOAD_ALL).
+     * If the same job is already queued or running, that job is returned instead.
+     */
+    public IngestionJob submit(String type) {
+        if (!IngestionJob.GENERATE_EMBEDDINGS.equals(type) && !IngestionJob.UPLOAD_NEW.equals(type)
+                && !IngestionJob.UPLOAD_ALL.equals(type)) {
+            throw new IllegalArgumentException("Unsupported job type: " + type);
+        }
+        return create(type, null, null, null);
+    }
+
+    /**
+     * Start reprocessing a book from an uploaded source file. The file is kept
+     * in the upload directory until the job completes so it can be resumed
+     * after a failure or cancellation.
+     */
+    public IngestionJob submitReprocess(Long bookId, MultipartFile file) throws IOException {
+        bookRepository.findById(bookId)
+            .orElseThrow(() -> new RuntimeException("Book not found: " + bookId));
+
+        String originalFilename = file.getOriginalFilename();
+        if (originalFilename == null || !originalFilename.contains(".")) {
+            throw new IllegalArgumentException("Invalid filename: " + originalFilename);
+        }
+        String extension = originalFilename.substring(originalFilename.lastIndexOf("."));
+
+        Path directory = Paths.get(uploadDir);
+        Files.createDirectories(directory);
+        Path stored = directory.resolve("book-" + bookId + "-" + UUID.randomUUID() + extension);
+        Files.copy(file.getInputStream(), stored, StandardCopyOption.REPLACE_EXISTING);
+
+        return create(IngestionJob.REPROCESS_BOOK, bookId, stored.toString(), originalFilename);
+    }
+
+    /**
+     * Request cancellation. Queued jobs are cancelled immediately; running jobs
+     * stop after the current batch.
+     */
+    public IngestionJob cancel(Long jobId) {
+        IngestionJob job = getJob(jobId);
+        if (!job.isActive()) {
+            return job;
+        }
+        cancelRequests.add(jobId);
+        job.setCancelRequested(true);
+        if (IngestionJob.QUEUED.equals(job.getStatus())) {
+            job.setStatus(IngestionJob.CANCELLED);
+            job.setFinishedAt(LocalDateTime.now());
+        }
+        return jobRepository.save(job);
+    }
+
+    /**
+     * Resume a failed or cancelled job from its step checkpoints
+     */
+    public IngestionJob resume(Long jobId) {
+        IngestionJob job = getJob(jobId);
+        if (!IngestionJob.FAILED.equals(job.getStatus()) && !IngestionJob.CANCELLED.equals(job.getStatus())) {
+            throw new IllegalStateException("Only failed or cancelled jobs can be resumed (job is " + job.getStatus() + ")");
+        }
+        if (job.getSourcePath() != null && !Files.exists(Paths.get(job.getSourcePath()))) {
+            throw new IllegalStateException("Source file for this job no longer exists; submit the book again");
+        }
+        cancelRequests.remove(jobId);
+        job.setCancelRequested(false);
+        job.setStatus(IngestionJob.QUEUED);
+        job.setError(null);
+        job.setFinishedAt(null);
+        job = jobRepository.save(job);
+        enqueue(job);
+        return job;
+    }
+
+    public Optional<IngestionJob> findJob(Long jobId) {
+        return jobRepository.findById(jobId);
+    }
+
+    public List<IngestionJobStep> getSteps(Long jobId) {
+        return stepRepository.findByJobIdOrderBySeqAsc(jobId);
+    }
+
+    public List<IngestionJob> getRecentJobs() {
+        return jobRepository.findTop50ByOrderByIdDesc();
+    }
+
+    private IngestionJob getJob(Long jobId) {
+        return jobRepository.findById(jobId)
+            .orElseThrow(() -> new RuntimeException("Job not found: " + jobId));
+    }
+
+    private synchronized IngestionJob create(String type, Long bookId, String sourcePath, String sourceFilename) {
+        // Return the active job of the same kind instead of starting a duplicate
+        for (IngestionJob active : jobRepository.findByStatusInOrderByIdAsc(
+                List.of(IngestionJob.QUEUED, IngestionJob.RUNNING))) {
+            if (active.getType().equals(type) && Objects.equals(active.getBookId(), bookId)) {
+                deleteSourceFile(sourcePath);
+                return active;
+            }
+        }
+
+        IngestionJob job = new IngestionJob();
+        job.setType(type);
+        job.setBookId(bookId);
+        job.setSourcePath(sourcePath);
+        job.setSourceFilename(sourceFilename);
+        job = jobRepository.save(job);
+        enqueue(job);
+        return job;
+    }
+
+    private void enqueue(IngestionJob job) {
+        Long jobId = job.getId();
+        try {
+            executor.execute(() -> run(jobId));
+        } catch (RejectedExecutionException e) {
+            logger.warn("Ingestion queue is full; job {} not started", jobId);
+            job.setStatus(IngestionJob.FAILED);
+            job.setError("Job queue is full; resume this job once running jobs finish");
+            job.setFinishedAt(LocalDateTime.now());
+            jobRepository.save(job);
+        }
+    }
+
+    private void run(Long jobId) {
+        IngestionJob job = jobRepository.findById(jobId).orElse(null);
+        if (job == null || !IngestionJob.QUEUED.equals(job.getStatus())) {
+            return;
+        }
+        if (job.isCancelRequested() || cancelRequests.contains(jobId)) {
+            finish(job, IngestionJob.CANCELLED);
+            return;
+        }
+
+        int previousAttempts = job.getAttempts();
+        job.setStatus(IngestionJob.RUNNING);
+        job.setAttempts(previousAttempts + 1);
+        if (job.getMessage() != null && job.getMessage().startsWith(WAITING_FOR_BOOK)) {
+            job.setMessage(null);
+        }
+        if (job.getStartedAt() == null) {
+            job.setStartedAt(LocalDateTime.now());
+        }
+        job = saveJob(job);
+        logger.info("Starting ingestion job {} ({}), attempt {}", jobId, job.getType(), job.getAttempts());
+
+        try {
+            List<IngestionJobStep> steps = stepRepository.findByJobIdOrderBySeqAsc(jobId);
+            if (steps.isEmpty()) {
+                steps = planSteps(job);
+                job.setTotalItems(steps.stream().mapToLong(IngestionJobStep::getTotalItems).sum());
+                job = saveJob(job);
+            }
+
+            for (IngestionJobStep step : steps) {
+                if (IngestionJob.COMPLETED.equals(step.getStatus())) {
+                    continue;
+                }
+                checkCancelled(job);
+                runStep(job, step);
+            }
+
+            if (job.getMessage() == null) {
+                job.setMessage(completionMessage(job));
+            }
+            finish(job, IngestionJob.COMPLETED);
+        } catch (BookBusyException e) {
+            // Not an attempt: back in the queue until the book is free
+            job.setStatus(IngestionJob.QUEUED);
+            job.setAttempts(previousAttempts);
+            job.setMessage(WAITING_FOR_BOOK + e.getBookId());
+            saveJob(job);
+            waitForBook(jobId, e.getBookId());
+        } catch (CancellationException e) {
+            logger.info("Ingestion job {} cancelled", jobId);
+            finish(job, IngestionJob.CANCELLED);
+        } catch (Exception e) {
+            logger.error("Ingestion job {} failed", jobId, e);
+            job.setError(e.getMessage());
+            finish(job, IngestionJob.FAILED);
+        }
+    }
+
+    /**
+     * Split a job into steps: one per book with work to do
+     */
+    private List<IngestionJobStep> planSteps(IngestionJob job) {
+        List<IngestionJobStep> steps = new ArrayList<>();
+
+        if (IngestionJob.REPROCESS_BOOK.equals(job.getType())) {
+            Book book = bookRepository.findById(job.getBookId())
+                .orElseThrow(() -> new RuntimeException("Book not found: " + job.getBookId()));
+            // Then bring only the inserted or changed chunks into the vector index
+            steps.add(newStep(job, 0, "Reprocess " + book.getTitle(), book.getId(), 1, IngestionJob.REPROCESS_BOOK));
+            steps.add(newStep(job, 1, "Embed new chunks", book.getId(), 0, IngestionJob.GENERATE_EMBEDDINGS));
+            if (PINECONE.equals(vectorStoreType)) {
+                steps.add(newStep(job, 2, "Upload new vectors", book.getId(), 0, IngestionJob.UPLOAD_NEW));
+            }
+            return stepRepository.saveAll(steps);
+        }
+
+        List<Object[]> counts;
+        switch (job.getType()) {
+            case IngestionJob.GENERATE_EMBEDDINGS:
+                counts = chunkRepository.countPendingEmbeddingsByBook();
+                break;
+            case IngestionJob.UPLOAD_NEW:
+                counts = chunkRepository.countPendingUploadsByBook();
+                break;
+            case IngestionJob.UPLOAD_ALL:
+                counts = chunkRepository.countEmbeddedByBook();
+                break;
+            default:
+                throw new IllegalStateException("Unsupported job type: " + job.getType());
+        }
+
+        Map<Long, String> titles = bookRepository.findAll().stream()
+            .collect(Collectors.toMap(Book::getId, Book::getTitle));
+        int seq = 0;
+        for (Object[] row : counts) {
+            Long bookId = ((Number) row[0]).longValue();
+            long count = ((Number) row[1]).longValue();
+            steps.add(newStep(job, seq++, titles.getOrDefault(bookId, "Book " + bookId), bookId, count, job.getType()));
+        }
+        return stepRepository.saveAll(steps);
+    }
+
+    private IngestionJobStep newStep(IngestionJob job, int seq, String name, Long bookId, long totalItems, String type) {
+        IngestionJobStep step = new IngestionJobStep();
+        step.setJobId(job.getId());
+        step.setSeq(seq);
+        step.setName(name);
+        step.setBookId(bookId);
+        step.setTotalItems(totalItems);
+        step.setType(type);
+        return step;
+    }
+
+    private void runStep(IngestionJob job, IngestionJobStep step) {
+        // Steps planned before per-step types existed do the job's own work
+        String type = step.getType() != null ? step.getType() : job.getType();
+
+        step.setError(null);
+        step = claimBook(job, step);
+
+        try {
+            if (step.getTotalItems() == 0 && step.getCheckpointChunkId() == null) {
+                sizeFollowUpStep(job, step, type);
+                step = stepRepository.save(step);
+            }
+
+            Long bookId = step.getBookId();
+            switch (type) {
+                case IngestionJob.REPROCESS_BOOK:
+                    runReprocessStep(job, step);
+                    break;
+                case IngestionJob.GENERATE_EMBEDDINGS:
+                    runBatches(job, step, afterId -> batchService.embedBatch(bookId, afterId, embeddingPageSize));
+                    break;
+                case IngestionJob.UPLOAD_NEW:
+                    runBatches(job, step, afterId -> batchService.uploadBatch(bookId, afterId, uploadPageSize, true));
+                    break;
+                case IngestionJob.UPLOAD_ALL:
+                    runBatches(job, step, afterId -> batchService.uploadBatch(bookId, afterId, uploadPageSize, false));
+                    break;
+                default:
+                    throw new IllegalStateException("Unsupported step type: " + type);
+            }
+            step.setStatus(IngestionJob.COMPLETED);
+            stepRepository.save(step);
+        } catch (CancellationException e) {
+            step.setStatus(IngestionJob.CANCELLED);
+            stepRepository.save(step);
+            throw e;
+        } catch (RuntimeException e) {
+            step.setStatus(IngestionJob.FAILED);
+            step.setError(e.getMessage());
+            stepRepository.save(step);
+            throw e;
+        } finally {
+            // The step no longer holds its book
+            wakeWaitingJobs(step.getBookId());
+        }
+    }
+
+    /**
+     * Mark the step running if no other running job is working on its book
+     *
+     * @throws BookBusyException if one is; the job is then requeued behind the book
+     */
+    private IngestionJobStep claimBook(IngestionJob job, IngestionJobStep step) {
+        synchronized (bookClaimLock) {
+            if (step.getBookId() != null && stepRepository.countRunningStepsOnBook(step.getBookId(), job.getId()) > 0) {
+                throw new BookBusyException(step.getBookId());
+            }
+            step.setStatus(IngestionJob.RUNNING);
+            return stepRepository.save(step);
+        }
+    }
+
+    /**
+     * Park a job behind a busy book without holding a worker. It is enqueued again
+     * when a step on the book ends here, or after book-wait-ms in case the book is
+     * held by another instance.
+     */
+    private void waitForBook(Long jobId, Long bookId) {
+        synchronized (bookClaimLock) {
+            Deque<Long> queue = waitingJobs.computeIfAbsent(bookId, id -> new ArrayDeque<>());
+            if (!queue.contains(jobId)) {
+                queue.add(jobId);
+            }
+        }
+        logger.info("Ingestion job {} waiting for another job to finish with book {}", jobId, bookId);
+        CompletableFuture.delayedExecutor(bookWaitMillis, TimeUnit.MILLISECONDS)
+            .execute(() -> wakeWaitingJobs(bookId));
+    }
+
+    /**
+     * Enqueue the jobs waiting for a book, in the order they started waiting;
+     * the first to run claims it and the rest wait again
+     */
+    private void wakeWaitingJobs(Long bookId) {
+        if (bookId == null) {
+            return;
+        }
+        synchronized (bookClaimLock) {
+            Deque<Long> queue = waitingJobs.remove(bookId);
+            if (queue == null) {
+                return;
+            }
+            for (Long jobId : queue) {
+                jobRepository.findById(jobId).ifPresent(this::enqueue);
+            }
+        }
+    }
+
+    /**
+     * Size a step whose work only exists once an earlier step has run
+     * (the embedding and upload steps of a reprocess job)
+     */
+    private void sizeFollowUpStep(IngestionJob job, IngestionJobStep step, String type) {
+        long total;
+        if (IngestionJob.GENERATE_EMBEDDINGS.equals(type)) {
+            total = chunkRepository.countByBookIdAndEmbeddingIsNull(step.getBookId());
+        } else if (IngestionJob.UPLOAD_NEW.equals(type)) {
+            total = chunkRepository.countPendingUploadsByBookId(step.getBookId());
+        } else {
+            return;
+        }
+        step.setTotalItems(total);
+        job.setTotalItems(job.getTotalItems() + total);
+        saveJob(job);
+    }
+
+    /**
+     * Run batches until the step has no work left, checkpointing after each one
+     */
+    private void runBatches(IngestionJob job, IngestionJobStep step, LongFunction<IngestionBatchService.BatchResult> batch) {
+        long afterId = step.getCheckpointChunkId() != null ? step.getCheckpointChunkId() : 0L;
+        while (true) {
+            checkCancelled(job);
+            IngestionBatchService.BatchResult result = batch.apply(afterId);
+            if (result.getProcessed() == 0) {
+                return;
+            }
+            afterId = result.getLastChunkId();
+
+            step.setCheckpointChunkId(afterId);
+            step.setProcessedItems(step.getProcessedItems() + result.getProcessed());
+            stepRepository.save(step);
+
+            job.setProcessedItems(job.getProcessedItems() + result.getProcessed());
+            saveJob(job);
+        }
+    }
+
+    private void runReprocessStep(IngestionJob job, IngestionJobStep step) {
+        IngestionBatchService.ReprocessResult result = batchService.reprocessBook(job.getBookId(), job.getSourcePath());
+
+        // Committed: now the removed chunks' vectors can go (failures stay queued for the next run)
+        int deletedVectors = deletePendingVectors();
+
+        // Apply the same diff to the search indexes now that it is committed
+        lexicalIndexService.removeChunks(result.getRemovedChunkIds());
+        lexicalIndexService.addChunks(result.getInsertedChunks());
+        if (inMemoryVectorStore != null) {
+            // Inserted chunks that reuse an embedding; the rest are added by the embedding step
+            inMemoryVectorStore.removeChunks(result.getRemovedChunkIds());
+            inMemoryVectorStore.addChunks(result.getInsertedChunks());
+        }
+
+        step.setProcessedItems(1);
+        job.setProcessedItems(1);
+        job.setMessage(String.format(
+            "Reprocessed %s: %d old chunks -> %d chunks (%d unchanged, %d new, %d removed; %d new chunks reuse an "
+                + "existing embedding; %d of %d stale vectors deleted), %,d characters (~%d pages)",
+            result.getBookTitle(), result.getOldChunkCount(), result.getNewChunkCount(), result.getKeptChunkCount(),
+            result.getInsertedChunks().size(), result.getRemovedChunkIds().size(), result.getReusedEmbeddings(),
+            Math.min(deletedVectors, result.getStaleVectors()), result.getStaleVectors(), result.getTotalCharacters(), result.getTotalCharacters() / 1000));
+    }
+
+    /**
+     * Delete queued stale vectors, never failing the caller
+     */
+    private int deletePendingVectors() {
+        try {
+            return batchService.deletePendingVectors();
+        } catch (RuntimeException e) {
+            logger.warn("Could not process pending vector deletes: {}", e.getMessage());
+            return 0;
+        }
+    }
+
+    private String completionMessage(IngestionJob job) {
+        switch (job.getType()) {
+            case IngestionJob.GENERATE_EMBEDDINGS:
+                return job.getProcessedItems() == 0
+                    ? "All chunks already have embeddings"
+                    : "Generated embeddings for " + job.getProcessedItems() + " chunks";
+            case IngestionJob.UPLOAD_NEW:
+                return job.getProcessedItems() == 0
+                    ? "No new chunks to upload. All chunks with embeddings are already in Pinecone."
+                    : "Uploaded " + job.getProcessedItems() + " new vectors to Pinecone";
+            case IngestionJob.UPLOAD_ALL:
+                return "Uploaded " + job.getProcessedItems() + " vectors to Pinecone (full refresh)";
+            default:
+                return "Completed";
+        }
+    }
+
+    private void checkCancelled(IngestionJob job) {
+        if (cancelRequests.contains(job.getId())) {
+            throw new CancellationException("Cancelled by user");
+        }
+    }
+
+    /**
+     * Save job progress without losing a cancel request made concurrently
+     */
+    private IngestionJob saveJob(IngestionJob job) {
+        if (cancelRequests.contains(job.getId())) {
+            job.setCancelRequested(true);
+        }
+        IngestionJob saved = jobRepository.save(job);
+        job.setUpdatedAt(saved.getUpdatedAt());
+        return job;
+    }
+
+    private void finish(IngestionJob job, String status) {
+        job.setStatus(status);
+        job.setFinishedAt(LocalDateTime.now());
+        saveJob(job);
+        cancelRequests.remove(job.getId());
+
+        // Keep the source file of a failed or cancelled job so it can be resumed
+        if (IngestionJob.COMPLETED.equals(status)) {
+            deleteSourceFile(job.getSourcePath());
+        }
+        logger.info("Ingestion job {} finished with status {} ({} of {} items)",
+            job.getId(), status, job.getProcessedItems(), job.getTotalItems());
+    }
+
+    /**
+     * Thrown when a step's book is being worked on by another running job
+     */
+    private static class BookBusyException extends RuntimeException {
+        private final Long bookId;
+
+        BookBusyException(Long bookId) {
+            super("Book " + bookId + " is being processed by another job");
+            this.bookId = bookId;
+        }
+
+        Long getBookId() { return bookId; }
+    }
+
+    private void deleteSourceFile(String sourcePath) {
+        if (sourcePath == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(Paths.get(sourcePath));
+        } catch (IOException e) {
+            logger.warn("Could not delete ingestion source file {}: {}", sourcePath, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,681 @@
+package com.bungakukensaku.service;
+
+import com.bungakukensaku.model.Chunk;
+import com.bungakukensaku.repository.ChunkRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * In-process lexical index over chunk text, used next to the vector store so
+ * that exact names, rare kanji compounds and quoted phrases are not missed.
+ *
+ * Japanese has no word boundaries, so text is indexed as overlapping character
+ * bigrams after NFKC folding, lowercasing and dropping {kanji|furigana}
+ * readings; whitespace and punctuation break a run. Each bigram's posting list
+ * is a byte array of varint-encoded (document gap, term frequency) pairs, and
+ * queries are ranked with BM25.
+ *
+ * The index is built from Postgres at startup and appended to as books are
+ * ingested. Replaced or deleted chunks are tombstoned; each posting list keeps
+ * a live document count that is brought up to date once per update, so IDF
+ * never counts tombstones and searches never recount. Once tombstones pass
+ * search.lexical.compact-tombstone-ratio of all documents, the postings are
+ * rewritten without them in memory.
+ *
+ * Searches accumulate scores in pooled buffers that are cleared entry by entry
+ * after use, so a query allocates nothing per document and buffer memory grows
+ * with the number of concurrent searches, not the number of request threads.
+ */
+@Service
+public class LexicalIndexService {
+
+    private static final Logger logger = LoggerFactory.getLogger(LexicalIndexService.class);
+    private static final int LOAD_PAGE_SIZE = 1000;
+    private static final float BM25_K1 = 1.2f;
+    private static final float BM25_B = 0.75f;
+    // {kanji|furigana} ruby markup produced by the EPUB extractors; keep the base text
+    private static final Pattern RUBY = Pattern.compile("\\{([^|}]+)\\|[^}]+\\}");
+
+    @Autowired
+    private ChunkRepository chunkRepository;
+
+    @Value("${search.lexical.enabled:true}")
+    private boolean enabled;
+
+    // Bigrams found in more than this share of chunks carry almost no signal and are skipped
+    @Value("${search.lexical.max-df-ratio:0.2}")
+    private double maxDfRatio;
+
+    // Tombstoned share of documents above which the index is compacted
+    @Value("${search.lexical.compact-tombstone-ratio:0.25}")
+    private double compactTombstoneRatio;
+
+    // BM25 accumulators not in use by a search, grown to the index size as needed
+    private final ConcurrentLinkedQueue<ScoreBuffer> scoreBuffers = new ConcurrentLinkedQueue<>();
+
+    // Searches take the read lock; ingestion updates and rebuild swaps take the write lock
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private IndexData index = new IndexData();
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            logger.info("Lexical index disabled (search.lexical.enabled=false)");
+            return;
+        }
+        rebuild();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Rebuild the whole index from the chunks stored in Postgres and swap it in.
+     * Searches keep using the old index until the new one is complete.
+     *
+     * @return Number of chunks indexed
+     */
+    public synchronized int rebuild() {
+        if (!enabled) {
+            return 0;
+        }
+        long start = System.currentTimeMillis();
+
+        IndexData fresh = new IndexData();
+        long afterId = 0L;
+        while (true) {
+            List<Object[]> page = chunkRepository.findContentPage(afterId, PageRequest.of(0, LOAD_PAGE_SIZE));
+            if (page.isEmpty()) {
+                break;
+            }
+            for (Object[] row : page) {
+                long chunkId = ((Number) row[0]).longValue();
+                long bookId = ((Number) row[1]).longValue();
+                afterId = chunkId;
+                fresh.add(chunkId, bookId, (String) row[2]);
+            }
+        }
+        fresh.trim();
+
+        lock.writeLock().lock();
+        try {
+            this.index = fresh;
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        logger.info("Built lexical index: {} chunks, {} bigrams, {} KB of postings in {}ms",
+            fresh.liveDocCount, fresh.postings.size(), fresh.postingBytes() / 1024,
+            System.currentTimeMillis() - start);
+        return fresh.liveDocCount;
+    }
+
+    /**
+     * Add newly saved chunks to the index. Chunks already indexed are replaced.
+     *
+     * @param chunks Saved chunks (IDs assigned) with their book set
+     */
+    public synchronized void addChunks(Collection<Chunk> chunks) {
+        if (!enabled || chunks.isEmpty()) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            for (Chunk chunk : chunks) {
+                index.add(chunk.getId(), chunk.getBook().getId(), chunk.getContent());
+            }
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        logger.debug("Added {} chunks to lexical index", chunks.size());
+    }
+
+    /**
+     * Remove individual chunks, e.g. those dropped when a book is reprocessed
+     *
+     * @param chunkIds IDs of the deleted chunks
+     */
+    public synchronized void removeChunks(Collection<Long> chunkIds) {
+        if (!enabled || chunkIds.isEmpty()) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            for (Long chunkId : chunkIds) {
+                index.delete(chunkId);
+            }
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        logger.debug("Removed {} chunks from lexical index", chunkIds.size());
+    }
+
+    /**
+     * Remove all chunks of a book, e.g. before its chunks are regenerated
+     *
+     * @param bookId The book whose chunks were deleted
+     */
+    public synchronized void removeBook(Long bookId) {
+        if (!enabled) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            int removed = index.deleteBook(bookId);
+            logger.debug("Removed {} chunks of book {} from lexical index", removed, bookId);
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Rewrite the index without its tombstones once they make up too much of it,
+     * otherwise take this update's deletions out of the live document counts.
+     * Called with the write lock held.
+     */
+    private void compactIfNeeded() {
+        int tombstones = index.docCount - index.liveDocCount;
+        if (tombstones == 0 || tombstones < index.docCount * compactTombstoneRatio) {
+            index.applyDeletes();
+            return;
+        }
+        long start = System.currentTimeMillis();
+        long bytesBefore = index.postingBytes();
+        index = index.compact();
+        logger.info("Compacted lexical index: dropped {} tombstones, postings {} KB -> {} KB in {}ms",
+            tombstones, bytesBefore / 1024, index.postingBytes() / 1024, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Rank chunks against the query with BM25 over character bigrams.
+     *
+     * @param query The user's search query
+     * @param topK Maximum number of matches to return
+     * @param filter Same metadata filter as the vector query ({"bookId": [ids]}), or null
+     * @return Matches, best first; empty when the query has no indexable bigrams
+     */
+    public List<Match> search(String query, int topK, Map<String, Object> filter) {
+        if (!enabled) {
+            return Collections.emptyList();
+        }
+        Map<Long, Integer> queryTerms = termFrequencies(query);
+        if (queryTerms.isEmpty()) {
+            return Collections.emptyList();
+        }
+        long[] allowedBooks = buildBookFilter(filter);
+
+        ScoreBuffer buffer = scoreBuffers.poll();
+        if (buffer == null) {
+            buffer = new ScoreBuffer();
+        }
+        lock.readLock().lock();
+        try {
+            return index.search(queryTerms.keySet(), topK, allowedBooks, maxDfRatio, buffer);
+        } finally {
+            lock.readLock().unlock();
+            scoreBuffers.offer(buffer);
+        }
+    }
+
+    /**
+     * @return Index size statistics for diagnostics
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        lock.readLock().lock();
+        try {
+            stats.put("documents", index.liveDocCount);
+            stats.put("tombstones", index.docCount - index.liveDocCount);
+            stats.put("bigrams", index.postings.size());
+            stats.put("postingBytes", index.postingBytes());
+        } finally {
+            lock.readLock().unlock();
+        }
+        return stats;
+    }
+
+    /**
+     * Count the character bigrams of the given text. Each key packs two code
+     * points into one long.
+     */
+    static Map<Long, Integer> termFrequencies(String text) {
+        Map<Long, Integer> terms = new HashMap<>();
+        if (text == null || text.isEmpty()) {
+            return terms;
+        }
+        String normalized = Normalizer.normalize(RUBY.matcher(text).replaceAll("$1"), Normalizer.Form.NFKC)
+            .toLowerCase(Locale.ROOT);
+
+        int previous = -1;
+        for (int i = 0; i < normalized.length(); ) {
+            int codePoint = normalized.codePointAt(i);
+            i += Character.charCount(codePoint);
+            if (Character.isLetterOrDigit(codePoint)) {
+                if (previous >= 0) {
+                    terms.merge(((long) previous << 32) | codePoint, 1, Integer::sum);
+                }
+                previous = codePoint;
+            } else {
+                previous = -1;
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * Translate the metadata filter built by SearchController into a sorted
+     * array of allowed book IDs. Supports {"bookId": [ids]}, {"bookId": {"$in": [ids]}}
+     * and {"bookId": id}.
+     *
+     * @return Sorted book IDs, or null when there is no filter
+     */
+    private long[] buildBookFilter(Map<String, Object> filter) {
+        if (filter == null || filter.isEmpty()) {
+            return null;
+        }
+        Object value = filter.get("bookId");
+        if (value instanceof Map) {
+            value = ((Map<?, ?>) value).get("$in");
+        }
+        List<?> ids = value instanceof List ? (List<?>) value : value == null ? List.of() : List.of(value);
+
+        long[] allowed = new long[ids.size()];
+        int count = 0;
+        for (Object id : ids) {
+            if (id instanceof Number) {
+                allowed[count++] = ((Number) id).longValue();
+            }
+        }
+        allowed = Arrays.copyOf(allowed, count);
+        Arrays.sort(allowed);
+        return allowed;
+    }
+
+    /**
+     * One lexical match
+     */
+    public static class Match {
+        private final long chunkId;
+        private final long bookId;
+        private final float score;
+
+        public Match(long chunkId, long bookId, float score) {
+            this.chunkId = chunkId;
+            this.bookId = bookId;
+            this.score = score;
+        }
+
+        public long getChunkId() { return chunkId; }
+        public long getBookId() { return bookId; }
+        public float getScore() { return score; }
+    }
+
+    /**
+     * Varint-compressed posting list. Documents are always appended in
+     * increasing ordinal order, so gaps are small and mostly fit in one byte.
+     */
+    private static class PostingList {
+        private byte[] data = new byte[8];
+        private int size;
+        private int firstDoc = -1;
+        private int lastDoc = -1;
+        private int docFreq;
+        // Documents in this list that are not deleted
+        private int liveDocFreq;
+
+        void append(int doc, int termFrequency) {
+            writeVarint(doc - lastDoc);
+            writeVarint(termFrequency);
+            if (firstDoc < 0) {
+                firstDoc = doc;
+            }
+            lastDoc = doc;
+            docFreq++;
+            liveDocFreq++;
+        }
+
+        private void writeVarint(int value) {
+            if (size + 5 > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, size + 5));
+            }
+            while ((value & ~0x7F) != 0) {
+                data[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            data[size++] = (byte) value;
+        }
+
+        void trim() {
+            data = Arrays.copyOf(data, size);
+        }
+
+        /**
+         * Take the given newly deleted documents out of the live count
+         */
+        void removeLive(BitSet removed, int lastRemoved) {
+            int pos = 0;
+            int doc = -1;
+            while (pos < size && doc < lastRemoved) {
+                int gap = 0;
+                for (int shift = 0; ; shift += 7) {
+                    byte b = data[pos++];
+                    gap |= (b & 0x7F) << shift;
+                    if (b >= 0) {
+                        break;
+                    }
+                }
+                // Skip the term frequency
+                while (data[pos++] < 0) {
+                }
+                doc += gap;
+                if (removed.get(doc)) {
+                    liveDocFreq--;
+                }
+            }
+        }
+
+        /**
+         * Copy of this list without deleted documents, renumbered through newDoc
+         */
+        PostingList compact(BitSet deleted, int[] newDoc) {
+            PostingList compacted = new PostingList();
+            int pos = 0;
+            int doc = -1;
+            while (pos < size) {
+                int gap = 0;
+                for (int shift = 0; ; shift += 7) {
+                    byte b = data[pos++];
+                    gap |= (b & 0x7F) << shift;
+                    if (b >= 0) {
+                        break;
+                    }
+                }
+                int tf = 0;
+                for (int shift = 0; ; shift += 7) {
+                    byte b = data[pos++];
+                    tf |= (b & 0x7F) << shift;
+                    if (b >= 0) {
+                        break;
+                    }
+                }
+                doc += gap;
+                if (!deleted.get(doc)) {
+                    compacted.append(newDoc[doc], tf);
+                }
+            }
+            compacted.trim();
+            return compacted;
+        }
+    }
+
+    /**
+     * Reusable score accumulators for one search at a time; entries are zero between searches
+     */
+    private static class ScoreBuffer {
+        private float[] scores = new float[0];
+        private int[] touched = new int[64];
+
+        float[] scores(int docCount) {
+            if (scores.length < docCount) {
+                scores = new float[Math.max(docCount, scores.length + (scores.length >> 1))];
+            }
+            return scores;
+        }
+    }
+
+    /**
+     * The mutable index. Accessed only under the service's lock.
+     */
+    private static class IndexData {
+        private final Map<Long, PostingList> postings = new HashMap<>();
+        private final Map<Long, Integer> docByChunkId = new HashMap<>();
+        private final BitSet deleted = new BitSet();
+        // Deleted since the live document counts were last updated
+        private final BitSet pendingDeletes = new BitSet();
+        private long[] chunkIds = new long[1024];
+        private long[] bookIds = new long[1024];
+        private int[] lengths = new int[1024];
+        private int docCount;
+        private int liveDocCount;
+        private long liveLength;
+
+        void add(long chunkId, long bookId, String content) {
+            delete(chunkId);
+
+            Map<Long, Integer> terms = termFrequencies(content);
+            if (docCount == chunkIds.length) {
+                int newCapacity = chunkIds.length + (chunkIds.length >> 1);
+                chunkIds = Arrays.copyOf(chunkIds, newCapacity);
+                bookIds = Arrays.copyOf(bookIds, newCapacity);
+                lengths = Arrays.copyOf(lengths, newCapacity);
+            }
+
+            int doc = docCount++;
+            int length = 0;
+            for (Map.Entry<Long, Integer> term : terms.entrySet()) {
+                postings.computeIfAbsent(term.getKey(), key -> new PostingList()).append(doc, term.getValue());
+                length += term.getValue();
+            }
+            chunkIds[doc] = chunkId;
+            bookIds[doc] = bookId;
+            lengths[doc] = length;
+            docByChunkId.put(chunkId, doc);
+            liveDocCount++;
+            liveLength += length;
+        }
+
+        void delete(long chunkId) {
+            Integer doc = docByChunkId.remove(chunkId);
+            if (doc != null) {
+                deleted.set(doc);
+                pendingDeletes.set(doc);
+                liveDocCount--;
+                liveLength -= lengths[doc];
+            }
+        }
+
+        int deleteBook(long bookId) {
+            int removed = 0;
+            for (int doc = 0; doc < docCount; doc++) {
+                if (bookIds[doc] == bookId && !deleted.get(doc)) {
+                    delete(chunkIds[doc]);
+                    removed++;
+                }
+            }
+            return removed;
+        }
+
+        void trim() {
+            for (PostingList list : postings.values()) {
+                list.trim();
+            }
+        }
+
+        /**
+         * Update the live document counts for the documents deleted since the last call.
+         * Only lists whose document range overlaps the deletions are decoded.
+         */
+        void applyDeletes() {
+            if (pendingDeletes.isEmpty()) {
+                return;
+            }
+            int firstRemoved = pendingDeletes.nextSetBit(0);
+            int lastRemoved = pendingDeletes.length() - 1;
+            for (PostingList list : postings.values()) {
+                if (list.lastDoc >= firstRemoved && list.firstDoc <= lastRemoved) {
+                    list.removeLive(pendingDeletes, lastRemoved);
+                }
+            }
+            pendingDeletes.clear();
+        }
+
+        /**
+         * Copy of the index without tombstones; live documents keep their order
+         */
+        IndexData compact() {
+            IndexData compacted = new IndexData();
+            int[] newDoc = new int[docCount];
+            int capacity = Math.max(1024, liveDocCount);
+            compacted.chunkIds = new long[capacity];
+            compacted.bookIds = new long[capacity];
+            compacted.lengths = new int[capacity];
+            for (int doc = 0; doc < docCount; doc++) {
+                if (deleted.get(doc)) {
+                    continue;
+                }
+                int target = compacted.docCount++;
+                newDoc[doc] = target;
+                compacted.chunkIds[target] = chunkIds[doc];
+                compacted.bookIds[target] = bookIds[doc];
+                compacted.lengths[target] = lengths[doc];
+                compacted.docByChunkId.put(chunkIds[doc], target);
+            }
+            for (Map.Entry<Long, PostingList> entry : postings.entrySet()) {
+                PostingList list = entry.getValue().compact(deleted, newDoc);
+                if (list.docFreq > 0) {
+                    compacted.postings.put(entry.getKey(), list);
+                }
+            }
+            compacted.liveDocCount = compacted.docCount;
+            compacted.liveLength = liveLength;
+            return compacted;
+        }
+
+        long postingBytes() {
+            long bytes = 0;
+            for (PostingList list : postings.values()) {
+                bytes += list.size;
+            }
+            return bytes;
+        }
+
+        List<Match> search(Collection<Long> queryTerms, int topK, long[] allowedBooks, double maxDfRatio,
+                           ScoreBuffer buffer) {
+            if (liveDocCount == 0 || (allowedBooks != null && allowedBooks.length == 0)) {
+                return Collections.emptyList();
+            }
+
+            List<PostingList> lists = new ArrayList<>();
+            for (Long term : queryTerms) {
+                PostingList list = postings.get(term);
+                if (list != null && list.liveDocFreq > 0) {
+                    lists.add(list);
+                }
+            }
+            if (lists.isEmpty()) {
+                return Collections.emptyList();
+            }
+
+            // Rarest terms first; very common bigrams are dropped unless nothing else is left
+            lists.sort(Comparator.comparingInt(list -> list.liveDocFreq));
+            int maxDocFreq = (int) Math.max(1, liveDocCount * maxDfRatio);
+            int usable = 0;
+            while (usable < lists.size() && lists.get(usable).liveDocFreq <= maxDocFreq) {
+                usable++;
+            }
+            List<PostingList> selected = lists.subList(0, Math.max(usable, 1));
+
+            float averageLength = (float) liveLength / liveDocCount;
+            float[] scores = buffer.scores(docCount);
+            int[] touched = buffer.touched;
+            int touchedCount = 0;
+
+            for (PostingList list : selected) {
+                int docFreq = list.liveDocFreq;
+                float idf = (float) Math.log(1 + (liveDocCount - docFreq + 0.5) / (docFreq + 0.5));
+                byte[] data = list.data;
+                int pos = 0;
+                int doc = -1;
+                while (pos < list.size) {
+                    // Inline varint decoding of (gap, tf)
+                    int gap = 0;
+                    for (int shift = 0; ; shift += 7) {
+                        byte b = data[pos++];
+                        gap |= (b & 0x7F) << shift;
+                        if (b >= 0) {
+                            break;
+                        }
+                    }
+                    int tf = 0;
+                    for (int shift = 0; ; shift += 7) {
+                        byte b = data[pos++];
+                        tf |= (b & 0x7F) << shift;
+                        if (b >= 0) {
+                            break;
+                        }
+                    }
+                    doc += gap;
+
+                    if (deleted.get(doc)
+                            || (allowedBooks != null && Arrays.binarySearch(allowedBooks, bookIds[doc]) < 0)) {
+                        continue;
+                    }
+
+                    float norm = BM25_K1 * (1 - BM25_B + BM25_B * lengths[doc] / averageLength);
+                    if (scores[doc] == 0) {
+                        if (touchedCount == touched.length) {
+                            touched = Arrays.copyOf(touched, touched.length * 2);
+                        }
+                        touched[touchedCount++] = doc;
+                    }
+                    scores[doc] += idf * tf * (BM25_K1 + 1) / (tf + norm);
+                }
+            }
+
+            buffer.touched = touched;
+            try {
+                return topMatches(scores, touched, touchedCount, topK);
+            } finally {
+                // Leave the buffer zeroed for the next search that borrows it
+                for (int i = 0; i < touchedCount; i++) {
+                    scores[touched[i]] = 0f;
+                }
+            }
+        }
+
+        private List<Match> topMatches(float[] scores, int[] touched, int touchedCount, int topK) {
+            // Keep the best topK with a min-heap on score
+            PriorityQueue<Integer> heap = new PriorityQueue<>(topK + 1, Comparator.comparingDouble(d -> scores[d]));
+            for (int i = 0; i < touchedCount; i++) {
+                heap.offer(touched[i]);
+                if (heap.size() > topK) {
+                    heap.poll();
+                }
+            }
+
+            List<Match> matches = new ArrayList<>(heap.size());
+            while (!heap.isEmpty()) {
+                int doc = heap.poll();
+                matches.add(new Match(chunkIds[doc], bookIds[doc], scores[doc]));
+            }
+            Collections.reverse(matches);
+            return matches;
+        }
+    }
+}
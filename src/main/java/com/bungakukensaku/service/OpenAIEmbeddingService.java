@@ -1,6 +1,8 @@
 package com.bungakukensaku.service;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
@@ -8,12 +10,15 @@ import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
-import reactor.core.publisher.Mono;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 /**
  * OpenAI implementation of the EmbeddingService.
@@ -28,19 +33,23 @@ public class OpenAIEmbeddingService implements EmbeddingService {
     private static final int EMBEDDING_DIMENSION = 1536;
     
     private final WebClient webClient;
-    private final ObjectMapper objectMapper;
+    private final JsonFactory jsonFactory;
     
     @Value("${openai.api.key:}")
     private String apiKey;
     
+    // "base64" returns each embedding as packed float32 (about a quarter of the JSON size); "float" as a number array
+    @Value("${openai.embedding.encoding-format:base64}")
+    private String encodingFormat;
+    
     public OpenAIEmbeddingService() {
         this.webClient = WebClient.builder()
             .baseUrl(OPENAI_API_URL)
             .codecs(configurer -> configurer
                 .defaultCodecs()
-                .maxInMemorySize(5 * 1024 * 1024)) // 5MB buffer size
+                .maxInMemorySize(16 * 1024 * 1024)) // 16MB: a full bulk request returns ~8KB (base64) to ~30KB (float) per embedding
             .build();
-        this.objectMapper = new ObjectMapper();
+        this.jsonFactory = new JsonFactory();
     }
     
     @Override
@@ -70,32 +79,24 @@ public class OpenAIEmbeddingService implements EmbeddingService {
             // Build request body
             Map<String, Object> requestBody = Map.of(
                 "model", MODEL,
-                "input", texts
+                "input", texts,
+                "encoding_format", encodingFormat
             );
             
             // Make API call with retry for rate limits
-            String response = webClient.post()
+            byte[] response = webClient.post()
                 .header(HttpHeaders.AUTHORIZATION, "Bearer " + apiKey)
                 .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
                 .bodyValue(requestBody)
                 .retrieve()
-                .bodyToMono(String.class)
+                .bodyToMono(byte[].class)
                 .retry(3) // Retry up to 3 times
                 .block();
             
-            // Parse response
-            Map<String, Object> responseMap = objectMapper.readValue(response, Map.class);
-            List<Map<String, Object>> data = (List<Map<String, Object>>) responseMap.get("data");
-            
-            // Extract embeddings in order
-            List<float[]> embeddings = new ArrayList<>();
-            for (Map<String, Object> item : data) {
-                List<Double> embedding = (List<Double>) item.get("embedding");
-                float[] floatArray = new float[embedding.size()];
-                for (int i = 0; i < embedding.size(); i++) {
-                    floatArray[i] = embedding.get(i).floatValue();
-                }
-                embeddings.add(floatArray);
+            // Parse response straight into float arrays, in input order
+            List<float[]> embeddings;
+            try (JsonParser parser = jsonFactory.createParser(response)) {
+                embeddings = parseEmbeddings(parser, texts.size());
             }
             
             logger.info("Successfully generated {} embeddings", embeddings.size());
@@ -107,8 +108,94 @@ public class OpenAIEmbeddingService implements EmbeddingService {
         }
     }
     
+    /**
+     * Read the embeddings out of an embeddings API response with a token parser.
+     * 
+     * Only the data[].index and data[].embedding fields are read; everything else
+     * is skipped. An embedding is either a JSON array of numbers (encoding_format
+     * "float"), read straight into a float[], or a base64 string of little-endian
+     * float32 values (encoding_format "base64"), decoded in one go.
+     * 
+     * @param parser Parser positioned before the response object
+     * @param expected Number of inputs in the request
+     * @return One embedding per input, ordered by input index
+     */
+    static List<float[]> parseEmbeddings(JsonParser parser, int expected) throws IOException {
+        float[][] byIndex = new float[expected][];
+        
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new IOException("Embedding response is not a JSON object");
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("data".equals(field) && value == JsonToken.START_ARRAY) {
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    readItem(parser, byIndex);
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        
+        List<float[]> embeddings = new ArrayList<>(expected);
+        for (int i = 0; i < expected; i++) {
+            if (byIndex[i] == null) {
+                throw new IOException("Embedding response is missing index " + i);
+            }
+            embeddings.add(byIndex[i]);
+        }
+        return embeddings;
+    }
+    
+    private static void readItem(JsonParser parser, float[][] byIndex) throws IOException {
+        int index = -1;
+        float[] embedding = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("index".equals(field)) {
+                index = parser.getIntValue();
+            } else if ("embedding".equals(field) && value == JsonToken.START_ARRAY) {
+                embedding = readFloatArray(parser);
+            } else if ("embedding".equals(field) && value == JsonToken.VALUE_STRING) {
+                embedding = decodeBase64Floats(parser.getText());
+            } else {
+                parser.skipChildren();
+            }
+        }
+        if (index < 0 || index >= byIndex.length || embedding == null) {
+            throw new IOException("Unexpected embedding entry (index " + index + ")");
+        }
+        byIndex[index] = embedding;
+    }
+    
+    private static float[] readFloatArray(JsonParser parser) throws IOException {
+        float[] values = new float[EMBEDDING_DIMENSION];
+        int size = 0;
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = parser.getFloatValue();
+        }
+        return size == values.length ? values : Arrays.copyOf(values, size);
+    }
+    
+    private static float[] decodeBase64Floats(String encoded) {
+        ByteBuffer bytes = ByteBuffer.wrap(Base64.getDecoder().decode(encoded)).order(ByteOrder.LITTLE_ENDIAN);
+        float[] values = new float[bytes.remaining() / Float.BYTES];
+        bytes.asFloatBuffer().get(values);
+        return values;
+    }
+    
     @Override
     public int getEmbeddingDimension() {
         return EMBEDDING_DIMENSION;
     }
+    
+    @Override
+    public String getModelName() {
+        return MODEL;
+    }
 }
\ No newline at end of file
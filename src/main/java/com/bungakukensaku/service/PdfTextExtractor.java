@@ -0,0 +1,250 @@
+package com.bungakukensaku.service;
+
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.io.RandomAccessReadMemoryMappedFile;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Extracts the text of a PDF page range by page range on a bounded pool.
+ *
+ * Each worker opens its own PDDocument over a memory-mapped view of the file
+ * (PDDocument is not thread-safe, the mapped pages are shared by the OS) and
+ * takes the next unclaimed range until none are left. Workers also clean their
+ * text, so the caller's thread only stitches finished ranges together in page
+ * order and hands them to a sink as soon as every earlier range is done.
+ * Workers stay at most a few ranges ahead of the sink, so extracted text that
+ * has not been consumed yet stays bounded.
+ *
+ * The stitched text is exactly what one PDFTextStripper over the whole
+ * document followed by {@link TextCleaner#clean} gives.
+ */
+@Service
+public class PdfTextExtractor {
+
+    private static final Logger logger = LoggerFactory.getLogger(PdfTextExtractor.class);
+
+    @Value("${ingestion.pdf.parallelism:0}")
+    private int parallelism;
+
+    @Value("${ingestion.pdf.pages-per-range:20}")
+    private int pagesPerRange;
+
+    private int threads;
+
+    private ExecutorService executor;
+
+    @PostConstruct
+    public void init() {
+        this.threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadCounter = new AtomicInteger();
+        // Shared by every PDF being processed, so concurrent imports cannot oversubscribe the CPUs
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "pdf-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        logger.info("Initialized PDF extractor ({} threads, {} pages per range)", threads, pagesPerRange);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Extract and clean the text of a PDF, delivering it in page order
+     *
+     * @param pdfPath PDF file
+     * @param sink Receives consecutive pieces of the cleaned text on the calling
+     *             thread; each piece is whole lines, each line ending in a newline
+     * @return Number of pages
+     * @throws IOException if the PDF cannot be read
+     */
+    public int extractText(Path pdfPath, Consumer<String> sink) throws IOException {
+        long start = System.currentTimeMillis();
+        int pageCount;
+        RangeText wholeDocument = null;
+        try (PDDocument document = load(pdfPath)) {
+            pageCount = document.getNumberOfPages();
+            if (Math.min(threads, rangeCount(pageCount)) <= 1) {
+                // Not worth parsing the document again in the workers
+                wholeDocument = extractRange(document, 1, pageCount);
+            }
+        }
+
+        if (wholeDocument != null) {
+            deliverLast(deliver(wholeDocument, "", sink), sink);
+        } else {
+            extractParallel(pdfPath, pageCount, sink);
+        }
+        logger.info("Extracted {} pages of {} in {}ms", pageCount, pdfPath.getFileName(), System.currentTimeMillis() - start);
+        return pageCount;
+    }
+
+    private int rangeSize() {
+        return Math.max(1, pagesPerRange);
+    }
+
+    private int rangeCount(int pageCount) {
+        return (pageCount + rangeSize() - 1) / rangeSize();
+    }
+
+    private void extractParallel(Path pdfPath, int pageCount, Consumer<String> sink) throws IOException {
+        int rangeSize = rangeSize();
+        int rangeCount = rangeCount(pageCount);
+        int workers = Math.min(threads, rangeCount);
+        List<CompletableFuture<RangeText>> results = new ArrayList<>(rangeCount);
+        for (int i = 0; i < rangeCount; i++) {
+            results.add(new CompletableFuture<>());
+        }
+
+        AtomicInteger nextRange = new AtomicInteger();
+        AtomicBoolean stopped = new AtomicBoolean();
+        // A worker needs a permit to claim a range; the sink returns it once the range is delivered
+        Semaphore window = new Semaphore(workers * 2);
+
+        for (int w = 0; w < workers; w++) {
+            executor.execute(() -> {
+                try (PDDocument document = load(pdfPath)) {
+                    while (true) {
+                        window.acquire();
+                        int range = nextRange.getAndIncrement();
+                        if (stopped.get() || range >= rangeCount) {
+                            return;
+                        }
+                        int firstPage = range * rangeSize + 1;
+                        int lastPage = Math.min(pageCount, firstPage + rangeSize - 1);
+                        results.get(range).complete(extractRange(document, firstPage, lastPage));
+                    }
+                } catch (Exception e) {
+                    // Fail every range still pending; the caller reports the first one it waits for
+                    for (CompletableFuture<RangeText> result : results) {
+                        result.completeExceptionally(e);
+                    }
+                    if (e instanceof InterruptedException) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+        }
+
+        try {
+            String carry = "";
+            for (int i = 0; i < rangeCount; i++) {
+                RangeText text = results.get(i).get();
+                carry = deliver(text, carry, sink);
+                window.release();
+            }
+            deliverLast(carry, sink);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while extracting " + pdfPath, e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause
+                : new IOException("Failed to extract text from " + pdfPath + ": " + cause.getMessage(), cause);
+        } finally {
+            // Let any worker still waiting for a permit see the stop and exit
+            stopped.set(true);
+            window.release(workers * 2 + rangeCount);
+        }
+    }
+
+    /**
+     * Hand the complete lines of a range to the sink
+     *
+     * @param carry Unterminated last line of the previous range (normally "")
+     * @return Unterminated last line of this range
+     */
+    private static String deliver(RangeText text, String carry, Consumer<String> sink) {
+        if (carry.isEmpty()) {
+            if (!text.cleanedLines.isEmpty()) {
+                sink.accept(text.cleanedLines);
+            }
+            return text.partialLine;
+        }
+
+        // A line ran over the range boundary: clean it here with the rest of this range's lines
+        String raw = carry + text.raw;
+        int lastNewline = raw.lastIndexOf('\n');
+        if (lastNewline == -1) {
+            return raw;
+        }
+        StringBuilder cleaned = new StringBuilder();
+        TextCleaner.appendCleanLines(raw, 0, lastNewline + 1, cleaned);
+        if (cleaned.length() > 0) {
+            sink.accept(cleaned.toString());
+        }
+        return raw.substring(lastNewline + 1);
+    }
+
+    private static void deliverLast(String carry, Consumer<String> sink) {
+        if (!carry.isEmpty()) {
+            StringBuilder cleaned = new StringBuilder();
+            TextCleaner.appendCleanLines(carry, 0, carry.length(), cleaned);
+            if (cleaned.length() > 0) {
+                sink.accept(cleaned.toString());
+            }
+        }
+    }
+
+    private static RangeText extractRange(PDDocument document, int firstPage, int lastPage) throws IOException {
+        PDFTextStripper stripper = new PDFTextStripper();
+        // Configure for better Japanese text extraction
+        stripper.setSortByPosition(true);
+        stripper.setAddMoreFormatting(true);
+        stripper.setStartPage(firstPage);
+        stripper.setEndPage(lastPage);
+        return new RangeText(stripper.getText(document));
+    }
+
+    private static PDDocument load(Path pdfPath) throws IOException {
+        RandomAccessReadMemoryMappedFile source = new RandomAccessReadMemoryMappedFile(pdfPath);
+        try {
+            // The document closes (and unmaps) its source when it is closed
+            return Loader.loadPDF(source);
+        } catch (IOException e) {
+            source.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Text of one page range: the cleaned complete lines, plus what follows the
+     * last newline raw, since that line may continue in the next range
+     */
+    private static class RangeText {
+        final String raw;
+        final String cleanedLines;
+        final String partialLine;
+
+        RangeText(String raw) {
+            int lastNewline = raw.lastIndexOf('\n');
+            StringBuilder cleaned = new StringBuilder();
+            TextCleaner.appendCleanLines(raw, 0, lastNewline + 1, cleaned);
+            this.raw = raw;
+            this.cleanedLines = cleaned.toString();
+            this.partialLine = raw.substring(lastNewline + 1);
+        }
+    }
+}
@@ -1,13 +1,19 @@
 package com.bungakukensaku.service;
 
+import com.google.common.primitives.Floats;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import io.pinecone.clients.AsyncIndex;
 import io.pinecone.clients.Index;
 import io.pinecone.clients.Pinecone;
 import io.pinecone.proto.DescribeIndexStatsResponse;
+import io.pinecone.proto.UpsertResponse;
 import io.pinecone.unsigned_indices_model.QueryResponseWithUnsignedIndices;
 import io.pinecone.unsigned_indices_model.VectorWithUnsignedIndices;
 import org.openapitools.db_control.client.model.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import com.bungakukensaku.model.Chunk;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import com.google.protobuf.Struct;
@@ -15,14 +21,28 @@ import com.google.protobuf.ListValue;
 
 import jakarta.annotation.PostConstruct;
 import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import static io.pinecone.commons.IndexInterface.buildUpsertVectorWithUnsignedIndices;
 
 @Service
-public class PineconeService {
+public class PineconeService implements VectorStore {
     private static final Logger logger = LoggerFactory.getLogger(PineconeService.class);
     
+    /**
+     * Metadata fields kept on query results. Chunk text and display fields are
+     * loaded from Postgres by SearchHydrationService, so nothing else is needed.
+     */
+    private static final Set<String> QUERY_METADATA_FIELDS = Set.of("chunkId", "bookId");
+    
     private Pinecone pinecone;
     private Index index;
+    private AsyncIndex asyncIndex;
     
     @Value("${pinecone.api-key}")
     private String apiKey;
@@ -36,6 +56,24 @@ public class PineconeService {
     @Value("${pinecone.dimension:1536}")
     private int dimension;
     
+    /**
+     * Whether queries ask Pinecone for match metadata at all. Vector IDs already
+     * carry the chunk ID, so the default is IDs and scores only; vectors upserted
+     * before content was dropped from metadata would otherwise ship their full text.
+     */
+    @Value("${pinecone.query.include-metadata:false}")
+    private boolean queryIncludeMetadata;
+    
+    // Bulk upserts: requests outstanding at once, and retries per request
+    @Value("${pinecone.upsert.max-in-flight:4}")
+    private int maxInFlight;
+    
+    @Value("${pinecone.upsert.max-retries:3}")
+    private int maxRetries;
+    
+    @Value("${pinecone.upsert.retry-backoff-ms:500}")
+    private long retryBackoffMs;
+    
     @PostConstruct
     public void init() {
         try {
@@ -66,60 +104,190 @@ public class PineconeService {
         return index;
     }
     
+    /**
+     * Get the async (future-based) index connection, creating it lazily if needed
+     */
+    private synchronized AsyncIndex getAsyncIndex() {
+        if (asyncIndex == null) {
+            try {
+                this.asyncIndex = pinecone.getAsyncIndexConnection(indexName);
+                logger.info("Connected to Pinecone index (async): {}", indexName);
+            } catch (Exception e) {
+                logger.error("Failed to connect to index: {}. Please ensure the index '{}' exists in your Pinecone account.", e.getMessage(), indexName);
+                throw new RuntimeException("Failed to connect to Pinecone index", e);
+            }
+        }
+        return asyncIndex;
+    }
+    
     /**
      * Upserts a batch of vectors with metadata
      */
     public void upsertVectors(List<VectorData> vectors) {
         try {
-            List<VectorWithUnsignedIndices> pineconeVectors = new ArrayList<>();
-            
-            for (VectorData vector : vectors) {
-                // Convert metadata to protobuf Struct
-                Struct.Builder metadataBuilder = Struct.newBuilder();
-                for (Map.Entry<String, Object> entry : vector.getMetadata().entrySet()) {
-                    // Skip null values
-                    if (entry.getValue() == null) {
-                        continue;
-                    }
-                    
-                    com.google.protobuf.Value value;
-                    if (entry.getValue() instanceof String) {
-                        value = com.google.protobuf.Value.newBuilder().setStringValue((String) entry.getValue()).build();
-                    } else if (entry.getValue() instanceof Integer || entry.getValue() instanceof Long) {
-                        // For bookId and similar integer fields, preserve as integer without decimal
-                        value = com.google.protobuf.Value.newBuilder().setNumberValue(((Number) entry.getValue()).longValue()).build();
-                    } else if (entry.getValue() instanceof Number) {
-                        value = com.google.protobuf.Value.newBuilder().setNumberValue(((Number) entry.getValue()).doubleValue()).build();
-                    } else if (entry.getValue() instanceof Boolean) {
-                        value = com.google.protobuf.Value.newBuilder().setBoolValue((Boolean) entry.getValue()).build();
-                    } else {
-                        value = com.google.protobuf.Value.newBuilder().setStringValue(entry.getValue().toString()).build();
-                    }
-                    metadataBuilder.putFields(entry.getKey(), value);
+            getIndex().upsert(toPineconeVectors(vectors), "default");
+            logger.info("Successfully upserted {} vectors", vectors.size());
+        } catch (Exception e) {
+            logger.error("Error upserting vectors: {}", e.getMessage(), e);
+            throw new RuntimeException("Failed to upsert vectors", e);
+        }
+    }
+    
+    /**
+     * Upsert many batches with several requests in flight.
+     * 
+     * The calling thread is the conversion stage: it turns the next batch into
+     * protobuf vectors while up to pinecone.upsert.max-in-flight earlier batches
+     * are on the wire, and blocks when that many are outstanding (back-pressure).
+     * Failed requests are retried with exponential backoff. onUpserted runs on
+     * the calling thread, once per batch, only after that batch succeeded.
+     * If a batch still fails after its retries, no further batches are sent;
+     * the ones in flight are drained (and reported) before the error is thrown.
+     * 
+     * @param batches Batches in upload order
+     * @param converter Builds a batch's vectors; called just before it is sent
+     * @param onUpserted Called for each batch that was upserted
+     * @return Number of vectors upserted
+     */
+    public <T> int upsertPipelined(List<T> batches, Function<T, List<VectorData>> converter, Consumer<T> onUpserted) {
+        BlockingQueue<UpsertCompletion<T>> completions = new LinkedBlockingQueue<>();
+        int limit = Math.max(1, maxInFlight);
+        int inFlight = 0;
+        int upserted = 0;
+        RuntimeException failure = null;
+        
+        try {
+            for (T batch : batches) {
+                while (inFlight >= limit && failure == null) {
+                    UpsertCompletion<T> done = completions.take();
+                    inFlight--;
+                    failure = handleCompletion(done, onUpserted, failure);
+                    upserted += done.error == null ? done.size : 0;
+                }
+                if (failure != null) {
+                    break;
                 }
                 
-                VectorWithUnsignedIndices pv = buildUpsertVectorWithUnsignedIndices(
-                        vector.getId(),
-                        vector.getValues(),
-                        null, // sparse values
-                        null, // namespace
-                        metadataBuilder.build()
-                );
-                pineconeVectors.add(pv);
+                List<VectorWithUnsignedIndices> vectors = toPineconeVectors(converter.apply(batch));
+                int size = vectors.size();
+                upsertWithRetry(vectors, 0).whenComplete((response, error) ->
+                    completions.add(new UpsertCompletion<>(batch, size, error)));
+                inFlight++;
             }
             
-            getIndex().upsert(pineconeVectors, "default");
-            logger.info("Successfully upserted {} vectors", vectors.size());
+            while (inFlight > 0) {
+                UpsertCompletion<T> done = completions.take();
+                inFlight--;
+                failure = handleCompletion(done, onUpserted, failure);
+                upserted += done.error == null ? done.size : 0;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while upserting vectors", e);
+        }
+        
+        if (failure != null) {
+            throw failure;
+        }
+        logger.info("Upserted {} vectors in {} batches ({} in flight)", upserted, batches.size(), limit);
+        return upserted;
+    }
+    
+    private <T> RuntimeException handleCompletion(UpsertCompletion<T> done, Consumer<T> onUpserted,
+                                                  RuntimeException failure) {
+        if (done.error != null) {
+            logger.error("Upsert of {} vectors failed after retries: {}", done.size, done.error.getMessage());
+            return failure != null ? failure : new RuntimeException("Failed to upsert vectors", done.error);
+        }
+        onUpserted.accept(done.batch);
+        return failure;
+    }
+    
+    private CompletableFuture<Void> upsertWithRetry(List<VectorWithUnsignedIndices> vectors, int attempt) {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        try {
+            ListenableFuture<UpsertResponse> call = getAsyncIndex().upsert(vectors, "default");
+            call.addListener(() -> {
+                try {
+                    call.get();
+                    result.complete(null);
+                } catch (ExecutionException e) {
+                    result.completeExceptionally(e.getCause());
+                } catch (Exception e) {
+                    result.completeExceptionally(e);
+                }
+            }, MoreExecutors.directExecutor());
         } catch (Exception e) {
-            logger.error("Error upserting vectors: {}", e.getMessage(), e);
-            throw new RuntimeException("Failed to upsert vectors", e);
+            result.completeExceptionally(e);
+        }
+        
+        if (attempt >= maxRetries) {
+            return result;
         }
+        return result.handle((ignored, error) -> {
+            if (error == null) {
+                return CompletableFuture.<Void>completedFuture(null);
+            }
+            long delayMs = retryBackoffMs << attempt;
+            logger.warn("Upsert of {} vectors failed (attempt {}), retrying in {}ms: {}",
+                vectors.size(), attempt + 1, delayMs, error.getMessage());
+            return CompletableFuture.runAsync(() -> { },
+                    CompletableFuture.delayedExecutor(delayMs, TimeUnit.MILLISECONDS))
+                .thenCompose(delayed -> upsertWithRetry(vectors, attempt + 1));
+        }).thenCompose(Function.identity());
     }
     
     /**
-     * Queries for similar vectors
+     * Convert vectors to Pinecone's protobuf form (metadata as a Struct)
      */
-    public List<SearchResult> query(List<Float> queryVector, int topK, Map<String, Object> filter) {
+    private List<VectorWithUnsignedIndices> toPineconeVectors(List<VectorData> vectors) {
+        List<VectorWithUnsignedIndices> pineconeVectors = new ArrayList<>(vectors.size());
+        
+        for (VectorData vector : vectors) {
+            // Convert metadata to protobuf Struct
+            Struct.Builder metadataBuilder = Struct.newBuilder();
+            for (Map.Entry<String, Object> entry : vector.getMetadata().entrySet()) {
+                // Skip null values
+                if (entry.getValue() == null) {
+                    continue;
+                }
+                
+                com.google.protobuf.Value value;
+                if (entry.getValue() instanceof String) {
+                    value = com.google.protobuf.Value.newBuilder().setStringValue((String) entry.getValue()).build();
+                } else if (entry.getValue() instanceof Integer || entry.getValue() instanceof Long) {
+                    // For bookId and similar integer fields, preserve as integer without decimal
+                    value = com.google.protobuf.Value.newBuilder().setNumberValue(((Number) entry.getValue()).longValue()).build();
+                } else if (entry.getValue() instanceof Number) {
+                    value = com.google.protobuf.Value.newBuilder().setNumberValue(((Number) entry.getValue()).doubleValue()).build();
+                } else if (entry.getValue() instanceof Boolean) {
+                    value = com.google.protobuf.Value.newBuilder().setBoolValue((Boolean) entry.getValue()).build();
+                } else {
+                    value = com.google.protobuf.Value.newBuilder().setStringValue(entry.getValue().toString()).build();
+                }
+                metadataBuilder.putFields(entry.getKey(), value);
+            }
+            
+            VectorWithUnsignedIndices pv = buildUpsertVectorWithUnsignedIndices(
+                    vector.getId(),
+                    Floats.asList(vector.getValues()), // primitive-backed view, no copy
+                    null, // sparse values
+                    null, // namespace
+                    metadataBuilder.build()
+            );
+            pineconeVectors.add(pv);
+        }
+        return pineconeVectors;
+    }
+    
+    /**
+     * Queries for similar vectors.
+     * 
+     * Vector values are never requested, and metadata (when enabled) is reduced
+     * to {@link #QUERY_METADATA_FIELDS}, so a match costs an ID and a score.
+     */
+    @Override
+    public List<SearchResult> query(float[] queryVector, int topK, Map<String, Object> filter) {
         try {
             // Convert filter to Struct if needed
             Struct metadataFilter = null;
@@ -130,11 +298,11 @@ public class PineconeService {
             
             QueryResponseWithUnsignedIndices response = getIndex().queryByVector(
                     topK, // number of results
-                    queryVector, // vector values
+                    Floats.asList(queryVector), // vector values (primitive-backed view)
                     "default", // namespace
                     metadataFilter, // filter as Struct
-                    true, // includeValues
-                    true  // includeMetadata
+                    false, // includeValues - the query never uses match vectors
+                    queryIncludeMetadata  // includeMetadata
             );
             
             List<SearchResult> results = new ArrayList<>();
@@ -142,6 +310,9 @@ public class PineconeService {
                 Map<String, Object> metadata = new HashMap<>();
                 if (match.getMetadata() != null && !match.getMetadata().getFieldsMap().isEmpty()) {
                     match.getMetadata().getFieldsMap().forEach((key, value) -> {
+                        if (!QUERY_METADATA_FIELDS.contains(key)) {
+                            return;
+                        }
                         if (value.hasStringValue()) {
                             metadata.put(key, value.getStringValue());
                         } else if (value.hasNumberValue()) {
@@ -297,36 +468,63 @@ public class PineconeService {
         return builtFilter;
     }
     
+    /**
+     * Build the vector for a chunk's embedding. Metadata holds only the IDs used
+     * for filtering and hydration plus short descriptive fields; the chunk text
+     * stays in Postgres.
+     * 
+     * @param chunk A chunk with its embedding and book loaded
+     * @return Vector data ready for {@link #upsertVectors(List)}
+     */
+    public static VectorData fromChunk(Chunk chunk) {
+        // Create metadata (handle null values)
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("chunkId", chunk.getId());
+        metadata.put("bookId", chunk.getBook().getId());
+        metadata.put("bookTitle", chunk.getBook().getTitle());
+        if (chunk.getChapter() != null) {
+            metadata.put("chapter", chunk.getChapter());
+        }
+        if (chunk.getPageNum() != null) {
+            metadata.put("pageNum", chunk.getPageNum());
+        }
+        
+        return new VectorData(vectorId(chunk.getId()), chunk.getEmbedding(), metadata);
+    }
+    
+    /**
+     * Vector ID of a chunk ("chunk-" + chunk ID)
+     */
+    public static String vectorId(Long chunkId) {
+        return "chunk-" + chunkId;
+    }
+    
     // Data classes
-    public static class VectorData {
-        private final String id;
-        private final List<Float> values;
-        private final Map<String, Object> metadata;
+    private static class UpsertCompletion<T> {
+        private final T batch;
+        private final int size;
+        private final Throwable error;
         
-        public VectorData(String id, List<Float> values, Map<String, Object> metadata) {
-            this.id = id;
-            this.values = values;
-            this.metadata = metadata;
+        UpsertCompletion(T batch, int size, Throwable error) {
+            this.batch = batch;
+            this.size = size;
+            this.error = error;
         }
-        
-        public String getId() { return id; }
-        public List<Float> getValues() { return values; }
-        public Map<String, Object> getMetadata() { return metadata; }
     }
     
-    public static class SearchResult {
+    public static class VectorData {
         private final String id;
-        private final Float score;
+        private final float[] values;
         private final Map<String, Object> metadata;
         
-        public SearchResult(String id, Float score, Map<String, Object> metadata) {
+        public VectorData(String id, float[] values, Map<String, Object> metadata) {
             this.id = id;
-            this.score = score;
+            this.values = values;
             this.metadata = metadata;
         }
         
         public String getId() { return id; }
-        public Float getScore() { return score; }
+        public float[] getValues() { return values; }
         public Map<String, Object> getMetadata() { return metadata; }
     }
 }
\ No newline at end of file
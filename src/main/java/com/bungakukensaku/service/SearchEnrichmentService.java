@@ -0,0 +1,322 @@
+package com.bungakukensaku.service;
+
+import com.bungakukensaku.dto.SearchResultItem;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Runs the AI enrichment stage of a search (excerpt extraction and summary
+ * generation) concurrently for the top results.
+ *
+ * Every excerpt and summary call is submitted to a shared worker pool at once,
+ * so a search costs roughly one LLM round trip instead of ten. The request
+ * thread waits at most until the per-request deadline; anything that has not
+ * finished by then is reported as pending and the page renders without it.
+ *
+ * The pool's queue is bounded: when it is full, new calls are rejected and
+ * reported as pending (recorded as a "saturated" fallback) instead of queueing
+ * behind a backlog. The call timeout (counted from submission, so time spent
+ * queued counts) is longer than the deadline, so a call still running at the
+ * deadline can finish into the AI result cache for the next request. A call
+ * that exceeds it is cancelled, which removes it from the queue or interrupts
+ * the running request, so abandoned calls do not hold workers.
+ */
+@Service
+public class SearchEnrichmentService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SearchEnrichmentService.class);
+
+    @Autowired
+    private AISummaryService aiSummaryService;
+
+    @Autowired
+    private SearchMetrics searchMetrics;
+
+    @Value("${search.enrichment.pool-size:10}")
+    private int poolSize;
+
+    @Value("${search.enrichment.queue-capacity:100}")
+    private int queueCapacity;
+
+    @Value("${search.enrichment.deadline-ms:5000}")
+    private long deadlineMs;
+
+    // Must be longer than the deadline; see init()
+    @Value("${search.enrichment.call-timeout-ms:8000}")
+    private long callTimeoutMs;
+
+    private ThreadPoolExecutor executor;
+
+    @PostConstruct
+    public void init() {
+        if (callTimeoutMs <= deadlineMs) {
+            // Otherwise every call has finished or timed out by the deadline and nothing is ever pending
+            long adjusted = deadlineMs + deadlineMs / 2;
+            logger.warn("search.enrichment.call-timeout-ms ({}ms) is not longer than the deadline ({}ms); using {}ms",
+                callTimeoutMs, deadlineMs, adjusted);
+            callTimeoutMs = adjusted;
+        }
+        AtomicInteger threadCounter = new AtomicInteger();
+        // The default AbortPolicy rejects when the queue is full; see call()
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                Thread thread = new Thread(runnable, "search-enrichment-" + threadCounter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        logger.info("Initialized search enrichment pool with {} threads, queue {} (deadline {}ms, call timeout {}ms)",
+            poolSize, queueCapacity, deadlineMs, callTimeoutMs);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Start excerpt and summary calls for the given results without waiting.
+     *
+     * @param items The search results to enrich (display content is snapshotted)
+     * @param rawContents The raw chunk text for each item, in the same order
+     * @param query The user's search query
+     * @return One in-flight enrichment per item, in the same order
+     */
+    public List<PendingEnrichment> submit(List<SearchResultItem> items, List<String> rawContents, String query) {
+        List<PendingEnrichment> pending = new ArrayList<>();
+        for (int i = 0; i < items.size(); i++) {
+            String rawContent = rawContents.get(i);
+            Long chunkId = items.get(i).getChunkId();
+            // Snapshot the fields the summary prompt needs so late-finishing calls
+            // never observe the caller mutating the item after the deadline
+            SearchResultItem snapshot = snapshotForPrompt(items.get(i));
+
+            CompletableFuture<String> excerpt = call(SearchMetrics.EXCERPT,
+                () -> aiSummaryService.extractRelevantExcerpt(chunkId, rawContent, query));
+            CompletableFuture<AISummaryService.SearchResultSummary> summary = call(SearchMetrics.SUMMARY,
+                () -> aiSummaryService.generateSummary(snapshot, query));
+            excerpt.exceptionally(e -> {
+                recordFailure(SearchMetrics.EXCERPT, e);
+                return null;
+            });
+            summary.exceptionally(e -> {
+                recordFailure(SearchMetrics.SUMMARY, e);
+                return null;
+            });
+
+            pending.add(new PendingEnrichment(excerpt, summary));
+        }
+        return pending;
+    }
+
+    /**
+     * Count a failed call as an error; saturation is already counted as a fallback
+     * and cancellation (the client went away) is not a failure
+     */
+    private void recordFailure(String stage, Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (!(cause instanceof RejectedExecutionException) && !(cause instanceof CancellationException)) {
+            searchMetrics.error(stage);
+        }
+    }
+
+    /**
+     * Run one enrichment call on the pool, timed out and cancelled after the call timeout
+     *
+     * @return The call's result; failed with RejectedExecutionException if the pool is saturated
+     */
+    private <T> CompletableFuture<T> call(String stage, Supplier<T> body) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Future<?> task;
+        try {
+            task = executor.submit(() -> {
+                try {
+                    result.complete(searchMetrics.time(stage, body));
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            searchMetrics.fallback(stage, "saturated");
+            result.completeExceptionally(e);
+            return result;
+        }
+
+        result.orTimeout(callTimeoutMs, TimeUnit.MILLISECONDS).whenComplete((value, error) -> {
+            if (error != null && task.cancel(true)) {
+                // Free the queue slot now rather than when a worker reaches it
+                executor.remove((Runnable) task);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Enrich the given results concurrently, waiting no longer than the
+     * per-request deadline.
+     *
+     * @param items The search results to enrich
+     * @param rawContents The raw chunk text for each item, in the same order
+     * @param query The user's search query
+     * @return One enrichment per item; unfinished parts are marked pending
+     */
+    public List<Enrichment> enrich(List<SearchResultItem> items, List<String> rawContents, String query) {
+        long start = System.nanoTime();
+        List<PendingEnrichment> pending = submit(items, rawContents, query);
+
+        List<CompletableFuture<?>> all = new ArrayList<>();
+        for (PendingEnrichment p : pending) {
+            all.add(p.getExcerpt());
+            all.add(p.getSummary());
+        }
+
+        try {
+            CompletableFuture.allOf(all.toArray(new CompletableFuture<?>[0]))
+                .get(deadlineMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            logger.warn("Search enrichment deadline of {}ms reached; rendering partial results", deadlineMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            // Individual failures are handled per call below
+            logger.debug("Search enrichment finished with failures: {}", e.getMessage());
+        }
+
+        searchMetrics.recordStage(SearchMetrics.ENRICHMENT_WAIT, System.nanoTime() - start);
+
+        List<Enrichment> enrichments = new ArrayList<>();
+        for (PendingEnrichment p : pending) {
+            Enrichment enrichment = p.snapshot();
+            if (p.isRunning()) {
+                searchMetrics.fallback("enrichment", "deadline");
+            }
+            enrichments.add(enrichment);
+        }
+
+        logger.info("Enriched {} results in {}ms", items.size(),
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return enrichments;
+    }
+
+    /**
+     * @return How long a search waits for enrichment before rendering without it
+     */
+    public long getDeadlineMs() {
+        return deadlineMs;
+    }
+
+    private SearchResultItem snapshotForPrompt(SearchResultItem item) {
+        SearchResultItem snapshot = new SearchResultItem();
+        snapshot.setChunkId(item.getChunkId());
+        snapshot.setBookTitle(item.getBookTitle());
+        snapshot.setChapter(item.getChapter());
+        snapshot.setContent(item.getContent());
+        return snapshot;
+    }
+
+    /**
+     * In-flight excerpt and summary calls for one search result
+     */
+    public static class PendingEnrichment {
+        private final CompletableFuture<String> excerpt;
+        private final CompletableFuture<AISummaryService.SearchResultSummary> summary;
+
+        public PendingEnrichment(CompletableFuture<String> excerpt,
+                                 CompletableFuture<AISummaryService.SearchResultSummary> summary) {
+            this.excerpt = excerpt;
+            this.summary = summary;
+        }
+
+        public CompletableFuture<String> getExcerpt() { return excerpt; }
+        public CompletableFuture<AISummaryService.SearchResultSummary> getSummary() { return summary; }
+
+        /**
+         * Capture whatever has completed successfully so far. Calls still
+         * running and calls rejected by a saturated pool are pending.
+         */
+        public Enrichment snapshot() {
+            String excerptValue = completedValue(excerpt);
+            AISummaryService.SearchResultSummary summaryValue = completedValue(summary);
+            return new Enrichment(excerptValue, summaryValue,
+                !excerpt.isDone() || isRejected(excerpt), !summary.isDone() || isRejected(summary));
+        }
+
+        /**
+         * @return True if either call has not finished yet
+         */
+        public boolean isRunning() {
+            return !excerpt.isDone() || !summary.isDone();
+        }
+
+        /**
+         * Cancel both calls if they have not finished, e.g. when the client has gone away
+         */
+        public void cancel() {
+            excerpt.cancel(true);
+            summary.cancel(true);
+        }
+
+        private static <T> T completedValue(CompletableFuture<T> future) {
+            if (future.isDone() && !future.isCompletedExceptionally()) {
+                return future.join();
+            }
+            return null;
+        }
+
+        private static boolean isRejected(CompletableFuture<?> future) {
+            if (!future.isCompletedExceptionally() || future.isCancelled()) {
+                return false;
+            }
+            try {
+                future.join();
+                return false;
+            } catch (CompletionException e) {
+                return e.getCause() instanceof RejectedExecutionException;
+            }
+        }
+    }
+
+    /**
+     * Result of enriching one search result. A null excerpt or summary means the
+     * call failed or is pending (still running, or rejected by a saturated pool);
+     * the pending flags tell the two apart.
+     */
+    public static class Enrichment {
+        private final String excerpt;
+        private final AISummaryService.SearchResultSummary summary;
+        private final boolean excerptPending;
+        private final boolean summaryPending;
+
+        public Enrichment(String excerpt, AISummaryService.SearchResultSummary summary,
+                          boolean excerptPending, boolean summaryPending) {
+            this.excerpt = excerpt;
+            this.summary = summary;
+            this.excerptPending = excerptPending;
+            this.summaryPending = summaryPending;
+        }
+
+        public String getExcerpt() { return excerpt; }
+        public AISummaryService.SearchResultSummary getSummary() { return summary; }
+        public boolean isExcerptPending() { return excerptPending; }
+        public boolean isSummaryPending() { return summaryPending; }
+        public boolean isPending() { return excerptPending || summaryPending; }
+    }
+}
@@ -0,0 +1,324 @@
+package com.bungakukensaku.service;
+
+import com.bungakukensaku.dto.SearchResultItem;
+import com.bungakukensaku.model.Book;
+import com.bungakukensaku.model.Chunk;
+import com.bungakukensaku.repository.ChunkRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Turns raw vector matches into display-ready search results.
+ * 
+ * All chunk IDs from a vector query are collected and loaded together with
+ * their books in a single fetch-join query, so hydrating a result page costs
+ * one database round trip regardless of topK. Results keep the score order of
+ * the vector store.
+ */
+@Service
+public class SearchHydrationService {
+    
+    private static final Logger logger = LoggerFactory.getLogger(SearchHydrationService.class);
+    private static final String VECTOR_ID_PREFIX = "chunk-";
+    
+    @Autowired
+    private ChunkRepository chunkRepository;
+    
+    /**
+     * Load the chunks and books behind the given matches and build result items.
+     * 
+     * @param matches Vector store matches, best first
+     * @return One hit per match that could be hydrated, in the same order
+     */
+    public List<Hit> hydrate(List<VectorStore.SearchResult> matches) {
+        // Collect every chunk ID first so the database is hit once
+        Set<Long> chunkIds = new LinkedHashSet<>();
+        List<Long> matchChunkIds = new ArrayList<>();
+        for (VectorStore.SearchResult match : matches) {
+            Long chunkId = chunkIdOf(match);
+            matchChunkIds.add(chunkId);
+            if (chunkId != null) {
+                chunkIds.add(chunkId);
+            }
+        }
+        
+        Map<Long, Chunk> chunksById = new HashMap<>();
+        if (!chunkIds.isEmpty()) {
+            for (Chunk chunk : chunkRepository.findAllWithBookByIdIn(chunkIds)) {
+                chunksById.put(chunk.getId(), chunk);
+            }
+        }
+        
+        List<Hit> hits = new ArrayList<>();
+        for (int i = 0; i < matches.size(); i++) {
+            VectorStore.SearchResult match = matches.get(i);
+            Long chunkId = matchChunkIds.get(i);
+            Chunk chunk = chunkId != null ? chunksById.get(chunkId) : null;
+            
+            // Text and display fields come from the database; vector metadata only
+            // carries IDs, so a vector whose chunk was deleted cannot be shown
+            if (chunk == null) {
+                logger.warn("Skipping vector {}: chunk not found in database", match.getId());
+                continue;
+            }
+            String rawContent = chunk.getContent();
+            
+            SearchResultItem item = new SearchResultItem();
+            item.setScore(match.getScore());
+            
+            Book book = chunk.getBook();
+            item.setChunkId(chunk.getId());
+            item.setBookId(book.getId());
+            item.setBookTitle(book.getTitle());
+            item.setAuthor(book.getAuthor());
+            // Set static text path for full text viewing
+            item.setStaticTextPath(book.getStaticTextPath());
+            String chapter = chunk.getChapter();
+            
+            // Generate detailed source reference
+            try {
+                item.setSourceReference(generateSourceReference(chunk));
+            } catch (Exception e) {
+                logger.error("Error generating source reference for chunk {}: {}", chunkId, e.getMessage());
+            }
+            
+            // Convert ruby format for chapter titles if needed
+            if (chapter != null) {
+                chapter = EPUBRubyPreservingExtractor.convertToHtmlRuby(chapter);
+            }
+            item.setChapter(chapter);
+            
+            // Start with the full chunk; top results may be replaced by their AI excerpt
+            item.setContent(toDisplayContent(rawContent));
+            
+            hits.add(new Hit(item, rawContent));
+        }
+        
+        logger.debug("Hydrated {} of {} matches with {} chunk lookups", hits.size(), matches.size(), chunkIds.size());
+        return hits;
+    }
+    
+    private Long chunkIdOf(VectorStore.SearchResult match) {
+        Object chunkIdObj = match.getMetadata().get("chunkId");
+        if (chunkIdObj instanceof Number) {
+            return ((Number) chunkIdObj).longValue();
+        }
+        String id = match.getId();
+        if (id != null && id.startsWith(VECTOR_ID_PREFIX)) {
+            try {
+                return Long.parseLong(id.substring(VECTOR_ID_PREFIX.length()));
+            } catch (NumberFormatException e) {
+                logger.warn("Unexpected vector ID format: {}", id);
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Prepare chunk text for the results page: trim to the first full sentence
+     * and convert ruby markup to HTML.
+     * 
+     * @param content Raw chunk content or AI excerpt
+     * @return Display-ready HTML content
+     */
+    public String toDisplayContent(String content) {
+        return EPUBRubyPreservingExtractor.convertToHtmlRuby(cleanChunkForDisplay(content));
+    }
+    
+    /**
+     * Clean chunk content for display by starting with the first complete sentence.
+     * This improves readability by avoiding mid-sentence starts.
+     * 
+     * @param content Raw chunk content
+     * @return Cleaned content starting with first complete sentence
+     */
+    private String cleanChunkForDisplay(String content) {
+        if (content == null || content.trim().isEmpty()) {
+            return content;
+        }
+        
+        // Find the first occurrence of Japanese sentence endings
+        int firstSentenceEnd = -1;
+        for (char c : new char[]{'。', '！', '？'}) {
+            int pos = content.indexOf(c);
+            if (pos != -1 && (firstSentenceEnd == -1 || pos < firstSentenceEnd)) {
+                firstSentenceEnd = pos;
+            }
+        }
+        
+        // If we find a sentence ending, start from the next sentence
+        if (firstSentenceEnd != -1 && firstSentenceEnd < content.length() - 1) {
+            String remaining = content.substring(firstSentenceEnd + 1).trim();
+            
+            // Make sure we have substantial content remaining
+            if (remaining.length() > 50) {
+                return remaining;
+            }
+        }
+        
+        // If no good sentence break found, return original content
+        return content;
+    }
+    
+    /**
+     * Generate a detailed source reference showing Book → Chapter → Position.
+     * This helps users locate the passage in their physical copy.
+     * 
+     * @param chunk The chunk containing the search result
+     * @return Formatted source reference
+     */
+    public String generateSourceReference(Chunk chunk) {
+        try {
+            // Get basic information
+            String bookTitle = chunk.getBook().getTitle();
+            String chapter = chunk.getChapter();
+            Integer chapterPercentage = chunk.getChapterPercentage();
+            
+            logger.debug("Source reference: book title = {}, chapter = {}, percentage = {}",
+                bookTitle, chapter, chapterPercentage);
+            
+            if (chapter == null || chapter.isEmpty()) {
+                logger.debug("No chapter info, returning book title only");
+                return bookTitle; // Just return book title if no chapter info
+            }
+            
+            // Clean up excessive spaces in chapter names (including ideographic spaces)
+            chapter = chapter.replaceAll("[\\s　]+", " ").trim();
+            
+            // Process chapter title - special handling for 人間革命
+            String formattedChapter;
+            if (bookTitle.contains("人間革命")) {
+                // For 人間革命, use parentheses for furigana instead of ruby tags
+                formattedChapter = formatHumanRevolutionChapter(chapter);
+            } else {
+                // For other books, convert to ruby HTML
+                formattedChapter = EPUBRubyPreservingExtractor.convertToHtmlRuby(chapter);
+            }
+            
+            // Use percentage if available
+            String locationRef;
+            if (chapterPercentage != null) {
+                // Format percentage as ranges for more natural reading
+                int rangeStart = (chapterPercentage / 10) * 10; // Round down to nearest 10
+                int rangeEnd = rangeStart + 10;
+                if (rangeStart == 0) {
+                    locationRef = "冒頭付近"; // Near the beginning
+                } else if (rangeEnd >= 100) {
+                    locationRef = "終盤付近"; // Near the end
+                } else {
+                    locationRef = String.format("約%d-%d%%付近", rangeStart, rangeEnd);
+                }
+            } else {
+                // Fallback if no percentage
+                locationRef = "位置不明";
+            }
+            
+            // Format: Book → Chapter → Location
+            return String.format("%s → %s → %s", bookTitle, formattedChapter, locationRef);
+            
+        } catch (Exception e) {
+            // Fallback to basic reference if anything goes wrong
+            return chunk.getBook().getTitle() + (chunk.getChapter() != null ? " → " + chunk.getChapter() : "");
+        }
+    }
+    
+    /**
+     * Format chapter titles for 人間革命 series.
+     * Handles both volumes with different furigana formats:
+     * - Volume 2: {kanji|furigana} → kanji（furigana） (has ruby tags)
+     * - Volume 1: 開かい　拓たく　者しゃ → 開拓者（かいたくしゃ） (no ruby tags)
+     * 
+     * @param chapter Original chapter title
+     * @return Formatted chapter title with parentheses
+     */
+    private String formatHumanRevolutionChapter(String chapter) {
+        if (chapter == null || chapter.isEmpty()) {
+            return chapter;
+        }
+        
+        // Check if chapter has ruby format {kanji|furigana}
+        if (chapter.contains("{") && chapter.contains("|") && chapter.contains("}")) {
+            // Volume 2 style: Has ruby tags - convert to parentheses
+            return chapter.replaceAll("\\{([^|]+)\\|([^}]+)\\}", "$1（$2）");
+        } else {
+            // Volume 1 style: No ruby tags - convert old spaced format
+            return convertOldSpacedFuriganaFormat(chapter);
+        }
+    }
+    
+    /**
+     * Convert old spaced furigana format to parentheses format.
+     * Example: 開かい　拓たく　者しゃ → 開拓者（かいたくしゃ）
+     * 
+     * @param text Text in old spaced format
+     * @return Text with parentheses format
+     */
+    private String convertOldSpacedFuriganaFormat(String text) {
+        if (text == null || text.trim().isEmpty()) {
+            return text;
+        }
+        
+        StringBuilder kanji = new StringBuilder();
+        StringBuilder furigana = new StringBuilder();
+        
+        // Split by spaces (both regular space and ideographic space)
+        String[] segments = text.split("[\\s　]+");
+        
+        for (String segment : segments) {
+            if (segment.trim().isEmpty()) continue;
+            
+            // Process segments that have kanji followed by hiragana
+            // Pattern: one or more kanji characters followed by hiragana
+            if (segment.matches("^[一-龯]+[あ-ん]+$")) {
+                // Find where kanji ends and hiragana begins
+                int kanjiEnd = 0;
+                for (int i = 0; i < segment.length(); i++) {
+                    char c = segment.charAt(i);
+                    if (c >= 'あ' && c <= 'ん') {
+                        kanjiEnd = i;
+                        break;
+                    }
+                }
+                
+                if (kanjiEnd > 0) {
+                    kanji.append(segment.substring(0, kanjiEnd));
+                    furigana.append(segment.substring(kanjiEnd));
+                }
+            }
+        }
+        
+        // If we successfully extracted both kanji and furigana, format with parentheses
+        if (kanji.length() > 0 && furigana.length() > 0) {
+            return kanji.toString() + "（" + furigana.toString() + "）";
+        }
+        
+        // If we couldn't parse it properly, return original text
+        return text;
+    }
+    
+    
+    /**
+     * A hydrated search hit: the display item plus the raw chunk text used for AI calls
+     */
+    public static class Hit {
+        private final SearchResultItem item;
+        private final String rawContent;
+        
+        public Hit(SearchResultItem item, String rawContent) {
+            this.item = item;
+            this.rawContent = rawContent;
+        }
+        
+        public SearchResultItem getItem() { return item; }
+        public String getRawContent() { return rawContent; }
+    }
+}
@@ -0,0 +1,110 @@
+package com.bungakukensaku.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Micrometer instrumentation for the search pipeline.
+ *
+ * Meters (all published through /actuator/metrics):
+ * - search.stage{stage}: latency of one pipeline stage (embedding, vector_query,
+ *   lexical_query, hydration, excerpt, summary, enrichment_wait, render)
+ * - search.request{endpoint}: end-to-end latency of a search request
+ * - search.errors{stage}: failed stages
+ * - search.fallbacks{kind, reason}: AI output replaced by a fallback
+ *
+ * Timers publish p50/p95/p99 plus a percentile histogram. Cache hit/miss
+ * counters are bound by the caches themselves (search.cache).
+ */
+@Service
+public class SearchMetrics {
+
+    public static final String EMBEDDING = "embedding";
+    public static final String VECTOR_QUERY = "vector_query";
+    public static final String LEXICAL_QUERY = "lexical_query";
+    public static final String HYDRATION = "hydration";
+    public static final String EXCERPT = "excerpt";
+    public static final String SUMMARY = "summary";
+    public static final String ENRICHMENT_WAIT = "enrichment_wait";
+    public static final String RENDER = "render";
+
+    @Autowired
+    private MeterRegistry registry;
+
+    private final Map<String, Timer> stageTimers = new ConcurrentHashMap<>();
+    private final Map<String, Timer> requestTimers = new ConcurrentHashMap<>();
+
+    /**
+     * Time one stage of the pipeline
+     *
+     * @param stage Stage name (one of the constants above)
+     * @param body The work to time
+     * @return Whatever the body returns
+     */
+    public <T> T time(String stage, Supplier<T> body) {
+        return stageTimer(stage).record(body);
+    }
+
+    /**
+     * Record a stage duration measured elsewhere (e.g. across threads)
+     */
+    public void recordStage(String stage, long nanos) {
+        stageTimer(stage).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Record the end-to-end latency of a search request
+     *
+     * @param endpoint "search" for the form post, "stream" for server-sent events
+     * @param nanos Elapsed time in nanoseconds
+     */
+    public void recordRequest(String endpoint, long nanos) {
+        requestTimers.computeIfAbsent(endpoint, key -> Timer.builder("search.request")
+                .description("End-to-end latency of a search request")
+                .tag("endpoint", key)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .publishPercentileHistogram()
+                .register(registry))
+            .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void error(String stage) {
+        Counter.builder("search.errors")
+            .description("Search pipeline stages that failed")
+            .tag("stage", stage)
+            .register(registry)
+            .increment();
+    }
+
+    /**
+     * Count AI output that was replaced by a fallback
+     *
+     * @param kind "excerpt", "summary" or "enrichment"
+     * @param reason Why the fallback was used, e.g. "error", "no_api_key", "deadline"
+     */
+    public void fallback(String kind, String reason) {
+        Counter.builder("search.fallbacks")
+            .description("AI excerpts and summaries replaced by a fallback")
+            .tag("kind", kind)
+            .tag("reason", reason)
+            .register(registry)
+            .increment();
+    }
+
+    private Timer stageTimer(String stage) {
+        return stageTimers.computeIfAbsent(stage, key -> Timer.builder("search.stage")
+            .description("Latency of one search pipeline stage")
+            .tag("stage", key)
+            .publishPercentiles(0.5, 0.95, 0.99)
+            .publishPercentileHistogram()
+            .register(registry));
+    }
+}
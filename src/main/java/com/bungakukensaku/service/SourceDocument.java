@@ -0,0 +1,195 @@
+package com.bungakukensaku.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * A source file read into memory once for ingestion.
+ *
+ * The charset is detected from the first few kilobytes only (byte order mark,
+ * then a charset/encoding declaration, then whether the head is valid UTF-8),
+ * and the text is decoded at most once, on first use. Every extraction stage
+ * works from the same bytes and the same decoded text instead of re-reading or
+ * re-decoding the file.
+ *
+ * Not thread-safe; a document belongs to the thread that processes it.
+ */
+public final class SourceDocument {
+
+    // Bytes inspected for a byte order mark, charset declaration or UTF-8 validity
+    private static final int HEAD_BYTES = 8192;
+
+    // Aozora Bunko files are Shift_JIS; this is also the guess for heads that are not UTF-8
+    private static final Charset SHIFT_JIS = Charset.forName("Shift_JIS");
+
+    private final String name;
+    private final Path path;
+    private final byte[] bytes;
+    private final Charset charset;
+    private final int textOffset;
+    private String text;
+
+    private SourceDocument(String name, Path path, byte[] bytes) {
+        this.name = name;
+        this.path = path;
+        this.bytes = bytes;
+        this.textOffset = byteOrderMarkLength(bytes) == 3 ? 3 : 0; // UTF-16 decoding consumes its own BOM
+        this.charset = detectCharset(bytes);
+    }
+
+    /**
+     * Read a file
+     *
+     * @param path File to read
+     * @return The document, bytes loaded and charset detected
+     * @throws IOException if the file cannot be read
+     */
+    public static SourceDocument open(Path path) throws IOException {
+        return new SourceDocument(path.getFileName().toString(), path, Files.readAllBytes(path));
+    }
+
+    /**
+     * Wrap content that is already in memory (e.g. an archive entry); it has no file path
+     *
+     * @param name File name, used for the format (extension) and in logs
+     * @param bytes File content; not copied, so must not be modified afterwards
+     */
+    public static SourceDocument of(String name, byte[] bytes) {
+        return new SourceDocument(name, null, bytes);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return The file this was read from, or null for in-memory content
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * @return Lower-case extension including the dot (".html"), or "" if none
+     */
+    public String getExtension() {
+        int dot = name.lastIndexOf('.');
+        return dot >= 0 ? name.substring(dot).toLowerCase(Locale.ROOT) : "";
+    }
+
+    public Charset getCharset() {
+        return charset;
+    }
+
+    public int getByteLength() {
+        return bytes.length;
+    }
+
+    /**
+     * @return A stream over the raw bytes (no copy)
+     */
+    public InputStream openStream() {
+        return new ByteArrayInputStream(bytes);
+    }
+
+    /**
+     * @return The content decoded with the detected charset (decoded on first call only)
+     */
+    public String getText() {
+        if (text == null) {
+            text = new String(bytes, textOffset, bytes.length - textOffset, charset);
+        }
+        return text;
+    }
+
+    /**
+     * Detect the charset from the head of the content
+     */
+    static Charset detectCharset(byte[] bytes) {
+        switch (byteOrderMarkLength(bytes)) {
+            case 3:
+                return StandardCharsets.UTF_8;
+            case 2:
+                return StandardCharsets.UTF_16;
+            default:
+                break;
+        }
+
+        int headLength = Math.min(bytes.length, HEAD_BYTES);
+        // Declarations are ASCII, so a one-byte-per-char view finds them in any ASCII-compatible charset
+        String head = new String(bytes, 0, headLength, StandardCharsets.ISO_8859_1).toLowerCase(Locale.ROOT);
+        Charset declared = declaredCharset(head, "charset=");
+        if (declared == null) {
+            declared = declaredCharset(head, "encoding=");
+        }
+        if (declared != null) {
+            return declared;
+        }
+
+        return isUtf8(bytes, headLength) ? StandardCharsets.UTF_8 : SHIFT_JIS;
+    }
+
+    private static Charset declaredCharset(String head, String marker) {
+        int at = head.indexOf(marker);
+        while (at != -1) {
+            int start = at + marker.length();
+            while (start < head.length() && (head.charAt(start) == '"' || head.charAt(start) == '\'')) {
+                start++;
+            }
+            int end = start;
+            while (end < head.length() && isCharsetNameChar(head.charAt(end))) {
+                end++;
+            }
+            if (end > start) {
+                String charsetName = head.substring(start, end);
+                try {
+                    if (Charset.isSupported(charsetName)) {
+                        return Charset.forName(charsetName);
+                    }
+                } catch (IllegalArgumentException e) {
+                    // Not a legal charset name; keep looking
+                }
+            }
+            at = head.indexOf(marker, start);
+        }
+        return null;
+    }
+
+    /**
+     * Whether the head decodes as UTF-8 (a sequence cut off at the end of the head is allowed)
+     */
+    private static boolean isUtf8(byte[] bytes, int headLength) {
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPORT)
+            .onUnmappableCharacter(CodingErrorAction.REPORT);
+        CoderResult result = decoder.decode(ByteBuffer.wrap(bytes, 0, headLength),
+            CharBuffer.allocate(headLength), headLength == bytes.length);
+        return !result.isError();
+    }
+
+    private static int byteOrderMarkLength(byte[] bytes) {
+        if (bytes.length >= 3 && (bytes[0] & 0xFF) == 0xEF && (bytes[1] & 0xFF) == 0xBB && (bytes[2] & 0xFF) == 0xBF) {
+            return 3;
+        }
+        if (bytes.length >= 2 && (((bytes[0] & 0xFF) == 0xFE && (bytes[1] & 0xFF) == 0xFF)
+                || ((bytes[0] & 0xFF) == 0xFF && (bytes[1] & 0xFF) == 0xFE))) {
+            return 2;
+        }
+        return 0;
+    }
+
+    private static boolean isCharsetNameChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '-' || c == '_' || c == '.' || c == ':';
+    }
+}
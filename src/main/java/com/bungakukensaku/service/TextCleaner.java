@@ -0,0 +1,62 @@
+package com.bungakukensaku.service;
+
+import java.util.regex.Pattern;
+
+/**
+ * Line-by-line cleanup of extracted text.
+ *
+ * Page numbers alone on a line are removed, runs of spaces/tabs collapse to
+ * one space, lines are trimmed and empty lines dropped. Every rule looks at a
+ * single line, so text can be cleaned in pieces (e.g. per PDF page range) and
+ * the pieces concatenated, as long as each piece ends at a line break.
+ */
+public final class TextCleaner {
+
+    private static final Pattern PAGE_NUMBER_LINE = Pattern.compile("(?m)^\\s*\\d+\\s*$");
+    private static final Pattern SPACE_RUN = Pattern.compile("[ \\t]{2,}");
+
+    private TextCleaner() {
+    }
+
+    /**
+     * Clean a whole text
+     *
+     * @return Non-empty cleaned lines separated by newlines, trimmed
+     */
+    public static String clean(CharSequence text) {
+        StringBuilder cleaned = new StringBuilder(text.length());
+        appendCleanLines(text, 0, text.length(), cleaned);
+        return cleaned.toString().trim();
+    }
+
+    /**
+     * Clean the lines of text[from, to) and append each non-empty line followed by a newline
+     *
+     * A final line without a newline is cleaned as a complete line.
+     */
+    public static void appendCleanLines(CharSequence text, int from, int to, StringBuilder out) {
+        int lineStart = from;
+        while (lineStart < to) {
+            int lineEnd = indexOfNewline(text, lineStart, to);
+            appendCleanLine(text.subSequence(lineStart, lineEnd), out);
+            lineStart = lineEnd + 1;
+        }
+    }
+
+    private static void appendCleanLine(CharSequence line, StringBuilder out) {
+        String cleaned = PAGE_NUMBER_LINE.matcher(line).replaceAll("");
+        cleaned = SPACE_RUN.matcher(cleaned).replaceAll(" ").trim();
+        if (!cleaned.isEmpty()) {
+            out.append(cleaned).append('\n');
+        }
+    }
+
+    private static int indexOfNewline(CharSequence text, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (text.charAt(i) == '\n') {
+                return i;
+            }
+        }
+        return to;
+    }
+}
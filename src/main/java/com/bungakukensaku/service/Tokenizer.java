@@ -0,0 +1,388 @@
+package com.bungakukensaku.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Token counts for the embedding model's encoding (cl100k_base).
+ *
+ * A pure-Java byte pair encoder: text is split with the encoding's
+ * pre-tokenization pattern and each piece's UTF-8 bytes are merged by rank
+ * exactly as tiktoken does, so counts match what the API bills and limits.
+ * The vocabulary (the tiktoken file, one "base64-token rank" line per token)
+ * is loaded once from tokenizer.vocabulary into an open-addressing table that
+ * is probed with byte ranges, so counting allocates nothing per piece.
+ *
+ * The vocabulary is fetched and checksummed by a build with -Dtokenizer.download
+ * and bundled at tokenizer/cl100k_base.tiktoken; tokenizer.vocabulary can also
+ * point at a copy on disk. If it is not available, counts fall back to the fixed
+ * ratio chunk sizes were always based on (see {@link #estimateTokens}) and
+ * {@link #isExact()} is false. Estimated counts would chunk the same source
+ * differently, so DocumentProcessingService refuses to ingest without the vocabulary.
+ *
+ * Thread-safe: the tables are read-only after loading and working buffers are per thread.
+ */
+@Service
+public class Tokenizer {
+
+    private static final Logger logger = LoggerFactory.getLogger(Tokenizer.class);
+
+    // cl100k_base pre-tokenization; \s and case folding are Unicode-aware as in tiktoken
+    private static final Pattern PIECE_PATTERN = Pattern.compile(
+        "(?i:'s|'t|'re|'ve|'m|'ll|'d)|[^\\r\\n\\p{L}\\p{N}]?\\p{L}+|\\p{N}{1,3}| ?[^\\s\\p{L}\\p{N}]+[\\r\\n]*|\\s*[\\r\\n]+|\\s+(?!\\S)|\\s+",
+        Pattern.UNICODE_CHARACTER_CLASS);
+
+    private static final int NO_RANK = Integer.MAX_VALUE;
+
+    // Characters per token without the vocabulary: the ratio chunks were sized by before counts were exact
+    static final int ESTIMATED_CHARS_PER_TOKEN = 3;
+
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    @Value("${tokenizer.vocabulary:classpath:tokenizer/cl100k_base.tiktoken}")
+    private Resource vocabulary;
+
+    // Token byte strings back to back; entry i is pool[offsets[i], offsets[i] + lengths[i])
+    private byte[] pool;
+    private int[] offsets;
+    private int[] lengths;
+    private int[] ranks;
+    private int[] table; // Entry index + 1, 0 for an empty slot
+    private int mask;
+    private final int[] byteRanks = new int[256];
+    private boolean exact;
+
+    @PostConstruct
+    public void init() {
+        if (vocabulary == null || !vocabulary.exists()) {
+            logger.error("Tokenizer vocabulary {} not found; token counts are estimates and documents cannot be "
+                + "ingested (build with -Dtokenizer.download or point tokenizer.vocabulary at cl100k_base.tiktoken)",
+                vocabulary);
+            return;
+        }
+        try {
+            load(vocabulary);
+            exact = true;
+            logger.info("Loaded tokenizer vocabulary ({} tokens) from {}", ranks.length, vocabulary);
+        } catch (IOException | RuntimeException e) {
+            logger.error("Could not load tokenizer vocabulary {}; token counts are estimates and documents cannot be "
+                + "ingested: {}", vocabulary, e.getMessage());
+        }
+    }
+
+    /**
+     * @return True if counts are exact, false if the vocabulary is missing and they are estimates
+     */
+    public boolean isExact() {
+        return exact;
+    }
+
+    /**
+     * Number of tokens the text encodes to
+     */
+    public int countTokens(CharSequence text) {
+        return countTokens(text, 0, text.length());
+    }
+
+    /**
+     * Number of tokens text[from, to) encodes to on its own
+     */
+    public int countTokens(CharSequence text, int from, int to) {
+        if (!exact) {
+            return estimateTokens(text, from, to);
+        }
+        Matcher matcher = PIECE_PATTERN.matcher(text).region(from, to);
+        int count = 0;
+        while (matcher.find()) {
+            count += countPiece(text, matcher.start(), matcher.end());
+        }
+        return count;
+    }
+
+    /**
+     * Longest prefix of text[from, to) that encodes to at most maxTokens tokens
+     *
+     * @return End of the prefix; at least from + 1 (a single character is never split)
+     *         unless the range is empty
+     */
+    public int fitPrefix(CharSequence text, int from, int to, int maxTokens) {
+        if (from >= to) {
+            return from;
+        }
+        int end = exact ? fitExact(text, from, to, maxTokens) : fitEstimate(text, from, to, maxTokens);
+        // Splitting the range can change how its end is pre-tokenized; step back until it fits
+        while (end > from + 1 && countTokens(text, from, end) > maxTokens) {
+            end = stepBack(text, from, end);
+        }
+        return Math.max(end, Math.min(to, from + (Character.isHighSurrogate(text.charAt(from)) ? 2 : 1)));
+    }
+
+    private int fitExact(CharSequence text, int from, int to, int maxTokens) {
+        Matcher matcher = PIECE_PATTERN.matcher(text).region(from, to);
+        int total = 0;
+        while (matcher.find()) {
+            int start = matcher.start();
+            int tokens = countPiece(text, start, matcher.end());
+            if (total + tokens > maxTokens) {
+                // Longest prefix of this piece that fits what is left
+                int remaining = maxTokens - total;
+                int low = start;
+                int high = matcher.end();
+                while (low < high) {
+                    int mid = boundary(text, start, (low + high + 1) >>> 1);
+                    if (mid <= low) {
+                        break;
+                    }
+                    if (countPiece(text, start, mid) <= remaining) {
+                        low = mid;
+                    } else {
+                        high = mid - 1;
+                    }
+                }
+                return boundary(text, start, low);
+            }
+            total += tokens;
+        }
+        return to;
+    }
+
+    private int fitEstimate(CharSequence text, int from, int to, int maxTokens) {
+        long end = from + (long) maxTokens * ESTIMATED_CHARS_PER_TOKEN;
+        return end >= to ? to : boundary(text, from, (int) end);
+    }
+
+    /**
+     * Token estimate used without the vocabulary: one token per
+     * ESTIMATED_CHARS_PER_TOKEN characters, so chunk sizes stay what they were
+     * before counts were exact. Not an upper bound for dense kanji text.
+     */
+    static int estimateTokens(CharSequence text, int from, int to) {
+        return (to - from + ESTIMATED_CHARS_PER_TOKEN - 1) / ESTIMATED_CHARS_PER_TOKEN;
+    }
+
+    // ---- Byte pair encoding ----
+
+    /**
+     * Tokens in one pre-tokenized piece: its UTF-8 bytes merged pairwise, lowest rank first
+     * (leftmost on ties), until no adjacent pair is a token
+     */
+    private int countPiece(CharSequence text, int from, int to) {
+        Scratch scratch = SCRATCH.get();
+        int length = scratch.encode(text, from, to);
+        byte[] bytes = scratch.bytes;
+        if (length <= 1 || rank(bytes, 0, length) != NO_RANK) {
+            return length == 0 ? 0 : 1;
+        }
+
+        // parts[i] is where part i starts; partRanks[i] the rank of parts i and i + 1 merged
+        int[] parts = scratch.parts(length + 1);
+        int[] partRanks = scratch.partRanks;
+        for (int i = 0; i < length - 1; i++) {
+            parts[i] = i;
+            partRanks[i] = rank(bytes, i, i + 2);
+        }
+        parts[length - 1] = length - 1;
+        partRanks[length - 1] = NO_RANK;
+        parts[length] = length;
+        partRanks[length] = NO_RANK;
+        int count = length + 1;
+
+        while (true) {
+            int minRank = NO_RANK;
+            int min = -1;
+            for (int i = 0; i < count - 1; i++) {
+                if (partRanks[i] < minRank) {
+                    minRank = partRanks[i];
+                    min = i;
+                }
+            }
+            if (min == -1) {
+                break;
+            }
+            // Ranks of the merged part with its neighbours, measured before part min + 1 is removed
+            if (min > 0) {
+                partRanks[min - 1] = mergedRank(bytes, parts, count, min - 1);
+            }
+            partRanks[min] = mergedRank(bytes, parts, count, min);
+            System.arraycopy(parts, min + 2, parts, min + 1, count - min - 2);
+            System.arraycopy(partRanks, min + 2, partRanks, min + 1, count - min - 2);
+            count--;
+        }
+        return count - 1;
+    }
+
+    private int mergedRank(byte[] bytes, int[] parts, int count, int i) {
+        return i + 3 < count ? rank(bytes, parts[i], parts[i + 3]) : NO_RANK;
+    }
+
+    private int rank(byte[] bytes, int from, int to) {
+        int length = to - from;
+        if (length == 1) {
+            return byteRanks[bytes[from] & 0xFF];
+        }
+        int slot = hash(bytes, from, to) & mask;
+        int entry;
+        while ((entry = table[slot]) != 0) {
+            entry--;
+            if (lengths[entry] == length
+                    && Arrays.equals(pool, offsets[entry], offsets[entry] + length, bytes, from, to)) {
+                return ranks[entry];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return NO_RANK;
+    }
+
+    private static int hash(byte[] bytes, int from, int to) {
+        int h = 0x811C9DC5;
+        for (int i = from; i < to; i++) {
+            h = (h ^ (bytes[i] & 0xFF)) * 0x01000193;
+        }
+        return h ^ (h >>> 16);
+    }
+
+    // ---- Vocabulary ----
+
+    private void load(Resource resource) throws IOException {
+        Arrays.fill(byteRanks, NO_RANK);
+        byte[] poolBuffer = new byte[1 << 20];
+        int poolSize = 0;
+        int[] offsetBuffer = new int[1 << 17];
+        int[] lengthBuffer = new int[1 << 17];
+        int[] rankBuffer = new int[1 << 17];
+        int size = 0;
+
+        Base64.Decoder decoder = Base64.getDecoder();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(resource.getInputStream(), StandardCharsets.US_ASCII))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int space = line.indexOf(' ');
+                if (space <= 0) {
+                    continue;
+                }
+                byte[] token = decoder.decode(line.substring(0, space));
+                int rank = Integer.parseInt(line.substring(space + 1).trim());
+
+                if (poolSize + token.length > poolBuffer.length) {
+                    poolBuffer = Arrays.copyOf(poolBuffer, Math.max(poolBuffer.length * 2, poolSize + token.length));
+                }
+                if (size == offsetBuffer.length) {
+                    offsetBuffer = Arrays.copyOf(offsetBuffer, size * 2);
+                    lengthBuffer = Arrays.copyOf(lengthBuffer, size * 2);
+                    rankBuffer = Arrays.copyOf(rankBuffer, size * 2);
+                }
+                System.arraycopy(token, 0, poolBuffer, poolSize, token.length);
+                offsetBuffer[size] = poolSize;
+                lengthBuffer[size] = token.length;
+                rankBuffer[size] = rank;
+                poolSize += token.length;
+                size++;
+                if (token.length == 1) {
+                    byteRanks[token[0] & 0xFF] = rank;
+                }
+            }
+        }
+        if (size == 0) {
+            throw new IOException("Vocabulary is empty");
+        }
+
+        pool = Arrays.copyOf(poolBuffer, poolSize);
+        offsets = Arrays.copyOf(offsetBuffer, size);
+        lengths = Arrays.copyOf(lengthBuffer, size);
+        ranks = Arrays.copyOf(rankBuffer, size);
+
+        int tableSize = Integer.highestOneBit(size * 2 - 1) << 1;
+        table = new int[tableSize];
+        mask = tableSize - 1;
+        for (int entry = 0; entry < size; entry++) {
+            int slot = hash(pool, offsets[entry], offsets[entry] + lengths[entry]) & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = entry + 1;
+        }
+    }
+
+    // ---- Helpers ----
+
+    /**
+     * Move pos back off the middle of a surrogate pair (never before from)
+     */
+    private static int boundary(CharSequence text, int from, int pos) {
+        if (pos > from && pos < text.length() && Character.isLowSurrogate(text.charAt(pos))
+                && Character.isHighSurrogate(text.charAt(pos - 1))) {
+            return pos - 1;
+        }
+        return pos;
+    }
+
+    private static int stepBack(CharSequence text, int from, int end) {
+        return boundary(text, from, end - 1);
+    }
+
+    /**
+     * Per-thread working buffers, grown to the largest piece seen
+     */
+    private static final class Scratch {
+        byte[] bytes = new byte[256];
+        int[] parts = new int[257];
+        int[] partRanks = new int[257];
+
+        int[] parts(int size) {
+            if (parts.length < size) {
+                parts = new int[size];
+                partRanks = new int[size];
+            }
+            return parts;
+        }
+
+        /**
+         * UTF-8 encode text[from, to) into bytes (unpaired surrogates become '?', as String.getBytes does)
+         *
+         * @return Number of bytes
+         */
+        int encode(CharSequence text, int from, int to) {
+            int needed = (to - from) * 3;
+            if (bytes.length < needed) {
+                bytes = new byte[Math.max(needed, bytes.length * 2)];
+            }
+            int n = 0;
+            for (int i = from; i < to; i++) {
+                char c = text.charAt(i);
+                if (c < 0x80) {
+                    bytes[n++] = (byte) c;
+                } else if (c < 0x800) {
+                    bytes[n++] = (byte) (0xC0 | (c >> 6));
+                    bytes[n++] = (byte) (0x80 | (c & 0x3F));
+                } else if (Character.isHighSurrogate(c) && i + 1 < to && Character.isLowSurrogate(text.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                    bytes[n++] = (byte) (0xF0 | (codePoint >> 18));
+                    bytes[n++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                    bytes[n++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                    bytes[n++] = (byte) (0x80 | (codePoint & 0x3F));
+                } else if (Character.isSurrogate(c)) {
+                    bytes[n++] = (byte) '?';
+                } else {
+                    bytes[n++] = (byte) (0xE0 | (c >> 12));
+                    bytes[n++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    bytes[n++] = (byte) (0x80 | (c & 0x3F));
+                }
+            }
+            return n;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.bungakukensaku.service;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Abstraction over the vector similarity search backend.
+ * 
+ * PineconeService queries the managed Pinecone index over the network;
+ * InMemoryVectorStore answers the same queries from embeddings held in
+ * process. Which one serves searches is chosen by vector.store.type.
+ */
+public interface VectorStore {
+    
+    /**
+     * Find the vectors most similar to the query vector.
+     * 
+     * @param queryVector The query embedding
+     * @param topK Maximum number of results to return
+     * @param filter Optional metadata filter, e.g. {"bookId": [1, 2, 3]} for bookId $in
+     * @return Matches ordered by descending similarity
+     */
+    List<SearchResult> query(float[] queryVector, int topK, Map<String, Object> filter);
+    
+    /**
+     * A single vector match with its score and metadata
+     */
+    class SearchResult {
+        private final String id;
+        private final Float score;
+        private final Map<String, Object> metadata;
+        
+        public SearchResult(String id, Float score, Map<String, Object> metadata) {
+            this.id = id;
+            this.score = score;
+            this.metadata = metadata;
+        }
+        
+        public String getId() { return id; }
+        public Float getScore() { return score; }
+        public Map<String, Object> getMetadata() { return metadata; }
+    }
+}
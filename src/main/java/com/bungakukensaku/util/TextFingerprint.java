@@ -0,0 +1,54 @@
+package com.bungakukensaku.util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
+import java.util.HexFormat;
+import java.util.regex.Pattern;
+
+/**
+ * Helpers for turning text into stable cache keys.
+ * 
+ * Normalization folds full-width/half-width variants (NFKC), collapses all
+ * whitespace including ideographic spaces, and trims, so that trivially
+ * different spellings of the same query share one cache entry.
+ */
+public final class TextFingerprint {
+    
+    private static final Pattern WHITESPACE = Pattern.compile("[\\s\\u3000]+");
+    
+    private TextFingerprint() {
+    }
+    
+    /**
+     * Normalize text for use as a cache key
+     * 
+     * @param text The raw text
+     * @return NFKC-normalized text with collapsed whitespace, or "" for null
+     */
+    public static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFKC);
+        return WHITESPACE.matcher(normalized).replaceAll(" ").trim();
+    }
+    
+    /**
+     * Compute the hex SHA-256 digest of the given text (UTF-8)
+     * 
+     * @param text The text to hash
+     * @return 64-character lowercase hex digest
+     */
+    public static String sha256(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(text.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash);
+        } catch (NoSuchAlgorithmException e) {
+            // Every JVM is required to provide SHA-256
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
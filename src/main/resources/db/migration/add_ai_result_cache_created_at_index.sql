@@ -0,0 +1,3 @@
+-- Expired AI results are pruned by creation time (ai.cache.ttl-minutes)
+
+CREATE INDEX IF NOT EXISTS idx_ai_result_cache_created_at ON ai_result_cache(created_at);
@@ -0,0 +1,13 @@
+-- Content hash on chunks for embedding reuse across reprocessing.
+-- New chunks get the hash from the application; this backfills existing rows.
+-- add_embedding_cache_kind.sql then seeds embedding_cache with the embeddings
+-- they already have, so the first reprocess after upgrading can reuse them too.
+-- Requires PostgreSQL 11+ (sha256()).
+
+ALTER TABLE chunks ADD COLUMN IF NOT EXISTS content_hash VARCHAR(64);
+
+UPDATE chunks
+SET content_hash = encode(sha256(convert_to(content, 'UTF8')), 'hex')
+WHERE content_hash IS NULL;
+
+CREATE INDEX IF NOT EXISTS idx_chunks_content_hash ON chunks(content_hash);
@@ -0,0 +1,36 @@
+-- Separate query and chunk entries in embedding_cache.
+-- Query entries hash the normalized query and chunk entries the exact chunk
+-- text, so the same hash must not serve both. Run after add_chunk_content_hash.sql.
+
+ALTER TABLE embedding_cache ADD COLUMN IF NOT EXISTS kind VARCHAR(10);
+
+-- Existing rows matching a chunk's text were stored for chunk reuse
+UPDATE embedding_cache e
+SET kind = CASE WHEN EXISTS (SELECT 1 FROM chunks c WHERE c.content_hash = e.content_hash)
+                THEN 'chunk' ELSE 'query' END
+WHERE kind IS NULL;
+
+ALTER TABLE embedding_cache ALTER COLUMN kind SET NOT NULL;
+
+-- Replace the (content_hash, model) key, whatever name it was created under
+DO $$
+DECLARE
+    c record;
+BEGIN
+    FOR c IN SELECT conname FROM pg_constraint
+             WHERE conrelid = 'embedding_cache'::regclass AND contype = 'u' LOOP
+        EXECUTE format('ALTER TABLE embedding_cache DROP CONSTRAINT %I', c.conname);
+    END LOOP;
+END $$;
+
+ALTER TABLE embedding_cache
+    ADD CONSTRAINT uk_embedding_cache_hash_model_kind UNIQUE (content_hash, model, kind);
+
+-- Seed chunk entries with the embeddings chunks already have
+-- Model name must match OpenAIEmbeddingService.MODEL
+INSERT INTO embedding_cache (content_hash, model, kind, embedding, created_at)
+SELECT DISTINCT ON (content_hash) content_hash, 'text-embedding-3-small', 'chunk', embedding, now()
+FROM chunks
+WHERE embedding IS NOT NULL AND content_hash IS NOT NULL
+ORDER BY content_hash, id
+ON CONFLICT (content_hash, model, kind) DO NOTHING;
@@ -0,0 +1,9 @@
+-- Incremental reprocessing keeps unchanged chunk rows, so chunk IDs no longer
+-- follow text order; chunk_index records each chunk's position in its book.
+-- Existing books keep NULL and fall back to ID order.
+ALTER TABLE chunks ADD COLUMN IF NOT EXISTS chunk_index INTEGER;
+
+CREATE INDEX IF NOT EXISTS idx_chunks_book_chunk_index ON chunks(book_id, chunk_index);
+
+-- A reprocess job now runs reprocess, embedding and upload steps
+ALTER TABLE ingestion_job_steps ADD COLUMN IF NOT EXISTS type VARCHAR(30);
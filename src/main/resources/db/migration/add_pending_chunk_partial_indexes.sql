@@ -0,0 +1,21 @@
+-- Partial indexes for the ingestion jobs' keyset pages over pending chunks.
+-- Each index holds only the rows still waiting for work, so it shrinks as the
+-- backfill progresses and the per-book (book_id, id > checkpoint) pages stay
+-- index range scans instead of full table scans.
+
+-- Chunks still waiting for an embedding
+CREATE INDEX IF NOT EXISTS idx_chunks_pending_embedding
+    ON chunks(book_id, id)
+    WHERE embedding IS NULL;
+
+-- Embedded chunks not yet upserted to Pinecone
+CREATE INDEX IF NOT EXISTS idx_chunks_pending_upload
+    ON chunks(book_id, id)
+    WHERE embedding IS NOT NULL AND uploaded_to_pinecone = false;
+
+-- Full re-uploads and per-book deletes page through all of a book's chunks
+CREATE INDEX IF NOT EXISTS idx_chunks_book_id_id
+    ON chunks(book_id, id);
+
+-- Superseded by idx_chunks_pending_upload (a boolean index is rarely selective)
+DROP INDEX IF EXISTS idx_chunks_uploaded_to_pinecone;
@@ -0,0 +1,17 @@
+-- Persistent cache of AI excerpts and summaries
+-- Keyed by a hash of (kind, chunk id, content hash, normalized query, model, prompt version)
+
+CREATE TABLE IF NOT EXISTS ai_result_cache (
+    id BIGSERIAL PRIMARY KEY,
+    cache_key VARCHAR(64) NOT NULL UNIQUE,
+    kind VARCHAR(20) NOT NULL,
+    chunk_id BIGINT,
+    content_hash VARCHAR(64) NOT NULL,
+    query TEXT NOT NULL,
+    model VARCHAR(100) NOT NULL,
+    prompt_version INTEGER NOT NULL,
+    payload TEXT NOT NULL,
+    created_at TIMESTAMP NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS idx_ai_result_cache_chunk ON ai_result_cache(chunk_id);
@@ -0,0 +1,12 @@
+-- Persistent cache of text embeddings keyed by normalized-text hash and model
+-- Lets query embeddings survive restarts so popular queries skip the OpenAI call
+-- (add_embedding_cache_kind.sql adds the query/chunk kind to the key)
+
+CREATE TABLE IF NOT EXISTS embedding_cache (
+    id BIGSERIAL PRIMARY KEY,
+    content_hash VARCHAR(64) NOT NULL,
+    model VARCHAR(100) NOT NULL,
+    embedding FLOAT[] NOT NULL,
+    created_at TIMESTAMP NOT NULL,
+    CONSTRAINT uk_embedding_cache_hash_model UNIQUE (content_hash, model)
+);
@@ -0,0 +1,39 @@
+-- Background ingestion jobs (reprocess book, generate embeddings, upload vectors)
+-- and their per-book steps with resume checkpoints
+
+CREATE TABLE IF NOT EXISTS ingestion_jobs (
+    id BIGSERIAL PRIMARY KEY,
+    type VARCHAR(30) NOT NULL,
+    status VARCHAR(20) NOT NULL,
+    book_id BIGINT,
+    source_path TEXT,
+    source_filename VARCHAR(255),
+    cancel_requested BOOLEAN NOT NULL DEFAULT false,
+    processed_items BIGINT NOT NULL DEFAULT 0,
+    total_items BIGINT NOT NULL DEFAULT 0,
+    message TEXT,
+    error TEXT,
+    attempts INTEGER NOT NULL DEFAULT 0,
+    created_at TIMESTAMP NOT NULL,
+    started_at TIMESTAMP,
+    finished_at TIMESTAMP,
+    updated_at TIMESTAMP NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS idx_ingestion_jobs_status ON ingestion_jobs(status);
+
+CREATE TABLE IF NOT EXISTS ingestion_job_steps (
+    id BIGSERIAL PRIMARY KEY,
+    job_id BIGINT NOT NULL REFERENCES ingestion_jobs(id) ON DELETE CASCADE,
+    seq INTEGER NOT NULL,
+    name VARCHAR(255) NOT NULL,
+    book_id BIGINT,
+    status VARCHAR(20) NOT NULL,
+    checkpoint_chunk_id BIGINT,
+    processed_items BIGINT NOT NULL DEFAULT 0,
+    total_items BIGINT NOT NULL DEFAULT 0,
+    error TEXT,
+    updated_at TIMESTAMP NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS idx_ingestion_job_steps_job ON ingestion_job_steps(job_id);
@@ -0,0 +1,10 @@
+-- Pinecone vectors to delete once the chunk changes that orphaned them have committed
+-- Rows are written in the reprocess transaction and removed when the delete succeeds,
+-- so a failed delete is retried instead of leaving stale vectors in the index
+
+CREATE TABLE IF NOT EXISTS pending_vector_deletes (
+    vector_id VARCHAR(100) PRIMARY KEY,
+    attempts INTEGER NOT NULL DEFAULT 0,
+    last_error TEXT,
+    created_at TIMESTAMP NOT NULL
+);
@@ -218,6 +218,13 @@ document.addEventListener('DOMContentLoaded', function() {
             
             // Scroll to hero section (keeps search container fully visible)
             document.querySelector('.hero-section').scrollIntoView({ behavior: 'smooth', block: 'start' });
+        } else if (window.EventSource) {
+            // Stream results so they render as soon as retrieval finishes and
+            // AI excerpts/summaries fill in as they arrive
+            e.preventDefault();
+            showLoadingState();
+            includeBookSelections();
+            startStreamingSearch();
         } else {
             // If there's a query, show loading state
             showLoadingState();
@@ -232,6 +239,185 @@ document.addEventListener('DOMContentLoaded', function() {
         }
     });
 
+    let activeSearchStream = null;
+    
+    /**
+     * Run the search over /api/search/stream using the current form values.
+     * The ranked list is rendered from the "results" event; excerpts and
+     * summaries are patched into the matching result as their events arrive.
+     */
+    function startStreamingSearch() {
+        if (activeSearchStream) {
+            activeSearchStream.close();
+        }
+        
+        const params = new URLSearchParams();
+        new FormData(searchForm).forEach((value, name) => {
+            if (!name.includes('csrf')) {
+                params.append(name, value);
+            }
+        });
+        
+        const stream = new EventSource('/api/search/stream?' + params.toString());
+        activeSearchStream = stream;
+        
+        stream.addEventListener('results', function(event) {
+            const data = JSON.parse(event.data);
+            renderStreamedResults(data.results, data.searchedBooks);
+        });
+        
+        stream.addEventListener('excerpt', function(event) {
+            const data = JSON.parse(event.data);
+            const item = findResultItem(data.index);
+            if (item && data.content) {
+                item.querySelector('.result-content').innerHTML = data.content;
+            }
+        });
+        
+        stream.addEventListener('summary', function(event) {
+            const data = JSON.parse(event.data);
+            const item = findResultItem(data.index);
+            if (item && data.contextSummary) {
+                const summary = document.createElement('div');
+                summary.className = 'ai-summary';
+                summary.innerHTML = `
+                    <div class="context-summary">
+                        <h5>文脈</h5>
+                        <p>${escapeHtml(data.contextSummary)}</p>
+                    </div>
+                    ${data.relevanceExplanation ? `
+                    <div class="relevance-explanation">
+                        <h5>関連性</h5>
+                        <p>${escapeHtml(data.relevanceExplanation)}</p>
+                    </div>` : ''}
+                `;
+                item.querySelector('.ai-summary.pending').before(summary);
+            }
+        });
+        
+        stream.addEventListener('done', function(event) {
+            const data = JSON.parse(event.data);
+            document.querySelectorAll('.search-result-item[data-index]').forEach(item => {
+                const placeholder = item.querySelector('.ai-summary.pending');
+                if (!placeholder) {
+                    return;
+                }
+                if (data.pending.includes(Number(item.dataset.index))) {
+                    placeholder.classList.remove('streaming');
+                    placeholder.querySelector('p').textContent = 'AIによる分析は時間内に完了しませんでした。';
+                } else {
+                    placeholder.remove();
+                }
+            });
+            closeStream(stream);
+        });
+        
+        stream.addEventListener('search-error', function(event) {
+            const data = JSON.parse(event.data);
+            closeStream(stream);
+            if (data.rateLimited) {
+                document.querySelector('.search-results').style.display = 'none';
+                showRateLimitPopup();
+                return;
+            }
+            document.querySelector('.results-content').innerHTML =
+                `<div class="search-message">${escapeHtml(data.message)}</div>`;
+        });
+        
+        // Connection dropped before "done": fall back to the regular form search
+        stream.onerror = function() {
+            if (activeSearchStream !== stream) {
+                return;
+            }
+            closeStream(stream);
+            if (!document.querySelector('.search-result-item[data-index]')) {
+                searchForm.submit();
+            }
+        };
+    }
+    
+    function closeStream(stream) {
+        stream.close();
+        if (activeSearchStream === stream) {
+            activeSearchStream = null;
+        }
+    }
+    
+    function findResultItem(index) {
+        return document.querySelector(`.search-result-item[data-index="${index}"]`);
+    }
+    
+    function escapeHtml(text) {
+        const div = document.createElement('div');
+        div.textContent = text == null ? '' : String(text);
+        return div.innerHTML;
+    }
+    
+    /**
+     * Render the ranked results with the same markup as the server template.
+     * Content and source references are server-generated HTML (ruby markup),
+     * matching th:utext in home.html.
+     */
+    function renderStreamedResults(results, searchedBooks) {
+        const resultsContent = document.querySelector('.results-content');
+        const resultCount = document.querySelector('.result-count');
+        const searchScopeInfo = document.querySelector('.search-scope-info');
+        
+        if (!results || results.length === 0) {
+            resultsContent.innerHTML = '<div class="search-message">検索結果が見つかりませんでした。</div>';
+            return;
+        }
+        
+        if (resultCount) {
+            resultCount.textContent = results.length + '件の結果が見つかりました。';
+            resultCount.style.display = '';
+        }
+        if (searchScopeInfo && searchedBooks && searchedBooks.length > 0) {
+            const joined = searchedBooks.join('、');
+            const display = searchScopeInfo.querySelector('.books-display');
+            display.title = joined;
+            display.querySelector('span').textContent = joined.length > 25 ? joined.substring(0, 22) + '...' : joined;
+            searchScopeInfo.style.display = '';
+        }
+        
+        resultsContent.innerHTML = results.map((result, index) => `
+            <div class="search-result-item" data-index="${index}">
+                <div class="result-header">
+                    <h4 class="book-title">
+                        <span>${escapeHtml(result.bookTitle)}</span>
+                        ${result.author ? `<span class="book-author">${escapeHtml(' • ' + result.author)}</span>` : ''}
+                    </h4>
+                    <span class="result-score">関連度: ${(result.score * 100).toFixed(1)}%</span>
+                </div>
+                <div class="result-metadata">
+                    ${result.sourceReference ? `<span class="source-reference">${result.sourceReference}</span>` :
+                      (result.chapter != null ? `<span>章: ${result.chapter}</span>` : '')}
+                </div>
+                ${result.aiPending ? `
+                <div class="ai-summary pending streaming">
+                    <p>AIによる分析中...</p>
+                </div>` : ''}
+                <div class="expandable-content">
+                    <div class="result-content collapsed">${result.content || ''}</div>
+                </div>
+                <div class="result-actions">
+                    <button class="expand-toggle" onclick="toggleExpand(this)">
+                        <span class="expand-text">展開</span>
+                        <span class="collapse-text" style="display: none;">折りたたむ</span>
+                    </button>
+                    ${result.staticTextPath ? `
+                    <a data-path="${escapeHtml(result.staticTextPath)}"
+                       data-chunk="${result.chunkId}"
+                       href="#"
+                       onclick="openFullText(this); return false;"
+                       class="full-text-button">
+                        全文を読む
+                    </a>` : ''}
+                </div>
+            </div>
+        `).join('');
+    }
+
     // Auto-expand textarea as user types
     function adjustTextareaHeight() {
         searchInput.style.height = 'auto'; // Reset height
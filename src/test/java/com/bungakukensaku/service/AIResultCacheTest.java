@@ -0,0 +1,79 @@
+package com.bungakukensaku.service;
+
+import com.bungakukensaku.model.AIResultCacheEntry;
+import com.bungakukensaku.repository.AIResultCacheRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class AIResultCacheTest {
+
+    private final AIResultCache.Key key = new AIResultCache.Key("SUMMARY", 1L, "雪国", "トンネル", "gpt", 1);
+    private AIResultCacheRepository repository;
+    private AIResultCache cache;
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(AIResultCacheRepository.class);
+        cache = new AIResultCache();
+        ReflectionTestUtils.setField(cache, "aiResultCacheRepository", repository);
+        ReflectionTestUtils.setField(cache, "maxEntries", 10);
+        ReflectionTestUtils.setField(cache, "ttlMinutes", 60L);
+        ReflectionTestUtils.setField(cache, "persist", true);
+        cache.init();
+    }
+
+    private AIResultCacheEntry stored(String payload, LocalDateTime createdAt) {
+        AIResultCacheEntry entry = new AIResultCacheEntry();
+        entry.setCacheKey(key.hash());
+        entry.setPayload(payload);
+        entry.setCreatedAt(createdAt);
+        return entry;
+    }
+
+    @Test
+    void servesFreshPersistedResults() {
+        when(repository.findByCacheKey(key.hash()))
+            .thenReturn(Optional.of(stored("stored", LocalDateTime.now().minusMinutes(30))));
+
+        assertEquals("stored", cache.getOrLoad(key, () -> "loaded"));
+    }
+
+    @Test
+    void reloadsAndRefreshesExpiredResults() {
+        AIResultCacheEntry expired = stored("stale", LocalDateTime.now().minusMinutes(90));
+        when(repository.findByCacheKey(key.hash())).thenReturn(Optional.of(expired));
+
+        assertEquals("loaded", cache.getOrLoad(key, () -> "loaded"));
+
+        // The expired row is updated in place rather than inserted under the same key
+        ArgumentCaptor<AIResultCacheEntry> saved = ArgumentCaptor.forClass(AIResultCacheEntry.class);
+        verify(repository).save(saved.capture());
+        assertSame(expired, saved.getValue());
+        assertEquals("loaded", saved.getValue().getPayload());
+        assertTrue(saved.getValue().getCreatedAt().isAfter(LocalDateTime.now().minusMinutes(1)));
+    }
+
+    @Test
+    void prunesRowsOlderThanTheTtl() {
+        when(repository.deleteByCreatedAtBefore(any())).thenReturn(3);
+        cache.pruneExpired();
+
+        ArgumentCaptor<LocalDateTime> cutoff = ArgumentCaptor.forClass(LocalDateTime.class);
+        verify(repository).deleteByCreatedAtBefore(cutoff.capture());
+        LocalDateTime expected = LocalDateTime.now().minusMinutes(60);
+        assertTrue(cutoff.getValue().isAfter(expected.minusMinutes(1)) && cutoff.getValue().isBefore(expected.plusMinutes(1)));
+    }
+}
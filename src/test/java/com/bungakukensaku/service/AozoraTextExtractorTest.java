@@ -0,0 +1,114 @@
+package com.bungakukensaku.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class AozoraTextExtractorTest {
+
+    private static final Path BOOKS = Path.of("src/main/resources/static/books");
+
+    /**
+     * The regex pipeline AozoraTextExtractor replaced, kept as the reference output
+     */
+    private static String regexPipeline(String htmlContent) {
+        int startIndex = htmlContent.indexOf("<div class=\"main_text\">");
+        if (startIndex == -1) {
+            startIndex = htmlContent.indexOf("<div class=main_text>");
+        }
+        if (startIndex != -1) {
+            int endIndex = htmlContent.indexOf("</body>");
+            if (endIndex == -1) {
+                endIndex = htmlContent.length();
+            }
+            String mainContent = htmlContent.substring(startIndex, endIndex);
+            mainContent = mainContent.replaceAll("<br\\s*/?>", "\n");
+            mainContent = mainContent.replaceAll("<p[^>]*>", "\n");
+            mainContent = mainContent.replaceAll("</p>", "\n");
+            mainContent = mainContent.replaceAll("<div[^>]*>", "\n");
+            mainContent = mainContent.replaceAll("</div>", "\n");
+            mainContent = mainContent.replaceAll("<ruby><rb>([^<]+)</rb><rp>[^<]*</rp><rt>([^<]+)</rt><rp>[^<]*</rp></ruby>", "$1($2)");
+            mainContent = mainContent.replaceAll("<[^>]+>", "");
+            mainContent = mainContent.replaceAll("&nbsp;", " ");
+            mainContent = mainContent.replaceAll("&[a-zA-Z]+;", "");
+            mainContent = mainContent.replaceAll("　+", "　");
+            mainContent = mainContent.replaceAll("[ \\t]+", " ");
+            mainContent = mainContent.replaceAll("\\n\\s*\\n+", "\n\n");
+            mainContent = mainContent.replaceAll("^\\s+", "");
+            return mainContent.trim();
+        }
+
+        int bodyStart = htmlContent.indexOf("<body>");
+        int bodyEnd = htmlContent.indexOf("</body>");
+        if (bodyStart != -1 && bodyEnd != -1) {
+            String bodyContent = htmlContent.substring(bodyStart, bodyEnd);
+            bodyContent = bodyContent.replaceAll("<[^>]+>", " ");
+            bodyContent = bodyContent.replaceAll("\\s+", " ");
+            return bodyContent.trim();
+        }
+        return "";
+    }
+
+    /**
+     * The document as bundled (body fallback), inside a main_text div, and inside
+     * a main_text div with its readings turned into ruby markup and some entities
+     */
+    private static List<String> variants(String html) {
+        String mainText = html.replace("<div class=\"content\">", "<div class=\"main_text\">");
+        String markedUp = mainText
+            .replaceAll("([\\p{IsHan}々]+)\\(([\\p{IsHiragana}]+)\\)",
+                "<ruby><rb>$1</rb><rp>（</rp><rt>$2</rt><rp>）</rp></ruby>")
+            .replace("、", "、&nbsp;")
+            .replace("。", "。&amp;<br />");
+        return List.of(html, mainText, markedUp);
+    }
+
+    private static void assertSameAsRegexPipeline(String html, String label) {
+        assertEquals(regexPipeline(html), AozoraTextExtractor.extract(html), label);
+    }
+
+    @Test
+    void matchesTheRegexPipelineOnMarkup() {
+        String html = "<html><body><div class=\"main_text\">\n"
+            + "<p>　　<ruby><rb>雪国</rb><rp>（</rp><rt>ゆきぐに</rt><rp>）</rp></ruby>であった。</p>"
+            + "<br>国境の&nbsp;&nbsp;長い\t\tトンネル&hellip;&#12354;<br/>"
+            + "<div class=\"jisage_2\">夜の底が白くなった。</div>\n\n\n \n"
+            + "<p class=x>信号所に<span>汽車が</span>止まった。</p>"
+            + "</div></body></html>";
+        assertSameAsRegexPipeline(html, "main_text");
+        assertSameAsRegexPipeline(html.replace("class=\"main_text\"", "class=main_text"), "bare main_text");
+        assertSameAsRegexPipeline(html.replace("class=\"main_text\"", "class=\"other\""), "body fallback");
+        assertSameAsRegexPipeline(html.replace("</body>", ""), "no body end");
+        assertEquals("", AozoraTextExtractor.extract("<html>雪国</html>"));
+    }
+
+    @Test
+    void matchesTheRegexPipelineOnTheBundledBooks() throws IOException {
+        // Book directories have Japanese names the JVM can only open with a UTF-8 file name encoding
+        assumeTrue(Charset.forName(System.getProperty("sun.jnu.encoding", "UTF-8")).newEncoder().canEncode("青空文庫"),
+            "File names are not UTF-8 (sun.jnu.encoding); run with a UTF-8 locale");
+
+        List<Path> books;
+        try (Stream<Path> paths = Files.walk(BOOKS)) {
+            books = paths.filter(path -> path.toString().endsWith(".html")).sorted().toList();
+        }
+        assertTrue(books.size() > 0, "No bundled books under " + BOOKS);
+
+        for (Path book : books) {
+            String html = SourceDocument.open(book).getText();
+            List<String> variants = variants(html);
+            assertSameAsRegexPipeline(variants.get(0), book + " (body)");
+            assertSameAsRegexPipeline(variants.get(1), book + " (main_text)");
+            assertSameAsRegexPipeline(variants.get(2), book + " (main_text with ruby and entities)");
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.bungakukensaku.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+
+class BulkImportServiceTest {
+
+    @TempDir
+    Path temp;
+
+    private Path root;
+    private BulkImportService service;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        root = Files.createDirectories(temp.resolve("books")).toRealPath();
+        Files.createDirectories(root.resolve("natsume"));
+        Files.createDirectories(temp.resolve("private"));
+
+        service = new BulkImportService(mock(PlatformTransactionManager.class));
+        ReflectionTestUtils.setField(service, "importRoot", root.toString());
+    }
+
+    @Test
+    void resolvesDirectoriesInsideTheRoot() throws IOException {
+        assertEquals(root, service.resolveImportDirectory(""));
+        assertEquals(root.resolve("natsume"), service.resolveImportDirectory("natsume"));
+        assertEquals(root.resolve("natsume"), service.resolveImportDirectory("natsume/../natsume/."));
+        assertEquals(root.resolve("natsume"), service.resolveImportDirectory(root.resolve("natsume").toString()));
+    }
+
+    @Test
+    void rejectsDirectoriesOutsideTheRoot() throws IOException {
+        assertThrows(IllegalArgumentException.class, () -> service.resolveImportDirectory(".."));
+        assertThrows(IllegalArgumentException.class, () -> service.resolveImportDirectory("../private"));
+        assertThrows(IllegalArgumentException.class, () -> service.resolveImportDirectory("/etc"));
+        assertThrows(IllegalArgumentException.class, () -> service.resolveImportDirectory("missing"));
+
+        Files.createSymbolicLink(root.resolve("link"), temp.resolve("private"));
+        assertThrows(IllegalArgumentException.class, () -> service.resolveImportDirectory("link"));
+    }
+}
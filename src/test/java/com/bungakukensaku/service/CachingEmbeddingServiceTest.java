@@ -0,0 +1,95 @@
+package com.bungakukensaku.service;
+
+import com.bungakukensaku.model.EmbeddingCacheEntry;
+import com.bungakukensaku.repository.EmbeddingCacheRepository;
+import com.bungakukensaku.util.TextFingerprint;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CachingEmbeddingServiceTest {
+
+    private static final String MODEL = "text-embedding-3-small";
+
+    private OpenAIEmbeddingService delegate;
+    private EmbeddingCacheRepository repository;
+    private JdbcTemplate jdbcTemplate;
+    private CachingEmbeddingService service;
+
+    @BeforeEach
+    void setUp() {
+        delegate = mock(OpenAIEmbeddingService.class);
+        repository = mock(EmbeddingCacheRepository.class);
+        jdbcTemplate = mock(JdbcTemplate.class);
+        when(delegate.getModelName()).thenReturn(MODEL);
+
+        service = new CachingEmbeddingService();
+        ReflectionTestUtils.setField(service, "delegate", delegate);
+        ReflectionTestUtils.setField(service, "embeddingCacheRepository", repository);
+        ReflectionTestUtils.setField(service, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(service, "maxEntries", 10);
+        ReflectionTestUtils.setField(service, "ttlMinutes", 60L);
+        ReflectionTestUtils.setField(service, "maxTextLength", 512);
+        ReflectionTestUtils.setField(service, "persist", true);
+        service.init();
+    }
+
+    @Test
+    void looksUpQueriesAndChunksUnderTheirOwnKind() {
+        String hash = TextFingerprint.sha256(TextFingerprint.normalize("雪国"));
+        float[] stored = { 1f, 2f };
+        when(repository.findByContentHashAndModelAndKind(hash, MODEL, EmbeddingCacheEntry.QUERY))
+            .thenReturn(Optional.of(new EmbeddingCacheEntry(hash, MODEL, EmbeddingCacheEntry.QUERY, stored)));
+
+        assertSame(stored, service.generateEmbedding("雪国"));
+        verify(delegate, never()).generateEmbeddings(any());
+
+        service.findStoredEmbeddings(Set.of(hash));
+        verify(repository).findByModelAndKindAndContentHashIn(MODEL, EmbeddingCacheEntry.CHUNK, Set.of(hash));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void storesChunkEmbeddingsInOneBatch() {
+        Map<String, float[]> embeddings = Map.of("a", new float[] { 1f }, "b", new float[] { 2f });
+        service.storeEmbeddings(embeddings);
+
+        ArgumentCaptor<Collection<Map.Entry<String, float[]>>> rows = ArgumentCaptor.forClass(Collection.class);
+        verify(jdbcTemplate, times(1)).batchUpdate(anyString(), rows.capture(), eq(2),
+            any(ParameterizedPreparedStatementSetter.class));
+        assertEquals(2, rows.getValue().size());
+        for (Map.Entry<String, float[]> row : rows.getValue()) {
+            assertArrayEquals(embeddings.get(row.getKey()), row.getValue());
+        }
+        // No per-row existence check; conflicts are skipped by the insert
+        verify(repository, never()).findByModelAndKindAndContentHashIn(anyString(), anyString(), anyCollection());
+        verify(repository, never()).save(any());
+
+        service.storeEmbeddings(Map.of());
+        verify(jdbcTemplate, times(1)).batchUpdate(anyString(), any(Collection.class), anyInt(),
+            any(ParameterizedPreparedStatementSetter.class));
+    }
+}
@@ -0,0 +1,155 @@
+package com.bungakukensaku.service;
+
+import com.bungakukensaku.model.Book;
+import com.bungakukensaku.model.Chunk;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChunkerTest {
+
+    private static final Pattern START_POSITION = Pattern.compile("\"start_position\": (\\d+)");
+
+    private final Book book = new Book();
+    private final List<Chunk> chunks = new ArrayList<>();
+
+    /**
+     * Estimate mode: 3 characters per token, so 10 tokens are 30 characters
+     * and 2 tokens of overlap are 6 characters
+     */
+    private Chunker chunker(int maxTokens, int overlapTokens, int maxChars) {
+        Tokenizer tokenizer = new Tokenizer();
+        ReflectionTestUtils.setField(tokenizer, "vocabulary", new ClassPathResource("tokenizer/missing.tiktoken"));
+        tokenizer.init();
+        return new Chunker(book, tokenizer, maxTokens, overlapTokens, maxChars, chunks::add);
+    }
+
+    private static String digits(int length) {
+        StringBuilder text = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            text.append((char) ('0' + i % 10));
+        }
+        return text.toString();
+    }
+
+    private static int startPosition(Chunk chunk) {
+        Matcher matcher = START_POSITION.matcher(chunk.getMetadata());
+        assertTrue(matcher.find(), chunk.getMetadata());
+        return Integer.parseInt(matcher.group(1));
+    }
+
+    @Test
+    void overlapsConsecutiveChunks() {
+        String text = digits(100);
+        assertEquals(4, chunker(10, 2, 60).append(text).finish());
+
+        int[] starts = { 0, 24, 48, 72 };
+        int[] ends = { 30, 54, 78, 100 };
+        for (int i = 0; i < chunks.size(); i++) {
+            Chunk chunk = chunks.get(i);
+            assertEquals(starts[i], startPosition(chunk));
+            assertEquals(text.substring(starts[i], ends[i]), chunk.getContent());
+            assertTrue(chunk.getMetadata().contains("\"chunk_number\": " + i));
+            assertTrue(chunk.getMetadata().contains("\"end_position\": " + ends[i]));
+            assertNull(chunk.getChapterNumber());
+        }
+    }
+
+    @Test
+    void streamsTheSameChunksFromAReader() throws IOException {
+        String text = digits(1000);
+        List<String> expected = new ArrayList<>();
+        chunker(10, 2, 60).append(text).finish();
+        chunks.forEach(chunk -> expected.add(chunk.getContent()));
+
+        chunks.clear();
+        chunker(10, 2, 60).append(new StringReader(text)).finish();
+        assertEquals(expected, chunks.stream().map(Chunk::getContent).toList());
+    }
+
+    @Test
+    void endsAtASentenceInTheLastFifth() {
+        StringBuilder text = new StringBuilder(digits(100));
+        text.setCharAt(26, '。');
+        chunker(10, 2, 60).append(text).finish();
+
+        assertEquals(text.substring(0, 27), chunks.get(0).getContent());
+        assertEquals(21, startPosition(chunks.get(1)));
+    }
+
+    @Test
+    void ignoresASentenceEarlierInTheWindow() {
+        StringBuilder text = new StringBuilder(digits(100));
+        text.setCharAt(20, '。');
+        chunker(10, 2, 60).append(text).finish();
+
+        assertEquals(text.substring(0, 30), chunks.get(0).getContent());
+    }
+
+    @Test
+    void neverSplitsSurrogatePairs() {
+        String text = "a" + "𠮷".repeat(60);
+        // Windows cut by the token budget, then by the character limit
+        for (int[] size : new int[][] { { 10, 2, 60 }, { 100, 2, 5 } }) {
+            chunks.clear();
+            chunker(size[0], size[1], size[2]).append(text).finish();
+
+            assertFalse(chunks.isEmpty());
+            for (Chunk chunk : chunks) {
+                String content = chunk.getContent();
+                assertFalse(Character.isLowSurrogate(content.charAt(0)), content);
+                assertFalse(Character.isHighSurrogate(content.charAt(content.length() - 1)), content);
+            }
+            assertTrue(text.endsWith(chunks.get(chunks.size() - 1).getContent()));
+        }
+    }
+
+    @Test
+    void restartsPositionsAtEachChapter() {
+        Chunker chunker = chunker(10, 2, 60);
+        chunker.startChapter("一", 1, "ch1", 40).append(digits(40));
+        chunker.startChapter("二", 2, null, -1).append(digits(10));
+        assertEquals(3, chunker.finish());
+
+        Chunk first = chunks.get(0);
+        assertEquals("一", first.getChapter());
+        assertEquals(1, first.getChapterNumber());
+        assertEquals(0, first.getChapterPosition());
+        assertEquals(0, first.getChapterPercentage());
+        assertTrue(first.getMetadata().contains("\"anchor_id\": \"ch1\""));
+
+        Chunk last = chunks.get(1);
+        assertEquals(24, last.getChapterPosition());
+        assertEquals(60, last.getChapterPercentage());
+        assertEquals(digits(40).substring(24), last.getContent());
+        assertTrue(last.getMetadata().contains("\"chunk_number\": 1"));
+
+        Chunk second = chunks.get(2);
+        assertEquals(2, second.getChapterNumber());
+        assertEquals(0, second.getChapterPosition());
+        assertNull(second.getChapterPercentage());
+        assertTrue(second.getMetadata().contains("\"chunk_number\": 0"));
+        assertTrue(second.getMetadata().contains("\"percentage\": null"));
+        assertEquals(digits(10), second.getContent());
+    }
+
+    @Test
+    void emitsNothingForAnEmptySection() {
+        Chunker chunker = chunker(10, 2, 60);
+        chunker.startText();
+        assertEquals(0, chunker.finish());
+        assertTrue(chunks.isEmpty());
+    }
+}
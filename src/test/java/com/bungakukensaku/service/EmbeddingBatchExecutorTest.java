@@ -0,0 +1,67 @@
+package com.bungakukensaku.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class EmbeddingBatchExecutorTest {
+
+    private static List<int[]> pack(List<String> texts, int maxTokens, int maxInputs) {
+        // One token per character keeps the budgets easy to read
+        List<int[]> ranges = EmbeddingBatchExecutor.pack(texts, String::length, maxTokens, maxInputs);
+        int from = 0;
+        for (int[] range : ranges) {
+            assertEquals(from, range[0], "ranges must be contiguous");
+            from = range[1];
+        }
+        assertEquals(texts.size(), from, "ranges must cover every text");
+        return ranges;
+    }
+
+    @Test
+    void splitsWhenTheTokenBudgetWouldBeExceeded() {
+        List<int[]> ranges = pack(List.of("aaaa", "bbbb", "cc", "dddd", "e"), 10, 100);
+        assertEquals(2, ranges.size());
+        assertArrayEquals(new int[] { 0, 3 }, ranges.get(0));
+        assertArrayEquals(new int[] { 3, 5 }, ranges.get(1));
+    }
+
+    @Test
+    void splitsAtTheInputLimit() {
+        List<int[]> ranges = pack(List.of("a", "b", "c", "d", "e"), 100, 2);
+        assertEquals(3, ranges.size());
+        assertArrayEquals(new int[] { 0, 2 }, ranges.get(0));
+        assertArrayEquals(new int[] { 2, 4 }, ranges.get(1));
+        assertArrayEquals(new int[] { 4, 5 }, ranges.get(2));
+    }
+
+    @Test
+    void sendsAnOversizedTextAlone() {
+        List<int[]> ranges = pack(List.of("aa", "b".repeat(50), "cc"), 10, 100);
+        assertEquals(3, ranges.size());
+        assertArrayEquals(new int[] { 0, 1 }, ranges.get(0));
+        assertArrayEquals(new int[] { 1, 2 }, ranges.get(1));
+        assertArrayEquals(new int[] { 2, 3 }, ranges.get(2));
+    }
+
+    @Test
+    void fillsTheBudgetExactly() {
+        List<int[]> ranges = pack(List.of("aaaaa", "bbbbb", "c"), 10, 100);
+        assertEquals(2, ranges.size());
+        assertArrayEquals(new int[] { 0, 2 }, ranges.get(0));
+    }
+
+    @Test
+    void estimatesAsciiAndOtherTextSeparately() {
+        assertEquals(1, EmbeddingBatchExecutor.estimateTokens(""));
+        assertEquals(2, EmbeddingBatchExecutor.estimateTokens("abcd"));
+        assertEquals(3, EmbeddingBatchExecutor.estimateTokens("abcde"));
+        assertEquals(4, EmbeddingBatchExecutor.estimateTokens("あいう"));
+        // A surrogate pair is one character
+        assertEquals(3, EmbeddingBatchExecutor.estimateTokens("𠮷𠮷"));
+        assertEquals(4, EmbeddingBatchExecutor.estimateTokens("ab文字"));
+    }
+}
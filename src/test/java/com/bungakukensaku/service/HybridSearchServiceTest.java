@@ -0,0 +1,92 @@
+package com.bungakukensaku.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class HybridSearchServiceTest {
+
+    private final float[] queryVector = new float[] { 1f, 0f };
+    private final Map<String, Object> filter = Map.of("bookId", List.of(1L));
+
+    private VectorStore vectorStore;
+    private LexicalIndexService lexicalIndexService;
+    private HybridSearchService service;
+
+    @BeforeEach
+    void setUp() {
+        vectorStore = mock(VectorStore.class);
+        lexicalIndexService = mock(LexicalIndexService.class);
+        SearchMetrics searchMetrics = mock(SearchMetrics.class);
+        when(searchMetrics.time(anyString(), any())).thenAnswer(invocation -> ((Supplier<?>) invocation.getArgument(1)).get());
+
+        service = new HybridSearchService();
+        ReflectionTestUtils.setField(service, "vectorStore", vectorStore);
+        ReflectionTestUtils.setField(service, "lexicalIndexService", lexicalIndexService);
+        ReflectionTestUtils.setField(service, "searchMetrics", searchMetrics);
+        ReflectionTestUtils.setField(service, "rrfK", 60);
+        ReflectionTestUtils.setField(service, "candidates", 20);
+    }
+
+    private static VectorStore.SearchResult vector(long chunkId, float score) {
+        return new VectorStore.SearchResult("chunk-" + chunkId, score, Map.of("chunkId", chunkId));
+    }
+
+    private static List<String> ids(List<VectorStore.SearchResult> results) {
+        return results.stream().map(VectorStore.SearchResult::getId).toList();
+    }
+
+    @Test
+    void returnsVectorResultsWithoutLexicalMatches() {
+        when(vectorStore.query(queryVector, 20, filter))
+            .thenReturn(List.of(vector(1, 0.9f), vector(2, 0.8f), vector(3, 0.7f)));
+        when(lexicalIndexService.search("雪国", 20, filter)).thenReturn(List.of());
+
+        assertEquals(List.of("chunk-1", "chunk-2"), ids(service.search("雪国", queryVector, 2, filter)));
+    }
+
+    @Test
+    void fusesByReciprocalRank() {
+        VectorStore.SearchResult third = vector(3, 0.7f);
+        when(vectorStore.query(queryVector, 20, filter))
+            .thenReturn(List.of(vector(1, 0.9f), vector(2, 0.8f), third));
+        when(lexicalIndexService.search("雪国", 20, filter)).thenReturn(List.of(
+            new LexicalIndexService.Match(3, 1, 8f),
+            new LexicalIndexService.Match(4, 1, 2f)));
+
+        // chunk-3: 1/63 + 1/61; chunk-1: 1/61; chunk-2 and chunk-4: 1/62, vector rank first
+        List<VectorStore.SearchResult> results = service.search("雪国", queryVector, 4, filter);
+        assertEquals(List.of("chunk-3", "chunk-1", "chunk-2", "chunk-4"), ids(results));
+
+        // Vector matches keep their similarity; lexical-only ones are scored against the best BM25 match
+        assertSame(third, results.get(0));
+        VectorStore.SearchResult lexicalOnly = results.get(3);
+        assertEquals(0.25f, lexicalOnly.getScore());
+        assertEquals(4L, lexicalOnly.getMetadata().get("chunkId"));
+        assertEquals(1L, lexicalOnly.getMetadata().get("bookId"));
+
+        assertEquals(List.of("chunk-3", "chunk-1"), ids(service.search("雪国", queryVector, 2, filter)));
+    }
+
+    @Test
+    void asksBothRetrieversForAtLeastTopK() {
+        when(vectorStore.query(queryVector, 30, null)).thenReturn(List.of(vector(1, 0.9f)));
+        when(lexicalIndexService.search("雪国", 30, null)).thenReturn(List.of(new LexicalIndexService.Match(2, 1, 1f)));
+
+        assertEquals(List.of("chunk-1", "chunk-2"), ids(service.search("雪国", queryVector, 30, null)));
+        verify(vectorStore).query(queryVector, 30, null);
+        verify(lexicalIndexService).search("雪国", 30, null);
+    }
+}
@@ -0,0 +1,82 @@
+package com.bungakukensaku.service;
+
+import com.bungakukensaku.model.Book;
+import com.bungakukensaku.model.Chunk;
+import com.bungakukensaku.repository.ChunkRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class InMemoryVectorStoreTest {
+
+    private final float[] east = { 1f, 0f };
+    private final float[] north = { 0f, 1f };
+    private InMemoryVectorStore store;
+
+    @BeforeEach
+    void setUp() {
+        ChunkRepository chunkRepository = mock(ChunkRepository.class);
+        when(chunkRepository.findEmbeddingPage(any(), any())).thenReturn(List.of());
+
+        store = new InMemoryVectorStore();
+        ReflectionTestUtils.setField(store, "chunkRepository", chunkRepository);
+        ReflectionTestUtils.setField(store, "dimension", 2);
+        ReflectionTestUtils.setField(store, "configuredThreads", 1);
+        store.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        store.shutdown();
+    }
+
+    private static Chunk chunk(long id, long bookId, float[] embedding) {
+        Book book = new Book();
+        book.setId(bookId);
+        Chunk chunk = new Chunk();
+        chunk.setId(id);
+        chunk.setBook(book);
+        chunk.setEmbedding(embedding);
+        return chunk;
+    }
+
+    private List<String> ids(float[] query) {
+        return store.query(query, 10, null).stream().map(VectorStore.SearchResult::getId).toList();
+    }
+
+    @Test
+    void replacesChunksThatAreAlreadyIndexed() {
+        store.addVectors(List.of(1L, 2L, 3L), 1L, List.of(east, east, north));
+        assertEquals(3, store.size());
+
+        // A retried batch re-embeds chunk 2, and a reprocess adds chunk 1 to another book
+        store.addVectors(List.of(2L), 1L, List.of(north));
+        store.addChunks(List.of(chunk(1L, 2L, north), chunk(4L, 2L, east)));
+        assertEquals(4, store.size());
+
+        assertEquals(List.of("chunk-1", "chunk-2", "chunk-3", "chunk-4"), ids(north).stream().sorted().toList());
+        // Only chunk 4 still points east; chunk 1 now belongs to book 2
+        assertEquals("chunk-4", ids(east).get(0));
+        assertEquals(List.of(1L, 4L), store.query(north, 10, Map.of("bookId", List.of(2L))).stream()
+            .map(result -> (Long) result.getMetadata().get("chunkId")).sorted().toList());
+    }
+
+    @Test
+    void keepsTheLastCopyWithinABatch() {
+        store.addVectors(List.of(1L, 1L), 1L, List.of(east, north));
+        assertEquals(1, store.size());
+        assertEquals(1f, store.query(north, 10, null).get(0).getScore(), 1e-6f);
+
+        store.removeChunks(List.of(1L));
+        assertEquals(0, store.size());
+    }
+}
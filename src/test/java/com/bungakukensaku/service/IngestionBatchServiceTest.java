@@ -0,0 +1,162 @@
+package com.bungakukensaku.service;
+
+import com.bungakukensaku.model.Book;
+import com.bungakukensaku.model.Chunk;
+import com.bungakukensaku.model.PendingVectorDelete;
+import com.bungakukensaku.repository.BookRepository;
+import com.bungakukensaku.repository.ChunkRepository;
+import com.bungakukensaku.repository.PendingVectorDeleteRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class IngestionBatchServiceTest {
+
+    private static final long BOOK_ID = 7L;
+    private static final String SOURCE = "/tmp/book.txt";
+
+    private final Book book = new Book();
+    private BookRepository bookRepository;
+    private ChunkRepository chunkRepository;
+    private PendingVectorDeleteRepository pendingVectorDeleteRepository;
+    private DocumentProcessingService documentProcessingService;
+    private IngestionBatchService service;
+
+    @BeforeEach
+    void setUp() {
+        book.setId(BOOK_ID);
+        book.setTitle("雪国");
+        bookRepository = mock(BookRepository.class);
+        chunkRepository = mock(ChunkRepository.class);
+        pendingVectorDeleteRepository = mock(PendingVectorDeleteRepository.class);
+        documentProcessingService = mock(DocumentProcessingService.class);
+        when(bookRepository.findById(BOOK_ID)).thenReturn(Optional.of(book));
+        when(chunkRepository.saveAll(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        service = new IngestionBatchService(mock(PlatformTransactionManager.class));
+        ReflectionTestUtils.setField(service, "bookRepository", bookRepository);
+        ReflectionTestUtils.setField(service, "chunkRepository", chunkRepository);
+        ReflectionTestUtils.setField(service, "pendingVectorDeleteRepository", pendingVectorDeleteRepository);
+        ReflectionTestUtils.setField(service, "documentProcessingService", documentProcessingService);
+    }
+
+    private Chunk chunk(String content, int index, int page) {
+        Chunk chunk = new Chunk();
+        chunk.setBook(book);
+        chunk.setContent(content);
+        chunk.setChunkIndex(index);
+        chunk.setPageNum(page);
+        chunk.setMetadata("{\"chunk_number\": " + index + "}");
+        return chunk;
+    }
+
+    /**
+     * A row of ChunkRepository.findLayoutByBookId for an already saved chunk
+     */
+    private static Object[] row(long id, Chunk chunk, boolean uploaded) {
+        return new Object[] { id, chunk.getContentHash(), chunk.getContent(), chunk.getChapter(),
+            chunk.getChapterNumber(), chunk.getChapterPosition(), chunk.getChapterPercentage(), chunk.getPageNum(),
+            chunk.getMetadata(), chunk.getChunkIndex(), uploaded };
+    }
+
+    @Test
+    void keepsUnchangedChunksAndReplacesTheRest() throws Exception {
+        List<Chunk> newChunks = List.of(
+            chunk("A", 0, 1), chunk("X", 1, 1), chunk("B", 2, 2), chunk("E", 3, 1), chunk("F", 4, 1));
+        when(documentProcessingService.processDocument(SOURCE, book)).thenReturn(newChunks);
+
+        Object[] legacy = row(16, chunk("F", 4, 1), false);
+        legacy[1] = null;   // Rows saved before content hashes fall back to hashing the content
+        List<Object[]> oldRows = new ArrayList<>(List.of(
+            row(10, chunk("A", 0, 1), true),
+            row(11, chunk("B", 1, 1), true),
+            row(12, chunk("C", 2, 1), true),
+            row(13, chunk("D", 3, 1), false),
+            row(14, chunk("E", 3, 1), false),
+            row(15, chunk("E", 5, 1), true),
+            legacy));
+        when(chunkRepository.findLayoutByBookId(BOOK_ID)).thenReturn(oldRows);
+
+        IngestionBatchService.ReprocessResult result = service.reprocessBook(BOOK_ID, SOURCE);
+
+        // Kept chunks take over the old IDs; a duplicated passage matches the first old copy
+        assertEquals(10L, newChunks.get(0).getId());
+        assertNull(newChunks.get(1).getId());
+        assertEquals(11L, newChunks.get(2).getId());
+        assertEquals(14L, newChunks.get(3).getId());
+        assertEquals(16L, newChunks.get(4).getId());
+
+        assertEquals(7, result.getOldChunkCount());
+        assertEquals(5, result.getNewChunkCount());
+        assertEquals(4, result.getKeptChunkCount());
+        assertEquals(List.of(newChunks.get(1)), result.getInsertedChunks());
+        assertEquals(Set.of(12L, 13L, 15L), new HashSet<>(result.getRemovedChunkIds()));
+
+        // Only the moved chunk is rewritten, and its vector metadata (page) is stale;
+        // the legacy row just gets its hash filled in
+        verify(chunkRepository).updateLayout(eq(11L), eq(newChunks.get(2).getContentHash()), any(), any(), any(), any(),
+            eq(2), eq(newChunks.get(2).getMetadata()), eq(2));
+        verify(chunkRepository).updateLayout(eq(16L), eq(newChunks.get(4).getContentHash()), any(), any(), any(), any(),
+            eq(1), eq(newChunks.get(4).getMetadata()), eq(4));
+        verify(chunkRepository, times(2)).updateLayout(anyLong(), anyString(), any(), any(), any(), any(), anyInt(),
+            anyString(), anyInt());
+        verify(chunkRepository).markNotUploadedToPinecone(List.of(11L));
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Collection<Long>> deleted = ArgumentCaptor.forClass(Collection.class);
+        verify(chunkRepository).deleteByIdIn(deleted.capture());
+        assertEquals(Set.of(12L, 13L, 15L), new HashSet<>(deleted.getValue()));
+        verify(chunkRepository).saveAll(List.of(newChunks.get(1)));
+        verify(documentProcessingService).regenerateFullTextHTML(book, newChunks);
+
+        // Vectors are queued for deletion only for removed chunks that were uploaded
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<PendingVectorDelete>> pending = ArgumentCaptor.forClass(List.class);
+        verify(pendingVectorDeleteRepository).saveAll(pending.capture());
+        assertEquals(Set.of("chunk-12", "chunk-15"),
+            new HashSet<>(pending.getValue().stream().map(PendingVectorDelete::getVectorId).toList()));
+        assertEquals(2, result.getStaleVectors());
+    }
+
+    @Test
+    void changesNothingWhenTheTextIsUnchanged() throws Exception {
+        List<Chunk> newChunks = List.of(chunk("A", 0, 1), chunk("B", 1, 1));
+        when(documentProcessingService.processDocument(SOURCE, book)).thenReturn(newChunks);
+        List<Object[]> oldRows = new ArrayList<>(List.of(
+            row(10, chunk("A", 0, 1), true), row(11, chunk("B", 1, 1), true)));
+        when(chunkRepository.findLayoutByBookId(BOOK_ID)).thenReturn(oldRows);
+
+        IngestionBatchService.ReprocessResult result = service.reprocessBook(BOOK_ID, SOURCE);
+
+        assertEquals(2, result.getKeptChunkCount());
+        assertEquals(List.of(), result.getRemovedChunkIds());
+        assertEquals(0, result.getStaleVectors());
+        verify(chunkRepository, never()).updateLayout(any(), any(), any(), any(), any(), any(), any(), any(), any());
+        verify(chunkRepository, never()).deleteByIdIn(any());
+        verify(chunkRepository, never()).markNotUploadedToPinecone(any());
+        verify(chunkRepository).saveAll(List.of());
+    }
+}
@@ -0,0 +1,183 @@
+package com.bungakukensaku.service;
+
+import com.bungakukensaku.model.Book;
+import com.bungakukensaku.model.Chunk;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LexicalIndexServiceTest {
+
+    /**
+     * An enabled index that is never rebuilt from the repository
+     */
+    private static LexicalIndexService index(double compactTombstoneRatio) {
+        LexicalIndexService service = new LexicalIndexService();
+        ReflectionTestUtils.setField(service, "enabled", true);
+        ReflectionTestUtils.setField(service, "maxDfRatio", 0.5);
+        ReflectionTestUtils.setField(service, "compactTombstoneRatio", compactTombstoneRatio);
+        return service;
+    }
+
+    private static Chunk chunk(long id, long bookId, String content) {
+        Book book = new Book();
+        book.setId(bookId);
+        Chunk chunk = new Chunk();
+        chunk.setId(id);
+        chunk.setBook(book);
+        chunk.setContent(content);
+        return chunk;
+    }
+
+    /**
+     * Two matching chunks far apart (posting gaps over one varint byte) among
+     * chunks that share no bigram with the query
+     */
+    private static List<Chunk> corpus() {
+        List<Chunk> chunks = new ArrayList<>();
+        chunks.add(chunk(1, 1, "東京都の夜"));
+        for (long id = 2; id < 400; id++) {
+            chunks.add(chunk(id, id % 3 + 1, "雪国" + id));
+        }
+        // A term frequency over one varint byte
+        chunks.add(chunk(400, 2, "東京".repeat(200)));
+        chunks.add(chunk(401, 3, "京都の寺"));
+        return chunks;
+    }
+
+    private static List<Long> chunkIds(List<LexicalIndexService.Match> matches) {
+        return matches.stream().map(LexicalIndexService.Match::getChunkId).toList();
+    }
+
+    @Test
+    void countsCharacterBigrams() {
+        Map<Long, Integer> terms = LexicalIndexService.termFrequencies("東京、東京都");
+        assertEquals(2, terms.get(((long) '東' << 32) | '京'));
+        assertEquals(1, terms.get(((long) '京' << 32) | '都'));
+        // Punctuation breaks the run: no 京東 bigram
+        assertEquals(2, terms.size());
+
+        // Ruby keeps the base text; NFKC folds full-width letters
+        assertEquals(LexicalIndexService.termFrequencies("漢字"),
+            LexicalIndexService.termFrequencies("{漢字|かんじ}"));
+        assertEquals(LexicalIndexService.termFrequencies("ab"), LexicalIndexService.termFrequencies("ＡＢ"));
+    }
+
+    @Test
+    void ranksByBm25() {
+        LexicalIndexService service = index(1.0);
+        service.addChunks(corpus());
+
+        // Chunk 1 has both bigrams; BM25 saturates chunk 400's 200 repetitions of one
+        List<LexicalIndexService.Match> matches = service.search("東京都", 10, null);
+        assertEquals(List.of(1L, 400L, 401L), chunkIds(matches));
+        assertTrue(matches.get(0).getScore() > matches.get(1).getScore());
+        assertEquals(2L, matches.get(1).getBookId());
+
+        // Only the 東京 bigram: the chunk that repeats it 200 times wins
+        assertEquals(List.of(400L, 1L), chunkIds(service.search("東京", 10, null)));
+        assertEquals(List.of(400L), chunkIds(service.search("東京", 1, null)));
+        assertTrue(service.search("大阪", 10, null).isEmpty());
+    }
+
+    @Test
+    void returnsTheSameScoresOnRepeatedSearches() {
+        LexicalIndexService service = index(1.0);
+        service.addChunks(corpus());
+
+        List<LexicalIndexService.Match> first = service.search("東京都", 10, null);
+        List<LexicalIndexService.Match> second = service.search("東京都", 10, null);
+        assertEquals(first.size(), second.size());
+        for (int i = 0; i < first.size(); i++) {
+            assertEquals(first.get(i).getChunkId(), second.get(i).getChunkId());
+            assertEquals(first.get(i).getScore(), second.get(i).getScore());
+        }
+    }
+
+    @Test
+    void filtersByBook() {
+        LexicalIndexService service = index(1.0);
+        service.addChunks(corpus());
+
+        assertEquals(List.of(400L), chunkIds(service.search("東京都", 10, Map.of("bookId", List.of(2L)))));
+        assertEquals(List.of(1L, 401L),
+            chunkIds(service.search("東京都", 10, Map.of("bookId", Map.of("$in", List.of(3L, 1L))))));
+        assertEquals(List.of(401L), chunkIds(service.search("東京都", 10, Map.of("bookId", 3L))));
+        assertTrue(service.search("東京都", 10, Map.of("bookId", List.of())).isEmpty());
+    }
+
+    @Test
+    void compactionKeepsResults() {
+        List<Chunk> corpus = corpus();
+        List<Long> removed = new ArrayList<>();
+        for (long id = 2; id < 300; id++) {
+            removed.add(id);
+        }
+
+        LexicalIndexService tombstoned = index(1.0);
+        tombstoned.addChunks(corpus);
+        tombstoned.removeChunks(removed);
+        assertEquals(removed.size(), tombstoned.getStats().get("tombstones"));
+
+        LexicalIndexService compacted = index(0.25);
+        compacted.addChunks(corpus);
+        compacted.removeChunks(removed);
+        Map<String, Object> stats = compacted.getStats();
+        assertEquals(0, stats.get("tombstones"));
+        assertEquals(corpus.size() - removed.size(), stats.get("documents"));
+        assertTrue((Long) stats.get("postingBytes") < (Long) tombstoned.getStats().get("postingBytes"));
+
+        for (String query : List.of("東京都", "東京", "雪国")) {
+            List<LexicalIndexService.Match> expected = tombstoned.search(query, 500, null);
+            List<LexicalIndexService.Match> actual = compacted.search(query, 500, null);
+            assertEquals(chunkIds(expected), chunkIds(actual), query);
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i).getScore(), actual.get(i).getScore(), 1e-6f);
+            }
+        }
+
+        // The compacted index still accepts and replaces chunks
+        compacted.addChunks(List.of(chunk(1, 1, "大阪")));
+        assertEquals(List.of(1L), chunkIds(compacted.search("大阪", 10, null)));
+        assertEquals(List.of(400L), chunkIds(compacted.search("東京", 10, null)));
+    }
+
+    @Test
+    void tombstonesLeaveDocumentFrequencies() {
+        // Replaced and removed chunks score as if they had never been indexed
+        List<Chunk> corpus = corpus();
+        LexicalIndexService updated = index(1.0);
+        updated.addChunks(corpus);
+        updated.addChunks(List.of(chunk(1, 1, "大阪の夜"), chunk(401, 3, "京都の寺")));
+        updated.removeChunks(List.of(400L, 2L));
+
+        List<Chunk> expectedCorpus = new ArrayList<>(corpus.subList(2, corpus.size() - 2));
+        expectedCorpus.add(chunk(1, 1, "大阪の夜"));
+        expectedCorpus.add(chunk(401, 3, "京都の寺"));
+        LexicalIndexService fresh = index(1.0);
+        fresh.addChunks(expectedCorpus);
+
+        for (String query : List.of("東京都", "大阪", "雪国")) {
+            List<LexicalIndexService.Match> expected = fresh.search(query, 500, null);
+            List<LexicalIndexService.Match> actual = updated.search(query, 500, null);
+            assertEquals(chunkIds(expected).stream().sorted().toList(), chunkIds(actual).stream().sorted().toList(), query);
+            assertEquals(expected.get(0).getScore(), actual.get(0).getScore(), 1e-6f, query);
+        }
+    }
+
+    @Test
+    void removesBooks() {
+        LexicalIndexService service = index(0.25);
+        service.addChunks(corpus());
+        service.removeBook(2L);
+
+        assertEquals(List.of(1L, 401L), chunkIds(service.search("東京都", 10, null)));
+        assertEquals(0, service.getStats().get("tombstones"));
+    }
+}
@@ -0,0 +1,105 @@
+package com.bungakukensaku.service;
+
+import com.bungakukensaku.dto.SearchResultItem;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SearchEnrichmentServiceTest {
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    private AISummaryService aiSummaryService;
+    private SearchMetrics searchMetrics;
+    private SearchEnrichmentService service;
+
+    @BeforeEach
+    void setUp() {
+        aiSummaryService = mock(AISummaryService.class);
+        searchMetrics = mock(SearchMetrics.class);
+        when(searchMetrics.time(anyString(), any())).thenAnswer(invocation -> ((Supplier<?>) invocation.getArgument(1)).get());
+        // Every call blocks until the test releases it
+        when(aiSummaryService.extractRelevantExcerpt(any(), anyString(), anyString())).thenAnswer(invocation -> {
+            release.await();
+            return "excerpt";
+        });
+        when(aiSummaryService.generateSummary(any(), anyString())).thenAnswer(invocation -> {
+            release.await();
+            return new AISummaryService.SearchResultSummary("context", "relevance");
+        });
+
+        service = new SearchEnrichmentService();
+        ReflectionTestUtils.setField(service, "aiSummaryService", aiSummaryService);
+        ReflectionTestUtils.setField(service, "searchMetrics", searchMetrics);
+        ReflectionTestUtils.setField(service, "poolSize", 1);
+        ReflectionTestUtils.setField(service, "queueCapacity", 1);
+        ReflectionTestUtils.setField(service, "deadlineMs", 100L);
+        ReflectionTestUtils.setField(service, "callTimeoutMs", 5000L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        service.shutdown();
+    }
+
+    private static SearchResultItem item(long chunkId) {
+        SearchResultItem item = new SearchResultItem();
+        item.setChunkId(chunkId);
+        return item;
+    }
+
+    @Test
+    void reportsSaturatedCallsAsPending() {
+        service.init();
+        // One running and one queued call fill the pool; the second result's calls are rejected
+        List<SearchEnrichmentService.PendingEnrichment> pending = service.submit(
+            List.of(item(1), item(2)), List.of("text", "text"), "query");
+
+        SearchEnrichmentService.Enrichment saturated = pending.get(1).snapshot();
+        assertFalse(pending.get(1).isRunning());
+        assertTrue(saturated.isExcerptPending());
+        assertTrue(saturated.isSummaryPending());
+        assertNull(saturated.getExcerpt());
+        verify(searchMetrics).fallback(SearchMetrics.EXCERPT, "saturated");
+        verify(searchMetrics).fallback(SearchMetrics.SUMMARY, "saturated");
+        verify(searchMetrics, never()).error(anyString());
+
+        assertTrue(pending.get(0).isRunning());
+        pending.get(0).cancel();
+        assertFalse(pending.get(0).isRunning());
+        verify(searchMetrics, never()).error(anyString());
+    }
+
+    @Test
+    void rendersWhatFinishedByTheDeadline() {
+        service.init();
+        List<SearchEnrichmentService.Enrichment> enrichments = service.enrich(
+            List.of(item(1)), List.of("text"), "query");
+
+        assertTrue(enrichments.get(0).isPending());
+        verify(searchMetrics).fallback("enrichment", "deadline");
+    }
+
+    @Test
+    void keepsTheCallTimeoutLongerThanTheDeadline() {
+        ReflectionTestUtils.setField(service, "callTimeoutMs", 100L);
+        service.init();
+        assertEquals(150L, ReflectionTestUtils.getField(service, "callTimeoutMs"));
+    }
+}
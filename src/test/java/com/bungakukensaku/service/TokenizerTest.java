@@ -0,0 +1,119 @@
+package com.bungakukensaku.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class TokenizerTest {
+
+    /**
+     * Every single byte at rank = byte value, plus a few merges
+     */
+    private static Tokenizer syntheticTokenizer() {
+        ByteArrayOutputStream vocabulary = new ByteArrayOutputStream();
+        for (int b = 0; b < 256; b++) {
+            addToken(vocabulary, new byte[] { (byte) b }, b);
+        }
+        addToken(vocabulary, "ab".getBytes(StandardCharsets.UTF_8), 256);
+        addToken(vocabulary, "cd".getBytes(StandardCharsets.UTF_8), 257);
+        addToken(vocabulary, "abcd".getBytes(StandardCharsets.UTF_8), 258);
+        addToken(vocabulary, "aa".getBytes(StandardCharsets.UTF_8), 259);
+        // あ is E3 81 82: reachable only through the E3 81 merge
+        addToken(vocabulary, new byte[] { (byte) 0xE3, (byte) 0x81 }, 260);
+        addToken(vocabulary, "あ".getBytes(StandardCharsets.UTF_8), 261);
+        return tokenizer(new ByteArrayResource(vocabulary.toByteArray()));
+    }
+
+    private static void addToken(ByteArrayOutputStream vocabulary, byte[] token, int rank) {
+        String line = Base64.getEncoder().encodeToString(token) + " " + rank + "\n";
+        vocabulary.writeBytes(line.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static Tokenizer tokenizer(Resource vocabulary) {
+        Tokenizer tokenizer = new Tokenizer();
+        ReflectionTestUtils.setField(tokenizer, "vocabulary", vocabulary);
+        tokenizer.init();
+        return tokenizer;
+    }
+
+    @Test
+    void mergesLowestRankFirst() {
+        Tokenizer tokenizer = syntheticTokenizer();
+        assertTrue(tokenizer.isExact());
+        assertEquals(0, tokenizer.countTokens(""));
+        assertEquals(1, tokenizer.countTokens("abcd"));   // ab, cd, then abcd
+        assertEquals(3, tokenizer.countTokens("abce"));   // ab c e
+        assertEquals(2, tokenizer.countTokens("aaa"));    // leftmost aa wins the tie
+        assertEquals(4, tokenizer.countTokens("abcdabce"));
+    }
+
+    @Test
+    void splitsPiecesBeforeMerging() {
+        Tokenizer tokenizer = syntheticTokenizer();
+        // "abcd" and " abcd" are separate pieces; the space never merges
+        assertEquals(3, tokenizer.countTokens("abcd abcd"));
+        assertEquals(1, tokenizer.countTokens("xabcdx", 1, 5));
+    }
+
+    @Test
+    void mergesMultiByteCharacters() {
+        Tokenizer tokenizer = syntheticTokenizer();
+        assertEquals(1, tokenizer.countTokens("あ"));
+        assertEquals(2, tokenizer.countTokens("い"));   // E3 81, 84
+        assertEquals(3, tokenizer.countTokens("ア"));   // E3 82 A2: no merges
+        assertEquals(4, tokenizer.countTokens("𠮷"));
+    }
+
+    @Test
+    void fitPrefixStaysWithinBudget() {
+        Tokenizer tokenizer = syntheticTokenizer();
+        String text = "abcdabce";
+        assertEquals(4, tokenizer.fitPrefix(text, 0, text.length(), 1));
+        assertEquals(text.length(), tokenizer.fitPrefix(text, 0, text.length(), 4));
+        for (int max = 1; max <= 4; max++) {
+            int end = tokenizer.fitPrefix(text, 0, text.length(), max);
+            assertTrue(tokenizer.countTokens(text, 0, end) <= max);
+        }
+    }
+
+    @Test
+    void fitPrefixNeverSplitsSurrogatePairs() {
+        Tokenizer tokenizer = syntheticTokenizer();
+        String text = "𠮷𠮷";
+        // A whole character is returned even if it alone is over budget
+        assertEquals(2, tokenizer.fitPrefix(text, 0, text.length(), 1));
+        assertEquals(2, tokenizer.fitPrefix(text, 0, text.length(), 5));
+    }
+
+    @Test
+    void estimatesThreeCharactersPerTokenWithoutVocabulary() {
+        Tokenizer tokenizer = tokenizer(new ClassPathResource("tokenizer/missing.tiktoken"));
+        assertFalse(tokenizer.isExact());
+        assertEquals(3, tokenizer.countTokens("あいうえおかき"));
+        String text = "文".repeat(1600);
+        assertEquals(1500, tokenizer.fitPrefix(text, 0, text.length(), 500));
+    }
+
+    @Test
+    void matchesKnownCl100kCounts() {
+        Resource vocabulary = new ClassPathResource("tokenizer/cl100k_base.tiktoken");
+        assumeTrue(vocabulary.exists(), "cl100k_base vocabulary not bundled (build with -Dtokenizer.download)");
+        Tokenizer tokenizer = tokenizer(vocabulary);
+        assertTrue(tokenizer.isExact());
+        assertEquals(2, tokenizer.countTokens("hello world"));
+        assertEquals(4, tokenizer.countTokens("Hello, world!"));
+        assertEquals(6, tokenizer.countTokens("tiktoken is great!"));
+        assertEquals(1, tokenizer.countTokens("\n\n"));
+    }
+}